@@ -1,65 +1,151 @@
 package rd.transactions;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rd.transactions.archive.TransferArchive;
+import rd.transactions.binary.BinaryTransferServer;
+import rd.transactions.config.AppConfig;
 import rd.transactions.config.UUIDGenerator;
 import rd.transactions.controller.account.AccountController;
 import rd.transactions.controller.account.AccountConverter;
 import rd.transactions.controller.transfer.TransferController;
 import rd.transactions.controller.transfer.TransferConverter;
+import rd.transactions.controller.transfer.TransferEventStream;
 import rd.transactions.exceptions.*;
+import rd.transactions.journal.FileJournal;
+import rd.transactions.journal.Journal;
+import rd.transactions.journal.NoOpJournal;
+import rd.transactions.managers.Checkpointer;
+import rd.transactions.managers.JournalRecovery;
 import rd.transactions.managers.AccountManager;
+import rd.transactions.managers.AccountMetrics;
+import rd.transactions.managers.IdempotencyCache;
 import rd.transactions.managers.TransferManager;
+import rd.transactions.managers.TransferMetrics;
+import rd.transactions.managers.TransferRetention;
+import rd.transactions.metrics.LatencyHistogram;
+import rd.transactions.metrics.MetricsRegistry;
+import rd.transactions.operation.log.HistoryStorage;
+import rd.transactions.store.AccountStore;
+import rd.transactions.store.MappedAccountStore;
+import rd.transactions.store.OperationLogAccountStore;
 import rd.transactions.validators.BalanceValidator;
 import rd.transactions.validators.NonNegativeBalanaceValidator;
 import rd.transactions.validators.TransferAmountValidator;
+import spark.Request;
+import spark.Response;
+import spark.Route;
 import spark.Service;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Optional;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.eclipse.jetty.http.HttpStatus.*;
 import static spark.Service.ignite;
 
 class HttpApp {
+    private final static Logger logger = LoggerFactory.getLogger(HttpApp.class);
     private final static String JSON_CONTENT_TYPE = "application/json";
+    private final static String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+    private final static String EVENT_STREAM_CONTENT_TYPE = "text/event-stream";
+    private final static String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
     private final static String API_VER = "v1";
     private final static String NOT_FOUND_MESSAGE = "Not found.";
     private final static String INTERNAL_ERROR_MESSAGE = "Internal server error.";
+    private final static String RETRY_AFTER_HEADER = "Retry-After";
+    private final static long SNAPSHOT_PROCESSING_TIMEOUT_MILLIS = 30000;
 
 
-    private final static int DEFAULT_SERVER_PORT = 8888;
+    final static int DEFAULT_SERVER_PORT = 8888;
 
     private final static int MIN_THREADS_FOR_TRANSFER_PROCESSING = 4;
     private final static int MAX_THREADS_FOR_TRANSFER_PROCESSING = 20;
     private final static long THREAD_KA_SECONDS_FOR_TRANSFER_PROCESSING = 60;
+    private final static int PUSH_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private final static int PUSH_QUEUE_CAPACITY = 10000;
 
     private final int port;
+    private final AppConfig config;
     private final Service spark;
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    // writes responses which are pushed later (long-poll, server-sent events), event streams are written
+    // without blocking, so a few threads serve any number of them however slowly their clients read
+    private final ExecutorService pushExecutor = new ThreadPoolExecutor(
+            PUSH_THREADS, PUSH_THREADS, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(PUSH_QUEUE_CAPACITY),
+            runnable -> {
+                Thread thread = new Thread(runnable, "http-push");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private Journal journal = NoOpJournal.INSTANCE;
+    private AccountStore accountStore;
+    private ScheduledExecutorService snapshotScheduler;
+    private ScheduledExecutorService retentionScheduler;
+    private TransferArchive transferArchive;
+    private BinaryTransferServer binaryTransferServer;
 
     HttpApp() {
         this(DEFAULT_SERVER_PORT);
     }
 
     HttpApp(int port) {
+        this(port, AppConfig.defaults());
+    }
+
+    HttpApp(int port, AppConfig config) {
         this.port = port;
+        this.config = config;
         this.spark = ignite();
     }
 
     void run() {
-        BlockingQueue<Runnable> workQueue = new LinkedBlockingDeque<>();
-        ExecutorService executorService = new ThreadPoolExecutor(
-                MIN_THREADS_FOR_TRANSFER_PROCESSING,
-                MAX_THREADS_FOR_TRANSFER_PROCESSING,
-                THREAD_KA_SECONDS_FOR_TRANSFER_PROCESSING,
-                TimeUnit.SECONDS, workQueue
-        );
+        ExecutorService executorService = createTransferExecutor();
+
+        FileJournal fileJournal = config.getJournalDirectory().map(this::openJournal).orElse(null);
+        if (fileJournal != null) {
+            journal = fileJournal;
+        }
+
+        accountStore = openAccountStore(fileJournal);
 
         BalanceValidator balanceValidator = new NonNegativeBalanaceValidator();
-        AccountManager accountManager = new AccountManager(balanceValidator);
-        TransferManager transferManager = new TransferManager(accountManager, executorService);
+        AccountManager accountManager = new AccountManager(
+                balanceValidator, journal, accountStore, new AccountMetrics(metrics));
+        transferArchive = config.getTransferArchiveFile().map(this::openTransferArchive).orElse(null);
+        TransferManager transferManager = new TransferManager(accountManager, executorService, journal,
+                Optional.ofNullable(transferArchive), new TransferMetrics(metrics));
+        registerExecutorMetrics(executorService, transferManager);
+        if (fileJournal != null) {
+            replayJournal(fileJournal, new JournalRecovery(accountManager, transferManager));
+        }
+        if (fileJournal != null && config.getSnapshotIntervalSeconds() > 0) {
+            scheduleSnapshots(new Checkpointer(
+                    fileJournal, accountManager, transferManager, SNAPSHOT_PROCESSING_TIMEOUT_MILLIS));
+        }
+        if (config.getTransferRetentionMaxAgeSeconds() > 0 || config.getTransferRetentionMaxCount() > 0) {
+            scheduleRetention(new TransferRetention(transferManager,
+                    TimeUnit.SECONDS.toMillis(config.getTransferRetentionMaxAgeSeconds()),
+                    config.getTransferRetentionMaxCount()));
+        }
         AccountController accountController = new AccountController(
-                accountManager, balanceValidator, new AccountConverter());
-        UUIDGenerator uuidGenerator = new UUIDGenerator();
+                accountManager, balanceValidator, new AccountConverter(), config.getJsonCodec());
+        UUIDGenerator uuidGenerator = config.getTransferIdStrategy().createGenerator();
         TransferController transferController = new TransferController(
-                transferManager, new TransferAmountValidator(), new TransferConverter(), uuidGenerator);
+                transferManager, new TransferAmountValidator(), new TransferConverter(), uuidGenerator,
+                config.getTransferBatchMaxSize(), config.getJsonCodec(), new IdempotencyCache(
+                        TimeUnit.SECONDS.toMillis(config.getIdempotencyKeyTtlSeconds()),
+                        config.getIdempotencyKeyCapacity()),
+                config.getTransferSubmissionMode());
+        if (config.getBinaryPort() > 0) {
+            binaryTransferServer = startBinaryTransferServer(transferManager, uuidGenerator);
+        }
 
         configureServer();
 
@@ -68,8 +154,194 @@ class HttpApp {
         configureErrorHandling();
     }
 
+    private ExecutorService createTransferExecutor() {
+        // with bounded queue the pool grows up to MAX_THREADS when the queue gets full
+        BlockingQueue<Runnable> workQueue = new ArrayBlockingQueue<>(config.getTransferQueueCapacity());
+        return new ThreadPoolExecutor(
+                MIN_THREADS_FOR_TRANSFER_PROCESSING,
+                MAX_THREADS_FOR_TRANSFER_PROCESSING,
+                THREAD_KA_SECONDS_FOR_TRANSFER_PROCESSING,
+                TimeUnit.SECONDS, workQueue,
+                config.getTransferRejectionPolicy().getRejectedExecutionHandler()
+        );
+    }
+
+    private void registerExecutorMetrics(ExecutorService executorService, TransferManager transferManager) {
+        metrics.gauge("transfer_executor_threads", "Threads of the transfer executor.",
+                () -> executorService instanceof ThreadPoolExecutor
+                        ? ((ThreadPoolExecutor) executorService).getPoolSize()
+                        : 0);
+        metrics.gauge("transfer_queue_depth", "Units of work waiting in the transfer executor queue.",
+                () -> transferManager.getIntakeStatistics().getQueueDepth());
+        metrics.gauge("transfer_queue_capacity", "Maximum number of units of work waiting in the queue.",
+                () -> transferManager.getIntakeStatistics().getQueueCapacity());
+        metrics.counter("transfer_submissions_rejected_total", "Transfers rejected because the queue was full.",
+                () -> transferManager.getIntakeStatistics().getRejectedTransfers());
+    }
+
+    private FileJournal openJournal(Path directory) {
+        try {
+            return FileJournal.open(directory, config.isJournalArchive());
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Journal in " + directory + " cannot be opened", ex);
+        }
+    }
+
+    private AccountStore openAccountStore(FileJournal fileJournal) {
+        switch (config.getAccountStoreType()) {
+            case MAPPED:
+                Path file = config.getAccountStoreFile();
+                try {
+                    return fileJournal == null
+                            ? MappedAccountStore.open(file, config.getAccountStoreCapacity())
+                            : MappedAccountStore.open(file, config.getAccountStoreCapacity(),
+                                    fileJournal.getLastDurableSequence());
+                } catch (IOException ex) {
+                    throw new UncheckedIOException("Account store " + file + " cannot be opened", ex);
+                }
+            case HEAP:
+            default:
+                return new OperationLogAccountStore(createHistoryStorage());
+        }
+    }
+
+    private HistoryStorage createHistoryStorage() {
+        Optional<Path> spillDirectory = config.getHistorySpillDirectory();
+        if (!spillDirectory.isPresent()) {
+            return HistoryStorage.inMemory(config.getHistorySegmentSize());
+        }
+        try {
+            return HistoryStorage.spilling(config.getHistorySegmentSize(), spillDirectory.get());
+        } catch (IOException ex) {
+            throw new UncheckedIOException("History spill file cannot be created in " + spillDirectory.get(), ex);
+        }
+    }
+
+    private TransferArchive openTransferArchive(Path file) {
+        try {
+            return TransferArchive.open(file);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Transfer archive " + file + " cannot be opened", ex);
+        }
+    }
+
+    private BinaryTransferServer startBinaryTransferServer(TransferManager transferManager,
+                                                           UUIDGenerator uuidGenerator) {
+        try {
+            return BinaryTransferServer.start(
+                    config.getBinaryPort(), transferManager, new TransferAmountValidator(), uuidGenerator);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Binary transfer ingress cannot listen on " + config.getBinaryPort(), ex);
+        }
+    }
+
+    private void scheduleRetention(TransferRetention retention) {
+        retentionScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+        retentionScheduler.scheduleWithFixedDelay(retention, config.getTransferRetentionIntervalMillis(),
+                config.getTransferRetentionIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void replayJournal(FileJournal fileJournal, JournalRecovery journalRecovery) {
+        try {
+            fileJournal.replay(journalRecovery);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Journal cannot be replayed", ex);
+        }
+        journalRecovery.restore();
+    }
+
+    private void scheduleSnapshots(Checkpointer checkpointer) {
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotScheduler.scheduleWithFixedDelay(checkpointer,
+                config.getSnapshotIntervalSeconds(), config.getSnapshotIntervalSeconds(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Blocks until the server accepts requests, run returns before that.
+     */
+    void awaitInitialization() {
+        spark.awaitInitialization();
+    }
+
     void stopServer() {
         spark.stop();
+        pushExecutor.shutdownNow();
+        if (binaryTransferServer != null) {
+            binaryTransferServer.close();
+        }
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+        }
+        if (retentionScheduler != null) {
+            retentionScheduler.shutdownNow();
+        }
+        journal.close();
+        if (accountStore != null) {
+            accountStore.close();
+        }
+        if (transferArchive != null) {
+            transferArchive.close();
+        }
+    }
+
+    /**
+     * Lists are streamed as NDJSON only if the client asks for it, otherwise as JSON array.
+     */
+    private static boolean acceptsNdjson(Request request) {
+        String accept = request.headers("Accept");
+        return accept != null && accept.contains(NDJSON_CONTENT_TYPE);
+    }
+
+    /**
+     * Answers with the body once the future completes or the timeout elapses, whichever is first,
+     *  the request thread is released meanwhile. The body is written by pushExecutor or on timeout by the server,
+     *  also when pushExecutor does not take more work.
+     * The status and headers are sent right away, so that Spark does not write the (empty) body returned by the route.
+     */
+    private void respondLater(Request request, Response response, CompletableFuture<?> ready, long timeoutMillis,
+                              Callable<byte[]> body) throws IOException {
+        AsyncContext async = request.raw().startAsync();
+        async.setTimeout(timeoutMillis);
+        AtomicBoolean responded = new AtomicBoolean();
+        Runnable respond = () -> {
+            if (!responded.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                response.raw().getOutputStream().write(body.call());
+            } catch (Exception ex) {
+                logger.warn("Delayed response to {} cannot be written", request.pathInfo(), ex);
+            } finally {
+                async.complete();
+            }
+        };
+        async.addListener(new AsyncEnd(respond, () -> responded.set(true)));
+        response.raw().flushBuffer();
+        ready.thenRunAsync(respond, pushExecutor);
+    }
+
+    /**
+     * Records the latency of the route, also when it throws, under its method and path pattern.
+     */
+    private Route timed(String route, Route handler) {
+        LatencyHistogram latency = metrics.histogram("http_request_duration_seconds",
+                "Time to handle http requests.", "route", route);
+        return (request, response) -> {
+            long started = System.nanoTime();
+            try {
+                return handler.handle(request, response);
+            } finally {
+                latency.recordSince(started);
+            }
+        };
     }
 
     private void configureServer() {
@@ -78,28 +350,117 @@ class HttpApp {
 
     private void configurePaths(AccountController accountController, TransferController transferController) {
         spark.path("/" + API_VER, () -> {
-            spark.get("/accounts", JSON_CONTENT_TYPE,
-                    (request, response) -> accountController.getAccounts());
-            spark.get("/accounts/:id", JSON_CONTENT_TYPE,
-                    (request, response) -> accountController.getAccount(request.params(":id")));
-            spark.post("/accounts", JSON_CONTENT_TYPE,
-                    (request, response) -> accountController.addAccount(request.body()));
-            spark.get("/transfers", JSON_CONTENT_TYPE,
-                    (request, response) -> transferController.getTransfers());
-            spark.get("/transfers/:id", JSON_CONTENT_TYPE,
-                    (request, response) -> transferController.getTransfer(request.params(":id")));
-            spark.post("/transfers", JSON_CONTENT_TYPE,
-                    (request, response) -> transferController.submitTransfer(request.body()));
+            spark.get("/accounts", timed("GET /v1/accounts", (request, response) -> {
+                boolean ndjson = acceptsNdjson(request);
+                response.type(ndjson ? NDJSON_CONTENT_TYPE : JSON_CONTENT_TYPE);
+                accountController.writeAccounts(response.raw().getOutputStream(), ndjson);
+                return "";
+            }));
+            spark.get("/accounts/:id", JSON_CONTENT_TYPE, timed("GET /v1/accounts/:id",
+                    (request, response) -> accountController.getAccount(request.params(":id"))));
+            spark.get("/accounts/:id/operations", JSON_CONTENT_TYPE, timed("GET /v1/accounts/:id/operations",
+                    (request, response) -> {
+                        response.type(JSON_CONTENT_TYPE);
+                        accountController.writeOperations(request.params(":id"),
+                                request.queryParams("cursor"), request.queryParams("limit"),
+                                request.queryParams("from"), request.queryParams("to"),
+                                response.raw().getOutputStream());
+                        return "";
+                    }));
+            spark.post("/accounts", JSON_CONTENT_TYPE, timed("POST /v1/accounts",
+                    (request, response) -> accountController.addAccount(request.bodyAsBytes())));
+            spark.get("/transfers", timed("GET /v1/transfers", (request, response) -> {
+                if (!request.queryParams().isEmpty()) {
+                    response.type(JSON_CONTENT_TYPE);
+                    return transferController.findTransfers(
+                            request.queryParams("sourceAccountId"), request.queryParams("targetAccountId"),
+                            request.queryParams("status"), request.queryParams("from"), request.queryParams("to"),
+                            request.queryParams("cursor"), request.queryParams("limit"));
+                }
+                boolean ndjson = acceptsNdjson(request);
+                response.type(ndjson ? NDJSON_CONTENT_TYPE : JSON_CONTENT_TYPE);
+                transferController.writeTransfers(response.raw().getOutputStream(), ndjson);
+                return "";
+            }));
+            spark.get("/transfers/events", timed("GET /v1/transfers/events", (request, response) -> {
+                response.type(EVENT_STREAM_CONTENT_TYPE);
+                response.header("Cache-Control", "no-cache");
+                AsyncContext async = request.raw().startAsync();
+                async.setTimeout(0);
+                // subscribed before the headers are sent, a client which got them misses no change
+                TransferEventStream stream = transferController.streamTransferEvents(
+                        request.queryParams("accountId"), response.raw().getOutputStream(),
+                        pushExecutor, async::complete);
+                async.addListener(new AsyncEnd(stream::close, stream::close));
+                try {
+                    // headers are sent now, Spark does not write a body to a committed response,
+                    // the output is non-blocking afterwards
+                    response.raw().flushBuffer();
+                    stream.start();
+                } catch (IOException | RuntimeException ex) {
+                    stream.close();
+                    throw ex;
+                }
+                return "";
+            }));
+            spark.get("/transfers/:id", JSON_CONTENT_TYPE, timed("GET /v1/transfers/:id", (request, response) -> {
+                String transferId = request.params(":id");
+                String waitFor = request.queryParams("waitFor");
+                if (waitFor == null) {
+                    return transferController.getTransfer(transferId);
+                }
+                CompletableFuture<Void> terminal = transferController.whenTransferTerminal(transferId, waitFor);
+                long timeoutMillis = transferController.parseWaitTimeout(request.queryParams("timeout"));
+                if (terminal.isDone() || timeoutMillis == 0) {
+                    return transferController.getTransfer(transferId);
+                }
+                response.type(JSON_CONTENT_TYPE);
+                respondLater(request, response, terminal, timeoutMillis,
+                        () -> transferController.getTransfer(transferId));
+                return "";
+            }));
+            spark.post("/transfers", JSON_CONTENT_TYPE, timed("POST /v1/transfers",
+                    (request, response) -> transferController.submitTransfer(request.bodyAsBytes(),
+                            request.headers(IDEMPOTENCY_KEY_HEADER), request.queryParams("mode"))));
+            spark.post("/transfers/batch", JSON_CONTENT_TYPE, timed("POST /v1/transfers/batch",
+                    (request, response) -> transferController.submitTransfers(
+                            request.bodyAsBytes(),
+                            request.contentType() != null && request.contentType().startsWith(NDJSON_CONTENT_TYPE),
+                            Boolean.parseBoolean(request.queryParams("atomic")))));
+            spark.get("/intake", JSON_CONTENT_TYPE, timed("GET /v1/intake",
+                    (request, response) -> transferController.getIntakeStatistics()));
+            spark.get("/retention", JSON_CONTENT_TYPE, timed("GET /v1/retention",
+                    (request, response) -> transferController.getRetentionStatistics()));
+        });
+        spark.get("/metrics", (request, response) -> {
+            response.type(MetricsRegistry.CONTENT_TYPE);
+            metrics.write(response.raw().getOutputStream());
+            return "";
         });
     }
 
     private void configureErrorHandling() {
         handleExceptionWithStatusCode(AccountBadRequestException.class, BAD_REQUEST_400);
         handleExceptionWithStatusCode(AccountIdConflictException.class, CONFLICT_409);
+        handleExceptionWithStatusCode(AccountIdTooLongException.class, UNPROCESSABLE_ENTITY_422);
+        handleExceptionWithStatusCode(AccountStoreFullException.class, INSUFFICIENT_STORAGE_507);
         handleExceptionWithStatusCode(AccountDoesNotExistException.class, NOT_FOUND_404);
+        handleExceptionWithStatusCode(AccountOperationsBadRequestException.class, BAD_REQUEST_400);
+        handleExceptionWithStatusCode(AccountHistoryNotKeptException.class, NOT_IMPLEMENTED_501);
         handleExceptionWithStatusCode(BalanceInvalidException.class, UNPROCESSABLE_ENTITY_422);
         handleExceptionWithStatusCode(TransferAmountInvalidException.class, UNPROCESSABLE_ENTITY_422);
         handleExceptionWithStatusCode(TransferNotFoundException.class, NOT_FOUND_404);
+        handleExceptionWithStatusCode(TransferBadRequestException.class, BAD_REQUEST_400);
+        handleExceptionWithStatusCode(TransferQueryBadRequestException.class, BAD_REQUEST_400);
+        handleExceptionWithStatusCode(TransferBatchInvalidException.class, UNPROCESSABLE_ENTITY_422);
+        handleExceptionWithStatusCode(TransferBatchTooLargeException.class, PAYLOAD_TOO_LARGE_413);
+        handleExceptionWithStatusCode(IdempotencyKeyReusedException.class, UNPROCESSABLE_ENTITY_422);
+        spark.exception(TransferQueueFullException.class, (exception, request, response) -> {
+            response.type(JSON_CONTENT_TYPE);
+            response.status(SERVICE_UNAVAILABLE_503);
+            response.header(RETRY_AFTER_HEADER, String.valueOf(config.getRetryAfterSeconds()));
+            response.body(buildErrorMessage(SERVICE_UNAVAILABLE_503, exception.getMessage()));
+        });
 
         spark.notFound((req, res) -> {
             res.type(JSON_CONTENT_TYPE);
@@ -122,4 +483,37 @@ class HttpApp {
     private String buildErrorMessage(int code, String message) {
         return String.format("{\"errorCode\": %d, \"message\": \"%s\"}", code, message);
     }
+
+    private static final class AsyncEnd implements AsyncListener {
+        private final Runnable onTimeout;
+        private final Runnable onEnd;
+
+        /**
+         * @param onTimeout has to complete the response
+         * @param onEnd called when the response is complete or it cannot be written any more
+         */
+        private AsyncEnd(Runnable onTimeout, Runnable onEnd) {
+            this.onTimeout = onTimeout;
+            this.onEnd = onEnd;
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            onTimeout.run();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            onEnd.run();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            onEnd.run();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
 }
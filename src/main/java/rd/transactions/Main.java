@@ -1,11 +1,11 @@
 package rd.transactions;
 
-public class Main {
+import rd.transactions.config.AppConfig;
 
-    private final static HttpApp httpApp = new HttpApp();
+public class Main {
 
     public static void main(String[] args) {
-        httpApp.run();
+        new HttpApp(HttpApp.DEFAULT_SERVER_PORT, AppConfig.fromSystemProperties()).run();
     }
 
 }
@@ -0,0 +1,342 @@
+package rd.transactions.archive;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Money;
+import rd.transactions.model.Transfer;
+import rd.transactions.model.TransferStatus;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only file of terminal transfers evicted from memory, so that they can still be found by id.
+ *
+ * Transfers are written in deflated blocks: [int payload length][int CRC32 of payload][payload],
+ *  payload is [int number of transfers][int inflated length][deflated transfers].
+ * Only a hash table from the most significant bits of transfer id to block number stays on the heap
+ *  (12 bytes per slot, at most 75% full), a lookup inflates the candidate blocks.
+ * The table is rebuilt when the file is opened, so archived transfers are known after restart,
+ *  the first unreadable block ends the file (write torn by a crash), it is cut off.
+ */
+public class TransferArchive implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(TransferArchive.class);
+    private static final int BLOCK_HEADER_SIZE = 8;
+    private static final int MAX_BLOCK_SIZE = 64 * 1024 * 1024;
+    private static final int MIN_SLOTS = 1024;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private long[] blockPositions = new long[64];
+    private int blocks;
+    private long size;
+    // open-addressing hash table, ids[i] is the most significant half of transfer id, idBlocks[i] is block + 1
+    private long[] ids = new long[MIN_SLOTS];
+    private int[] idBlocks = new int[MIN_SLOTS];
+    private long archivedTransfers;
+
+    public static TransferArchive open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, CREATE, READ, WRITE);
+        try {
+            TransferArchive archive = new TransferArchive(file, channel);
+            archive.load();
+            return archive;
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private TransferArchive(Path file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+    }
+
+    private void load() throws IOException {
+        long position = 0;
+        long length = channel.size();
+        while (position < length) {
+            byte[] payload = readBlock(position);
+            if (payload == null) {
+                logger.warn("Transfer archive {} is readable up to {} of {} bytes, the rest is cut off",
+                        file, position, length);
+                channel.truncate(position);
+                break;
+            }
+            int block = addBlock(position);
+            for (long id : decodeIds(payload)) {
+                index(id, block);
+            }
+            position += BLOCK_HEADER_SIZE + payload.length;
+        }
+        size = position;
+    }
+
+    /**
+     * Writes the transfers as one block, they can be found once it returns.
+     */
+    public synchronized void append(List<Transfer> transfers) throws IOException {
+        if (transfers.isEmpty()) {
+            return;
+        }
+        byte[] payload = encode(transfers);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_HEADER_SIZE + payload.length);
+        block.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        long position = size;
+        while (block.hasRemaining()) {
+            position += channel.write(block, position);
+        }
+        channel.force(false);
+        int blockNumber = addBlock(size);
+        size = position;
+        for (Transfer transfer : transfers) {
+            index(transfer.getTransferId().getMostSignificantBits(), blockNumber);
+        }
+    }
+
+    /**
+     * Blocks are read without holding the lock, appends are not stopped by lookups.
+     */
+    public Optional<Transfer> find(UUID transferId) {
+        for (long position : candidateBlocks(transferId)) {
+            try {
+                byte[] payload = readBlock(position);
+                Optional<Transfer> transfer = payload == null ? Optional.empty() : decode(payload, transferId);
+                if (transfer.isPresent()) {
+                    return transfer;
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Transfer archive " + file + " cannot be read", ex);
+            }
+        }
+        return Optional.empty();
+    }
+
+    public synchronized long getArchivedTransfers() {
+        return archivedTransfers;
+    }
+
+    public synchronized long getSizeBytes() {
+        return size;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            logger.error("Transfer archive {} cannot be closed", file, ex);
+        }
+        synchronized (this) {
+            deflater.end();
+        }
+    }
+
+    private synchronized long[] candidateBlocks(UUID transferId) {
+        long id = transferId.getMostSignificantBits();
+        long[] candidates = new long[1];
+        int found = 0;
+        for (int slot = slot(id, ids.length); idBlocks[slot] != 0; slot = (slot + 1) & (ids.length - 1)) {
+            if (ids[slot] == id) {
+                if (found == candidates.length) {
+                    candidates = Arrays.copyOf(candidates, found * 2);
+                }
+                candidates[found++] = blockPositions[idBlocks[slot] - 1];
+            }
+        }
+        return Arrays.copyOf(candidates, found);
+    }
+
+    private int addBlock(long position) {
+        if (blocks == blockPositions.length) {
+            blockPositions = Arrays.copyOf(blockPositions, blocks * 2);
+        }
+        blockPositions[blocks] = position;
+        return blocks++;
+    }
+
+    private void index(long id, int block) {
+        if (archivedTransfers + 1 > ids.length / 4 * 3) {
+            rehash(ids.length * 2);
+        }
+        insert(ids, idBlocks, id, block + 1);
+        archivedTransfers++;
+    }
+
+    private void rehash(int slots) {
+        long[] newIds = new long[slots];
+        int[] newIdBlocks = new int[slots];
+        for (int i = 0; i < ids.length; i++) {
+            if (idBlocks[i] != 0) {
+                insert(newIds, newIdBlocks, ids[i], idBlocks[i]);
+            }
+        }
+        ids = newIds;
+        idBlocks = newIdBlocks;
+    }
+
+    private static void insert(long[] ids, int[] idBlocks, long id, int block) {
+        int slot = slot(id, ids.length);
+        while (idBlocks[slot] != 0) {
+            slot = (slot + 1) & (ids.length - 1);
+        }
+        ids[slot] = id;
+        idBlocks[slot] = block;
+    }
+
+    private static int slot(long id, int slots) {
+        // time-ordered ids differ mostly in low bits of the most significant half, they are mixed first
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & (slots - 1);
+    }
+
+    /**
+     * @return null if there is no valid block at the position
+     */
+    private byte[] readBlock(long position) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+        if (!readFully(header, position)) {
+            return null;
+        }
+        header.flip();
+        int length = header.getInt();
+        int checksum = header.getInt();
+        if (length < 0 || length > MAX_BLOCK_SIZE) {
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        if (!readFully(payload, position + BLOCK_HEADER_SIZE)) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload.array());
+        return (int) crc.getValue() == checksum ? payload.array() : null;
+    }
+
+    private boolean readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] encode(List<Transfer> transfers) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(transfers.size() * 64);
+        DataOutputStream output = new DataOutputStream(bytes);
+        for (Transfer transfer : transfers) {
+            output.writeLong(transfer.getTransferId().getMostSignificantBits());
+            output.writeLong(transfer.getTransferId().getLeastSignificantBits());
+            output.writeUTF(transfer.getSourceAccount().getId());
+            output.writeUTF(transfer.getTargetAccount().getId());
+            output.writeUTF(transfer.getTransferredAmount().getCurrency().getCurrencyCode());
+            output.writeLong(transfer.getTransferredAmount().getMinorUnits());
+            output.writeUTF(transfer.getTransferStatus().name());
+        }
+        byte[] inflated = bytes.toByteArray();
+
+        deflater.reset();
+        deflater.setInput(inflated);
+        deflater.finish();
+        ByteArrayOutputStream block = new ByteArrayOutputStream(inflated.length / 4 + 16);
+        DataOutputStream blockOutput = new DataOutputStream(block);
+        blockOutput.writeInt(transfers.size());
+        blockOutput.writeInt(inflated.length);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            block.write(buffer, 0, deflater.deflate(buffer));
+        }
+        return block.toByteArray();
+    }
+
+    /**
+     * Transfers other than the searched one are skipped without being materialized.
+     */
+    private static Optional<Transfer> decode(byte[] payload, UUID transferId) throws IOException {
+        DataInputStream input = inflate(payload);
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            long mostSignificantBits = input.readLong();
+            long leastSignificantBits = input.readLong();
+            if (mostSignificantBits != transferId.getMostSignificantBits()
+                    || leastSignificantBits != transferId.getLeastSignificantBits()) {
+                skipRecordAfterId(input);
+                continue;
+            }
+            AccountId source = AccountId.of(input.readUTF());
+            AccountId target = AccountId.of(input.readUTF());
+            Currency currency = Currency.getInstance(input.readUTF());
+            Money amount = Money.ofMinorUnits(input.readLong(), currency);
+            TransferStatus status = TransferStatus.valueOf(input.readUTF());
+            Transfer transfer = Transfer.of(source, target, amount, transferId);
+            transfer.updateTransferStatus(status);
+            return Optional.of(transfer);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return most significant halves of ids of the transfers in the block
+     */
+    private static long[] decodeIds(byte[] payload) throws IOException {
+        DataInputStream input = inflate(payload);
+        long[] ids = new long[input.readInt()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = input.readLong();
+            input.readLong();
+            skipRecordAfterId(input);
+        }
+        return ids;
+    }
+
+    private static void skipRecordAfterId(DataInputStream input) throws IOException {
+        input.skipBytes(input.readUnsignedShort());
+        input.skipBytes(input.readUnsignedShort());
+        input.skipBytes(input.readUnsignedShort());
+        input.skipBytes(Long.BYTES);
+        input.skipBytes(input.readUnsignedShort());
+    }
+
+    /**
+     * @return number of transfers followed by the transfers
+     */
+    private static DataInputStream inflate(byte[] payload) throws IOException {
+        ByteBuffer block = ByteBuffer.wrap(payload);
+        int count = block.getInt();
+        byte[] inflated = new byte[Integer.BYTES + block.getInt()];
+        ByteBuffer.wrap(inflated).putInt(count);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(payload, block.position(), block.remaining());
+            if (inflater.inflate(inflated, Integer.BYTES, inflated.length - Integer.BYTES)
+                    != inflated.length - Integer.BYTES) {
+                throw new IOException("Transfer archive block is truncated");
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException("Transfer archive block cannot be inflated", ex);
+        } finally {
+            inflater.end();
+        }
+        return new DataInputStream(new ByteArrayInputStream(inflated));
+    }
+}
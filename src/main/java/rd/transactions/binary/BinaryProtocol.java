@@ -0,0 +1,24 @@
+package rd.transactions.binary;
+
+/**
+ * Frames of the binary transfer ingress, all numbers are big-endian.
+ *
+ * Every frame starts with int length of the rest of the frame.
+ * Transfer request: [long correlation id][long amount in minor units][3 ASCII bytes currency code]
+ *  [unsigned short length][UTF-8 source account id][unsigned short length][UTF-8 target account id]
+ * Acknowledgment: [long correlation id][short status][long transfer id, most significant][long least significant]
+ *
+ * The correlation id is chosen by the client and returned in the acknowledgment of the request.
+ * Status is the HTTP status code the JSON route would answer with, transfer id is zero unless status is 200.
+ * Requests are pipelined, acknowledgments of one connection are sent in the order of the requests.
+ */
+public final class BinaryProtocol {
+    public static final int LENGTH_SIZE = Integer.BYTES;
+    public static final int MIN_REQUEST_LENGTH = 2 * Long.BYTES + 3 + 2 * Short.BYTES;
+    public static final int MAX_REQUEST_LENGTH = 1024;
+    public static final int ACK_LENGTH = Long.BYTES + Short.BYTES + 2 * Long.BYTES;
+    static final int CURRENCY_CODE_LENGTH = 3;
+
+    private BinaryProtocol() {
+    }
+}
@@ -0,0 +1,49 @@
+package rd.transactions.binary;
+
+import java.util.UUID;
+
+/**
+ * Acknowledgment of a transfer request received by BinaryTransferClient.
+ */
+public final class BinaryTransferAck {
+    private final long correlationId;
+    private final int status;
+    private final UUID transferId;
+
+    static BinaryTransferAck of(long correlationId, int status, UUID transferId) {
+        return new BinaryTransferAck(correlationId, status, transferId);
+    }
+
+    private BinaryTransferAck(long correlationId, int status, UUID transferId) {
+        this.correlationId = correlationId;
+        this.status = status;
+        this.transferId = transferId;
+    }
+
+    public long getCorrelationId() {
+        return correlationId;
+    }
+
+    /**
+     * HTTP status code the JSON route would answer with, 200 if the transfer was submitted.
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Id of the submitted transfer, null if it was not submitted.
+     */
+    public UUID getTransferId() {
+        return transferId;
+    }
+
+    @Override
+    public String toString() {
+        return "BinaryTransferAck{" +
+                "correlationId=" + correlationId +
+                ", status=" + status +
+                ", transferId=" + transferId +
+                '}';
+    }
+}
@@ -0,0 +1,90 @@
+package rd.transactions.binary;
+
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Money;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.UUID;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.eclipse.jetty.http.HttpStatus.OK_200;
+
+/**
+ * Blocking client of BinaryTransferServer.
+ * Requests are buffered until flushed, so many of them can be pipelined before acknowledgments are read.
+ * Sending and receiving may be done by two different threads, but each by a single one.
+ */
+public class BinaryTransferClient implements AutoCloseable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Socket socket;
+    private final DataOutputStream output;
+    private final DataInputStream input;
+
+    public static BinaryTransferClient connect(String host, int port) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(host, port));
+            return new BinaryTransferClient(socket);
+        } catch (IOException ex) {
+            socket.close();
+            throw ex;
+        }
+    }
+
+    private BinaryTransferClient(Socket socket) throws IOException {
+        this.socket = socket;
+        this.output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+        this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+    }
+
+    /**
+     * Buffers the request, it is sent when the buffer is full or on flush.
+     */
+    public void send(long correlationId, AccountId source, AccountId target, Money amount) throws IOException {
+        byte[] sourceId = source.getId().getBytes(UTF_8);
+        byte[] targetId = target.getId().getBytes(UTF_8);
+        int length = BinaryProtocol.MIN_REQUEST_LENGTH + sourceId.length + targetId.length;
+        if (length > BinaryProtocol.MAX_REQUEST_LENGTH) {
+            throw new IllegalArgumentException("Account ids are too long for a transfer request");
+        }
+        output.writeInt(length);
+        output.writeLong(correlationId);
+        output.writeLong(amount.getMinorUnits());
+        output.write(amount.getCurrency().getCurrencyCode().getBytes(US_ASCII));
+        output.writeShort(sourceId.length);
+        output.write(sourceId);
+        output.writeShort(targetId.length);
+        output.write(targetId);
+    }
+
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    /**
+     * Blocks until the next acknowledgment arrives.
+     * @throws EOFException if the server closed the connection
+     */
+    public BinaryTransferAck receive() throws IOException {
+        int length = input.readInt();
+        if (length != BinaryProtocol.ACK_LENGTH) {
+            throw new IOException("Unexpected acknowledgment length " + length);
+        }
+        long correlationId = input.readLong();
+        int status = input.readShort();
+        long mostSignificantBits = input.readLong();
+        long leastSignificantBits = input.readLong();
+        return BinaryTransferAck.of(correlationId, status,
+                status == OK_200 ? new UUID(mostSignificantBits, leastSignificantBits) : null);
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,380 @@
+package rd.transactions.binary;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rd.transactions.config.CurrencyCodes;
+import rd.transactions.config.UUIDGenerator;
+import rd.transactions.exceptions.TransferQueueFullException;
+import rd.transactions.managers.TransferManager;
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Money;
+import rd.transactions.model.Transfer;
+import rd.transactions.validators.TransferAmountValidator;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.eclipse.jetty.http.HttpStatus.*;
+import static rd.transactions.binary.BinaryProtocol.*;
+
+/**
+ * Ingress of transfers over the length-prefixed binary protocol (see BinaryProtocol) on a plain NIO socket,
+ *  an alternative to POST /transfers for clients submitting large volumes.
+ *
+ * A selector thread accepts connections, decodes pipelined requests and submits transfers to TransferManager
+ *  without waiting for the journal. It never performs a transfer itself, a full queue is acknowledged with 503
+ *  whatever the rejection policy is. Acknowledgments are completed by a second thread, which awaits durability
+ *  of all submissions accepted meanwhile at once (group commit) and hands them back to the selector thread.
+ * A connection is not read while MAX_IN_FLIGHT of its requests are not acknowledged,
+ *  so a client which does not read acknowledgments cannot exhaust memory.
+ */
+public class BinaryTransferServer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(BinaryTransferServer.class);
+    static final int MAX_IN_FLIGHT = 8192;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long NOT_SUBMITTED = -1;
+
+    private final TransferManager transferManager;
+    private final TransferAmountValidator transferAmountValidator;
+    private final UUIDGenerator uuidGenerator;
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final BlockingQueue<PendingAck> pendingAcks = new LinkedBlockingQueue<>();
+    private final Queue<Connection> connectionsWithAcks = new ConcurrentLinkedQueue<>();
+    private final Thread selectorThread;
+    private final Thread ackThread;
+    private volatile boolean running = true;
+
+    /**
+     * @param port 0 picks a free port, see getPort
+     */
+    public static BinaryTransferServer start(int port, TransferManager transferManager,
+                                             TransferAmountValidator transferAmountValidator,
+                                             UUIDGenerator uuidGenerator) throws IOException {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            BinaryTransferServer server = new BinaryTransferServer(
+                    serverChannel, Selector.open(), transferManager, transferAmountValidator, uuidGenerator);
+            server.selectorThread.start();
+            server.ackThread.start();
+            return server;
+        } catch (IOException | RuntimeException ex) {
+            serverChannel.close();
+            throw ex;
+        }
+    }
+
+    private BinaryTransferServer(ServerSocketChannel serverChannel, Selector selector,
+                                 TransferManager transferManager, TransferAmountValidator transferAmountValidator,
+                                 UUIDGenerator uuidGenerator) throws IOException {
+        this.serverChannel = serverChannel;
+        this.selector = selector;
+        this.transferManager = transferManager;
+        this.transferAmountValidator = transferAmountValidator;
+        this.uuidGenerator = uuidGenerator;
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.selectorThread = new Thread(this::select, "binary-ingress");
+        this.selectorThread.setDaemon(true);
+        this.ackThread = new Thread(this::acknowledge, "binary-ingress-acks");
+        this.ackThread.setDaemon(true);
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Stops accepting requests and closes all connections, requests not acknowledged yet may have been submitted.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        ackThread.interrupt();
+        try {
+            selectorThread.join();
+            ackThread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void select() {
+        try {
+            while (running) {
+                selector.select();
+                for (Connection connection; (connection = connectionsWithAcks.poll()) != null; ) {
+                    connection.scheduled.set(false);
+                    connection.writeAcks();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isReadable()) {
+                        connection.read();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.writeAcks();
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            logger.error("Binary transfer ingress failed", ex);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key);
+            }
+            try {
+                selector.close();
+                serverChannel.close();
+            } catch (IOException ex) {
+                logger.error("Binary transfer ingress cannot be closed", ex);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key));
+    }
+
+    /**
+     * Acknowledgments are passed in the order they were queued, so every connection gets them in request order.
+     */
+    private void acknowledge() {
+        List<PendingAck> batch = new ArrayList<>();
+        while (running) {
+            try {
+                batch.add(pendingAcks.take());
+            } catch (InterruptedException ex) {
+                return;
+            }
+            pendingAcks.drainTo(batch);
+            long sequence = NOT_SUBMITTED;
+            for (PendingAck ack : batch) {
+                sequence = Math.max(sequence, ack.sequence);
+            }
+            boolean durable = true;
+            if (sequence != NOT_SUBMITTED) {
+                try {
+                    transferManager.awaitDurable(sequence);
+                } catch (RuntimeException ex) {
+                    logger.error("Submissions of {} binary requests are not durable", batch.size(), ex);
+                    durable = false;
+                }
+            }
+            for (PendingAck ack : batch) {
+                if (!durable && ack.sequence != NOT_SUBMITTED) {
+                    ack.status = INTERNAL_SERVER_ERROR_500;
+                }
+                ack.connection.complete(ack);
+            }
+            selector.wakeup();
+            batch.clear();
+        }
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ex) {
+            logger.warn("Binary connection cannot be closed", ex);
+        }
+    }
+
+    private static final class PendingAck {
+        private final Connection connection;
+        private final long correlationId;
+        private final UUID transferId;
+        private final long sequence;
+        private int status;
+
+        private PendingAck(Connection connection, long correlationId, int status, UUID transferId, long sequence) {
+            this.connection = connection;
+            this.correlationId = correlationId;
+            this.status = status;
+            this.transferId = transferId;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * State of one client connection, except for complete it is used only by the selector thread.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer input = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final ByteBuffer output = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final Queue<PendingAck> acks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final char[] currencyCode = new char[CURRENCY_CODE_LENGTH];
+        private final byte[] accountId = new byte[MAX_REQUEST_LENGTH];
+        private int inFlight;
+
+        private Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        /**
+         * Called by the acknowledging thread, the selector thread is woken up afterwards.
+         */
+        void complete(PendingAck ack) {
+            acks.add(ack);
+            if (scheduled.compareAndSet(false, true)) {
+                connectionsWithAcks.add(this);
+            }
+        }
+
+        void read() {
+            try {
+                if (channel.read(input) < 0) {
+                    closeQuietly(key);
+                    return;
+                }
+                handleRequests();
+            } catch (IOException ex) {
+                logger.warn("Binary connection {} failed", channel, ex);
+                closeQuietly(key);
+            }
+        }
+
+        void writeAcks() {
+            if (!key.isValid()) {
+                return;
+            }
+            try {
+                for (PendingAck ack; output.remaining() >= LENGTH_SIZE + ACK_LENGTH && (ack = acks.poll()) != null; ) {
+                    output.putInt(ACK_LENGTH)
+                            .putLong(ack.correlationId)
+                            .putShort((short) ack.status)
+                            .putLong(ack.transferId == null ? 0 : ack.transferId.getMostSignificantBits())
+                            .putLong(ack.transferId == null ? 0 : ack.transferId.getLeastSignificantBits());
+                    inFlight--;
+                }
+                output.flip();
+                channel.write(output);
+                output.compact();
+                boolean paused = (key.interestOps() & SelectionKey.OP_READ) == 0;
+                if (paused && inFlight < MAX_IN_FLIGHT) {
+                    // requests already buffered were left unhandled when reading was paused
+                    handleRequests();
+                } else {
+                    updateInterest();
+                }
+            } catch (IOException ex) {
+                logger.warn("Binary connection {} failed", channel, ex);
+                closeQuietly(key);
+            }
+        }
+
+        private void handleRequests() {
+            input.flip();
+            while (inFlight < MAX_IN_FLIGHT && input.remaining() >= LENGTH_SIZE) {
+                int length = input.getInt(input.position());
+                if (length < MIN_REQUEST_LENGTH || length > MAX_REQUEST_LENGTH) {
+                    logger.warn("Binary connection {} sent frame of {} bytes, it is closed", channel, length);
+                    closeQuietly(key);
+                    return;
+                }
+                if (input.remaining() < LENGTH_SIZE + length) {
+                    break;
+                }
+                int end = input.position() + LENGTH_SIZE + length;
+                input.position(input.position() + LENGTH_SIZE);
+                pendingAcks.add(handleRequest(end));
+                input.position(end);
+                inFlight++;
+            }
+            input.compact();
+            updateInterest();
+        }
+
+        private PendingAck handleRequest(int end) {
+            long correlationId = input.getLong();
+            long minorUnits = input.getLong();
+            for (int i = 0; i < CURRENCY_CODE_LENGTH; i++) {
+                currencyCode[i] = (char) (input.get() & 0xFF);
+            }
+            String source = readAccountId(end);
+            String target = source == null ? null : readAccountId(end);
+            if (target == null) {
+                return new PendingAck(this, correlationId, BAD_REQUEST_400, null, NOT_SUBMITTED);
+            }
+            Money amount;
+            try {
+                amount = Money.ofMinorUnits(minorUnits, CurrencyCodes.get(currencyCode, 0, CURRENCY_CODE_LENGTH));
+            } catch (IllegalArgumentException ex) {
+                return new PendingAck(this, correlationId, BAD_REQUEST_400, null, NOT_SUBMITTED);
+            }
+            if (!transferAmountValidator.isTransferAmountValid(amount)) {
+                return new PendingAck(this, correlationId, UNPROCESSABLE_ENTITY_422, null, NOT_SUBMITTED);
+            }
+            Transfer transfer = Transfer.of(
+                    AccountId.of(source), AccountId.of(target), amount, uuidGenerator.generateUUID());
+            try {
+                long sequence = transferManager.submitTransferWithoutRunning(transfer);
+                return new PendingAck(this, correlationId, OK_200, transfer.getTransferId(), sequence);
+            } catch (TransferQueueFullException ex) {
+                return new PendingAck(this, correlationId, SERVICE_UNAVAILABLE_503, null, NOT_SUBMITTED);
+            }
+        }
+
+        /**
+         * @return null if the id does not fit into the frame
+         */
+        private String readAccountId(int end) {
+            if (input.position() + Short.BYTES > end) {
+                return null;
+            }
+            int length = input.getShort() & 0xFFFF;
+            if (input.position() + length > end) {
+                return null;
+            }
+            input.get(accountId, 0, length);
+            return new String(accountId, 0, length, UTF_8);
+        }
+
+        private void updateInterest() {
+            if (!key.isValid()) {
+                return;
+            }
+            int interest = inFlight < MAX_IN_FLIGHT ? SelectionKey.OP_READ : 0;
+            if (output.position() > 0 || !acks.isEmpty()) {
+                interest |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(interest);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package rd.transactions.config;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import rd.transactions.dto.AccountDto;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Currency;
+
+import static rd.transactions.config.DtoTokens.*;
+
+/**
+ * Reads and writes AccountDto token by token, see TransferDtoCodec.
+ */
+public final class AccountDtoCodec {
+    private static final SerializedString ACCOUNT_ID = new SerializedString("accountId");
+    private static final SerializedString CURRENCY = new SerializedString("currency");
+    private static final SerializedString AMOUNT = new SerializedString("amount");
+
+    public static class Serializer extends StdSerializer<AccountDto> {
+        public Serializer() {
+            super(AccountDto.class);
+        }
+
+        @Override
+        public void serialize(AccountDto value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject(value);
+            gen.writeFieldName(ACCOUNT_ID);
+            gen.writeString(value.getAccountId());
+            gen.writeFieldName(CURRENCY);
+            gen.writeString(value.getCurrency() == null ? null : value.getCurrency().getCurrencyCode());
+            gen.writeFieldName(AMOUNT);
+            gen.writeString(value.getAmount() == null ? null : value.getAmount().toString());
+            gen.writeEndObject();
+        }
+    }
+
+    public static class Deserializer extends StdDeserializer<AccountDto> {
+        public Deserializer() {
+            super(AccountDto.class);
+        }
+
+        @Override
+        public AccountDto deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            expectObject(p, ctxt, this);
+            String accountId = null;
+            Currency currency = null;
+            BigDecimal amount = null;
+            // bits of required fields which were present: account id, currency, amount
+            int present = 0;
+            for (String field = p.getCurrentName(); p.currentToken() == JsonToken.FIELD_NAME;
+                 field = p.nextFieldName()) {
+                p.nextToken();
+                switch (field) {
+                    case "accountId":
+                        accountId = readString(p, ctxt, this);
+                        present |= 1;
+                        break;
+                    case "currency":
+                        currency = readCurrency(p, ctxt, this);
+                        present |= 2;
+                        break;
+                    case "amount":
+                        amount = readDecimal(p, ctxt, this);
+                        present |= 4;
+                        break;
+                    default:
+                        handleUnknownProperty(p, ctxt, AccountDto.class, field);
+                }
+            }
+            if (present != 0b111) {
+                return ctxt.reportInputMismatch(this,
+                        "Missing required property of AccountDto (accountId, currency, amount)");
+            }
+            return new AccountDto(accountId, currency, amount);
+        }
+    }
+
+    private AccountDtoCodec() {
+    }
+}
@@ -0,0 +1,443 @@
+package rd.transactions.config;
+
+import rd.transactions.managers.TransferRejectionPolicy;
+import rd.transactions.managers.TransferSubmissionMode;
+import rd.transactions.operation.log.HistoryStorage;
+import rd.transactions.store.AccountStoreType;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+/**
+ * Tunable settings of the application.
+ * Defaults are used unless overridden through the builder or system properties (see fromSystemProperties).
+ */
+public class AppConfig {
+    private final int transferQueueCapacity;
+    private final TransferRejectionPolicy transferRejectionPolicy;
+    private final int retryAfterSeconds;
+    private final int transferBatchMaxSize;
+    private final Path journalDirectory;
+    private final boolean journalArchive;
+    private final int snapshotIntervalSeconds;
+    private final AccountStoreType accountStoreType;
+    private final Path accountStoreFile;
+    private final int accountStoreCapacity;
+    private final int historySegmentSize;
+    private final Path historySpillDirectory;
+    private final int transferRetentionMaxAgeSeconds;
+    private final int transferRetentionMaxCount;
+    private final int transferRetentionIntervalMillis;
+    private final Path transferArchiveFile;
+    private final JsonCodec jsonCodec;
+    private final int binaryPort;
+    private final int idempotencyKeyTtlSeconds;
+    private final int idempotencyKeyCapacity;
+    private final TransferIdStrategy transferIdStrategy;
+    private final TransferSubmissionMode transferSubmissionMode;
+
+    public static AppConfig defaults() {
+        return builder().build();
+    }
+
+    /**
+     * Reads settings from system properties, e.g. -Dtransfer.queue.capacity=50000
+     */
+    public static AppConfig fromSystemProperties() {
+        AppConfig defaults = defaults();
+        return builder()
+                .transferQueueCapacity(Integer.getInteger(
+                        "transfer.queue.capacity", defaults.transferQueueCapacity))
+                .transferRejectionPolicy(TransferRejectionPolicy.valueOf(System.getProperty(
+                        "transfer.queue.rejection.policy", defaults.transferRejectionPolicy.name())))
+                .retryAfterSeconds(Integer.getInteger(
+                        "transfer.queue.retry.after.seconds", defaults.retryAfterSeconds))
+                .transferBatchMaxSize(Integer.getInteger(
+                        "transfer.batch.max.size", defaults.transferBatchMaxSize))
+                .journalDirectory(Optional.ofNullable(System.getProperty("journal.dir"))
+                        .map(Paths::get)
+                        .orElse(defaults.journalDirectory))
+                .journalArchive(Boolean.parseBoolean(System.getProperty(
+                        "journal.archive", String.valueOf(defaults.journalArchive))))
+                .snapshotIntervalSeconds(Integer.getInteger(
+                        "journal.snapshot.interval.seconds", defaults.snapshotIntervalSeconds))
+                .accountStoreType(AccountStoreType.valueOf(System.getProperty(
+                        "account.store", defaults.accountStoreType.name())))
+                .accountStoreFile(Optional.ofNullable(System.getProperty("account.store.file"))
+                        .map(Paths::get)
+                        .orElse(defaults.accountStoreFile))
+                .accountStoreCapacity(Integer.getInteger(
+                        "account.store.capacity", defaults.accountStoreCapacity))
+                .historySegmentSize(Integer.getInteger(
+                        "account.history.segment.size", defaults.historySegmentSize))
+                .historySpillDirectory(Optional.ofNullable(System.getProperty("account.history.spill.dir"))
+                        .map(Paths::get)
+                        .orElse(defaults.historySpillDirectory))
+                .transferRetentionMaxAgeSeconds(Integer.getInteger(
+                        "transfer.retention.max.age.seconds", defaults.transferRetentionMaxAgeSeconds))
+                .transferRetentionMaxCount(Integer.getInteger(
+                        "transfer.retention.max.count", defaults.transferRetentionMaxCount))
+                .transferRetentionIntervalMillis(Integer.getInteger(
+                        "transfer.retention.interval.millis", defaults.transferRetentionIntervalMillis))
+                .transferArchiveFile(Optional.ofNullable(System.getProperty("transfer.archive.file"))
+                        .map(Paths::get)
+                        .orElse(defaults.transferArchiveFile))
+                .jsonCodec(JsonCodec.valueOf(System.getProperty("json.codec", defaults.jsonCodec.name())))
+                .binaryPort(Integer.getInteger("binary.port", defaults.binaryPort))
+                .idempotencyKeyTtlSeconds(Integer.getInteger(
+                        "idempotency.key.ttl.seconds", defaults.idempotencyKeyTtlSeconds))
+                .idempotencyKeyCapacity(Integer.getInteger(
+                        "idempotency.key.capacity", defaults.idempotencyKeyCapacity))
+                .transferIdStrategy(TransferIdStrategy.valueOf(System.getProperty(
+                        "transfer.id.strategy", defaults.transferIdStrategy.name())))
+                .transferSubmissionMode(TransferSubmissionMode.valueOf(System.getProperty(
+                        "transfer.submission.mode", defaults.transferSubmissionMode.name())))
+                .build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private AppConfig(Builder builder) {
+        this.transferQueueCapacity = builder.transferQueueCapacity;
+        this.transferRejectionPolicy = builder.transferRejectionPolicy;
+        this.retryAfterSeconds = builder.retryAfterSeconds;
+        this.transferBatchMaxSize = builder.transferBatchMaxSize;
+        this.journalDirectory = builder.journalDirectory;
+        this.journalArchive = builder.journalArchive;
+        this.snapshotIntervalSeconds = builder.snapshotIntervalSeconds;
+        this.accountStoreType = builder.accountStoreType;
+        this.accountStoreFile = builder.accountStoreFile;
+        this.accountStoreCapacity = builder.accountStoreCapacity;
+        this.historySegmentSize = builder.historySegmentSize;
+        this.historySpillDirectory = builder.historySpillDirectory;
+        this.transferRetentionMaxAgeSeconds = builder.transferRetentionMaxAgeSeconds;
+        this.transferRetentionMaxCount = builder.transferRetentionMaxCount;
+        this.transferRetentionIntervalMillis = builder.transferRetentionIntervalMillis;
+        this.transferArchiveFile = builder.transferArchiveFile;
+        this.jsonCodec = builder.jsonCodec;
+        this.binaryPort = builder.binaryPort;
+        this.idempotencyKeyTtlSeconds = builder.idempotencyKeyTtlSeconds;
+        this.idempotencyKeyCapacity = builder.idempotencyKeyCapacity;
+        this.transferIdStrategy = builder.transferIdStrategy;
+        this.transferSubmissionMode = builder.transferSubmissionMode;
+    }
+
+    /**
+     * Maximum number of transfers waiting for processing.
+     */
+    public int getTransferQueueCapacity() {
+        return transferQueueCapacity;
+    }
+
+    public TransferRejectionPolicy getTransferRejectionPolicy() {
+        return transferRejectionPolicy;
+    }
+
+    /**
+     * Value of Retry-After header sent when transfer is rejected because the queue is full.
+     */
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * Maximum number of transfers accepted in one POST /transfers/batch request.
+     */
+    public int getTransferBatchMaxSize() {
+        return transferBatchMaxSize;
+    }
+
+    /**
+     * Directory of the write-ahead journal, when empty the state is kept only in memory.
+     */
+    public Optional<Path> getJournalDirectory() {
+        return Optional.ofNullable(journalDirectory);
+    }
+
+    /**
+     * Whether journal files covered by a snapshot are moved to the archive subdirectory instead of being deleted.
+     */
+    public boolean isJournalArchive() {
+        return journalArchive;
+    }
+
+    /**
+     * How often snapshot of the journaled state is taken, 0 disables snapshots.
+     */
+    public int getSnapshotIntervalSeconds() {
+        return snapshotIntervalSeconds;
+    }
+
+    public AccountStoreType getAccountStoreType() {
+        return accountStoreType;
+    }
+
+    /**
+     * File of the MAPPED account store.
+     */
+    public Path getAccountStoreFile() {
+        return accountStoreFile;
+    }
+
+    /**
+     * Minimum number of accounts the MAPPED account store is created for, capacity of an existing file is kept.
+     */
+    public int getAccountStoreCapacity() {
+        return accountStoreCapacity;
+    }
+
+    /**
+     * Number of entries in a segment of account history, full segments are compacted (HEAP account store).
+     */
+    public int getHistorySegmentSize() {
+        return historySegmentSize;
+    }
+
+    /**
+     * Directory where compacted history segments are spilled, when empty they stay on the heap.
+     */
+    public Optional<Path> getHistorySpillDirectory() {
+        return Optional.ofNullable(historySpillDirectory);
+    }
+
+    /**
+     * Finished transfers older than this are evicted from memory, 0 keeps them regardless of age.
+     */
+    public int getTransferRetentionMaxAgeSeconds() {
+        return transferRetentionMaxAgeSeconds;
+    }
+
+    /**
+     * Maximum number of finished transfers kept in memory, the oldest are evicted, 0 means no limit.
+     */
+    public int getTransferRetentionMaxCount() {
+        return transferRetentionMaxCount;
+    }
+
+    /**
+     * How often finished transfers are checked for eviction.
+     */
+    public int getTransferRetentionIntervalMillis() {
+        return transferRetentionIntervalMillis;
+    }
+
+    /**
+     * File where evicted transfers are archived, when empty they are discarded.
+     */
+    public Optional<Path> getTransferArchiveFile() {
+        return Optional.ofNullable(transferArchiveFile);
+    }
+
+    /**
+     * How transfers and accounts in request and response bodies are read and written.
+     */
+    public JsonCodec getJsonCodec() {
+        return jsonCodec;
+    }
+
+    /**
+     * Port of the binary transfer ingress (see BinaryTransferServer), 0 disables it.
+     */
+    public int getBinaryPort() {
+        return binaryPort;
+    }
+
+    /**
+     * How long a repeated submission with the same Idempotency-Key returns the original transfer.
+     */
+    public int getIdempotencyKeyTtlSeconds() {
+        return idempotencyKeyTtlSeconds;
+    }
+
+    /**
+     * Maximum number of idempotency keys kept, the oldest are dropped before they expire when it is reached.
+     * It should be at least peak submissions per second times the time to live.
+     */
+    public int getIdempotencyKeyCapacity() {
+        return idempotencyKeyCapacity;
+    }
+
+    /**
+     * How ids of submitted transfers are generated.
+     */
+    public TransferIdStrategy getTransferIdStrategy() {
+        return transferIdStrategy;
+    }
+
+    /**
+     * Whether POST /v1/transfers performs the transfer before it answers, unless the request says otherwise.
+     */
+    public TransferSubmissionMode getTransferSubmissionMode() {
+        return transferSubmissionMode;
+    }
+
+    public static class Builder {
+        private int transferQueueCapacity = 100000;
+        private TransferRejectionPolicy transferRejectionPolicy = TransferRejectionPolicy.REJECT;
+        private int retryAfterSeconds = 1;
+        private int transferBatchMaxSize = 100000;
+        private Path journalDirectory;
+        private boolean journalArchive = false;
+        private int snapshotIntervalSeconds = 600;
+        private AccountStoreType accountStoreType = AccountStoreType.HEAP;
+        private Path accountStoreFile = Paths.get("accounts.store");
+        private int accountStoreCapacity = 1000000;
+        private int historySegmentSize = HistoryStorage.DEFAULT_SEGMENT_SIZE;
+        private Path historySpillDirectory;
+        private int transferRetentionMaxAgeSeconds = 0;
+        private int transferRetentionMaxCount = 0;
+        private int transferRetentionIntervalMillis = 1000;
+        private Path transferArchiveFile;
+        private JsonCodec jsonCodec = JsonCodec.DATABIND;
+        private int binaryPort = 0;
+        // 5000 submissions per second for two minutes
+        private int idempotencyKeyTtlSeconds = 120;
+        private int idempotencyKeyCapacity = 600000;
+        private TransferIdStrategy transferIdStrategy = TransferIdStrategy.RANDOM;
+        private TransferSubmissionMode transferSubmissionMode = TransferSubmissionMode.ASYNC;
+
+        private Builder() {
+        }
+
+        public Builder transferQueueCapacity(int transferQueueCapacity) {
+            this.transferQueueCapacity = transferQueueCapacity;
+            return this;
+        }
+
+        public Builder transferRejectionPolicy(TransferRejectionPolicy transferRejectionPolicy) {
+            this.transferRejectionPolicy = transferRejectionPolicy;
+            return this;
+        }
+
+        public Builder retryAfterSeconds(int retryAfterSeconds) {
+            this.retryAfterSeconds = retryAfterSeconds;
+            return this;
+        }
+
+        public Builder transferBatchMaxSize(int transferBatchMaxSize) {
+            this.transferBatchMaxSize = transferBatchMaxSize;
+            return this;
+        }
+
+        public Builder journalDirectory(Path journalDirectory) {
+            this.journalDirectory = journalDirectory;
+            return this;
+        }
+
+        public Builder journalArchive(boolean journalArchive) {
+            this.journalArchive = journalArchive;
+            return this;
+        }
+
+        public Builder snapshotIntervalSeconds(int snapshotIntervalSeconds) {
+            this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+            return this;
+        }
+
+        public Builder accountStoreType(AccountStoreType accountStoreType) {
+            this.accountStoreType = accountStoreType;
+            return this;
+        }
+
+        public Builder accountStoreFile(Path accountStoreFile) {
+            this.accountStoreFile = accountStoreFile;
+            return this;
+        }
+
+        public Builder accountStoreCapacity(int accountStoreCapacity) {
+            this.accountStoreCapacity = accountStoreCapacity;
+            return this;
+        }
+
+        public Builder historySegmentSize(int historySegmentSize) {
+            this.historySegmentSize = historySegmentSize;
+            return this;
+        }
+
+        public Builder historySpillDirectory(Path historySpillDirectory) {
+            this.historySpillDirectory = historySpillDirectory;
+            return this;
+        }
+
+        public Builder transferRetentionMaxAgeSeconds(int transferRetentionMaxAgeSeconds) {
+            this.transferRetentionMaxAgeSeconds = transferRetentionMaxAgeSeconds;
+            return this;
+        }
+
+        public Builder transferRetentionMaxCount(int transferRetentionMaxCount) {
+            this.transferRetentionMaxCount = transferRetentionMaxCount;
+            return this;
+        }
+
+        public Builder transferRetentionIntervalMillis(int transferRetentionIntervalMillis) {
+            this.transferRetentionIntervalMillis = transferRetentionIntervalMillis;
+            return this;
+        }
+
+        public Builder transferArchiveFile(Path transferArchiveFile) {
+            this.transferArchiveFile = transferArchiveFile;
+            return this;
+        }
+
+        public Builder jsonCodec(JsonCodec jsonCodec) {
+            this.jsonCodec = jsonCodec;
+            return this;
+        }
+
+        public Builder binaryPort(int binaryPort) {
+            this.binaryPort = binaryPort;
+            return this;
+        }
+
+        public Builder idempotencyKeyTtlSeconds(int idempotencyKeyTtlSeconds) {
+            this.idempotencyKeyTtlSeconds = idempotencyKeyTtlSeconds;
+            return this;
+        }
+
+        public Builder idempotencyKeyCapacity(int idempotencyKeyCapacity) {
+            this.idempotencyKeyCapacity = idempotencyKeyCapacity;
+            return this;
+        }
+
+        public Builder transferIdStrategy(TransferIdStrategy transferIdStrategy) {
+            this.transferIdStrategy = transferIdStrategy;
+            return this;
+        }
+
+        public Builder transferSubmissionMode(TransferSubmissionMode transferSubmissionMode) {
+            this.transferSubmissionMode = transferSubmissionMode;
+            return this;
+        }
+
+        public AppConfig build() {
+            if (transferQueueCapacity < 1) {
+                throw new IllegalArgumentException("Transfer queue capacity has to be positive.");
+            }
+            if (snapshotIntervalSeconds < 0) {
+                throw new IllegalArgumentException("Snapshot interval can't be negative.");
+            }
+            if (accountStoreCapacity < 1) {
+                throw new IllegalArgumentException("Account store capacity has to be positive.");
+            }
+            if (historySegmentSize < 1) {
+                throw new IllegalArgumentException("History segment size has to be positive.");
+            }
+            if (transferRetentionMaxAgeSeconds < 0 || transferRetentionMaxCount < 0) {
+                throw new IllegalArgumentException("Transfer retention limits can't be negative.");
+            }
+            if (transferRetentionIntervalMillis < 1) {
+                throw new IllegalArgumentException("Transfer retention interval has to be positive.");
+            }
+            if (binaryPort < 0 || binaryPort > 65535) {
+                throw new IllegalArgumentException("Binary port has to be between 0 and 65535.");
+            }
+            if (idempotencyKeyTtlSeconds < 1 || idempotencyKeyCapacity < 1) {
+                throw new IllegalArgumentException("Idempotency key time to live and capacity have to be positive.");
+            }
+            return new AppConfig(this);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package rd.transactions.config;
+
+import java.util.Currency;
+
+/**
+ * Currencies by ISO 4217 code read directly from parser characters, so neither the code String
+ *  nor a lookup in Currency is needed once a currency was seen.
+ */
+public final class CurrencyCodes {
+    private static final int LETTERS = 'Z' - 'A' + 1;
+    // racy initialization is harmless, Currency.getInstance returns the same instance for a code
+    private static final Currency[] CURRENCIES = new Currency[LETTERS * LETTERS * LETTERS];
+
+    /**
+     * @throws IllegalArgumentException if the code is not a supported ISO 4217 code
+     */
+    public static Currency get(char[] chars, int offset, int length) {
+        int index = index(chars, offset, length);
+        if (index < 0) {
+            return Currency.getInstance(new String(chars, offset, length));
+        }
+        Currency currency = CURRENCIES[index];
+        if (currency == null) {
+            currency = Currency.getInstance(new String(chars, offset, length));
+            CURRENCIES[index] = currency;
+        }
+        return currency;
+    }
+
+    private static int index(char[] chars, int offset, int length) {
+        if (length != 3) {
+            return -1;
+        }
+        int index = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int letter = chars[i] - 'A';
+            if (letter < 0 || letter >= LETTERS) {
+                return -1;
+            }
+            index = index * LETTERS + letter;
+        }
+        return index;
+    }
+
+    private CurrencyCodes() {
+    }
+}
@@ -0,0 +1,106 @@
+package rd.transactions.config;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.UUID;
+
+/**
+ * Reading of DTO field values from the current token, accepting the same input as the data binding
+ *  deserializers of the field types, failures are reported as JsonMappingException.
+ */
+final class DtoTokens {
+    private static final int UUID_LENGTH = 36;
+
+    static String readString(JsonParser p, DeserializationContext ctxt, JsonDeserializer<?> deserializer)
+            throws IOException {
+        JsonToken token = p.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!token.isScalarValue()) {
+            return ctxt.reportInputMismatch(deserializer, "Expected string for %s", p.getCurrentName());
+        }
+        return p.getText();
+    }
+
+    static Currency readCurrency(JsonParser p, DeserializationContext ctxt, JsonDeserializer<?> deserializer)
+            throws IOException {
+        JsonToken token = p.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!token.isScalarValue()) {
+            return ctxt.reportInputMismatch(deserializer, "Expected currency code");
+        }
+        try {
+            return CurrencyCodes.get(p.getTextCharacters(), p.getTextOffset(), p.getTextLength());
+        } catch (IllegalArgumentException ex) {
+            return ctxt.reportInputMismatch(deserializer, "Unknown currency %s", p.getText());
+        }
+    }
+
+    static BigDecimal readDecimal(JsonParser p, DeserializationContext ctxt, JsonDeserializer<?> deserializer)
+            throws IOException {
+        switch (p.currentToken()) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return p.getDecimalValue();
+            case VALUE_STRING:
+                String text = p.getText().trim();
+                if (text.isEmpty()) {
+                    return null;
+                }
+                try {
+                    return new BigDecimal(text);
+                } catch (NumberFormatException ex) {
+                    return ctxt.reportInputMismatch(deserializer, "Not a valid decimal %s", text);
+                }
+            default:
+                return ctxt.reportInputMismatch(deserializer, "Expected decimal amount");
+        }
+    }
+
+    static UUID readUuid(JsonParser p, DeserializationContext ctxt, JsonDeserializer<?> deserializer)
+            throws IOException {
+        JsonToken token = p.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        String text = token == JsonToken.VALUE_STRING ? p.getText().trim() : null;
+        if (text != null && text.isEmpty()) {
+            return null;
+        }
+        if (text == null || text.length() != UUID_LENGTH) {
+            return ctxt.reportInputMismatch(deserializer, "Expected UUID as 36 characters");
+        }
+        try {
+            return UUID.fromString(text);
+        } catch (IllegalArgumentException ex) {
+            return ctxt.reportInputMismatch(deserializer, "Not a valid UUID %s", text);
+        }
+    }
+
+    /**
+     * Fails unless the parser is at the start of an object or at its first field.
+     */
+    static void expectObject(JsonParser p, DeserializationContext ctxt, JsonDeserializer<?> deserializer)
+            throws IOException {
+        if (p.currentToken() == JsonToken.START_OBJECT) {
+            p.nextToken();
+        }
+        if (p.currentToken() != JsonToken.FIELD_NAME && p.currentToken() != JsonToken.END_OBJECT) {
+            ctxt.reportInputMismatch(deserializer, "Expected JSON object");
+        }
+    }
+
+    private DtoTokens() {
+    }
+}
@@ -0,0 +1,15 @@
+package rd.transactions.config;
+
+/**
+ * How TransferDto and AccountDto are read from and written to JSON, both produce the same JSON.
+ */
+public enum JsonCodec {
+    /**
+     * Jackson data binding through the annotated creators of the DTOs.
+     */
+    DATABIND,
+    /**
+     * Hand-written codecs reading and writing tokens directly, see TransferDtoCodec and AccountDtoCodec.
+     */
+    STREAMING
+}
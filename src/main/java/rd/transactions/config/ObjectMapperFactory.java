@@ -3,6 +3,8 @@ package rd.transactions.config;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import rd.transactions.dto.AccountDto;
+import rd.transactions.dto.TransferDto;
 
 import java.math.BigDecimal;
 import java.util.Currency;
@@ -10,6 +12,13 @@ import java.util.Currency;
 public class ObjectMapperFactory {
 
     public static ObjectMapper getObjectMapper() {
+        return getObjectMapper(JsonCodec.DATABIND);
+    }
+
+    /**
+     * @param jsonCodec how TransferDto and AccountDto are read and written, JSON is the same either way
+     */
+    public static ObjectMapper getObjectMapper(JsonCodec jsonCodec) {
         ObjectMapper objectMapper = new ObjectMapper();
         // due to jsr310 being on classpath adds support for Instant serialization/deserialization
         objectMapper.findAndRegisterModules();
@@ -18,6 +27,12 @@ public class ObjectMapperFactory {
         module.addSerializer(BigDecimal.class, new ToStringSerializer());
         module.addSerializer(Currency.class, new CurrencySerializer());
         module.addDeserializer(Currency.class, new CurrencyDeserializer());
+        if (jsonCodec == JsonCodec.STREAMING) {
+            module.addSerializer(TransferDto.class, new TransferDtoCodec.Serializer());
+            module.addDeserializer(TransferDto.class, new TransferDtoCodec.Deserializer());
+            module.addSerializer(AccountDto.class, new AccountDtoCodec.Serializer());
+            module.addDeserializer(AccountDto.class, new AccountDtoCodec.Deserializer());
+        }
         objectMapper.registerModule(module);
         return objectMapper;
     }
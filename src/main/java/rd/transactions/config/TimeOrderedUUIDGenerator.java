@@ -0,0 +1,64 @@
+package rd.transactions.config;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * Generates version 7 UUIDs: 48 bits of unix time in millis, a 12 bit counter and 62 random bits.
+ *
+ * Every thread keeps its own last timestamp and counter and takes random bits from ThreadLocalRandom,
+ *  so threads share nothing (UUID.randomUUID() takes every id from one SecureRandom).
+ * Ids of a thread increase strictly, when the counter runs out within a millisecond or the clock goes back
+ *  the timestamp of the thread moves one millisecond ahead. Ids of different threads are ordered by the millisecond,
+ *  the random bits keep them unique.
+ * Random bits are not cryptographically strong, ids are unique but not unguessable.
+ */
+public class TimeOrderedUUIDGenerator extends UUIDGenerator {
+    private static final long MAX_COUNTER = 0xFFF;
+    private static final long TIMESTAMP_MASK = 0xFFFF_FFFF_FFFFL;
+    private static final long VERSION = 0x7000;
+    private static final long VARIANT = 0x8000_0000_0000_0000L;
+    private static final long RANDOM_MASK = 0x3FFF_FFFF_FFFF_FFFFL;
+
+    private final LongSupplier clock;
+    private final ThreadLocal<State> state = ThreadLocal.withInitial(State::new);
+
+    public TimeOrderedUUIDGenerator() {
+        this(System::currentTimeMillis);
+    }
+
+    TimeOrderedUUIDGenerator(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public UUID generateUUID() {
+        State state = this.state.get();
+        long now = clock.getAsLong();
+        if (now > state.millis) {
+            state.millis = now;
+            state.counter = 0;
+        } else if (state.counter < MAX_COUNTER) {
+            state.counter++;
+        } else {
+            state.millis++;
+            state.counter = 0;
+        }
+        long mostSignificantBits = (state.millis & TIMESTAMP_MASK) << 16 | VERSION | state.counter;
+        long leastSignificantBits = VARIANT | ThreadLocalRandom.current().nextLong() & RANDOM_MASK;
+        return new UUID(mostSignificantBits, leastSignificantBits);
+    }
+
+    /**
+     * @return unix time in millis the id was generated at
+     */
+    public static long timestampOf(UUID uuid) {
+        return uuid.getMostSignificantBits() >>> 16;
+    }
+
+    private static final class State {
+        private long millis = Long.MIN_VALUE;
+        private long counter;
+    }
+}
@@ -0,0 +1,112 @@
+package rd.transactions.config;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import rd.transactions.dto.TransferDto;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.UUID;
+
+import static rd.transactions.config.DtoTokens.*;
+
+/**
+ * Reads and writes TransferDto token by token, without reflection and per-field deserializers.
+ * Written JSON is the same as written by data binding: fields in the order of the creator, nulls included.
+ */
+public final class TransferDtoCodec {
+    private static final SerializedString SOURCE_ACCOUNT_ID = new SerializedString("sourceAccountId");
+    private static final SerializedString TARGET_ACCOUNT_ID = new SerializedString("targetAccountId");
+    private static final SerializedString CURRENCY = new SerializedString("currency");
+    private static final SerializedString AMOUNT = new SerializedString("amount");
+    private static final SerializedString TRANSFER_ID = new SerializedString("transferId");
+    private static final SerializedString TRANSFER_STATUS = new SerializedString("transferStatus");
+
+    public static class Serializer extends StdSerializer<TransferDto> {
+        public Serializer() {
+            super(TransferDto.class);
+        }
+
+        @Override
+        public void serialize(TransferDto value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject(value);
+            gen.writeFieldName(SOURCE_ACCOUNT_ID);
+            gen.writeString(value.getSourceAccountId());
+            gen.writeFieldName(TARGET_ACCOUNT_ID);
+            gen.writeString(value.getTargetAccountId());
+            gen.writeFieldName(CURRENCY);
+            gen.writeString(value.getCurrency() == null ? null : value.getCurrency().getCurrencyCode());
+            gen.writeFieldName(AMOUNT);
+            gen.writeString(value.getAmount() == null ? null : value.getAmount().toString());
+            gen.writeFieldName(TRANSFER_ID);
+            gen.writeString(value.getTransferId() == null ? null : value.getTransferId().toString());
+            gen.writeFieldName(TRANSFER_STATUS);
+            gen.writeString(value.getTransferStatus());
+            gen.writeEndObject();
+        }
+    }
+
+    public static class Deserializer extends StdDeserializer<TransferDto> {
+        public Deserializer() {
+            super(TransferDto.class);
+        }
+
+        @Override
+        public TransferDto deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            expectObject(p, ctxt, this);
+            String sourceAccountId = null;
+            String targetAccountId = null;
+            Currency currency = null;
+            BigDecimal amount = null;
+            UUID transferId = null;
+            String transferStatus = null;
+            // bits of required fields which were present: source, target, currency, amount
+            int present = 0;
+            for (String field = p.getCurrentName(); p.currentToken() == JsonToken.FIELD_NAME;
+                 field = p.nextFieldName()) {
+                p.nextToken();
+                switch (field) {
+                    case "sourceAccountId":
+                        sourceAccountId = readString(p, ctxt, this);
+                        present |= 1;
+                        break;
+                    case "targetAccountId":
+                        targetAccountId = readString(p, ctxt, this);
+                        present |= 2;
+                        break;
+                    case "currency":
+                        currency = readCurrency(p, ctxt, this);
+                        present |= 4;
+                        break;
+                    case "amount":
+                        amount = readDecimal(p, ctxt, this);
+                        present |= 8;
+                        break;
+                    case "transferId":
+                        transferId = readUuid(p, ctxt, this);
+                        break;
+                    case "transferStatus":
+                        transferStatus = readString(p, ctxt, this);
+                        break;
+                    default:
+                        handleUnknownProperty(p, ctxt, TransferDto.class, field);
+                }
+            }
+            if (present != 0b1111) {
+                return ctxt.reportInputMismatch(this,
+                        "Missing required property of TransferDto (sourceAccountId, targetAccountId, currency, amount)");
+            }
+            return new TransferDto(sourceAccountId, targetAccountId, currency, amount, transferId, transferStatus);
+        }
+    }
+
+    private TransferDtoCodec() {
+    }
+}
@@ -0,0 +1,27 @@
+package rd.transactions.config;
+
+import java.util.function.Supplier;
+
+/**
+ * How ids of submitted transfers are generated, both give UUIDs.
+ */
+public enum TransferIdStrategy {
+    /**
+     * Random (version 4) UUIDs from UUID.randomUUID(), all threads share one SecureRandom.
+     */
+    RANDOM(UUIDGenerator::new),
+    /**
+     * Version 7 UUIDs, sortable by creation time and generated without shared state, see TimeOrderedUUIDGenerator.
+     */
+    TIME_ORDERED(TimeOrderedUUIDGenerator::new);
+
+    private final Supplier<UUIDGenerator> generatorFactory;
+
+    TransferIdStrategy(Supplier<UUIDGenerator> generatorFactory) {
+        this.generatorFactory = generatorFactory;
+    }
+
+    public UUIDGenerator createGenerator() {
+        return generatorFactory.get();
+    }
+}
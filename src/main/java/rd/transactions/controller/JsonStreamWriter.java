@@ -0,0 +1,57 @@
+package rd.transactions.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes elements to the output as they are produced, as a JSON array or as NDJSON (one element per line).
+ * Only the buffer of the generator is kept in memory, the servlet container sends full buffers
+ *  with chunked transfer encoding, so memory does not depend on the number of elements.
+ * The output is flushed when the writer is closed, it is not closed itself.
+ */
+public final class JsonStreamWriter implements AutoCloseable {
+    private final JsonGenerator generator;
+    private final ObjectWriter writer;
+    private final boolean ndjson;
+
+    /**
+     * @param mapper configures serialization of the elements, elements are written without flushing each of them
+     */
+    public static JsonStreamWriter start(ObjectMapper mapper, OutputStream output, boolean ndjson)
+            throws IOException {
+        JsonGenerator generator = mapper.getFactory().createGenerator(output);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null);
+        if (!ndjson) {
+            generator.writeStartArray();
+        }
+        return new JsonStreamWriter(generator, mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE),
+                ndjson);
+    }
+
+    private JsonStreamWriter(JsonGenerator generator, ObjectWriter writer, boolean ndjson) {
+        this.generator = generator;
+        this.writer = writer;
+        this.ndjson = ndjson;
+    }
+
+    public void write(Object element) throws IOException {
+        writer.writeValue(generator, element);
+        if (ndjson) {
+            generator.writeRaw('\n');
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!ndjson) {
+            generator.writeEndArray();
+        }
+        generator.close();
+    }
+}
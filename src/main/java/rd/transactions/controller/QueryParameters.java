@@ -0,0 +1,44 @@
+package rd.transactions.controller;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.function.Supplier;
+
+/**
+ * Parsing of optional query parameters, invalid values result in the given (bad request) exception.
+ */
+public final class QueryParameters {
+
+    private QueryParameters() {
+    }
+
+    public static long parseNonNegative(String value, long defaultValue, Supplier<RuntimeException> invalid) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long parsed = Long.parseLong(value);
+            if (parsed < 0) {
+                throw invalid.get();
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw invalid.get();
+        }
+    }
+
+    /**
+     * @param value ISO-8601 instant, e.g. 2019-02-01T10:15:30Z
+     * @return epoch millis
+     */
+    public static long parseInstant(String value, long defaultValue, Supplier<RuntimeException> invalid) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Instant.parse(value).toEpochMilli();
+        } catch (DateTimeParseException | ArithmeticException e) {
+            throw invalid.get();
+        }
+    }
+}
@@ -1,27 +1,43 @@
 package rd.transactions.controller.account;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import rd.transactions.config.JsonCodec;
 import rd.transactions.config.ObjectMapperFactory;
+import rd.transactions.controller.JsonStreamWriter;
 import rd.transactions.dto.AccountDto;
 import rd.transactions.exceptions.AccountBadRequestException;
 import rd.transactions.exceptions.AccountDoesNotExistException;
+import rd.transactions.exceptions.AccountOperationsBadRequestException;
 import rd.transactions.exceptions.BalanceInvalidException;
 import rd.transactions.model.Account;
 import rd.transactions.model.AccountId;
 import rd.transactions.managers.AccountManager;
+import rd.transactions.operation.log.AccountHistoryVisitor;
 import rd.transactions.validators.BalanceValidator;
 
 import java.io.IOException;
-import java.util.List;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.time.Instant;
 
-import static java.util.stream.Collectors.toList;
+import static rd.transactions.controller.QueryParameters.parseInstant;
+import static rd.transactions.controller.QueryParameters.parseNonNegative;
 
 public class AccountController {
     private static final Logger logger = LoggerFactory.getLogger(AccountController.class);
-    private final ObjectMapper mapper = ObjectMapperFactory.getObjectMapper();
+    private static final int DEFAULT_OPERATIONS_LIMIT = 100;
+    private static final int MAX_OPERATIONS_LIMIT = 1000;
+    private final ObjectMapper mapper;
+    // readers and writers are immutable and resolve their (de)serializers once, they are shared by all requests
+    private final ObjectReader accountReader;
+    private final ObjectWriter writer;
     private final AccountManager accountManager;
     private final BalanceValidator balanceValidator;
     private final AccountConverter accountConverter;
@@ -29,43 +45,156 @@ public class AccountController {
     public AccountController(
             AccountManager accountManager,
             BalanceValidator balanceValidator, AccountConverter accountConverter) {
+        this(accountManager, balanceValidator, accountConverter, JsonCodec.DATABIND);
+    }
+
+    public AccountController(
+            AccountManager accountManager,
+            BalanceValidator balanceValidator, AccountConverter accountConverter, JsonCodec jsonCodec) {
         this.accountManager = accountManager;
         this.balanceValidator = balanceValidator;
         this.accountConverter = accountConverter;
+        this.mapper = ObjectMapperFactory.getObjectMapper(jsonCodec);
+        this.accountReader = mapper.readerFor(AccountDto.class);
+        this.writer = mapper.writer();
     }
 
-    public String getAccounts() throws JsonProcessingException {
-        List<AccountDto> accountList = accountManager.getAccounts().stream()
-                .map(accountConverter::toDto)
-                .collect(toList());
-        return mapper.writeValueAsString(accountList);
+    /**
+     * Streams all accounts to the output, as JSON array or NDJSON, accounts are not collected beforehand.
+     */
+    public void writeAccounts(OutputStream output, boolean ndjson) throws IOException {
+        try (JsonStreamWriter writer = JsonStreamWriter.start(mapper, output, ndjson)) {
+            accountManager.forEachAccount(account -> {
+                try {
+                    writer.write(accountConverter.toDto(account));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
     }
 
-    public String getAccount(String accountId) throws JsonProcessingException {
+    public byte[] getAccount(String accountId) throws JsonProcessingException {
         AccountDto accountDto = accountManager.getAccountById(AccountId.of(accountId))
                 .map(accountConverter::toDto)
                 .orElseThrow(AccountDoesNotExistException::new);
-        return mapper.writeValueAsString(accountDto);
+        return writer.writeValueAsBytes(accountDto);
+    }
+
+    /**
+     * Streams a page of account history to the output, entries are written as they are read.
+     * Parameters are validated and the account is looked up before anything is written,
+     *  so errors can still be reported with their status code.
+     * @param cursor index of the first entry, nextCursor of the previous page
+     * @param from ISO-8601 instant, entries before it are skipped
+     * @param to ISO-8601 instant, entries at or after it are skipped
+     */
+    public void writeOperations(String accountId, String cursor, String limit, String from, String to,
+                                OutputStream output) throws IOException {
+        long first = parseNonNegative(cursor, 0, AccountOperationsBadRequestException::new);
+        long pageSize = parseNonNegative(limit, DEFAULT_OPERATIONS_LIMIT, AccountOperationsBadRequestException::new);
+        long fromTimestamp = parseInstant(from, Long.MIN_VALUE, AccountOperationsBadRequestException::new);
+        long toTimestamp = parseInstant(to, Long.MAX_VALUE, AccountOperationsBadRequestException::new);
+        if (pageSize < 1 || pageSize > MAX_OPERATIONS_LIMIT || fromTimestamp > toTimestamp) {
+            throw new AccountOperationsBadRequestException();
+        }
+        Account account = accountManager.getAccountById(AccountId.of(accountId))
+                .orElseThrow(AccountDoesNotExistException::new);
+
+        OperationsWriter writer = new OperationsWriter(mapper.getFactory().createGenerator(output), account);
+        try {
+            long next = accountManager.readHistory(
+                    account.getId(), first, (int) pageSize, fromTimestamp, toTimestamp, writer);
+            writer.finish(next);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
     }
 
-    public String addAccount(String accountJson) throws JsonProcessingException {
+    /**
+     * @param accountJson UTF-8 encoded request body, it is parsed without being decoded to a String first
+     * @return UTF-8 encoded JSON of the added account
+     */
+    public byte[] addAccount(byte[] accountJson) throws JsonProcessingException {
         AccountDto accountDto = parseAccount(accountJson);
-        if (!balanceValidator.isBalanceAllowed(accountDto.getAmount())) {
+        Account account = toModel(accountDto);
+        if (!balanceValidator.isBalanceAllowed(account.getBalance().getMinorUnits(), account.getCurrency())) {
             throw new BalanceInvalidException();
         }
-        Account account = accountConverter.toModel(accountDto);
         accountManager.createAccount(account);
-        return mapper.writeValueAsString(accountConverter.toDto(account));
+        return writer.writeValueAsBytes(accountConverter.toDto(account));
     }
 
-    private AccountDto parseAccount(String accountJson) {
+    private Account toModel(AccountDto accountDto) {
         try {
-            return mapper.readValue(accountJson, AccountDto.class);
+            return accountConverter.toModel(accountDto);
+        } catch (ArithmeticException e) {
+            logger.error("Balance out of supported range", e);
+            throw new BalanceInvalidException();
+        }
+    }
+
+    private AccountDto parseAccount(byte[] accountJson) {
+        try {
+            return accountReader.readValue(accountJson);
         } catch (IOException e) {
             logger.error("Can't parse the request", e);
             throw new AccountBadRequestException();
         }
     }
 
+    /**
+     * Writes the envelope lazily, if reading the history fails before the first entry, nothing is written.
+     */
+    private static final class OperationsWriter implements AccountHistoryVisitor {
+        private final JsonGenerator generator;
+        private final Account account;
+        private final int fractionDigits;
+        private boolean started;
+
+        private OperationsWriter(JsonGenerator generator, Account account) {
+            this.generator = generator;
+            this.account = account;
+            this.fractionDigits = account.getCurrency().getDefaultFractionDigits();
+        }
 
+        @Override
+        public void visit(long index, long timestamp, long amount) {
+            try {
+                start();
+                generator.writeStartObject();
+                generator.writeNumberField("index", index);
+                generator.writeStringField("timestamp", Instant.ofEpochMilli(timestamp).toString());
+                generator.writeStringField("amount", BigDecimal.valueOf(amount, fractionDigits).toString());
+                generator.writeEndObject();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void start() throws IOException {
+            if (started) {
+                return;
+            }
+            started = true;
+            generator.writeStartObject();
+            generator.writeStringField("accountId", account.getId().getId());
+            generator.writeStringField("currency", account.getCurrency().getCurrencyCode());
+            generator.writeArrayFieldStart("operations");
+        }
+
+        private void finish(long next) throws IOException {
+            start();
+            generator.writeEndArray();
+            if (next < 0) {
+                generator.writeNullField("nextCursor");
+            } else {
+                generator.writeStringField("nextCursor", Long.toString(next));
+            }
+            generator.writeEndObject();
+            generator.flush();
+        }
+    }
 }
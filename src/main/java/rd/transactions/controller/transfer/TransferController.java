@@ -2,81 +2,448 @@ package rd.transactions.controller.transfer;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import rd.transactions.config.JsonCodec;
 import rd.transactions.config.ObjectMapperFactory;
 import rd.transactions.config.UUIDGenerator;
+import rd.transactions.controller.JsonStreamWriter;
+import rd.transactions.dto.TransferBatchItemDto;
 import rd.transactions.dto.TransferDto;
-import rd.transactions.exceptions.TransferAmountInvalidException;
-import rd.transactions.exceptions.TransferBadRequestException;
-import rd.transactions.exceptions.TransferNotFoundException;
+import rd.transactions.dto.TransferPageDto;
+import rd.transactions.exceptions.*;
+import rd.transactions.model.AccountId;
 import rd.transactions.model.Transfer;
+import rd.transactions.managers.IdempotencyCache;
 import rd.transactions.managers.TransferManager;
+import rd.transactions.managers.TransferPage;
+import rd.transactions.managers.TransferQuery;
+import rd.transactions.managers.TransferSubmissionMode;
+import rd.transactions.model.TransferStatus;
 import rd.transactions.validators.TransferAmountValidator;
 
+import javax.servlet.ServletOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import static org.eclipse.jetty.http.HttpStatus.*;
+import static rd.transactions.controller.QueryParameters.parseInstant;
+import static rd.transactions.controller.QueryParameters.parseNonNegative;
+
 public class TransferController {
     private static final Logger logger = LoggerFactory.getLogger(TransferController.class);
-    private final ObjectMapper mapper = ObjectMapperFactory.getObjectMapper();
+    private static final int DEFAULT_MAX_BATCH_SIZE = 100000;
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final long DEFAULT_IDEMPOTENCY_KEY_TTL_MILLIS = 120_000;
+    private static final int DEFAULT_IDEMPOTENCY_KEYS = 600_000;
+    private static final String WAIT_FOR_TERMINAL = "terminal";
+    private static final long DEFAULT_WAIT_SECONDS = 30;
+    private static final long MAX_WAIT_SECONDS = 60;
+    private static final int MAX_PENDING_EVENTS = 10_000;
+    private final ObjectMapper mapper;
+    // readers and writers are immutable and resolve their (de)serializers once, they are shared by all requests
+    private final ObjectReader transferReader;
+    private final ObjectReader transferArrayReader;
+    private final ObjectWriter writer;
 
     private final TransferManager transferManager;
     private final TransferConverter transferConverter;
     private final TransferAmountValidator transferAmountValidator;
     private final UUIDGenerator uuidGenerator;
+    private final int maxBatchSize;
+    private final IdempotencyCache idempotencyCache;
+    private final TransferSubmissionMode submissionMode;
 
     public TransferController(
             TransferManager transferManager,
             TransferAmountValidator transferAmountValidator,
             TransferConverter transferConverter, UUIDGenerator uuidGenerator) {
+        this(transferManager, transferAmountValidator, transferConverter, uuidGenerator, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    public TransferController(
+            TransferManager transferManager,
+            TransferAmountValidator transferAmountValidator,
+            TransferConverter transferConverter, UUIDGenerator uuidGenerator,
+            int maxBatchSize) {
+        this(transferManager, transferAmountValidator, transferConverter, uuidGenerator, maxBatchSize,
+                JsonCodec.DATABIND, new IdempotencyCache(DEFAULT_IDEMPOTENCY_KEY_TTL_MILLIS, DEFAULT_IDEMPOTENCY_KEYS));
+    }
+
+    public TransferController(
+            TransferManager transferManager,
+            TransferAmountValidator transferAmountValidator,
+            TransferConverter transferConverter, UUIDGenerator uuidGenerator,
+            int maxBatchSize, JsonCodec jsonCodec, IdempotencyCache idempotencyCache) {
+        this(transferManager, transferAmountValidator, transferConverter, uuidGenerator, maxBatchSize, jsonCodec,
+                idempotencyCache, TransferSubmissionMode.ASYNC);
+    }
+
+    /**
+     * @param submissionMode used for a transfer submitted without a mode
+     */
+    public TransferController(
+            TransferManager transferManager,
+            TransferAmountValidator transferAmountValidator,
+            TransferConverter transferConverter, UUIDGenerator uuidGenerator,
+            int maxBatchSize, JsonCodec jsonCodec, IdempotencyCache idempotencyCache,
+            TransferSubmissionMode submissionMode) {
         this.transferManager = transferManager;
         this.transferConverter = transferConverter;
         this.transferAmountValidator = transferAmountValidator;
         this.uuidGenerator = uuidGenerator;
+        this.maxBatchSize = maxBatchSize;
+        this.idempotencyCache = idempotencyCache;
+        this.submissionMode = submissionMode;
+        this.mapper = ObjectMapperFactory.getObjectMapper(jsonCodec);
+        this.transferReader = mapper.readerFor(TransferDto.class);
+        this.transferArrayReader = mapper.readerFor(TransferDto[].class);
+        this.writer = mapper.writer();
     }
 
 
-    public String submitTransfer(String transferJson) throws JsonProcessingException {
+    /**
+     * @param transferJson UTF-8 encoded request body, it is parsed without being decoded to a String first
+     * @return UTF-8 encoded JSON of the submitted transfer
+     */
+    public byte[] submitTransfer(byte[] transferJson) throws JsonProcessingException {
+        return submitTransfer(transferJson, null);
+    }
+
+    /**
+     * A repeated submission with the same idempotency key returns the transfer submitted first
+     *  (in its current status) instead of submitting another one, as long as the key is kept by IdempotencyCache.
+     * @param idempotencyKey chosen by the client, null if the submission is not to be deduplicated
+     * @throws IdempotencyKeyReusedException if the key was used for a transfer between other accounts or of other amount
+     */
+    public byte[] submitTransfer(byte[] transferJson, String idempotencyKey) throws JsonProcessingException {
+        return submitTransfer(transferJson, idempotencyKey, null);
+    }
+
+    /**
+     * In the synchronous mode the transfer is performed before this returns, so it is returned in a terminal status,
+     *  it does not wait in the queue and the client does not have to poll for the result.
+     * @param mode "sync" or "async", the mode of this controller if null
+     */
+    public byte[] submitTransfer(byte[] transferJson, String idempotencyKey, String mode)
+            throws JsonProcessingException {
+        if (idempotencyKey != null
+                && (idempotencyKey.isEmpty() || idempotencyKey.length() > IdempotencyCache.MAX_KEY_LENGTH)) {
+            throw new TransferBadRequestException();
+        }
+        TransferSubmissionMode submissionMode = parseSubmissionMode(mode);
         TransferDto transferDto = parseTransfer(transferJson);
+        Transfer transfer = toModel(transferDto);
 
-        if (!transferAmountValidator.isTransferAmountValid(transferDto.getAmount(), transferDto.getCurrency())) {
+        if (!transferAmountValidator.isTransferAmountValid(transfer.getTransferredAmount())) {
             throw new TransferAmountInvalidException();
         }
 
-        Transfer transfer = transferConverter.toModel(transferDto, uuidGenerator.generateUUID());
-        transferManager.submitTransfer(transfer);
+        if (idempotencyKey == null) {
+            submit(transfer, submissionMode);
+            return writer.writeValueAsBytes(transferConverter.toDto(transfer));
+        }
+        // a concurrent repeat waits until this submission is done, it never sees a transfer which was not submitted
+        Transfer original = idempotencyCache.putIfAbsent(
+                idempotencyKey, transfer, () -> submit(transfer, submissionMode));
+        if (original != null) {
+            if (!isSameRequest(original, transfer)) {
+                throw new IdempotencyKeyReusedException();
+            }
+            return writer.writeValueAsBytes(transferConverter.toDto(original));
+        }
+        return writer.writeValueAsBytes(transferConverter.toDto(transfer));
+    }
 
-        return mapper.writeValueAsString(transferConverter.toDto(transfer));
+    private void submit(Transfer transfer, TransferSubmissionMode submissionMode) {
+        if (submissionMode == TransferSubmissionMode.SYNC) {
+            transferManager.performTransfer(transfer);
+        } else {
+            transferManager.submitTransfer(transfer);
+        }
     }
 
-    private TransferDto parseTransfer(String transferJson) {
+    private TransferSubmissionMode parseSubmissionMode(String mode) {
+        if (mode == null) {
+            return submissionMode;
+        }
         try {
-            return mapper.readValue(transferJson, TransferDto.class);
+            return TransferSubmissionMode.valueOf(mode.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            throw new TransferBadRequestException();
+        }
+    }
+
+    private static boolean isSameRequest(Transfer original, Transfer repeated) {
+        return original.getSourceAccount().equals(repeated.getSourceAccount())
+                && original.getTargetAccount().equals(repeated.getTargetAccount())
+                && original.getTransferredAmount().equals(repeated.getTransferredAmount());
+    }
+
+    /**
+     * Submits many transfers in one request, given as JSON array or as NDJSON (one transfer per line).
+     *
+     * By default every transfer is validated and submitted on its own,
+     *  the result tells for every transfer (by its index in the request) whether it was submitted.
+     * If atomic is set, nothing is submitted unless all transfers are valid,
+     *  and the transfers are then performed all-or-nothing.
+     */
+    public byte[] submitTransfers(byte[] batch, boolean ndjson, boolean atomic) throws JsonProcessingException {
+        List<TransferDto> transferDtos = ndjson ? parseTransferLines(batch) : parseTransferArray(batch);
+        if (transferDtos.size() > maxBatchSize) {
+            throw new TransferBatchTooLargeException();
+        }
+        List<TransferBatchItemDto> results = atomic
+                ? submitAllOrNothing(transferDtos)
+                : submitEachSeparately(transferDtos);
+        return writer.writeValueAsBytes(results);
+    }
+
+    private List<TransferBatchItemDto> submitAllOrNothing(List<TransferDto> transferDtos) {
+        List<Transfer> transfers = new ArrayList<>(transferDtos.size());
+        for (TransferDto transferDto : transferDtos) {
+            if (transferDto == null) {
+                throw new TransferBadRequestException();
+            }
+            Transfer transfer = toModel(transferDto, TransferBatchInvalidException::new);
+            if (!transferAmountValidator.isTransferAmountValid(transfer.getTransferredAmount())) {
+                throw new TransferBatchInvalidException();
+            }
+            transfers.add(transfer);
+        }
+
+        transferManager.submitTransfers(transfers);
+
+        List<TransferBatchItemDto> results = new ArrayList<>(transfers.size());
+        for (int i = 0; i < transfers.size(); i++) {
+            Transfer transfer = transfers.get(i);
+            results.add(TransferBatchItemDto.submitted(
+                    i, transfer.getTransferId(), transfer.getTransferStatus().name()));
+        }
+        return results;
+    }
+
+    private List<TransferBatchItemDto> submitEachSeparately(List<TransferDto> transferDtos) {
+        List<TransferBatchItemDto> results = new ArrayList<>(transferDtos.size());
+        for (int i = 0; i < transferDtos.size(); i++) {
+            TransferDto transferDto = transferDtos.get(i);
+            if (transferDto == null) {
+                results.add(TransferBatchItemDto.failed(
+                        i, BAD_REQUEST_400, new TransferBadRequestException().getMessage()));
+                continue;
+            }
+            try {
+                Transfer transfer = toModel(transferDto);
+                if (!transferAmountValidator.isTransferAmountValid(transfer.getTransferredAmount())) {
+                    throw new TransferAmountInvalidException();
+                }
+                transferManager.submitTransfer(transfer);
+                results.add(TransferBatchItemDto.submitted(
+                        i, transfer.getTransferId(), transfer.getTransferStatus().name()));
+            } catch (TransferAmountInvalidException ex) {
+                results.add(TransferBatchItemDto.failed(i, UNPROCESSABLE_ENTITY_422, ex.getMessage()));
+            } catch (TransferQueueFullException ex) {
+                results.add(TransferBatchItemDto.failed(i, SERVICE_UNAVAILABLE_503, ex.getMessage()));
+            }
+        }
+        return results;
+    }
+
+    private Transfer toModel(TransferDto transferDto) {
+        return toModel(transferDto, TransferAmountInvalidException::new);
+    }
+
+    private Transfer toModel(TransferDto transferDto, Supplier<RuntimeException> amountOutOfRange) {
+        try {
+            return transferConverter.toModel(transferDto, uuidGenerator.generateUUID());
+        } catch (ArithmeticException e) {
+            logger.error("Transfer amount out of supported range", e);
+            throw amountOutOfRange.get();
+        }
+    }
+
+    private TransferDto parseTransfer(byte[] transferJson) {
+        try {
+            return transferReader.readValue(transferJson);
+        } catch (IOException e) {
+            logger.error("Can't parse the request", e);
+            throw new TransferBadRequestException();
+        }
+    }
+
+    private List<TransferDto> parseTransferArray(byte[] batch) {
+        try {
+            return Arrays.asList(transferArrayReader.<TransferDto[]>readValue(batch));
         } catch (IOException e) {
             logger.error("Can't parse the request", e);
             throw new TransferBadRequestException();
         }
     }
 
-    public String getTransfers() throws JsonProcessingException {
-        List<TransferDto> transferDtos = transferManager.getTransfers()
+    /**
+     * Every line is parsed in place from the request bytes.
+     * Lines which can't be parsed are represented by nulls, so that other transfers can still be submitted.
+     */
+    private List<TransferDto> parseTransferLines(byte[] batch) {
+        List<TransferDto> transferDtos = new ArrayList<>();
+        int lineStart = 0;
+        while (lineStart < batch.length) {
+            int lineEnd = lineStart;
+            while (lineEnd < batch.length && batch[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            if (!isBlank(batch, lineStart, lineEnd)) {
+                try {
+                    transferDtos.add(transferReader.readValue(batch, lineStart, lineEnd - lineStart));
+                } catch (IOException e) {
+                    logger.error("Can't parse line of the request", e);
+                    transferDtos.add(null);
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return transferDtos;
+    }
+
+    private static boolean isBlank(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] != ' ' && bytes[i] != '\t' && bytes[i] != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Streams all transfers kept in memory to the output, as JSON array or NDJSON, transfers are not collected
+     *  beforehand, transfers registered meanwhile may be missed.
+     */
+    public void writeTransfers(OutputStream output, boolean ndjson) throws IOException {
+        try (JsonStreamWriter writer = JsonStreamWriter.start(mapper, output, ndjson)) {
+            for (Transfer transfer : transferManager.getTransfers()) {
+                writer.write(transferConverter.toDto(transfer));
+            }
+        }
+    }
+
+    /**
+     * Page of transfers matching all given criteria, parameters which are null are not used.
+     * @param status name of TransferStatus
+     * @param from ISO-8601 instant, transfers submitted earlier are skipped
+     * @param to ISO-8601 instant, transfers submitted at this time or later are skipped
+     * @param cursor nextCursor of the previous page
+     */
+    public byte[] findTransfers(String sourceAccountId, String targetAccountId, String status,
+                                String from, String to, String cursor, String limit) throws JsonProcessingException {
+        TransferQuery.Builder query = TransferQuery.builder()
+                .submittedFrom(parseInstant(from, Long.MIN_VALUE, TransferQueryBadRequestException::new))
+                .submittedTo(parseInstant(to, Long.MAX_VALUE, TransferQueryBadRequestException::new))
+                .cursor(parseNonNegative(cursor, 0, TransferQueryBadRequestException::new));
+        long pageSize = parseNonNegative(limit, DEFAULT_PAGE_SIZE, TransferQueryBadRequestException::new);
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new TransferQueryBadRequestException();
+        }
+        query.limit((int) pageSize);
+        if (sourceAccountId != null) {
+            query.sourceAccount(AccountId.of(sourceAccountId));
+        }
+        if (targetAccountId != null) {
+            query.targetAccount(AccountId.of(targetAccountId));
+        }
+        if (status != null) {
+            query.transferStatus(parseStatus(status));
+        }
+
+        TransferPage page = transferManager.findTransfers(query.build());
+        List<TransferDto> transferDtos = page.getTransfers()
                 .stream()
                 .map(transferConverter::toDto)
                 .collect(Collectors.toList());
-        return mapper.writeValueAsString(transferDtos);
+        String nextCursor = page.getNextCursor() == TransferPage.END ? null : Long.toString(page.getNextCursor());
+        return writer.writeValueAsBytes(new TransferPageDto(transferDtos, nextCursor));
     }
 
-    public String getTransfer(String transferId) throws JsonProcessingException {
+    public byte[] getTransfer(String transferId) throws JsonProcessingException {
         UUID transferUUID = parseUuid(transferId);
 
         TransferDto transferDto = transferManager.getTransfer(transferUUID)
                 .map(transferConverter::toDto)
                 .orElseThrow(TransferNotFoundException::new);
 
-        return mapper.writeValueAsString(transferDto);
+        return writer.writeValueAsBytes(transferDto);
+    }
+
+    /**
+     * Long-poll of a transfer, the returned future completes once the status of the transfer is terminal
+     *  (it is completed already if it is), read the transfer then. Nothing waits on a thread meanwhile.
+     * @param waitFor only "terminal" is supported
+     */
+    public CompletableFuture<Void> whenTransferTerminal(String transferId, String waitFor) {
+        if (!WAIT_FOR_TERMINAL.equals(waitFor)) {
+            throw new TransferQueryBadRequestException();
+        }
+        return transferManager.whenTerminal(parseUuid(transferId))
+                .orElseThrow(TransferNotFoundException::new)
+                .thenAccept(transfer -> { });
+    }
+
+    /**
+     * @param timeout seconds a long-poll waits at most, up to MAX_WAIT_SECONDS
+     * @return the timeout in millis
+     */
+    public long parseWaitTimeout(String timeout) {
+        long seconds = parseNonNegative(timeout, DEFAULT_WAIT_SECONDS, TransferQueryBadRequestException::new);
+        if (seconds > MAX_WAIT_SECONDS) {
+            throw new TransferQueryBadRequestException();
+        }
+        return TimeUnit.SECONDS.toMillis(seconds);
+    }
+
+    /**
+     * Streams status changes of all transfers, or of transfers from or to the account, to the output
+     *  as server-sent events until the returned stream is closed or it cannot be written any more.
+     * The stream is subscribed before this returns, its changes are written once TransferEventStream.start
+     *  switches the output to non-blocking writes, it must not be written by anybody else afterwards.
+     * @param output of an asynchronous request
+     * @param executor writes the events, a write never blocks
+     * @param onEnd called once the stream ends
+     */
+    public TransferEventStream streamTransferEvents(String accountId, ServletOutputStream output,
+                                                    Executor executor, Runnable onEnd) {
+        TransferEventStream stream = new TransferEventStream(transferManager,
+                accountId == null ? null : AccountId.of(accountId), writer, transferConverter,
+                output, executor, onEnd, MAX_PENDING_EVENTS);
+        transferManager.subscribe(stream);
+        return stream;
+    }
+
+    public byte[] getIntakeStatistics() throws JsonProcessingException {
+        return writer.writeValueAsBytes(transferConverter.toDto(transferManager.getIntakeStatistics()));
+    }
+
+    public byte[] getRetentionStatistics() throws JsonProcessingException {
+        return writer.writeValueAsBytes(transferConverter.toDto(transferManager.getRetentionStatistics()));
+    }
+
+    private static TransferStatus parseStatus(String status) {
+        try {
+            return TransferStatus.valueOf(status);
+        } catch (IllegalArgumentException ex) {
+            throw new TransferQueryBadRequestException();
+        }
     }
 
     private UUID parseUuid(String transferId) {
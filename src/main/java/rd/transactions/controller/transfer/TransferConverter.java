@@ -1,22 +1,34 @@
 package rd.transactions.controller.transfer;
 
+import rd.transactions.dto.IntakeStatisticsDto;
+import rd.transactions.dto.RetentionStatisticsDto;
 import rd.transactions.dto.TransferDto;
+import rd.transactions.managers.IntakeStatistics;
+import rd.transactions.managers.RetentionStatistics;
 import rd.transactions.model.AccountId;
 import rd.transactions.model.Money;
 import rd.transactions.model.Transfer;
+import rd.transactions.model.TransferStatus;
 
 import java.util.UUID;
 
 public class TransferConverter {
 
     TransferDto toDto(Transfer transfer) {
+        return toDto(transfer, transfer.getTransferStatus());
+    }
+
+    /**
+     * @param status status of the transfer at some point, it may have changed since
+     */
+    TransferDto toDto(Transfer transfer, TransferStatus status) {
         return new TransferDto(
                 transfer.getSourceAccount().getId(),
                 transfer.getTargetAccount().getId(),
                 transfer.getTransferredAmount().getCurrency(),
                 transfer.getTransferredAmount().getAmount(),
                 transfer.getTransferId(),
-                transfer.getTransferStatus().name()
+                status.name()
         );
     }
 
@@ -28,4 +40,22 @@ public class TransferConverter {
                 uuid
         );
     }
+
+    IntakeStatisticsDto toDto(IntakeStatistics intakeStatistics) {
+        return new IntakeStatisticsDto(
+                intakeStatistics.getQueueDepth(),
+                intakeStatistics.getQueueCapacity(),
+                intakeStatistics.getRejectedTransfers()
+        );
+    }
+
+    RetentionStatisticsDto toDto(RetentionStatistics retentionStatistics) {
+        return new RetentionStatisticsDto(
+                retentionStatistics.getResidentTransfers(),
+                retentionStatistics.getResidentFinishedTransfers(),
+                retentionStatistics.getEvictedTransfers(),
+                retentionStatistics.getArchivedTransfers(),
+                retentionStatistics.getArchiveSizeBytes()
+        );
+    }
 }
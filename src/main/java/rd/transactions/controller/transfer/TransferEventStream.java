@@ -0,0 +1,175 @@
+package rd.transactions.controller.transfer;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rd.transactions.dto.TransferDto;
+import rd.transactions.managers.TransferManager;
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Transfer;
+import rd.transactions.model.TransferStatus;
+import rd.transactions.model.TransferStatusListener;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Status changes of transfers written as server-sent events, a "status" event with JSON of the transfer per change.
+ *
+ * Changes are queued by the thread which changes the status and written by the executor, one drain at a time,
+ *  so processing of transfers never waits for a client. Changes are queued from the moment the stream is subscribed,
+ *  but nothing is written before start, so a client which got the headers has missed no change. Writes are non-blocking (WriteListener): a drain writes
+ *  while the output is ready and returns, the container asks for the next drain once the client read the data,
+ *  so a slow client holds no thread. A client which lets more than maxPendingEvents changes pile up
+ *  does not keep up, its stream ends instead of growing the queue.
+ */
+public final class TransferEventStream implements TransferStatusListener, WriteListener, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(TransferEventStream.class);
+    private static final byte[] EVENT_START = "event: status\ndata: ".getBytes(UTF_8);
+    private static final byte[] EVENT_END = "\n\n".getBytes(UTF_8);
+
+    private final TransferManager transferManager;
+    private final AccountId accountId;
+    private final ObjectWriter writer;
+    private final TransferConverter transferConverter;
+    private final ServletOutputStream output;
+    private final Executor executor;
+    private final Runnable onEnd;
+    private final ArrayBlockingQueue<TransferDto> pendingEvents;
+    // drains requested since the running drain started, only the drain which takes it from 0 runs,
+    // start holds one request until the output is non-blocking
+    private final AtomicInteger drainRequests = new AtomicInteger(1);
+    private final AtomicBoolean ended = new AtomicBoolean();
+    // touched only by the running drain
+    private boolean unflushed;
+
+    /**
+     * Call start once the headers are sent, the output is written only in the non-blocking mode afterwards.
+     * @param accountId only transfers from or to the account are streamed, all transfers if null
+     * @param onEnd called once, when the stream is closed or writing fails
+     */
+    TransferEventStream(TransferManager transferManager, AccountId accountId, ObjectWriter writer,
+                        TransferConverter transferConverter, ServletOutputStream output, Executor executor,
+                        Runnable onEnd, int maxPendingEvents) {
+        this.transferManager = transferManager;
+        this.accountId = accountId;
+        this.writer = writer;
+        this.transferConverter = transferConverter;
+        this.output = output;
+        this.executor = executor;
+        this.onEnd = onEnd;
+        this.pendingEvents = new ArrayBlockingQueue<>(maxPendingEvents);
+    }
+
+    @Override
+    public void onStatusChange(Transfer transfer, TransferStatus previousStatus, TransferStatus newStatus) {
+        if (accountId != null && !accountId.equals(transfer.getSourceAccount())
+                && !accountId.equals(transfer.getTargetAccount())) {
+            return;
+        }
+        if (!pendingEvents.offer(transferConverter.toDto(transfer, newStatus))) {
+            logger.warn("Transfer event stream ended, {} events are waiting to be written", pendingEvents.size());
+            close();
+            return;
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * Switches the output to non-blocking writes, the container calls onWritePossible when it can be written.
+     * Changes queued so far are written afterwards. Nothing else may write to the output from now on.
+     */
+    public void start() {
+        output.setWriteListener(this);
+        if (drainRequests.decrementAndGet() != 0) {
+            executeDrain();
+        }
+    }
+
+    @Override
+    public void onWritePossible() {
+        scheduleDrain();
+    }
+
+    @Override
+    public void onError(Throwable failure) {
+        logger.debug("Transfer event stream ended, it cannot be written", failure);
+        close();
+    }
+
+    private void scheduleDrain() {
+        if (ended.get() || drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        executeDrain();
+    }
+
+    private void executeDrain() {
+        try {
+            executor.execute(this::drain);
+        } catch (RuntimeException ex) {
+            // the response is completed already, or there are more streams than the executor takes
+            close();
+        }
+    }
+
+    private void drain() {
+        int requests = drainRequests.get();
+        do {
+            try {
+                writeWhileReady();
+            } catch (IOException | RuntimeException ex) {
+                logger.debug("Transfer event stream ended, it cannot be written", ex);
+                close();
+            }
+            // requested meanwhile, e.g. an event was queued after the last poll or the output became ready again
+            requests = drainRequests.addAndGet(-requests);
+        } while (requests != 0);
+    }
+
+    /**
+     * Output which is not ready asks for onWritePossible once it is, so nothing waits here.
+     */
+    private void writeWhileReady() throws IOException {
+        while (!ended.get() && output.isReady()) {
+            TransferDto event = pendingEvents.poll();
+            if (event != null) {
+                output.write(encode(event));
+                unflushed = true;
+            } else if (unflushed) {
+                unflushed = false;
+                output.flush();
+            } else {
+                return;
+            }
+        }
+    }
+
+    private byte[] encode(TransferDto event) throws IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(256);
+        encoded.write(EVENT_START);
+        writer.writeValue(encoded, event);
+        encoded.write(EVENT_END);
+        return encoded.toByteArray();
+    }
+
+    /**
+     * Unsubscribes from status changes, events not written yet are dropped.
+     */
+    @Override
+    public void close() {
+        if (ended.compareAndSet(false, true)) {
+            transferManager.unsubscribe(this);
+            pendingEvents.clear();
+            onEnd.run();
+        }
+    }
+}
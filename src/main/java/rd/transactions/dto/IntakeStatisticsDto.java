@@ -0,0 +1,25 @@
+package rd.transactions.dto;
+
+public class IntakeStatisticsDto {
+    private final long queueDepth;
+    private final long queueCapacity;
+    private final long rejectedTransfers;
+
+    public IntakeStatisticsDto(long queueDepth, long queueCapacity, long rejectedTransfers) {
+        this.queueDepth = queueDepth;
+        this.queueCapacity = queueCapacity;
+        this.rejectedTransfers = rejectedTransfers;
+    }
+
+    public long getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getRejectedTransfers() {
+        return rejectedTransfers;
+    }
+}
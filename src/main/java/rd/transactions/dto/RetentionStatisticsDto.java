@@ -0,0 +1,38 @@
+package rd.transactions.dto;
+
+public class RetentionStatisticsDto {
+    private final long residentTransfers;
+    private final long residentFinishedTransfers;
+    private final long evictedTransfers;
+    private final long archivedTransfers;
+    private final long archiveSizeBytes;
+
+    public RetentionStatisticsDto(long residentTransfers, long residentFinishedTransfers, long evictedTransfers,
+                                  long archivedTransfers, long archiveSizeBytes) {
+        this.residentTransfers = residentTransfers;
+        this.residentFinishedTransfers = residentFinishedTransfers;
+        this.evictedTransfers = evictedTransfers;
+        this.archivedTransfers = archivedTransfers;
+        this.archiveSizeBytes = archiveSizeBytes;
+    }
+
+    public long getResidentTransfers() {
+        return residentTransfers;
+    }
+
+    public long getResidentFinishedTransfers() {
+        return residentFinishedTransfers;
+    }
+
+    public long getEvictedTransfers() {
+        return evictedTransfers;
+    }
+
+    public long getArchivedTransfers() {
+        return archivedTransfers;
+    }
+
+    public long getArchiveSizeBytes() {
+        return archiveSizeBytes;
+    }
+}
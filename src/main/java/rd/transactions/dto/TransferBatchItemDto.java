@@ -0,0 +1,55 @@
+package rd.transactions.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.UUID;
+
+/**
+ * Result of submission of a single transfer from a batch.
+ * It holds either transferId and transferStatus, or errorCode and message if the transfer was not submitted.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TransferBatchItemDto {
+    private final int index;
+    private final UUID transferId;
+    private final String transferStatus;
+    private final Integer errorCode;
+    private final String message;
+
+    public static TransferBatchItemDto submitted(int index, UUID transferId, String transferStatus) {
+        return new TransferBatchItemDto(index, transferId, transferStatus, null, null);
+    }
+
+    public static TransferBatchItemDto failed(int index, int errorCode, String message) {
+        return new TransferBatchItemDto(index, null, null, errorCode, message);
+    }
+
+    private TransferBatchItemDto(
+            int index, UUID transferId, String transferStatus, Integer errorCode, String message) {
+        this.index = index;
+        this.transferId = transferId;
+        this.transferStatus = transferStatus;
+        this.errorCode = errorCode;
+        this.message = message;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public UUID getTransferId() {
+        return transferId;
+    }
+
+    public String getTransferStatus() {
+        return transferStatus;
+    }
+
+    public Integer getErrorCode() {
+        return errorCode;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,21 @@
+package rd.transactions.dto;
+
+import java.util.List;
+
+public class TransferPageDto {
+    private final List<TransferDto> transfers;
+    private final String nextCursor;
+
+    public TransferPageDto(List<TransferDto> transfers, String nextCursor) {
+        this.transfers = transfers;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<TransferDto> getTransfers() {
+        return transfers;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
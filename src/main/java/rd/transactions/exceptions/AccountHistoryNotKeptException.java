@@ -0,0 +1,8 @@
+package rd.transactions.exceptions;
+
+public class AccountHistoryNotKeptException extends RuntimeException {
+    @Override
+    public String getMessage() {
+        return "Account history is not kept by the configured account store.";
+    }
+}
@@ -0,0 +1,14 @@
+package rd.transactions.exceptions;
+
+public class AccountIdTooLongException extends RuntimeException {
+    private final int maxBytes;
+
+    public AccountIdTooLongException(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public String getMessage() {
+        return "Account id can't be longer than " + maxBytes + " bytes in UTF-8.";
+    }
+}
@@ -0,0 +1,8 @@
+package rd.transactions.exceptions;
+
+public class AccountOperationsBadRequestException extends RuntimeException {
+    @Override
+    public String getMessage() {
+        return "Operations query is not formatted correctly.";
+    }
+}
@@ -0,0 +1,8 @@
+package rd.transactions.exceptions;
+
+public class AccountStoreFullException extends RuntimeException {
+    @Override
+    public String getMessage() {
+        return "Maximum number of accounts is reached.";
+    }
+}
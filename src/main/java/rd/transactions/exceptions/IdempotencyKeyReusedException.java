@@ -0,0 +1,8 @@
+package rd.transactions.exceptions;
+
+public class IdempotencyKeyReusedException extends RuntimeException {
+    @Override
+    public String getMessage() {
+        return "Idempotency-Key was already used for a different transfer.";
+    }
+}
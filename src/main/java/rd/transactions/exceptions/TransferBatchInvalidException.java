@@ -0,0 +1,8 @@
+package rd.transactions.exceptions;
+
+public class TransferBatchInvalidException extends RuntimeException {
+    @Override
+    public String getMessage() {
+        return "At least one transfer in the batch is invalid, none of them was submitted.";
+    }
+}
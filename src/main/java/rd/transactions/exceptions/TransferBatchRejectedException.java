@@ -0,0 +1,25 @@
+package rd.transactions.exceptions;
+
+import rd.transactions.model.Transfer;
+
+/**
+ * Thrown when all-or-nothing batch of transfers is not applied,
+ *  the cause explains why the rejected transfer could not be performed.
+ */
+public class TransferBatchRejectedException extends Exception {
+    private final Transfer rejectedTransfer;
+
+    public TransferBatchRejectedException(Transfer rejectedTransfer, Exception cause) {
+        super(cause);
+        this.rejectedTransfer = rejectedTransfer;
+    }
+
+    public Transfer getRejectedTransfer() {
+        return rejectedTransfer;
+    }
+
+    @Override
+    public String getMessage() {
+        return "Batch rejected, because of transfer " + rejectedTransfer + ": " + getCause().getMessage();
+    }
+}
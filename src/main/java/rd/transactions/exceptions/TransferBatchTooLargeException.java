@@ -0,0 +1,8 @@
+package rd.transactions.exceptions;
+
+public class TransferBatchTooLargeException extends RuntimeException {
+    @Override
+    public String getMessage() {
+        return "Too many transfers in the batch.";
+    }
+}
@@ -0,0 +1,12 @@
+package rd.transactions.exceptions;
+
+/**
+ * Thrown when transfers were applied to the balances, but their journal record is not known to be durable.
+ * The transfers must not be reported as failed, after restart they are completed if the record made it to disk
+ *  and performed again if it did not.
+ */
+public class TransferNotDurableException extends JournalException {
+    public TransferNotDurableException(Throwable cause) {
+        super("Transfers are applied, but it is not known whether they are journaled", cause);
+    }
+}
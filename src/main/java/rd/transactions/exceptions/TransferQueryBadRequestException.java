@@ -0,0 +1,8 @@
+package rd.transactions.exceptions;
+
+public class TransferQueryBadRequestException extends RuntimeException {
+    @Override
+    public String getMessage() {
+        return "Transfers query is not formatted correctly.";
+    }
+}
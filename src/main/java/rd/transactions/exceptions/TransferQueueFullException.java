@@ -0,0 +1,8 @@
+package rd.transactions.exceptions;
+
+public class TransferQueueFullException extends RuntimeException {
+    @Override
+    public String getMessage() {
+        return "Too many transfers waiting for processing, retry later.";
+    }
+}
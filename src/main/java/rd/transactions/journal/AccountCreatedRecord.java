@@ -0,0 +1,33 @@
+package rd.transactions.journal;
+
+import rd.transactions.model.Account;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+public class AccountCreatedRecord extends JournalRecord {
+    private final Account account;
+
+    public AccountCreatedRecord(Account account) {
+        this.account = account;
+    }
+
+    public Account getAccount() {
+        return account;
+    }
+
+    @Override
+    JournalRecordType getType() {
+        return JournalRecordType.ACCOUNT_CREATED;
+    }
+
+    @Override
+    void writeBody(DataOutput output) throws IOException {
+        JournalCodec.writeAccount(output, account);
+    }
+
+    static AccountCreatedRecord readBody(DataInput input) throws IOException {
+        return new AccountCreatedRecord(JournalCodec.readAccount(input));
+    }
+}
@@ -0,0 +1,41 @@
+package rd.transactions.journal;
+
+import rd.transactions.model.Account;
+
+import java.util.Objects;
+
+/**
+ * Balance of the account together with sequence number of the last journal record applied to it.
+ * Records up to that sequence are already reflected in the balance and must not be replayed again.
+ */
+public class AccountSnapshot {
+    private final Account account;
+    private final long journalSequence;
+
+    public AccountSnapshot(Account account, long journalSequence) {
+        this.account = account;
+        this.journalSequence = journalSequence;
+    }
+
+    public Account getAccount() {
+        return account;
+    }
+
+    public long getJournalSequence() {
+        return journalSequence;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        AccountSnapshot that = (AccountSnapshot) o;
+        return journalSequence == that.journalSequence &&
+                account.equals(that.account);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(account, journalSequence);
+    }
+}
@@ -0,0 +1,45 @@
+package rd.transactions.journal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chunk of account balances stored in a snapshot.
+ */
+public class AccountsSnapshotRecord extends JournalRecord {
+    private final List<AccountSnapshot> accounts;
+
+    public AccountsSnapshotRecord(List<AccountSnapshot> accounts) {
+        this.accounts = accounts;
+    }
+
+    public List<AccountSnapshot> getAccounts() {
+        return accounts;
+    }
+
+    @Override
+    JournalRecordType getType() {
+        return JournalRecordType.ACCOUNTS_SNAPSHOT;
+    }
+
+    @Override
+    void writeBody(DataOutput output) throws IOException {
+        output.writeInt(accounts.size());
+        for (AccountSnapshot account : accounts) {
+            JournalCodec.writeAccount(output, account.getAccount());
+            output.writeLong(account.getJournalSequence());
+        }
+    }
+
+    static AccountsSnapshotRecord readBody(DataInput input) throws IOException {
+        int count = input.readInt();
+        List<AccountSnapshot> accounts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            accounts.add(new AccountSnapshot(JournalCodec.readAccount(input), input.readLong()));
+        }
+        return new AccountsSnapshotRecord(accounts);
+    }
+}
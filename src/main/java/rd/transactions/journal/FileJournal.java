@@ -0,0 +1,413 @@
+package rd.transactions.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rd.transactions.exceptions.JournalException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Journal stored as a sequence of append-only segment files in one directory,
+ *  optionally preceded by a snapshot.
+ *
+ * Appended records are queued in memory and written by a dedicated writer thread.
+ * The writer takes everything queued so far, writes it with one gathering write and calls fsync once,
+ *  so concurrent transfers waiting for durability share the cost of fsync (group commit).
+ * When writing fails the journal stops accepting records, waiting callers get JournalException.
+ *
+ * Segment journal-N.wal starts with record N, snapshot-N.snap reflects all records up to N.
+ * After a snapshot is committed, segments covered by it are deleted or moved to the archive subdirectory.
+ */
+public class FileJournal implements Journal {
+    private static final Logger logger = LoggerFactory.getLogger(FileJournal.class);
+    private static final Pattern SEGMENT_NAME = Pattern.compile("journal-(\\d+)\\.wal");
+    private static final Pattern SNAPSHOT_NAME = Pattern.compile("snapshot-(\\d+)\\.snap");
+    private static final Pattern UNFINISHED_SNAPSHOT_NAME = Pattern.compile("snapshot-(\\d+)\\.snap\\.tmp");
+    private static final String ARCHIVE_DIRECTORY = "archive";
+    private static final long NO_ROTATION = -1;
+    private static final long NO_SNAPSHOT = -1;
+
+    private final Path directory;
+    private final boolean archiveCoveredFiles;
+    private final Thread writer;
+    // accessed only by the writer thread, and by close after the writer finished
+    private FileChannel channel;
+    private long segmentFirstSequence;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition recordsAppended = lock.newCondition();
+    private final Condition recordsDurable = lock.newCondition();
+    // guarded by lock
+    private List<ByteBuffer> pending = new ArrayList<>();
+    private long lastAppendedSequence;
+    private long rotationAfterSequence = NO_ROTATION;
+    private long lastRotationSequence;
+    private boolean closed;
+
+    private volatile long lastDurableSequence;
+    private volatile Throwable failure;
+
+    /**
+     * Opens the journal for appending, replay has to be done before anything is appended.
+     * Torn write at the end of the last segment, left by a crash, is cut off.
+     * @param archiveCoveredFiles whether files covered by a new snapshot are archived instead of deleted
+     */
+    public static FileJournal open(Path directory, boolean archiveCoveredFiles) throws IOException {
+        Files.createDirectories(directory);
+        // snapshot interrupted by a crash
+        for (Path unfinished : list(directory, UNFINISHED_SNAPSHOT_NAME)) {
+            Files.delete(unfinished);
+        }
+        long[] lastSequence = {Math.max(0, latestSnapshotSequence(directory))};
+        List<Path> segments = list(directory, SEGMENT_NAME);
+        Path lastSegment = null;
+        long validLength = 0;
+        for (Path segment : segments) {
+            if (lastSegment != null && validLength != Files.size(lastSegment)) {
+                throw new JournalException("Segment " + lastSegment + " is corrupted");
+            }
+            lastSegment = segment;
+            validLength = JournalCodec.scan(segment,
+                    sequence -> lastSequence[0] = Math.max(lastSequence[0], sequence));
+        }
+
+        FileChannel channel;
+        long firstSequence;
+        if (lastSegment == null) {
+            firstSequence = lastSequence[0] + 1;
+            channel = FileChannel.open(segmentPath(directory, firstSequence), CREATE_NEW, WRITE);
+            syncDirectory(directory);
+        } else {
+            firstSequence = sequenceOf(lastSegment, SEGMENT_NAME);
+            channel = FileChannel.open(lastSegment, WRITE);
+            if (channel.size() > validLength) {
+                logger.warn("Journal segment {} has {} unreadable bytes at the end, they are discarded",
+                        lastSegment, channel.size() - validLength);
+                channel.truncate(validLength);
+                channel.force(true);
+            }
+            channel.position(validLength);
+        }
+        return new FileJournal(directory, archiveCoveredFiles, channel, firstSequence, lastSequence[0]);
+    }
+
+    public static FileJournal open(Path directory) throws IOException {
+        return open(directory, false);
+    }
+
+    /**
+     * Passes the latest snapshot and the records following it to the handler.
+     */
+    public void replay(JournalReplayHandler replayHandler) throws IOException {
+        long snapshotSequence = latestSnapshotSequence(directory);
+        if (snapshotSequence != NO_SNAPSHOT) {
+            Path snapshot = directory.resolve(snapshotName(snapshotSequence));
+            long validLength = JournalCodec.readAll(snapshot, replayHandler);
+            if (validLength != Files.size(snapshot)) {
+                throw new JournalException("Snapshot " + snapshot + " is corrupted");
+            }
+        }
+        for (Path segment : list(directory, SEGMENT_NAME)) {
+            JournalCodec.readAll(segment, (sequence, record) -> {
+                if (sequence > snapshotSequence) {
+                    replayHandler.onRecord(sequence, record);
+                }
+            });
+        }
+    }
+
+    private static long latestSnapshotSequence(Path directory) throws IOException {
+        List<Path> snapshots = list(directory, SNAPSHOT_NAME);
+        return snapshots.isEmpty() ? NO_SNAPSHOT : sequenceOf(snapshots.get(snapshots.size() - 1), SNAPSHOT_NAME);
+    }
+
+    private FileJournal(Path directory, boolean archiveCoveredFiles,
+                        FileChannel channel, long segmentFirstSequence, long lastSequence) {
+        this.directory = directory;
+        this.archiveCoveredFiles = archiveCoveredFiles;
+        this.channel = channel;
+        this.segmentFirstSequence = segmentFirstSequence;
+        this.lastAppendedSequence = lastSequence;
+        this.lastRotationSequence = lastSequence;
+        this.lastDurableSequence = lastSequence;
+        this.writer = new Thread(this::writeLoop, "journal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public long append(JournalRecord record) {
+        ByteBuffer frame = JournalCodec.encode(record);
+        lock.lock();
+        try {
+            checkUsable();
+            long sequence = ++lastAppendedSequence;
+            pending.add(JournalCodec.seal(frame, sequence));
+            if (pending.size() == 1) {
+                recordsAppended.signal();
+            }
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void awaitDurable(long sequence) {
+        if (lastDurableSequence >= sequence) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (lastDurableSequence < sequence) {
+                if (failure != null) {
+                    throw new JournalException("Journal " + directory + " is not writable", failure);
+                }
+                recordsDurable.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return sequence number of the last record on disk, after open it is the last record of the journal
+     */
+    public long getLastDurableSequence() {
+        return lastDurableSequence;
+    }
+
+    /**
+     * Starts a new segment, records appended so far stay in the previous segments.
+     * Returns when those records are durable.
+     * @return sequence number of the last record before the new segment
+     */
+    public long rotate() {
+        long boundary;
+        lock.lock();
+        try {
+            checkUsable();
+            boundary = lastAppendedSequence;
+            rotationAfterSequence = boundary;
+            recordsAppended.signal();
+            while (lastRotationSequence < boundary) {
+                if (failure != null) {
+                    throw new JournalException("Journal " + directory + " is not writable", failure);
+                }
+                recordsDurable.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(boundary);
+        return boundary;
+    }
+
+    /**
+     * Starts writing a snapshot reflecting all records up to given sequence.
+     * Nothing changes on disk until the snapshot is committed.
+     */
+    public SnapshotWriter startSnapshot(long sequence) throws IOException {
+        return new SnapshotWriter(this, directory.resolve(snapshotName(sequence) + ".tmp"),
+                directory.resolve(snapshotName(sequence)), sequence);
+    }
+
+    /**
+     * Removes (or archives) snapshots older than given sequence and segments containing only records up to it.
+     */
+    void discardCoveredBy(long snapshotSequence) throws IOException {
+        List<Path> covered = new ArrayList<>();
+        list(directory, SNAPSHOT_NAME).stream()
+                .filter(snapshot -> sequenceOf(snapshot, SNAPSHOT_NAME) < snapshotSequence)
+                .forEach(covered::add);
+        List<Path> segments = list(directory, SEGMENT_NAME);
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (sequenceOf(segments.get(i + 1), SEGMENT_NAME) <= snapshotSequence + 1) {
+                covered.add(segments.get(i));
+            }
+        }
+
+        Path archive = directory.resolve(ARCHIVE_DIRECTORY);
+        if (archiveCoveredFiles) {
+            Files.createDirectories(archive);
+        }
+        for (Path file : covered) {
+            if (archiveCoveredFiles) {
+                Files.move(file, archive.resolve(file.getFileName()), StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                Files.delete(file);
+            }
+        }
+        logger.info("{} {} journal files covered by snapshot {}",
+                archiveCoveredFiles ? "Archived" : "Deleted", covered.size(), snapshotSequence);
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            recordsAppended.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+            channel.close();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            logger.error("Closing journal {} failed", directory, ex);
+        }
+    }
+
+    private void checkUsable() {
+        if (failure != null) {
+            throw new JournalException("Journal " + directory + " is not writable", failure);
+        }
+        if (closed) {
+            throw new JournalException("Journal " + directory + " is closed");
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            List<ByteBuffer> batch;
+            long batchLastSequence;
+            long rotationAfter;
+            lock.lock();
+            try {
+                while (pending.isEmpty() && rotationAfterSequence == NO_ROTATION && !closed) {
+                    recordsAppended.awaitUninterruptibly();
+                }
+                if (pending.isEmpty() && rotationAfterSequence == NO_ROTATION) {
+                    return;
+                }
+                batch = pending;
+                batchLastSequence = lastAppendedSequence;
+                rotationAfter = rotationAfterSequence;
+                pending = new ArrayList<>(batch.size());
+                rotationAfterSequence = NO_ROTATION;
+            } finally {
+                lock.unlock();
+            }
+
+            Throwable writeFailure = null;
+            try {
+                if (rotationAfter == NO_ROTATION) {
+                    write(batch, 0, batch.size());
+                } else {
+                    // sequence numbers in the batch are contiguous, they follow the last durable one
+                    int split = (int) (rotationAfter - lastDurableSequence);
+                    write(batch, 0, split);
+                    startSegment(rotationAfter + 1);
+                    write(batch, split, batch.size());
+                }
+            } catch (Throwable ex) {
+                logger.error("Writing to journal {} failed", directory, ex);
+                writeFailure = ex;
+            }
+
+            lock.lock();
+            try {
+                if (writeFailure != null) {
+                    failure = writeFailure;
+                } else {
+                    lastDurableSequence = batchLastSequence;
+                    if (rotationAfter != NO_ROTATION) {
+                        lastRotationSequence = rotationAfter;
+                    }
+                }
+                recordsDurable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (writeFailure != null) {
+                return;
+            }
+        }
+    }
+
+    private void write(List<ByteBuffer> batch, int from, int to) throws IOException {
+        if (from == to) {
+            return;
+        }
+        ByteBuffer[] buffers = batch.subList(from, to).toArray(new ByteBuffer[0]);
+        int first = 0;
+        while (first < buffers.length) {
+            channel.write(buffers, first, buffers.length - first);
+            while (first < buffers.length && !buffers[first].hasRemaining()) {
+                first++;
+            }
+        }
+        channel.force(false);
+    }
+
+    private void startSegment(long firstSequence) throws IOException {
+        if (firstSequence == segmentFirstSequence) {
+            // nothing was written since the previous rotation
+            return;
+        }
+        FileChannel next = FileChannel.open(segmentPath(directory, firstSequence), CREATE_NEW, WRITE);
+        // records fsynced into the new segment are lost with it if its directory entry is not durable
+        syncDirectory(directory);
+        channel.close();
+        channel = next;
+        segmentFirstSequence = firstSequence;
+    }
+
+    /**
+     * Makes creation, renaming and deletion of files in the directory durable, fsync of a file does not cover them.
+     */
+    static void syncDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, READ)) {
+            channel.force(true);
+        }
+    }
+
+    private static Path segmentPath(Path directory, long firstSequence) {
+        return directory.resolve(String.format("journal-%020d.wal", firstSequence));
+    }
+
+    private static String snapshotName(long sequence) {
+        return String.format("snapshot-%020d.snap", sequence);
+    }
+
+    private static long sequenceOf(Path file, Pattern pattern) {
+        Matcher matcher = pattern.matcher(file.getFileName().toString());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a journal file " + file);
+        }
+        return Long.parseLong(matcher.group(1));
+    }
+
+    /**
+     * @return files matching the pattern, ordered by their sequence number
+     */
+    private static List<Path> list(Path directory, Pattern pattern) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(file -> pattern.matcher(file.getFileName().toString()).matches())
+                    .sorted((a, b) -> Long.compare(sequenceOf(a, pattern), sequenceOf(b, pattern)))
+                    .collect(Collectors.toList());
+        }
+    }
+}
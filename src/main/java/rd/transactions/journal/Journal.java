@@ -0,0 +1,36 @@
+package rd.transactions.journal;
+
+import rd.transactions.exceptions.JournalException;
+
+/**
+ * Append-only log of state changes, used to rebuild managers after restart.
+ *
+ * Appending is cheap and does not wait for the disk, records become durable in the order of their sequence numbers.
+ * A caller which must not acknowledge a change before it is durable awaits the returned sequence number,
+ *  preferably after releasing any locks, so that many appends share one fsync (group commit).
+ * It is thread-safe
+ */
+public interface Journal extends AutoCloseable {
+
+    /**
+     * @return sequence number of the record
+     * @throws JournalException if journal is closed or failed earlier
+     */
+    long append(JournalRecord record);
+
+    /**
+     * Blocks until the record with given sequence number and all records before it are durable.
+     * @throws JournalException if the records could not be written
+     */
+    void awaitDurable(long sequence);
+
+    default void appendAndAwait(JournalRecord record) {
+        awaitDurable(append(record));
+    }
+
+    /**
+     * Makes all appended records durable and releases the journal.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,207 @@
+package rd.transactions.journal;
+
+import rd.transactions.exceptions.JournalException;
+import rd.transactions.model.Account;
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Money;
+import rd.transactions.model.Transfer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Binary format of the journal.
+ *
+ * Every record is stored as a frame: [int payload length][int CRC32 of payload][payload],
+ *  where payload is [long sequence][byte record type][record body].
+ * The first frame with invalid length or checksum ends the readable part of the file,
+ *  it is the write torn by a crash.
+ */
+final class JournalCodec {
+    static final int FRAME_HEADER_SIZE = 8;
+    private static final int MAX_PAYLOAD_SIZE = 64 * 1024 * 1024;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private JournalCodec() {
+    }
+
+    static ByteBuffer encode(long sequence, JournalRecord record) {
+        return seal(encode(record), sequence);
+    }
+
+    /**
+     * Serializes the record without sequence number and checksum, they are filled in by seal.
+     * This keeps serialization out of the critical section which assigns sequence numbers.
+     */
+    static ByteBuffer encode(JournalRecord record) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream output = new DataOutputStream(bytes);
+        try {
+            output.writeInt(0);
+            output.writeInt(0);
+            output.writeLong(0);
+            output.writeByte(record.getType().getCode());
+            record.writeBody(output);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+        frame.putInt(0, frame.limit() - FRAME_HEADER_SIZE);
+        return frame;
+    }
+
+    static ByteBuffer seal(ByteBuffer frame, long sequence) {
+        frame.putLong(FRAME_HEADER_SIZE, sequence);
+        CRC32 crc = new CRC32();
+        crc.update(frame.array(), FRAME_HEADER_SIZE, frame.limit() - FRAME_HEADER_SIZE);
+        frame.putInt(4, (int) crc.getValue());
+        return frame;
+    }
+
+    /**
+     * Passes all readable records of the file to the handler, in the order they were written.
+     * @return length of the readable part of the file
+     */
+    static long readAll(Path file, JournalReplayHandler handler) throws IOException {
+        return readFrames(file, (payload, length) -> decode(payload, length, handler));
+    }
+
+    /**
+     * Reads only sequence numbers of the records, records are not deserialized.
+     * @return length of the readable part of the file
+     */
+    static long scan(Path file, LongConsumer sequences) throws IOException {
+        return readFrames(file, (payload, length) -> sequences.accept(ByteBuffer.wrap(payload).getLong(0)));
+    }
+
+    private interface FrameHandler {
+        void onFrame(byte[] payload, int length) throws IOException;
+    }
+
+    private static long readFrames(Path file, FrameHandler handler) throws IOException {
+        long validLength = 0;
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file), READ_BUFFER_SIZE))) {
+            byte[] payload = new byte[256];
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                int checksum;
+                try {
+                    length = input.readInt();
+                    checksum = input.readInt();
+                } catch (EOFException ex) {
+                    return validLength;
+                }
+                if (length < Long.BYTES + 1 || length > MAX_PAYLOAD_SIZE) {
+                    return validLength;
+                }
+                if (payload.length < length) {
+                    payload = new byte[Math.max(length, payload.length * 2)];
+                }
+                try {
+                    input.readFully(payload, 0, length);
+                } catch (EOFException ex) {
+                    return validLength;
+                }
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    return validLength;
+                }
+                handler.onFrame(payload, length);
+                validLength += FRAME_HEADER_SIZE + length;
+            }
+        }
+    }
+
+    private static void decode(byte[] payload, int length, JournalReplayHandler handler) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload, 0, length));
+        long sequence = input.readLong();
+        JournalRecordType type;
+        try {
+            type = JournalRecordType.ofCode(input.readByte());
+        } catch (IllegalArgumentException ex) {
+            throw new JournalException("Journal record " + sequence + " cannot be read", ex);
+        }
+        switch (type) {
+            case ACCOUNT_CREATED:
+                handler.onRecord(sequence, AccountCreatedRecord.readBody(input));
+                break;
+            case TRANSFERS_SUBMITTED:
+                handler.onRecord(sequence, TransfersSubmittedRecord.readBody(input));
+                break;
+            case TRANSFERS_APPLIED:
+                handler.onRecord(sequence, TransfersAppliedRecord.readBody(input));
+                break;
+            case TRANSFER_STATUS_CHANGED:
+                handler.onRecord(sequence, TransferStatusChangedRecord.readBody(input));
+                break;
+            case ACCOUNTS_SNAPSHOT:
+                handler.onRecord(sequence, AccountsSnapshotRecord.readBody(input));
+                break;
+            case TRANSFERS_FINISHED:
+                handler.onRecord(sequence, TransfersFinishedRecord.readBody(input));
+                break;
+        }
+    }
+
+    static void writeUUID(DataOutput output, UUID uuid) throws IOException {
+        output.writeLong(uuid.getMostSignificantBits());
+        output.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    static UUID readUUID(DataInput input) throws IOException {
+        return new UUID(input.readLong(), input.readLong());
+    }
+
+    static void writeMoney(DataOutput output, Money money) throws IOException {
+        output.writeUTF(money.getCurrency().getCurrencyCode());
+        output.writeLong(money.getMinorUnits());
+    }
+
+    static Money readMoney(DataInput input) throws IOException {
+        Currency currency = Currency.getInstance(input.readUTF());
+        return Money.ofMinorUnits(input.readLong(), currency);
+    }
+
+    static void writeAccount(DataOutput output, Account account) throws IOException {
+        output.writeUTF(account.getId().getId());
+        writeMoney(output, account.getBalance());
+    }
+
+    static Account readAccount(DataInput input) throws IOException {
+        AccountId accountId = AccountId.of(input.readUTF());
+        return Account.of(accountId, readMoney(input));
+    }
+
+    static void writeTransfers(DataOutput output, List<Transfer> transfers) throws IOException {
+        output.writeInt(transfers.size());
+        for (Transfer transfer : transfers) {
+            writeUUID(output, transfer.getTransferId());
+            output.writeUTF(transfer.getSourceAccount().getId());
+            output.writeUTF(transfer.getTargetAccount().getId());
+            writeMoney(output, transfer.getTransferredAmount());
+        }
+    }
+
+    static List<Transfer> readTransfers(DataInput input) throws IOException {
+        int count = input.readInt();
+        List<Transfer> transfers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            UUID transferId = readUUID(input);
+            AccountId source = AccountId.of(input.readUTF());
+            AccountId target = AccountId.of(input.readUTF());
+            transfers.add(Transfer.of(source, target, readMoney(input), transferId));
+        }
+        return transfers;
+    }
+}
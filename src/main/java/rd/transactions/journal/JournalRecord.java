@@ -0,0 +1,14 @@
+package rd.transactions.journal;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Single entry of the journal. Subclasses are immutable.
+ */
+public abstract class JournalRecord {
+
+    abstract JournalRecordType getType();
+
+    abstract void writeBody(DataOutput output) throws IOException;
+}
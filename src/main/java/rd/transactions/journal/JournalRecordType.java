@@ -0,0 +1,32 @@
+package rd.transactions.journal;
+
+/**
+ * Codes are stored on disk, so they must never be changed or reused.
+ */
+enum JournalRecordType {
+    ACCOUNT_CREATED(1),
+    TRANSFERS_SUBMITTED(2),
+    TRANSFERS_APPLIED(3),
+    TRANSFER_STATUS_CHANGED(4),
+    ACCOUNTS_SNAPSHOT(5),
+    TRANSFERS_FINISHED(6);
+
+    private final byte code;
+
+    JournalRecordType(int code) {
+        this.code = (byte) code;
+    }
+
+    byte getCode() {
+        return code;
+    }
+
+    static JournalRecordType ofCode(byte code) {
+        for (JournalRecordType type : values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown journal record type " + code);
+    }
+}
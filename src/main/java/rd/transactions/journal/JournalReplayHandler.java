@@ -0,0 +1,6 @@
+package rd.transactions.journal;
+
+@FunctionalInterface
+public interface JournalReplayHandler {
+    void onRecord(long sequence, JournalRecord record);
+}
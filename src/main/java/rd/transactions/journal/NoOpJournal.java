@@ -0,0 +1,24 @@
+package rd.transactions.journal;
+
+/**
+ * Journal of in-memory mode, nothing survives restart.
+ */
+public class NoOpJournal implements Journal {
+    public static final NoOpJournal INSTANCE = new NoOpJournal();
+
+    private NoOpJournal() {
+    }
+
+    @Override
+    public long append(JournalRecord record) {
+        return 0;
+    }
+
+    @Override
+    public void awaitDurable(long sequence) {
+    }
+
+    @Override
+    public void close() {
+    }
+}
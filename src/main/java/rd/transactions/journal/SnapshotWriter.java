@@ -0,0 +1,73 @@
+package rd.transactions.journal;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Writes snapshot into a temporary file, the snapshot replaces the journal files it covers only when committed.
+ * Not thread-safe
+ */
+public class SnapshotWriter implements AutoCloseable {
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final FileJournal journal;
+    private final Path temporaryFile;
+    private final Path file;
+    private final long sequence;
+    private final FileChannel channel;
+    private final OutputStream output;
+    private boolean committed;
+
+    SnapshotWriter(FileJournal journal, Path temporaryFile, Path file, long sequence) throws IOException {
+        this.journal = journal;
+        this.temporaryFile = temporaryFile;
+        this.file = file;
+        this.sequence = sequence;
+        this.channel = FileChannel.open(temporaryFile, CREATE, TRUNCATE_EXISTING, WRITE);
+        this.output = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void write(JournalRecord record) throws IOException {
+        ByteBuffer frame = JournalCodec.encode(sequence, record);
+        output.write(frame.array(), 0, frame.limit());
+    }
+
+    /**
+     * Makes the snapshot durable and visible, then discards journal files covered by it.
+     * The rename is made durable by fsync of the directory first,
+     *  otherwise power loss could leave the journal discarded without the snapshot replacing it.
+     */
+    public void commit() throws IOException {
+        output.flush();
+        channel.force(true);
+        channel.close();
+        Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE);
+        committed = true;
+        FileJournal.syncDirectory(file.getParent());
+        journal.discardCoveredBy(sequence);
+    }
+
+    /**
+     * Abandons the snapshot unless it was committed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!committed) {
+            channel.close();
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+}
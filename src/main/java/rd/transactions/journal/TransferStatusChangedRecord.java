@@ -0,0 +1,43 @@
+package rd.transactions.journal;
+
+import rd.transactions.model.TransferStatus;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.UUID;
+
+public class TransferStatusChangedRecord extends JournalRecord {
+    private final UUID transferId;
+    private final TransferStatus transferStatus;
+
+    public TransferStatusChangedRecord(UUID transferId, TransferStatus transferStatus) {
+        this.transferId = transferId;
+        this.transferStatus = transferStatus;
+    }
+
+    public UUID getTransferId() {
+        return transferId;
+    }
+
+    public TransferStatus getTransferStatus() {
+        return transferStatus;
+    }
+
+    @Override
+    JournalRecordType getType() {
+        return JournalRecordType.TRANSFER_STATUS_CHANGED;
+    }
+
+    @Override
+    void writeBody(DataOutput output) throws IOException {
+        JournalCodec.writeUUID(output, transferId);
+        // stored by name, so that statuses can be added or reordered
+        output.writeUTF(transferStatus.name());
+    }
+
+    static TransferStatusChangedRecord readBody(DataInput input) throws IOException {
+        UUID transferId = JournalCodec.readUUID(input);
+        return new TransferStatusChangedRecord(transferId, TransferStatus.valueOf(input.readUTF()));
+    }
+}
@@ -0,0 +1,38 @@
+package rd.transactions.journal;
+
+import rd.transactions.model.Transfer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Debit and credit of the transfers were applied to the accounts.
+ * Transfers of one record were applied together, balances are not validated again on replay.
+ */
+public class TransfersAppliedRecord extends JournalRecord {
+    private final List<Transfer> transfers;
+
+    public TransfersAppliedRecord(List<Transfer> transfers) {
+        this.transfers = transfers;
+    }
+
+    public List<Transfer> getTransfers() {
+        return transfers;
+    }
+
+    @Override
+    JournalRecordType getType() {
+        return JournalRecordType.TRANSFERS_APPLIED;
+    }
+
+    @Override
+    void writeBody(DataOutput output) throws IOException {
+        JournalCodec.writeTransfers(output, transfers);
+    }
+
+    static TransfersAppliedRecord readBody(DataInput input) throws IOException {
+        return new TransfersAppliedRecord(JournalCodec.readTransfers(input));
+    }
+}
@@ -0,0 +1,53 @@
+package rd.transactions.journal;
+
+import rd.transactions.model.Transfer;
+import rd.transactions.model.TransferStatus;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Finished transfers written into a snapshot together with their terminal statuses,
+ *  they are known again after restart without being performed again.
+ */
+public class TransfersFinishedRecord extends JournalRecord {
+    private final List<Transfer> transfers;
+
+    /**
+     * @param transfers transfers with terminal status, the status is read when the record is written
+     */
+    public TransfersFinishedRecord(List<Transfer> transfers) {
+        this.transfers = transfers;
+    }
+
+    /**
+     * @return transfers with their terminal statuses
+     */
+    public List<Transfer> getTransfers() {
+        return transfers;
+    }
+
+    @Override
+    JournalRecordType getType() {
+        return JournalRecordType.TRANSFERS_FINISHED;
+    }
+
+    @Override
+    void writeBody(DataOutput output) throws IOException {
+        JournalCodec.writeTransfers(output, transfers);
+        for (Transfer transfer : transfers) {
+            // stored by name, so that statuses can be added or reordered
+            output.writeUTF(transfer.getTransferStatus().name());
+        }
+    }
+
+    static TransfersFinishedRecord readBody(DataInput input) throws IOException {
+        List<Transfer> transfers = JournalCodec.readTransfers(input);
+        for (Transfer transfer : transfers) {
+            transfer.updateTransferStatus(TransferStatus.valueOf(input.readUTF()));
+        }
+        return new TransfersFinishedRecord(transfers);
+    }
+}
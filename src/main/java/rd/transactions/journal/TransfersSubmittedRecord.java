@@ -0,0 +1,45 @@
+package rd.transactions.journal;
+
+import rd.transactions.model.Transfer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Transfers accepted for processing, either a single transfer or an all-or-nothing batch.
+ */
+public class TransfersSubmittedRecord extends JournalRecord {
+    private final List<Transfer> transfers;
+    private final boolean atomicBatch;
+
+    public TransfersSubmittedRecord(List<Transfer> transfers, boolean atomicBatch) {
+        this.transfers = transfers;
+        this.atomicBatch = atomicBatch;
+    }
+
+    public List<Transfer> getTransfers() {
+        return transfers;
+    }
+
+    public boolean isAtomicBatch() {
+        return atomicBatch;
+    }
+
+    @Override
+    JournalRecordType getType() {
+        return JournalRecordType.TRANSFERS_SUBMITTED;
+    }
+
+    @Override
+    void writeBody(DataOutput output) throws IOException {
+        output.writeBoolean(atomicBatch);
+        JournalCodec.writeTransfers(output, transfers);
+    }
+
+    static TransfersSubmittedRecord readBody(DataInput input) throws IOException {
+        boolean atomicBatch = input.readBoolean();
+        return new TransfersSubmittedRecord(JournalCodec.readTransfers(input), atomicBatch);
+    }
+}
@@ -1,41 +1,89 @@
 package rd.transactions.managers;
 
 import rd.transactions.exceptions.*;
+import rd.transactions.journal.AccountCreatedRecord;
+import rd.transactions.journal.AccountSnapshot;
+import rd.transactions.journal.Journal;
+import rd.transactions.journal.JournalRecord;
+import rd.transactions.journal.NoOpJournal;
+import rd.transactions.journal.TransfersAppliedRecord;
+import rd.transactions.metrics.MetricsRegistry;
 import rd.transactions.model.Account;
 import rd.transactions.model.AccountId;
 import rd.transactions.model.Transfer;
-import rd.transactions.operation.log.AccountAdditionLogEntry;
-import rd.transactions.operation.log.AccountOperationLog;
-import rd.transactions.operation.log.AccountSubtractionLogEntry;
+import rd.transactions.operation.log.AccountHistoryVisitor;
+import rd.transactions.store.AccountStore;
+import rd.transactions.store.OperationLogAccountStore;
 import rd.transactions.validators.BalanceValidator;
 
-import java.util.Collection;
-import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-
-import static java.util.stream.Collectors.toList;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 
 /**
  * The class managing account operations
  * It is thread-safe
  */
 public class AccountManager {
-    private final ConcurrentHashMap<AccountId, AccountOperationLog> accounts = new ConcurrentHashMap<>();
+    private final AccountStore accounts;
     private final BalanceValidator balanceValidator;
+    private final Journal journal;
+    private final AccountMetrics metrics;
 
     public AccountManager(BalanceValidator balanceValidator) {
+        this(balanceValidator, NoOpJournal.INSTANCE);
+    }
+
+    /**
+     * Created accounts and applied transfers are recorded in the journal,
+     *  methods return only after the record is durable.
+     */
+    public AccountManager(BalanceValidator balanceValidator, Journal journal) {
+        this(balanceValidator, journal, new OperationLogAccountStore());
+    }
+
+    public AccountManager(BalanceValidator balanceValidator, Journal journal, AccountStore accounts) {
+        this(balanceValidator, journal, accounts, new AccountMetrics(new MetricsRegistry()));
+    }
+
+    public AccountManager(BalanceValidator balanceValidator, Journal journal, AccountStore accounts,
+                          AccountMetrics metrics) {
         this.balanceValidator = balanceValidator;
+        this.journal = journal;
+        this.accounts = accounts;
+        this.metrics = metrics;
     }
 
+    /**
+     * All accounts at one point in time, see forEachAccount.
+     */
     public Collection<Account> getAccounts() {
-        return accounts.values().stream()
-                .map(AccountOperationLog::materializeAsAccount)
-                .collect(toList());
+        List<Account> result = new ArrayList<>();
+        accounts.forEachAtomically(result::add);
+        return result;
+    }
+
+    /**
+     * Passes all accounts as they were at one point in time, no money is seen "in flight":
+     *  a transfer is seen on both of its accounts or on none of them, see AccountStore.forEachAtomically.
+     * Transfers wait only while balances are copied, not while the consumer is called.
+     */
+    public void forEachAccount(Consumer<Account> consumer) {
+        accounts.forEachAtomically(consumer);
     }
 
     public Optional<Account> getAccountById(AccountId accountId) {
-        return Optional.ofNullable(accounts.get(accountId))
-                .map(AccountOperationLog::materializeAsAccount);
+        return accounts.get(accountId);
+    }
+
+    /**
+     * Passes a page of account history to the visitor, the history is read without stopping transfers of the account.
+     * @return index where the next page starts, -1 if there are no more entries in the time range
+     * @throws AccountHistoryNotKeptException if the account store keeps only balances
+     */
+    public long readHistory(AccountId accountId, long from, int limit, long fromTimestamp, long toTimestamp,
+                            AccountHistoryVisitor visitor) {
+        return accounts.readHistory(accountId, from, limit, fromTimestamp, toTimestamp, visitor);
     }
 
     /**
@@ -43,41 +91,129 @@ public class AccountManager {
      *  if there already exists account with same account identifier, exception is thrown and account is not added
      */
     public void createAccount(Account account) {
-        AccountOperationLog accountInMap = accounts.putIfAbsent(account.getId(), new AccountOperationLog(account));
-        if (accountInMap != null) {
+        if (!accounts.add(account)) {
             throw new AccountIdConflictException();
         }
+        journal.appendAndAwait(new AccountCreatedRecord(account));
+    }
+
+    /**
+     * Adds account read from the journal or a snapshot, nothing is journaled.
+     * Account which is already known is replaced only if the restored one reflects a newer journal record.
+     * @return false if the account was restored before
+     */
+    public boolean restoreAccount(AccountSnapshot account) {
+        return accounts.restore(account);
+    }
+
+    /**
+     * Applies transfers of one journal record, they were validated before they were journaled.
+     * Accounts which already reflect the record (according to their snapshot) are not changed.
+     */
+    public void replayAppliedTransfers(long sequence, List<Transfer> transfers) {
+        accounts.replayAppliedTransfers(sequence, transfers);
+    }
+
+    /**
+     * Passes consistent snapshots of all accounts to the consumer, in chunks.
+     * Accounts are locked one by one, so transfers are not stopped,
+     *  each account reports which journal records its balance reflects.
+     */
+    public void snapshotAccounts(int chunkSize, Consumer<List<AccountSnapshot>> consumer) {
+        List<AccountSnapshot> chunk = new ArrayList<>(chunkSize);
+        accounts.forEach(snapshot -> {
+            chunk.add(snapshot);
+            if (chunk.size() == chunkSize) {
+                consumer.accept(new ArrayList<>(chunk));
+                chunk.clear();
+            }
+        });
+        if (!chunk.isEmpty()) {
+            consumer.accept(chunk);
+        }
     }
 
     /**
      * This method transfers money from one account to another.
      * If any account does not exist, the transfer is not performed.
      * If source account has no credit, the transfer is not performed.
+     * Debit and credit are applied atomically under the locks of both accounts, a reader of a single account
+     *  sees its balance either before or after the transfer, so do getAccounts and forEachAccount,
+     *  which lock all accounts. Snapshots (snapshotAccounts) lock accounts one by one and may see money in flight,
+     *  journal replay completes them.
      * The assumption for this code is that accounts are not removable.
+     * @throws TransferNotDurableException if the transfer is applied, but the journal failed to make it durable
      */
     public void performTransfer(Transfer transfer) throws
             AccountDoesNotExistException,
             NotEnoughCreditException,
             CurrenciesOfAccountsDifferException,
             CurrencyOfSourceAccountDifferentThanTransferException {
-        AccountOperationLog source = Optional.ofNullable(accounts.get(transfer.getSourceAccount()))
-            .orElseThrow(AccountDoesNotExistException::new);
-        AccountOperationLog target = Optional.ofNullable(accounts.get(transfer.getTargetAccount()))
-                .orElseThrow(AccountDoesNotExistException::new);
+        JournalAppender appender = new JournalAppender(new TransfersAppliedRecord(Collections.singletonList(transfer)));
+        long started = System.nanoTime();
+        boolean applied;
+        try {
+            applied = accounts.transfer(transfer, balanceValidator, appender);
+        } finally {
+            metrics.transferApplied(started, appender.lockedAt);
+        }
+        if (!applied) {
+            throw new NotEnoughCreditException();
+        }
+        awaitApplied(appender.sequence);
+    }
 
-        if (!source.getCurrency().equals(transfer.getTransferredAmount().getCurrency())) {
-            throw new CurrencyOfSourceAccountDifferentThanTransferException();
+    /**
+     * Performs all transfers or none of them.
+     * Transfers are validated in the given order, so a transfer may spend money received in an earlier one.
+     * @throws TransferBatchRejectedException pointing at the first transfer which could not be performed
+     * @throws TransferNotDurableException if the batch is applied, but the journal failed to make it durable
+     */
+    public void performTransfers(List<Transfer> transfers) throws TransferBatchRejectedException {
+        JournalAppender appender = new JournalAppender(new TransfersAppliedRecord(transfers));
+        long started = System.nanoTime();
+        int rejected;
+        try {
+            rejected = accounts.transferAll(transfers, balanceValidator, appender);
+        } finally {
+            metrics.transferApplied(started, appender.lockedAt);
+        }
+        if (rejected >= 0) {
+            throw new TransferBatchRejectedException(transfers.get(rejected), new NotEnoughCreditException());
         }
+        awaitApplied(appender.sequence);
+    }
 
-        if (!source.getCurrency().equals(target.getCurrency())) {
-            throw new CurrenciesOfAccountsDifferException();
+    /**
+     * Balances are changed already, so failure of the journal must not look like a rejected transfer.
+     */
+    private void awaitApplied(long sequence) {
+        try {
+            journal.awaitDurable(sequence);
+        } catch (RuntimeException ex) {
+            throw new TransferNotDurableException(ex);
         }
+    }
+
+    /**
+     * Journals the record when called under the locks of the accounts,
+     *  durability is awaited after the locks are released.
+     */
+    private class JournalAppender implements LongSupplier {
+        private final JournalRecord record;
+        private long sequence;
+        // System.nanoTime() when called, the accounts are locked and the transfers validated by then
+        private long lockedAt;
 
+        JournalAppender(JournalRecord record) {
+            this.record = record;
+        }
 
-        if (source.addEntry(new AccountSubtractionLogEntry(transfer.getTransferredAmount()), balanceValidator)) {
-            target.addEntry(new AccountAdditionLogEntry(transfer.getTransferredAmount()));
-        } else {
-            throw new NotEnoughCreditException();
+        @Override
+        public long getAsLong() {
+            lockedAt = System.nanoTime();
+            sequence = journal.append(record);
+            return sequence;
         }
     }
 }
@@ -0,0 +1,39 @@
+package rd.transactions.managers;
+
+import rd.transactions.metrics.LatencyHistogram;
+import rd.transactions.metrics.MetricsRegistry;
+
+/**
+ * Metrics of transfers applied to accounts by AccountManager.
+ *
+ * Locks of the accounts are taken inside the account store, the store calls the journal appender under them
+ *  once the transfer is validated, so the time until that call is spent acquiring the locks
+ *  (with account lookup and validation) and the time after it is spent holding them
+ *  (journal append and balance updates). Transfers rejected by validation are counted only in the total.
+ */
+public final class AccountMetrics {
+    private final LatencyHistogram transfer;
+    private final LatencyHistogram lockWait;
+    private final LatencyHistogram lockHold;
+
+    public AccountMetrics(MetricsRegistry registry) {
+        transfer = registry.histogram("account_transfer_seconds",
+                "Time to apply a transfer or a batch to the account store.");
+        lockWait = registry.histogram("account_lock_wait_seconds",
+                "Time from the start of an applied transfer until its accounts are locked and it is validated.");
+        lockHold = registry.histogram("account_lock_hold_seconds",
+                "Time the accounts of an applied transfer stay locked after it is validated.");
+    }
+
+    /**
+     * @param lockedNanos System.nanoTime() when the journal appender was called under the locks, 0 if it was not
+     */
+    void transferApplied(long startedNanos, long lockedNanos) {
+        long finishedNanos = System.nanoTime();
+        transfer.recordNanos(finishedNanos - startedNanos);
+        if (lockedNanos != 0) {
+            lockWait.recordNanos(lockedNanos - startedNanos);
+            lockHold.recordNanos(finishedNanos - lockedNanos);
+        }
+    }
+}
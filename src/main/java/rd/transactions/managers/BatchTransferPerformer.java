@@ -0,0 +1,122 @@
+package rd.transactions.managers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rd.transactions.exceptions.*;
+import rd.transactions.journal.Journal;
+import rd.transactions.journal.NoOpJournal;
+import rd.transactions.journal.TransferStatusChangedRecord;
+import rd.transactions.metrics.MetricsRegistry;
+import rd.transactions.model.Transfer;
+import rd.transactions.model.TransferStatus;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Performs a batch of transfers with all-or-nothing semantics.
+ * If the batch is rejected, the transfer which caused it gets its usual rejection status
+ *  and all the other transfers get REJECTED_BATCH_ABORTED.
+ * Rejections are journaled and durable before they are visible, like in TransferPerformer.
+ */
+public class BatchTransferPerformer implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchTransferPerformer.class);
+    private final List<Transfer> transfers;
+    private final AccountManager accountManager;
+    private final TransferMetrics metrics;
+    private final Journal journal;
+    private final long submittedAt = System.nanoTime();
+
+    public BatchTransferPerformer(List<Transfer> transfers, AccountManager accountManager) {
+        this(transfers, accountManager, new TransferMetrics(new MetricsRegistry()));
+    }
+
+    public BatchTransferPerformer(List<Transfer> transfers, AccountManager accountManager, TransferMetrics metrics) {
+        this(transfers, accountManager, metrics, NoOpJournal.INSTANCE);
+    }
+
+    public BatchTransferPerformer(List<Transfer> transfers, AccountManager accountManager, TransferMetrics metrics,
+                                  Journal journal) {
+        this.transfers = transfers;
+        this.accountManager = accountManager;
+        this.metrics = metrics;
+        this.journal = journal;
+    }
+
+    @Override
+    public void run() {
+        long started = metrics.executionStarted(submittedAt);
+        try {
+            perform();
+        } finally {
+            metrics.batchExecuted(started);
+        }
+    }
+
+    private void perform() {
+        updateTransferStatuses(TransferStatus.PROCESSING);
+        try {
+            accountManager.performTransfers(transfers);
+            updateTransferStatuses(TransferStatus.COMPLETED);
+        } catch (TransferBatchRejectedException ex) {
+            logger.error("Batch of " + transfers.size() + " transfers rejected", ex);
+            Transfer rejected = ex.getRejectedTransfer();
+            Map<Transfer, TransferStatus> statuses = new LinkedHashMap<>();
+            for (Transfer transfer : transfers) {
+                // terminal statuses never change, so the culprit gets only its own status
+                statuses.put(transfer, transfer == rejected
+                        ? rejectionStatusOf(ex.getCause()) : TransferStatus.REJECTED_BATCH_ABORTED);
+            }
+            reject(statuses);
+        } catch (TransferNotDurableException ex) {
+            // money moved, so it is not a failure, restart decides from the journal whether they are COMPLETED
+            logger.error("Batch of " + transfers.size() + " transfers applied, but not journaled, it stays PROCESSING",
+                    ex);
+        } catch (Throwable ex) {
+            logger.error("Error during batch processing.", ex);
+            Map<Transfer, TransferStatus> statuses = new LinkedHashMap<>();
+            transfers.forEach(transfer -> statuses.put(transfer, TransferStatus.INTERNAL_ERROR));
+            reject(statuses);
+        }
+    }
+
+    public List<Transfer> getTransfers() {
+        return transfers;
+    }
+
+    private void updateTransferStatuses(TransferStatus transferStatus) {
+        transfers.forEach(transfer -> transfer.updateTransferStatus(transferStatus));
+    }
+
+    private void reject(Map<Transfer, TransferStatus> statuses) {
+        long lastSequence = 0;
+        try {
+            for (Map.Entry<Transfer, TransferStatus> status : statuses.entrySet()) {
+                lastSequence = journal.append(
+                        new TransferStatusChangedRecord(status.getKey().getTransferId(), status.getValue()));
+            }
+            journal.awaitDurable(lastSequence);
+        } catch (JournalException ex) {
+            // not durable, so restart performs the batch again, it must not be reported as rejected meanwhile
+            logger.error("Rejection of batch of " + transfers.size() + " transfers not journaled, it stays PROCESSING",
+                    ex);
+            return;
+        }
+        statuses.forEach(Transfer::updateTransferStatus);
+    }
+
+    private static TransferStatus rejectionStatusOf(Throwable cause) {
+        if (cause instanceof AccountDoesNotExistException) {
+            return TransferStatus.REJECTED_ONE_OF_ACCOUNTS_DOES_NOT_EXIST;
+        } else if (cause instanceof NotEnoughCreditException) {
+            return TransferStatus.REJECTED_NOT_ENOUGH_CREDIT_ON_SOURCE_ACCOUNT;
+        } else if (cause instanceof CurrenciesOfAccountsDifferException) {
+            return TransferStatus.REJECTED_DIFFERENT_CURRENCIES;
+        } else if (cause instanceof CurrencyOfSourceAccountDifferentThanTransferException) {
+            return TransferStatus.REJECTED_UNSUPPORTED_TRANSFER_CURRENCY;
+        }
+        return TransferStatus.INTERNAL_ERROR;
+    }
+}
@@ -0,0 +1,199 @@
+package rd.transactions.managers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rd.transactions.journal.AccountsSnapshotRecord;
+import rd.transactions.journal.FileJournal;
+import rd.transactions.journal.JournalRecord;
+import rd.transactions.journal.SnapshotWriter;
+import rd.transactions.journal.TransfersFinishedRecord;
+import rd.transactions.journal.TransfersSubmittedRecord;
+import rd.transactions.model.Transfer;
+import rd.transactions.model.TransferStatus;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Writes snapshot of account balances and transfers, then discards the journal covered by it,
+ *  so that replay on start is bounded by the snapshot size and a short journal tail.
+ *
+ * Snapshot is taken while transfers are processed:
+ *  1. the journal is rotated, records up to the rotation point stay in older segments,
+ *  2. accounts are snapshotted one by one, each with the last journal record it reflects,
+ *     so their balances contain every transfer applied before the rotation point (and maybe some later ones),
+ *  3. transfers not picked up for processing are written as submitted, transfers being processed are awaited,
+ *     otherwise a transfer applied before the rotation point could be performed again after restart,
+ *  4. finished transfers (including the awaited ones) are written with their terminal statuses,
+ *     so they are known after restart, until they are evicted (see TransferRetention),
+ *  5. snapshot is committed and journal segments up to the rotation point are discarded.
+ */
+public class Checkpointer implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(Checkpointer.class);
+    private static final int ACCOUNTS_PER_RECORD = 1024;
+    private static final int TRANSFERS_PER_RECORD = 1024;
+
+    private final FileJournal journal;
+    private final AccountManager accountManager;
+    private final TransferManager transferManager;
+    private final long processingTimeoutMillis;
+
+    public Checkpointer(FileJournal journal, AccountManager accountManager, TransferManager transferManager,
+                        long processingTimeoutMillis) {
+        this.journal = journal;
+        this.accountManager = accountManager;
+        this.transferManager = transferManager;
+        this.processingTimeoutMillis = processingTimeoutMillis;
+    }
+
+    /**
+     * Scheduled run, failure is logged and the previous snapshot with the journal stays in place.
+     */
+    @Override
+    public void run() {
+        try {
+            takeSnapshot();
+        } catch (Exception ex) {
+            logger.error("Snapshot failed", ex);
+        }
+    }
+
+    /**
+     * @return sequence number of the last journal record covered by the snapshot
+     * @throws TimeoutException if a transfer being processed did not finish in time, the snapshot is abandoned
+     */
+    public long takeSnapshot() throws IOException, TimeoutException {
+        long start = System.nanoTime();
+        long sequence = journal.rotate();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(processingTimeoutMillis);
+        long[] accounts = {0};
+        long[] transfers;
+        try (SnapshotWriter snapshot = journal.startSnapshot(sequence)) {
+            try {
+                accountManager.snapshotAccounts(ACCOUNTS_PER_RECORD, chunk -> {
+                    write(snapshot, new AccountsSnapshotRecord(chunk));
+                    accounts[0] += chunk.size();
+                });
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+            transfers = writeTransfers(snapshot, deadline);
+            snapshot.commit();
+        }
+        logger.info("Snapshot {} of {} accounts, {} unfinished and {} finished transfers taken in {} ms",
+                sequence, accounts[0], transfers[0], transfers[1],
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return sequence;
+    }
+
+    /**
+     * @return numbers of unfinished and of finished transfers written
+     */
+    private long[] writeTransfers(SnapshotWriter snapshot, long deadline) throws IOException, TimeoutException {
+        long unfinished = 0;
+        List<Transfer> processing = new ArrayList<>();
+        Set<UUID> batched = new HashSet<>();
+        for (List<Transfer> batch : transferManager.getPendingAtomicBatches()) {
+            batch.forEach(transfer -> batched.add(transfer.getTransferId()));
+            if (batch.stream().allMatch(transfer -> transfer.getTransferStatus() == TransferStatus.SUBMITTED)) {
+                snapshot.write(new TransfersSubmittedRecord(batch, true));
+                unfinished += batch.size();
+            } else {
+                // some transfers of the batch may still be SUBMITTED, they must not be resubmitted one by one
+                processing.addAll(batch);
+            }
+        }
+
+        Chunks submitted = new Chunks(snapshot, chunk -> new TransfersSubmittedRecord(chunk, false));
+        Chunks finished = new Chunks(snapshot, TransfersFinishedRecord::new);
+        for (Transfer transfer : transferManager.getTransfers()) {
+            if (batched.contains(transfer.getTransferId())) {
+                continue;
+            }
+            TransferStatus status = transfer.getTransferStatus();
+            if (status == TransferStatus.SUBMITTED) {
+                submitted.add(transfer);
+            } else if (status == TransferStatus.PROCESSING) {
+                processing.add(transfer);
+            } else {
+                finished.add(transfer);
+            }
+        }
+        submitted.flush();
+
+        awaitTerminalStatus(processing, deadline);
+        for (Transfer transfer : processing) {
+            finished.add(transfer);
+        }
+        finished.flush();
+        return new long[]{unfinished + submitted.written, finished.written};
+    }
+
+    /**
+     * Waits for notifications of the transfers being finished, transfers are not polled.
+     */
+    private void awaitTerminalStatus(List<Transfer> transfers, long deadline) throws TimeoutException {
+        CompletableFuture<?>[] finished = transfers.stream()
+                .map(transfer -> transferManager.whenTerminal(transfer.getTransferId())
+                        .orElseGet(() -> CompletableFuture.completedFuture(transfer)))
+                .toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(finished).get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException ex) {
+            transfers.stream()
+                    .filter(transfer -> !transfer.getTransferStatus().isTerminal())
+                    .findFirst()
+                    .ifPresent(transfer -> logger.warn("Transfer {} is still processed", transfer.getTransferId()));
+            throw ex;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new TimeoutException("Snapshot interrupted");
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    /**
+     * Writes transfers in records of TRANSFERS_PER_RECORD transfers.
+     */
+    private static class Chunks {
+        private final SnapshotWriter snapshot;
+        private final Function<List<Transfer>, JournalRecord> record;
+        private List<Transfer> chunk = new ArrayList<>(TRANSFERS_PER_RECORD);
+        private long written;
+
+        Chunks(SnapshotWriter snapshot, Function<List<Transfer>, JournalRecord> record) {
+            this.snapshot = snapshot;
+            this.record = record;
+        }
+
+        void add(Transfer transfer) throws IOException {
+            chunk.add(transfer);
+            if (chunk.size() == TRANSFERS_PER_RECORD) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            if (!chunk.isEmpty()) {
+                snapshot.write(record.apply(chunk));
+                written += chunk.size();
+                chunk = new ArrayList<>(TRANSFERS_PER_RECORD);
+            }
+        }
+    }
+
+    private static void write(SnapshotWriter snapshot, AccountsSnapshotRecord record) {
+        try {
+            snapshot.write(record);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package rd.transactions.managers;
+
+import rd.transactions.model.Transfer;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Transfers by idempotency key given by the client, so that a retried submission returns the original transfer.
+ *
+ * Every key is kept for the same time, so keys expire in the order they were added. They are queued in that order,
+ *  expired keys and keys over capacity are removed from the head of the queue whenever a key is added,
+ *  lookups and additions are O(1) and memory is bounded by capacity (roughly 200 bytes per key besides
+ *  the transfer, which is resident anyway unless evicted by TransferRetention).
+ * Capacity should be at least peak submissions per second times the time to live,
+ *  otherwise keys are dropped before they expire.
+ * A key is kept only if the submission of its transfer succeeded, a transfer whose submission failed
+ *  (e.g. the queue was full) is never returned for a repeated key.
+ */
+public class IdempotencyCache {
+    public static final int MAX_KEY_LENGTH = 255;
+
+    private final ConcurrentHashMap<String, Entry> entries;
+    private final Queue<Entry> entriesByAge = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedEntries = new AtomicInteger();
+    private final long timeToLiveMillis;
+    private final int capacity;
+    private final LongSupplier clock;
+
+    public IdempotencyCache(long timeToLiveMillis, int capacity) {
+        this(timeToLiveMillis, capacity, System::currentTimeMillis);
+    }
+
+    IdempotencyCache(long timeToLiveMillis, int capacity, LongSupplier clock) {
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.capacity = capacity;
+        this.clock = clock;
+        this.entries = new ConcurrentHashMap<>(Math.min(capacity, 1 << 16));
+    }
+
+    /**
+     * Stores the transfer under the key unless a transfer which did not expire is stored already.
+     * @return the transfer stored before, null if the given one was stored
+     */
+    public Transfer putIfAbsent(String key, Transfer transfer) {
+        return putIfAbsent(key, transfer, () -> { });
+    }
+
+    /**
+     * Stores the transfer under the key and runs its submission, unless a transfer which did not expire
+     *  is stored already. The key is published before the submission runs, a repeat arriving meanwhile waits
+     *  for its outcome: it gets the stored transfer once it is submitted, or stores its own if the submission
+     *  failed, in such case the key is forgotten and the failure is rethrown to the caller which submitted.
+     * @return the transfer stored before, null if the given one was stored and submitted
+     */
+    public Transfer putIfAbsent(String key, Transfer transfer, Runnable submission) {
+        long now = clock.getAsLong();
+        Entry entry = new Entry(key, transfer, now + timeToLiveMillis);
+        while (true) {
+            Entry stored = entries.putIfAbsent(key, entry);
+            if (stored == null) {
+                break;
+            }
+            if (stored.expiresAt <= now) {
+                entries.remove(key, stored);
+            } else if (stored.submitted.join()) {
+                return stored.transfer;
+            }
+            // submission of the stored transfer failed, its key was removed before the waiters were woken up
+        }
+        try {
+            submission.run();
+        } catch (RuntimeException | Error ex) {
+            entries.remove(key, entry);
+            entry.submitted.complete(false);
+            throw ex;
+        }
+        entry.submitted.complete(true);
+        entriesByAge.add(entry);
+        queuedEntries.incrementAndGet();
+        removeOldEntries(now);
+        return null;
+    }
+
+    /**
+     * Number of keys, including expired keys not removed yet.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void removeOldEntries(long now) {
+        for (Entry oldest; (oldest = entriesByAge.peek()) != null; ) {
+            if (oldest.expiresAt > now && queuedEntries.get() <= capacity) {
+                return;
+            }
+            if (entriesByAge.remove(oldest)) {
+                queuedEntries.decrementAndGet();
+                entries.remove(oldest.key, oldest);
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final Transfer transfer;
+        private final long expiresAt;
+        // completed once the submission of the transfer is done, false if it failed
+        private final CompletableFuture<Boolean> submitted = new CompletableFuture<>();
+
+        private Entry(String key, Transfer transfer, long expiresAt) {
+            this.key = key;
+            this.transfer = transfer;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
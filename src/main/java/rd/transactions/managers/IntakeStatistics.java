@@ -0,0 +1,31 @@
+package rd.transactions.managers;
+
+/**
+ * Snapshot of the state of the transfer queue, helpful when sizing it.
+ */
+public class IntakeStatistics {
+    private final long queueDepth;
+    private final long queueCapacity;
+    private final long rejectedTransfers;
+
+    public IntakeStatistics(long queueDepth, long queueCapacity, long rejectedTransfers) {
+        this.queueDepth = queueDepth;
+        this.queueCapacity = queueCapacity;
+        this.rejectedTransfers = rejectedTransfers;
+    }
+
+    public long getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @return number of transfers rejected because the queue was full, since the start of the application
+     */
+    public long getRejectedTransfers() {
+        return rejectedTransfers;
+    }
+}
@@ -0,0 +1,136 @@
+package rd.transactions.managers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rd.transactions.journal.*;
+import rd.transactions.model.Transfer;
+import rd.transactions.model.TransferStatus;
+
+import java.util.*;
+
+/**
+ * Collects records replayed from the journal and rebuilds managers from them.
+ *
+ * Snapshot is taken while transfers are processed, so records following it may already be reflected
+ *  in some of the snapshotted balances. Every account remembers the last record it reflects
+ *  and skips records up to it, which makes the replay idempotent.
+ *
+ * Records of concurrent operations may be journaled in different order than they happened
+ *  (e.g. transfer can be applied before its submission is journaled), so nothing is applied
+ *  before the whole journal is read.
+ * Transfer which was applied is COMPLETED, whatever status was journaled.
+ * Transfer without terminal status which was not applied is submitted again,
+ *  all-or-nothing batch is submitted again as a whole unless some of its transfers is known to be rejected.
+ */
+public class JournalRecovery implements JournalReplayHandler {
+    private static final Logger logger = LoggerFactory.getLogger(JournalRecovery.class);
+
+    private final AccountManager accountManager;
+    private final TransferManager transferManager;
+    private long restoredAccounts;
+    private final Map<UUID, Transfer> transfers = new LinkedHashMap<>();
+    private final List<List<Transfer>> atomicBatches = new ArrayList<>();
+    private final Set<UUID> inAtomicBatch = new HashSet<>();
+    // ordered by sequence number
+    private final Map<Long, List<Transfer>> appliedTransfers = new LinkedHashMap<>();
+    private final Set<UUID> appliedTransferIds = new HashSet<>();
+    private final Map<UUID, TransferStatus> statuses = new HashMap<>();
+
+    /**
+     * Managers have to be empty and must not be used by anyone else until restore returns.
+     */
+    public JournalRecovery(AccountManager accountManager, TransferManager transferManager) {
+        this.accountManager = accountManager;
+        this.transferManager = transferManager;
+    }
+
+    @Override
+    public void onRecord(long sequence, JournalRecord record) {
+        if (record instanceof AccountsSnapshotRecord) {
+            // accounts go directly to the manager, snapshot may contain millions of them
+            for (AccountSnapshot account : ((AccountsSnapshotRecord) record).getAccounts()) {
+                restoreAccount(account);
+            }
+        } else if (record instanceof AccountCreatedRecord) {
+            // account created after the snapshot started may be in the snapshot already
+            restoreAccount(new AccountSnapshot(((AccountCreatedRecord) record).getAccount(), 0));
+        } else if (record instanceof TransfersSubmittedRecord) {
+            TransfersSubmittedRecord submitted = (TransfersSubmittedRecord) record;
+            submitted.getTransfers().forEach(this::registerTransfer);
+            // batch submitted while the snapshot was taken is both in the snapshot and after it
+            if (submitted.isAtomicBatch() && inAtomicBatch.add(submitted.getTransfers().get(0).getTransferId())) {
+                submitted.getTransfers().forEach(transfer -> inAtomicBatch.add(transfer.getTransferId()));
+                atomicBatches.add(submitted.getTransfers());
+            }
+        } else if (record instanceof TransfersAppliedRecord) {
+            List<Transfer> applied = ((TransfersAppliedRecord) record).getTransfers();
+            for (Transfer transfer : applied) {
+                registerTransfer(transfer);
+                appliedTransferIds.add(transfer.getTransferId());
+            }
+            appliedTransfers.put(sequence, applied);
+        } else if (record instanceof TransfersFinishedRecord) {
+            // statuses of the transfers are terminal, they are restored as they are
+            for (Transfer transfer : ((TransfersFinishedRecord) record).getTransfers()) {
+                registerTransfer(transfer);
+                statuses.putIfAbsent(transfer.getTransferId(), transfer.getTransferStatus());
+            }
+        } else if (record instanceof TransferStatusChangedRecord) {
+            TransferStatusChangedRecord statusChanged = (TransferStatusChangedRecord) record;
+            statuses.put(statusChanged.getTransferId(), statusChanged.getTransferStatus());
+        }
+    }
+
+    private void restoreAccount(AccountSnapshot account) {
+        if (accountManager.restoreAccount(account)) {
+            restoredAccounts++;
+        }
+    }
+
+    private void registerTransfer(Transfer transfer) {
+        transfers.putIfAbsent(transfer.getTransferId(), transfer);
+    }
+
+    /**
+     * Called when the whole journal is replayed, applies transfers
+     *  and submits unfinished transfers to the transfer manager.
+     */
+    public void restore() {
+        appliedTransfers.forEach(accountManager::replayAppliedTransfers);
+
+        List<Transfer> unfinished = new ArrayList<>();
+        for (Transfer transfer : transfers.values()) {
+            TransferStatus status = appliedTransferIds.contains(transfer.getTransferId())
+                    ? TransferStatus.COMPLETED
+                    : statuses.getOrDefault(transfer.getTransferId(), TransferStatus.SUBMITTED);
+            if (status.isTerminal()) {
+                transfer.updateTransferStatus(status);
+                transferManager.restoreTransfer(transfer);
+            } else if (!inAtomicBatch.contains(transfer.getTransferId())) {
+                unfinished.add(transfer);
+            }
+        }
+        unfinished.forEach(transferManager::submitTransfer);
+
+        int unfinishedBatches = 0;
+        for (List<Transfer> batch : atomicBatches) {
+            List<Transfer> restoredBatch = new ArrayList<>(batch.size());
+            batch.forEach(transfer -> restoredBatch.add(transfers.get(transfer.getTransferId())));
+            if (restoredBatch.stream().noneMatch(transfer -> transfer.getTransferStatus().isTerminal())) {
+                transferManager.submitTransfers(restoredBatch);
+                unfinishedBatches++;
+            } else {
+                // batch was rejected, only some of the statuses were journaled before the crash
+                restoredBatch.stream()
+                        .filter(transfer -> !transfer.getTransferStatus().isTerminal())
+                        .forEach(transfer -> {
+                            transfer.updateTransferStatus(TransferStatus.REJECTED_BATCH_ABORTED);
+                            transferManager.restoreTransfer(transfer);
+                        });
+            }
+        }
+
+        logger.info("Restored {} accounts, {} transfers ({} applied), resubmitted {} transfers and {} batches",
+                restoredAccounts, transfers.size(), appliedTransferIds.size(), unfinished.size(), unfinishedBatches);
+    }
+}
@@ -0,0 +1,50 @@
+package rd.transactions.managers;
+
+/**
+ * Number of transfers kept in memory and moved out of it by TransferRetention.
+ */
+public class RetentionStatistics {
+    private final long residentTransfers;
+    private final long residentFinishedTransfers;
+    private final long evictedTransfers;
+    private final long archivedTransfers;
+    private final long archiveSizeBytes;
+
+    public RetentionStatistics(long residentTransfers, long residentFinishedTransfers, long evictedTransfers,
+                               long archivedTransfers, long archiveSizeBytes) {
+        this.residentTransfers = residentTransfers;
+        this.residentFinishedTransfers = residentFinishedTransfers;
+        this.evictedTransfers = evictedTransfers;
+        this.archivedTransfers = archivedTransfers;
+        this.archiveSizeBytes = archiveSizeBytes;
+    }
+
+    public long getResidentTransfers() {
+        return residentTransfers;
+    }
+
+    /**
+     * @return transfers in a terminal status which are still in memory, they are candidates for eviction
+     */
+    public long getResidentFinishedTransfers() {
+        return residentFinishedTransfers;
+    }
+
+    /**
+     * @return transfers evicted from memory since the start of the application
+     */
+    public long getEvictedTransfers() {
+        return evictedTransfers;
+    }
+
+    /**
+     * @return transfers in the archive, including those archived before restart
+     */
+    public long getArchivedTransfers() {
+        return archivedTransfers;
+    }
+
+    public long getArchiveSizeBytes() {
+        return archiveSizeBytes;
+    }
+}
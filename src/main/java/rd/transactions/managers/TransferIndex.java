@@ -0,0 +1,158 @@
+package rd.transactions.managers;
+
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Transfer;
+import rd.transactions.model.TransferStatus;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Secondary indexes of registered transfers: by source account, target account, status and submission time.
+ *
+ * Every transfer gets a key when it is registered, the submission time in millis shifted left by COUNTER_BITS
+ *  plus a counter, keys are unique and increase with submission time.
+ * All indexes are sorted maps from the key, so a page of any of them is a range of keys
+ *  and a time range is a range of keys as well. The key of the next transfer is the cursor of the next page.
+ *
+ * Status index is updated when the status changes, a transfer is briefly missing in both statuses meanwhile,
+ *  statuses are checked again when a page is read.
+ */
+final class TransferIndex {
+    private static final int COUNTER_BITS = 16;
+    private static final long MAX_TIMESTAMP = Long.MAX_VALUE >> COUNTER_BITS;
+
+    private final LongSupplier clock;
+    private final AtomicLong lastKey = new AtomicLong();
+    private final ConcurrentHashMap<UUID, Long> keys = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, Transfer> bySubmission = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<AccountId, ConcurrentSkipListMap<Long, Transfer>> bySource =
+            new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<AccountId, ConcurrentSkipListMap<Long, Transfer>> byTarget =
+            new ConcurrentHashMap<>();
+    private final Map<TransferStatus, ConcurrentSkipListMap<Long, Transfer>> byStatus =
+            new EnumMap<>(TransferStatus.class);
+
+    TransferIndex() {
+        this(System::currentTimeMillis);
+    }
+
+    TransferIndex(LongSupplier clock) {
+        this.clock = clock;
+        for (TransferStatus status : TransferStatus.values()) {
+            byStatus.put(status, new ConcurrentSkipListMap<>());
+        }
+    }
+
+    /**
+     * Has to be called before the status of the transfer can change.
+     */
+    void add(Transfer transfer) {
+        long submission = toKey(clock.getAsLong());
+        long key = lastKey.updateAndGet(last -> Math.max(last + 1, submission));
+        if (keys.putIfAbsent(transfer.getTransferId(), key) != null) {
+            return;
+        }
+        bySubmission.put(key, transfer);
+        bySource.compute(transfer.getSourceAccount(), (account, index) -> put(index, key, transfer));
+        byTarget.compute(transfer.getTargetAccount(), (account, index) -> put(index, key, transfer));
+        byStatus.get(transfer.getTransferStatus()).put(key, transfer);
+    }
+
+    void remove(Transfer transfer) {
+        Long key = keys.remove(transfer.getTransferId());
+        if (key == null) {
+            return;
+        }
+        bySubmission.remove(key);
+        bySource.computeIfPresent(transfer.getSourceAccount(), (account, index) -> remove(index, key));
+        byTarget.computeIfPresent(transfer.getTargetAccount(), (account, index) -> remove(index, key));
+        // status of removed transfers does not change any more, other statuses are checked only in case it did
+        if (byStatus.get(transfer.getTransferStatus()).remove(key) == null) {
+            byStatus.values().forEach(index -> index.remove(key));
+        }
+    }
+
+    void onStatusChange(Transfer transfer, TransferStatus previousStatus, TransferStatus newStatus) {
+        Long key = keys.get(transfer.getTransferId());
+        if (key == null) {
+            return;
+        }
+        byStatus.get(previousStatus).remove(key);
+        byStatus.get(newStatus).put(key, transfer);
+    }
+
+    int size() {
+        return keys.size();
+    }
+
+    /**
+     * Reads the narrowest index the query allows (account, then status, then time),
+     *  other criteria are checked for every transfer in the range.
+     */
+    TransferPage find(TransferQuery query) {
+        ConcurrentNavigableMap<Long, Transfer> index = select(query);
+        long from = Math.max(query.getCursor(), toKey(query.getSubmittedFrom()));
+        long to = toKey(query.getSubmittedTo());
+        List<Transfer> page = new ArrayList<>(Math.min(query.getLimit(), 1024));
+        if (from >= to) {
+            return new TransferPage(page, TransferPage.END);
+        }
+        for (Map.Entry<Long, Transfer> entry : index.subMap(from, to).entrySet()) {
+            Transfer transfer = entry.getValue();
+            if (matches(query, transfer)) {
+                page.add(transfer);
+                if (page.size() == query.getLimit()) {
+                    return new TransferPage(page, entry.getKey() + 1);
+                }
+            }
+        }
+        return new TransferPage(page, TransferPage.END);
+    }
+
+    private ConcurrentNavigableMap<Long, Transfer> select(TransferQuery query) {
+        if (query.getSourceAccount().isPresent()) {
+            return bySource.getOrDefault(query.getSourceAccount().get(), new ConcurrentSkipListMap<>());
+        }
+        if (query.getTargetAccount().isPresent()) {
+            return byTarget.getOrDefault(query.getTargetAccount().get(), new ConcurrentSkipListMap<>());
+        }
+        if (query.getTransferStatus().isPresent()) {
+            return byStatus.get(query.getTransferStatus().get());
+        }
+        return bySubmission;
+    }
+
+    private static boolean matches(TransferQuery query, Transfer transfer) {
+        return query.getSourceAccount().map(transfer.getSourceAccount()::equals).orElse(true)
+                && query.getTargetAccount().map(transfer.getTargetAccount()::equals).orElse(true)
+                && query.getTransferStatus().map(status -> status == transfer.getTransferStatus()).orElse(true);
+    }
+
+    private static ConcurrentSkipListMap<Long, Transfer> put(
+            ConcurrentSkipListMap<Long, Transfer> index, long key, Transfer transfer) {
+        ConcurrentSkipListMap<Long, Transfer> result = index == null ? new ConcurrentSkipListMap<>() : index;
+        result.put(key, transfer);
+        return result;
+    }
+
+    private static ConcurrentSkipListMap<Long, Transfer> remove(ConcurrentSkipListMap<Long, Transfer> index, long key) {
+        index.remove(key);
+        return index.isEmpty() ? null : index;
+    }
+
+    private static long toKey(long timestamp) {
+        if (timestamp <= 0) {
+            return 0;
+        }
+        return timestamp >= MAX_TIMESTAMP ? Long.MAX_VALUE : timestamp << COUNTER_BITS;
+    }
+}
@@ -2,23 +2,80 @@ package rd.transactions.managers;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import rd.transactions.archive.TransferArchive;
+import rd.transactions.exceptions.TransferQueueFullException;
+import rd.transactions.journal.Journal;
+import rd.transactions.journal.NoOpJournal;
+import rd.transactions.journal.TransfersSubmittedRecord;
+import rd.transactions.metrics.MetricsRegistry;
 import rd.transactions.model.Transfer;
+import rd.transactions.model.TransferStatus;
+import rd.transactions.model.TransferStatusListener;
 
+import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class TransferManager {
     private static final Logger logger = LoggerFactory.getLogger(TransferManager.class);
     private final AccountManager accountManager;
     private final ExecutorService executorService;
     private final ConcurrentHashMap<UUID, Transfer> transfers = new ConcurrentHashMap<>();
+    private final TransferIndex index = new TransferIndex();
+    private final AtomicLong rejectedTransfers = new AtomicLong();
+    // finished transfers in the order they finished, the oldest are evicted first
+    private final Queue<FinishedTransfer> finishedTransfers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger residentFinishedTransfers = new AtomicInteger();
+    private final AtomicLong evictedTransfers = new AtomicLong();
+    private final Optional<TransferArchive> archive;
+    private final Journal journal;
+    // all-or-nothing batches until they are performed, they must be snapshotted as a whole
+    private final Set<List<Transfer>> pendingAtomicBatches = ConcurrentHashMap.newKeySet();
+    private final TransferMetrics metrics;
+    private final TransferNotifier notifier = new TransferNotifier();
 
     public TransferManager(AccountManager accountManager, ExecutorService executorService) {
+        this(accountManager, executorService, NoOpJournal.INSTANCE);
+    }
+
+    /**
+     * Submitted transfers and their terminal statuses are recorded in the journal.
+     * Submission returns only after the transfer is durable. A terminal status is durable before it is visible:
+     *  COMPLETED by the record of the applied transfer, rejections by their own record (see TransferPerformer),
+     *  so no status a client has seen is reversed by restart.
+     */
+    public TransferManager(AccountManager accountManager, ExecutorService executorService, Journal journal) {
+        this(accountManager, executorService, journal, Optional.empty());
+    }
+
+    /**
+     * @param archive keeps finished transfers evicted from memory (see TransferRetention), they can still be found
+     */
+    public TransferManager(AccountManager accountManager, ExecutorService executorService, Journal journal,
+                           Optional<TransferArchive> archive) {
+        this(accountManager, executorService, journal, archive, new TransferMetrics(new MetricsRegistry()));
+    }
+
+    public TransferManager(AccountManager accountManager, ExecutorService executorService, Journal journal,
+                           Optional<TransferArchive> archive, TransferMetrics metrics) {
         this.accountManager = accountManager;
         this.executorService = executorService;
+        this.journal = journal;
+        this.archive = archive;
+        this.metrics = metrics;
     }
 
     /**
@@ -27,18 +84,270 @@ public class TransferManager {
      *  e.g. DB or other network services are being used.
      * In current situation performTransfer is instantaneous.
      * @param transfer
+     * @throws TransferQueueFullException if executor service does not accept more work,
+     *  in such case the transfer is not registered
      */
     public void submitTransfer(Transfer transfer) {
-        Runnable transferPerformer = new TransferPerformer(transfer, accountManager);
-        executorService.submit(transferPerformer);
+        awaitDurable(submitTransferWithoutAwaiting(transfer));
+    }
+
+    /**
+     * Submits the transfer like submitTransfer, but does not wait until its submission is durable,
+     *  so that a caller acknowledging many transfers can await all of them at once.
+     * @return journal sequence number to be awaited before the transfer is acknowledged
+     * @throws TransferQueueFullException if executor service does not accept more work
+     */
+    public long submitTransferWithoutAwaiting(Transfer transfer) {
+        Runnable transferPerformer = new TransferPerformer(transfer, accountManager, metrics, journal);
+        register(transfer);
+        try {
+            executorService.submit(transferPerformer);
+        } catch (RejectedExecutionException ex) {
+            throw rejected(transfer);
+        }
+        return journal.append(new TransfersSubmittedRecord(Collections.singletonList(transfer), false));
+    }
+
+    /**
+     * Submits the transfer like submitTransferWithoutAwaiting, but never performs it on the calling thread:
+     *  when the queue is full the transfer is rejected, even with CALLER_RUNS rejection policy.
+     * Meant for threads which must not block, e.g. the selector thread of the binary ingress.
+     * @return journal sequence number to be awaited before the transfer is acknowledged
+     * @throws TransferQueueFullException if executor service does not accept more work
+     */
+    public long submitTransferWithoutRunning(Transfer transfer) {
+        NotRunByCaller transferPerformer = new NotRunByCaller(transfer);
+        register(transfer);
+        try {
+            executorService.submit(transferPerformer);
+        } catch (RejectedExecutionException ex) {
+            throw rejected(transfer);
+        }
+        if (transferPerformer.refused) {
+            throw rejected(transfer);
+        }
+        return journal.append(new TransfersSubmittedRecord(Collections.singletonList(transfer), false));
+    }
+
+    private TransferQueueFullException rejected(Transfer transfer) {
+        unregister(transfer);
+        rejectedTransfers.incrementAndGet();
+        logger.warn("Transfer {} rejected, transfer queue is full", transfer.getTransferId());
+        return new TransferQueueFullException();
+    }
+
+    /**
+     * Performs the transfer on the calling thread instead of scheduling it, its status is terminal once this returns
+     *  and it is durable, restart does not change it (unless the journal failed, then it stays PROCESSING).
+     * The transfer is registered and journaled like a submitted one, so it can be read and it is known after restart,
+     *  but it does not wait in the queue of the executor (transfers of the same account scheduled earlier may still
+     *  be waiting there) and it is not limited by the queue capacity.
+     */
+    public void performTransfer(Transfer transfer) {
+        register(transfer);
+        long sequence = journal.append(new TransfersSubmittedRecord(Collections.singletonList(transfer), false));
+        new TransferPerformer(transfer, accountManager, metrics, journal).run();
+        // the terminal status was awaited by the performer (the applied or the rejection record), the submission
+        //  precedes it, it is awaited on its own only for a transfer which stays PROCESSING because the journal failed
+        awaitDurable(sequence);
+    }
+
+    /**
+     * Blocks until submissions up to the given journal sequence number are durable.
+     */
+    public void awaitDurable(long sequence) {
+        journal.awaitDurable(sequence);
+    }
+
+    /**
+     * Schedules the whole batch as a single unit of work, transfers are performed all-or-nothing.
+     * @throws TransferQueueFullException if executor service does not accept more work,
+     *  in such case none of the transfers is registered
+     */
+    public void submitTransfers(List<Transfer> batch) {
+        Runnable batchPerformer = new BatchTransferPerformer(batch, accountManager, metrics, journal);
+        batch.forEach(this::register);
+        pendingAtomicBatches.add(batch);
+        try {
+            executorService.submit(() -> {
+                try {
+                    batchPerformer.run();
+                } finally {
+                    pendingAtomicBatches.remove(batch);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            pendingAtomicBatches.remove(batch);
+            batch.forEach(this::unregister);
+            rejectedTransfers.addAndGet(batch.size());
+            logger.warn("Batch of {} transfers rejected, transfer queue is full", batch.size());
+            throw new TransferQueueFullException();
+        }
+        journal.appendAndAwait(new TransfersSubmittedRecord(batch, true));
+    }
+
+    /**
+     * Registers transfer read from the journal without scheduling it, nothing is journaled.
+     */
+    public void restoreTransfer(Transfer transfer) {
+        register(transfer);
+        if (transfer.getTransferStatus().isTerminal()) {
+            finishedTransfers.add(new FinishedTransfer(transfer, System.currentTimeMillis()));
+            residentFinishedTransfers.incrementAndGet();
+        }
+    }
+
+    /**
+     * Transfer is registered before it is scheduled, so that every change of its status is seen.
+     */
+    private void register(Transfer transfer) {
+        transfer.setStatusListener(this::onStatusChange);
+        index.add(transfer);
         transfers.put(transfer.getTransferId(), transfer);
     }
 
+    private void unregister(Transfer transfer) {
+        transfers.remove(transfer.getTransferId(), transfer);
+        index.remove(transfer);
+    }
+
+    private void onStatusChange(Transfer transfer, TransferStatus previousStatus, TransferStatus newStatus) {
+        index.onStatusChange(transfer, previousStatus, newStatus);
+        if (newStatus.isTerminal() && !previousStatus.isTerminal()) {
+            metrics.transferFinished(newStatus);
+            finishedTransfers.add(new FinishedTransfer(transfer, System.currentTimeMillis()));
+            residentFinishedTransfers.incrementAndGet();
+        }
+        notifier.onStatusChange(transfer, previousStatus, newStatus);
+    }
+
+    /**
+     * @return empty if the transfer is not known, otherwise future completed with the transfer once its status
+     *  is terminal (completed already if it is), nothing polls or blocks meanwhile
+     */
+    public Optional<CompletableFuture<Transfer>> whenTerminal(UUID transferId) {
+        return getTransfer(transferId).map(notifier::whenTerminal);
+    }
+
+    /**
+     * Subscriber is notified of every status change of every transfer, synchronously on the thread which changes
+     *  the status, so it must not block.
+     */
+    public void subscribe(TransferStatusListener subscriber) {
+        notifier.subscribe(subscriber);
+    }
+
+    public void unsubscribe(TransferStatusListener subscriber) {
+        notifier.unsubscribe(subscriber);
+    }
+
+    /**
+     * Transfers evicted from memory are looked up in the archive, if there is one.
+     */
     public Optional<Transfer> getTransfer(UUID transferId) {
-        return Optional.ofNullable(transfers.get(transferId));
+        Transfer transfer = transfers.get(transferId);
+        if (transfer != null || !archive.isPresent()) {
+            return Optional.ofNullable(transfer);
+        }
+        return archive.get().find(transferId);
     }
 
     public Collection<Transfer> getTransfers() {
         return transfers.values();
     }
+
+    /**
+     * Page of transfers matching the query, read from secondary indexes instead of scanning all transfers.
+     * Transfers are indexed when they are submitted, submission time is the time of registration in this manager
+     *  (time of restart for transfers restored from the journal).
+     */
+    public TransferPage findTransfers(TransferQuery query) {
+        return index.find(query);
+    }
+
+    /**
+     * Finished transfers kept in memory, in the order they finished.
+     */
+    Collection<FinishedTransfer> getFinishedTransfers() {
+        return finishedTransfers;
+    }
+
+    int getResidentFinishedTransfers() {
+        return residentFinishedTransfers.get();
+    }
+
+    /**
+     * Removes the oldest finished transfers from memory, they are archived first if there is an archive.
+     * Called by a single thread, with transfers from the head of getFinishedTransfers.
+     * @throws IOException if the transfers cannot be archived, they are kept in memory then
+     */
+    void evict(List<Transfer> oldestFinished) throws IOException {
+        if (archive.isPresent()) {
+            archive.get().append(oldestFinished);
+        }
+        for (Transfer transfer : oldestFinished) {
+            unregister(transfer);
+            finishedTransfers.poll();
+        }
+        residentFinishedTransfers.addAndGet(-oldestFinished.size());
+        evictedTransfers.addAndGet(oldestFinished.size());
+    }
+
+    public RetentionStatistics getRetentionStatistics() {
+        return new RetentionStatistics(
+                transfers.size(),
+                residentFinishedTransfers.get(),
+                evictedTransfers.get(),
+                archive.map(TransferArchive::getArchivedTransfers).orElse(0L),
+                archive.map(TransferArchive::getSizeBytes).orElse(0L));
+    }
+
+    /**
+     * All-or-nothing batches which are waiting for processing or being processed.
+     */
+    public Collection<List<Transfer>> getPendingAtomicBatches() {
+        return Collections.unmodifiableSet(pendingAtomicBatches);
+    }
+
+    public IntakeStatistics getIntakeStatistics() {
+        long queueDepth = 0;
+        long queueCapacity = 0;
+        if (executorService instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) executorService;
+            queueDepth = pool.getQueue().size();
+            queueCapacity = queueDepth + pool.getQueue().remainingCapacity();
+        }
+        return new IntakeStatistics(queueDepth, queueCapacity, rejectedTransfers.get());
+    }
+
+    /**
+     * Performer which does nothing when the rejection policy runs it on the submitting thread.
+     */
+    private final class NotRunByCaller extends TransferPerformer {
+        private final Thread caller = Thread.currentThread();
+        private volatile boolean refused;
+
+        NotRunByCaller(Transfer transfer) {
+            super(transfer, accountManager, metrics, journal);
+        }
+
+        @Override
+        public void run() {
+            if (Thread.currentThread() == caller) {
+                refused = true;
+                return;
+            }
+            super.run();
+        }
+    }
+
+    static final class FinishedTransfer {
+        final Transfer transfer;
+        final long finishedAt;
+
+        private FinishedTransfer(Transfer transfer, long finishedAt) {
+            this.transfer = transfer;
+            this.finishedAt = finishedAt;
+        }
+    }
 }
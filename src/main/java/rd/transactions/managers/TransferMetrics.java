@@ -0,0 +1,65 @@
+package rd.transactions.managers;
+
+import rd.transactions.metrics.Counter;
+import rd.transactions.metrics.LatencyHistogram;
+import rd.transactions.metrics.MetricsRegistry;
+import rd.transactions.model.TransferStatus;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Metrics of transfer processing, recorded by TransferManager and the performers it schedules.
+ * A unit of work is a single transfer or an all-or-nothing batch.
+ */
+public final class TransferMetrics {
+    private final LatencyHistogram queueWait;
+    private final LatencyHistogram transferExecution;
+    private final LatencyHistogram batchExecution;
+    private final Map<TransferStatus, Counter> finishedTransfers = new EnumMap<>(TransferStatus.class);
+    private final AtomicInteger executionsInProgress = new AtomicInteger();
+
+    public TransferMetrics(MetricsRegistry registry) {
+        queueWait = registry.histogram("transfer_queue_wait_seconds",
+                "Time from submission of a unit of work to the start of its execution.");
+        transferExecution = registry.histogram("transfer_execution_seconds",
+                "Time a unit of work takes once it is executed.", "unit", "transfer");
+        batchExecution = registry.histogram("transfer_execution_seconds",
+                "Time a unit of work takes once it is executed.", "unit", "batch");
+        for (TransferStatus status : TransferStatus.values()) {
+            if (status.isTerminal()) {
+                finishedTransfers.put(status, registry.counter("transfers_finished_total",
+                        "Transfers which reached a terminal status, by the status.", "status", status.name()));
+            }
+        }
+        registry.gauge("transfer_executions_in_progress",
+                "Units of work being executed, threads of the transfer executor which are busy.",
+                executionsInProgress::get);
+    }
+
+    /**
+     * @param submittedNanos System.nanoTime() when the unit of work was submitted
+     * @return System.nanoTime() of the start, to be passed to transferExecuted or batchExecuted
+     */
+    long executionStarted(long submittedNanos) {
+        long startedNanos = System.nanoTime();
+        queueWait.recordNanos(startedNanos - submittedNanos);
+        executionsInProgress.incrementAndGet();
+        return startedNanos;
+    }
+
+    void transferExecuted(long startedNanos) {
+        executionsInProgress.decrementAndGet();
+        transferExecution.recordSince(startedNanos);
+    }
+
+    void batchExecuted(long startedNanos) {
+        executionsInProgress.decrementAndGet();
+        batchExecution.recordSince(startedNanos);
+    }
+
+    void transferFinished(TransferStatus status) {
+        finishedTransfers.get(status).increment();
+    }
+}
@@ -0,0 +1,63 @@
+package rd.transactions.managers;
+
+import rd.transactions.model.Transfer;
+import rd.transactions.model.TransferStatus;
+import rd.transactions.model.TransferStatusListener;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Pushes status changes of registered transfers to whoever waits for them, instead of being polled.
+ *
+ * Waiters for the terminal status of a transfer share one future, it exists only while somebody waits
+ *  and is removed when the transfer finishes. Subscribers see every change of every transfer.
+ * Both are notified on the thread which changed the status, they have to hand the work off without blocking.
+ */
+final class TransferNotifier implements TransferStatusListener {
+    private final ConcurrentHashMap<UUID, CompletableFuture<Transfer>> terminalWaiters = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<TransferStatusListener> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * @return future completed with the transfer once its status is terminal, completed already if it is
+     */
+    CompletableFuture<Transfer> whenTerminal(Transfer transfer) {
+        if (transfer.getTransferStatus().isTerminal()) {
+            return CompletableFuture.completedFuture(transfer);
+        }
+        CompletableFuture<Transfer> terminal = terminalWaiters.computeIfAbsent(
+                transfer.getTransferId(), id -> new CompletableFuture<>());
+        // the transfer may have finished before the future was there to be completed
+        if (transfer.getTransferStatus().isTerminal()) {
+            completeWaiters(transfer);
+        }
+        return terminal;
+    }
+
+    void subscribe(TransferStatusListener subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    void unsubscribe(TransferStatusListener subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    @Override
+    public void onStatusChange(Transfer transfer, TransferStatus previousStatus, TransferStatus newStatus) {
+        if (newStatus.isTerminal()) {
+            completeWaiters(transfer);
+        }
+        for (TransferStatusListener subscriber : subscribers) {
+            subscriber.onStatusChange(transfer, previousStatus, newStatus);
+        }
+    }
+
+    private void completeWaiters(Transfer transfer) {
+        CompletableFuture<Transfer> terminal = terminalWaiters.remove(transfer.getTransferId());
+        if (terminal != null) {
+            terminal.complete(transfer);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package rd.transactions.managers;
+
+import rd.transactions.model.Transfer;
+
+import java.util.List;
+
+/**
+ * Transfers matching TransferQuery, in the order of submission.
+ */
+public class TransferPage {
+    public static final long END = -1;
+
+    private final List<Transfer> transfers;
+    private final long nextCursor;
+
+    public TransferPage(List<Transfer> transfers, long nextCursor) {
+        this.transfers = transfers;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Transfer> getTransfers() {
+        return transfers;
+    }
+
+    /**
+     * @return cursor of the next page, END if there are no more matching transfers
+     */
+    public long getNextCursor() {
+        return nextCursor;
+    }
+}
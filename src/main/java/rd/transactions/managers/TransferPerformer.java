@@ -5,43 +5,91 @@ import org.slf4j.LoggerFactory;
 import rd.transactions.exceptions.AccountDoesNotExistException;
 import rd.transactions.exceptions.CurrenciesOfAccountsDifferException;
 import rd.transactions.exceptions.CurrencyOfSourceAccountDifferentThanTransferException;
+import rd.transactions.exceptions.JournalException;
 import rd.transactions.exceptions.NotEnoughCreditException;
+import rd.transactions.exceptions.TransferNotDurableException;
+import rd.transactions.journal.Journal;
+import rd.transactions.journal.NoOpJournal;
+import rd.transactions.journal.TransferStatusChangedRecord;
+import rd.transactions.metrics.MetricsRegistry;
 import rd.transactions.model.Transfer;
 import rd.transactions.model.TransferStatus;
 
+/**
+ * Performs a single transfer and sets its terminal status.
+ * A rejection is journaled and durable before it is visible, otherwise a transfer reported as rejected
+ *  could be performed again after a crash. COMPLETED is durable by the applied record already.
+ */
 public class TransferPerformer implements Runnable {
 
     private static final Logger logger = LoggerFactory.getLogger(TransferPerformer.class);
     private final Transfer transfer;
     private final AccountManager accountManager;
+    private final TransferMetrics metrics;
+    private final Journal journal;
+    private final long submittedAt = System.nanoTime();
 
     public TransferPerformer(Transfer transfer, AccountManager accountManager) {
+        this(transfer, accountManager, new TransferMetrics(new MetricsRegistry()));
+    }
+
+    public TransferPerformer(Transfer transfer, AccountManager accountManager, TransferMetrics metrics) {
+        this(transfer, accountManager, metrics, NoOpJournal.INSTANCE);
+    }
+
+    public TransferPerformer(Transfer transfer, AccountManager accountManager, TransferMetrics metrics,
+                             Journal journal) {
         this.transfer = transfer;
         this.accountManager = accountManager;
+        this.metrics = metrics;
+        this.journal = journal;
     }
 
     @Override
     public void run() {
+        long started = metrics.executionStarted(submittedAt);
+        try {
+            perform();
+        } finally {
+            metrics.transferExecuted(started);
+        }
+    }
+
+    private void perform() {
         transfer.updateTransferStatus(TransferStatus.PROCESSING);
         try {
             accountManager.performTransfer(transfer);
             transfer.updateTransferStatus(TransferStatus.COMPLETED);
         } catch (AccountDoesNotExistException ex) {
             logger.error("Account from transfer" + transfer.toString() + " does not exist", ex);
-            transfer.updateTransferStatus(TransferStatus.REJECTED_ONE_OF_ACCOUNTS_DOES_NOT_EXIST);
+            reject(TransferStatus.REJECTED_ONE_OF_ACCOUNTS_DOES_NOT_EXIST);
         } catch (NotEnoughCreditException ex) {
             logger.error("Transfer" + transfer.toString() + " not enough credit", ex);
-            transfer.updateTransferStatus(TransferStatus.REJECTED_NOT_ENOUGH_CREDIT_ON_SOURCE_ACCOUNT);
+            reject(TransferStatus.REJECTED_NOT_ENOUGH_CREDIT_ON_SOURCE_ACCOUNT);
         } catch (CurrenciesOfAccountsDifferException ex) {
             logger.error("Transfer" + transfer.toString() + " currencies differ", ex);
-            transfer.updateTransferStatus(TransferStatus.REJECTED_DIFFERENT_CURRENCIES);
+            reject(TransferStatus.REJECTED_DIFFERENT_CURRENCIES);
         } catch (CurrencyOfSourceAccountDifferentThanTransferException ex) {
             logger.error("Transfer" + transfer.toString() + " unsupported transfer currency", ex);
-            transfer.updateTransferStatus(TransferStatus.REJECTED_UNSUPPORTED_TRANSFER_CURRENCY);
+            reject(TransferStatus.REJECTED_UNSUPPORTED_TRANSFER_CURRENCY);
+        } catch (TransferNotDurableException ex) {
+            // money moved, so it is not a failure, restart decides from the journal whether it is COMPLETED
+            logger.error("Transfer" + transfer.toString() + " applied, but not journaled, it stays PROCESSING", ex);
         } catch (Throwable ex) {
             logger.error("Error during transfer processing.", ex);
-            transfer.updateTransferStatus(TransferStatus.INTERNAL_ERROR);
+            reject(TransferStatus.INTERNAL_ERROR);
+        }
+    }
+
+    private void reject(TransferStatus status) {
+        try {
+            journal.awaitDurable(journal.append(new TransferStatusChangedRecord(transfer.getTransferId(), status)));
+        } catch (JournalException ex) {
+            // not durable, so restart performs the transfer again, it must not be reported as rejected meanwhile
+            logger.error("Transfer" + transfer.toString() + " " + status + " not journaled, it stays PROCESSING", ex);
+            return;
         }
+        transfer.updateTransferStatus(status);
     }
 
     public Transfer getTransfer() {
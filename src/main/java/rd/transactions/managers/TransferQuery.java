@@ -0,0 +1,126 @@
+package rd.transactions.managers;
+
+import rd.transactions.model.AccountId;
+import rd.transactions.model.TransferStatus;
+
+import java.util.Optional;
+
+/**
+ * Criteria of GET /transfers, all of them have to match.
+ * Transfers are ordered by submission, a page starts at the cursor returned with the previous page.
+ */
+public class TransferQuery {
+    private final Optional<AccountId> sourceAccount;
+    private final Optional<AccountId> targetAccount;
+    private final Optional<TransferStatus> transferStatus;
+    private final long submittedFrom;
+    private final long submittedTo;
+    private final long cursor;
+    private final int limit;
+
+    private TransferQuery(Builder builder) {
+        this.sourceAccount = builder.sourceAccount;
+        this.targetAccount = builder.targetAccount;
+        this.transferStatus = builder.transferStatus;
+        this.submittedFrom = builder.submittedFrom;
+        this.submittedTo = builder.submittedTo;
+        this.cursor = builder.cursor;
+        this.limit = builder.limit;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Optional<AccountId> getSourceAccount() {
+        return sourceAccount;
+    }
+
+    public Optional<AccountId> getTargetAccount() {
+        return targetAccount;
+    }
+
+    public Optional<TransferStatus> getTransferStatus() {
+        return transferStatus;
+    }
+
+    /**
+     * @return epoch millis, transfers submitted earlier are skipped
+     */
+    public long getSubmittedFrom() {
+        return submittedFrom;
+    }
+
+    /**
+     * @return epoch millis, transfers submitted at this time or later are skipped
+     */
+    public long getSubmittedTo() {
+        return submittedTo;
+    }
+
+    public long getCursor() {
+        return cursor;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public static class Builder {
+        private Optional<AccountId> sourceAccount = Optional.empty();
+        private Optional<AccountId> targetAccount = Optional.empty();
+        private Optional<TransferStatus> transferStatus = Optional.empty();
+        private long submittedFrom = Long.MIN_VALUE;
+        private long submittedTo = Long.MAX_VALUE;
+        private long cursor = 0;
+        private int limit = 100;
+
+        private Builder() {
+        }
+
+        public Builder sourceAccount(AccountId sourceAccount) {
+            this.sourceAccount = Optional.of(sourceAccount);
+            return this;
+        }
+
+        public Builder targetAccount(AccountId targetAccount) {
+            this.targetAccount = Optional.of(targetAccount);
+            return this;
+        }
+
+        public Builder transferStatus(TransferStatus transferStatus) {
+            this.transferStatus = Optional.of(transferStatus);
+            return this;
+        }
+
+        public Builder submittedFrom(long submittedFrom) {
+            this.submittedFrom = submittedFrom;
+            return this;
+        }
+
+        public Builder submittedTo(long submittedTo) {
+            this.submittedTo = submittedTo;
+            return this;
+        }
+
+        public Builder cursor(long cursor) {
+            this.cursor = cursor;
+            return this;
+        }
+
+        public Builder limit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        public TransferQuery build() {
+            if (cursor < 0) {
+                throw new IllegalArgumentException("cursor must not be negative");
+            }
+            if (limit < 1) {
+                throw new IllegalArgumentException("limit must be positive");
+            }
+            return new TransferQuery(this);
+        }
+    }
+}
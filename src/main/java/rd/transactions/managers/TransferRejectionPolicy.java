@@ -0,0 +1,28 @@
+package rd.transactions.managers;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * What happens with a transfer submitted when the transfer queue is full.
+ */
+public enum TransferRejectionPolicy {
+    /**
+     * Transfer is rejected, the client is asked to retry later.
+     */
+    REJECT(new ThreadPoolExecutor.AbortPolicy()),
+    /**
+     * Transfer is processed by the submitting (http) thread, which slows down the client instead of rejecting it.
+     */
+    CALLER_RUNS(new ThreadPoolExecutor.CallerRunsPolicy());
+
+    private final RejectedExecutionHandler rejectedExecutionHandler;
+
+    TransferRejectionPolicy(RejectedExecutionHandler rejectedExecutionHandler) {
+        this.rejectedExecutionHandler = rejectedExecutionHandler;
+    }
+
+    public RejectedExecutionHandler getRejectedExecutionHandler() {
+        return rejectedExecutionHandler;
+    }
+}
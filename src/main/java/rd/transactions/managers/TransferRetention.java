@@ -0,0 +1,84 @@
+package rd.transactions.managers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rd.transactions.model.Transfer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Evicts finished transfers from memory of TransferManager, the oldest first,
+ *  when they are older than maxAgeMillis or when there are more than maxFinishedTransfers of them.
+ * Runs periodically on its own thread, a run evicts at most MAX_CHUNKS_PER_RUN chunks,
+ *  so a large backlog is worked off incrementally. Transfers are archived chunk by chunk, if there is an archive.
+ */
+public class TransferRetention implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(TransferRetention.class);
+    static final int TRANSFERS_PER_CHUNK = 1024;
+    private static final int MAX_CHUNKS_PER_RUN = 64;
+
+    private final TransferManager transferManager;
+    private final long maxAgeMillis;
+    private final int maxFinishedTransfers;
+
+    /**
+     * @param maxAgeMillis 0 if finished transfers are not evicted by age
+     * @param maxFinishedTransfers 0 if finished transfers are not evicted by count
+     */
+    public TransferRetention(TransferManager transferManager, long maxAgeMillis, int maxFinishedTransfers) {
+        this.transferManager = transferManager;
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxFinishedTransfers = maxFinishedTransfers;
+    }
+
+    /**
+     * Scheduled run, failure is logged and transfers which were not evicted stay in memory until the next run.
+     */
+    @Override
+    public void run() {
+        try {
+            evict(System.currentTimeMillis());
+        } catch (Exception ex) {
+            logger.error("Eviction of finished transfers failed", ex);
+        }
+    }
+
+    /**
+     * @param now epoch millis, age of transfers is measured from their terminal status until now
+     * @return number of evicted transfers
+     */
+    public int evict(long now) throws IOException {
+        int evicted = 0;
+        for (int chunks = 0; chunks < MAX_CHUNKS_PER_RUN; chunks++) {
+            List<Transfer> chunk = oldestToEvict(now);
+            if (chunk.isEmpty()) {
+                break;
+            }
+            transferManager.evict(chunk);
+            evicted += chunk.size();
+        }
+        if (evicted > 0) {
+            logger.debug("Evicted {} finished transfers", evicted);
+        }
+        return evicted;
+    }
+
+    private List<Transfer> oldestToEvict(long now) {
+        List<Transfer> chunk = new ArrayList<>();
+        int resident = transferManager.getResidentFinishedTransfers();
+        Iterator<TransferManager.FinishedTransfer> oldest = transferManager.getFinishedTransfers().iterator();
+        while (chunk.size() < TRANSFERS_PER_CHUNK && oldest.hasNext()) {
+            TransferManager.FinishedTransfer finished = oldest.next();
+            boolean tooMany = maxFinishedTransfers > 0 && resident - chunk.size() > maxFinishedTransfers;
+            boolean tooOld = maxAgeMillis > 0 && now - finished.finishedAt >= maxAgeMillis;
+            if (!tooMany && !tooOld) {
+                break;
+            }
+            chunk.add(finished.transfer);
+        }
+        return chunk;
+    }
+}
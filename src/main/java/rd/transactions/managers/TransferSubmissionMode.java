@@ -0,0 +1,13 @@
+package rd.transactions.managers;
+
+public enum TransferSubmissionMode {
+    /**
+     * Transfer is queued for the transfer executor, the response tells it is SUBMITTED.
+     */
+    ASYNC,
+    /**
+     * Transfer is performed on the thread which submits it, see TransferManager.performTransfer,
+     *  the response tells its terminal status.
+     */
+    SYNC
+}
@@ -0,0 +1,69 @@
+package rd.transactions.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations with fixed buckets, exported in seconds.
+ * Recording finds the bucket by a scan of BUCKET_BOUNDS and increments two adders, nothing is allocated.
+ * Buckets are read one by one, a scrape taken while durations are recorded may be off by those durations.
+ */
+public final class LatencyHistogram {
+    /**
+     * Upper bounds of the buckets in nanoseconds, from 10 microseconds to 10 seconds.
+     */
+    static final long[] BUCKET_BOUNDS = {
+            micros(10), micros(50), micros(100), micros(250), micros(500),
+            millis(1), millis(2), millis(5), millis(10), millis(25), millis(50), millis(100), millis(250), millis(500),
+            millis(1000), millis(2500), millis(5000), millis(10000)
+    };
+
+    // the last bucket counts durations above all bounds
+    private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void recordNanos(long nanos) {
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS.length && nanos > BUCKET_BOUNDS[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * Records time elapsed since the given System.nanoTime().
+     */
+    public void recordSince(long startNanos) {
+        recordNanos(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return number of durations in every bucket, not cumulative
+     */
+    long[] getBucketCounts() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    private static long micros(long micros) {
+        return TimeUnit.MICROSECONDS.toNanos(micros);
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,175 @@
+package rd.transactions.metrics;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Named metrics written in Prometheus text format (version 0.0.4).
+ *
+ * Metrics are registered once, when the components are wired, and the components keep them,
+ *  so recording does not look anything up. A metric with a label is one series of a family
+ *  sharing the name, every label value is registered up front.
+ * Gauges and function counters are read only when the metrics are written.
+ */
+public final class MetricsRegistry {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    public Counter counter(String name, String help) {
+        return counter(name, help, null, null);
+    }
+
+    public Counter counter(String name, String help, String labelName, String labelValue) {
+        Counter counter = new Counter();
+        register(name, help, "counter", labelName, labelValue, counter);
+        return counter;
+    }
+
+    /**
+     * Counter kept elsewhere, read when the metrics are written.
+     */
+    public void counter(String name, String help, LongSupplier value) {
+        register(name, help, "counter", null, null, value);
+    }
+
+    public void gauge(String name, String help, DoubleSupplier value) {
+        register(name, help, "gauge", null, null, value);
+    }
+
+    public LatencyHistogram histogram(String name, String help) {
+        return histogram(name, help, null, null);
+    }
+
+    public LatencyHistogram histogram(String name, String help, String labelName, String labelValue) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        register(name, help, "histogram", labelName, labelValue, histogram);
+        return histogram;
+    }
+
+    private synchronized void register(String name, String help, String type,
+                                       String labelName, String labelValue, Object metric) {
+        Family family = families.computeIfAbsent(name, key -> new Family(name, help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as " + family.type);
+        }
+        String labels = labelName == null ? "" : labelName + "=\"" + escape(labelValue) + "\"";
+        for (Series series : family.series) {
+            if (series.labels.equals(labels)) {
+                throw new IllegalArgumentException("Metric " + name + "{" + labels + "} is already registered");
+            }
+        }
+        family.series.add(new Series(labels, metric));
+    }
+
+    public void write(OutputStream output) throws IOException {
+        Writer writer = new OutputStreamWriter(output, UTF_8);
+        write(writer);
+        writer.flush();
+    }
+
+    public void write(Writer writer) throws IOException {
+        List<Family> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(families.size());
+            for (Family family : families.values()) {
+                snapshot.add(family.copy());
+            }
+        }
+        for (Family family : snapshot) {
+            writer.write("# HELP " + family.name + " " + family.help + "\n");
+            writer.write("# TYPE " + family.name + " " + family.type + "\n");
+            for (Series series : family.series) {
+                writeSeries(writer, family.name, series);
+            }
+        }
+    }
+
+    private static void writeSeries(Writer writer, String name, Series series) throws IOException {
+        Object metric = series.metric;
+        if (metric instanceof Counter) {
+            writeSample(writer, name, series.labels, Long.toString(((Counter) metric).get()));
+        } else if (metric instanceof LongSupplier) {
+            writeSample(writer, name, series.labels, Long.toString(((LongSupplier) metric).getAsLong()));
+        } else if (metric instanceof DoubleSupplier) {
+            writeSample(writer, name, series.labels, format(((DoubleSupplier) metric).getAsDouble()));
+        } else {
+            LatencyHistogram histogram = (LatencyHistogram) metric;
+            long[] counts = histogram.getBucketCounts();
+            String separator = series.labels.isEmpty() ? "" : ",";
+            long cumulative = 0;
+            for (int i = 0; i < LatencyHistogram.BUCKET_BOUNDS.length; i++) {
+                cumulative += counts[i];
+                String bound = format(LatencyHistogram.BUCKET_BOUNDS[i] / NANOS_PER_SECOND);
+                writeSample(writer, name + "_bucket", series.labels + separator + "le=\"" + bound + "\"",
+                        Long.toString(cumulative));
+            }
+            cumulative += counts[counts.length - 1];
+            writeSample(writer, name + "_bucket", series.labels + separator + "le=\"+Inf\"", Long.toString(cumulative));
+            writeSample(writer, name + "_sum", series.labels, format(histogram.getSumNanos() / NANOS_PER_SECOND));
+            writeSample(writer, name + "_count", series.labels, Long.toString(cumulative));
+        }
+    }
+
+    private static void writeSample(Writer writer, String name, String labels, String value) throws IOException {
+        writer.write(name);
+        if (!labels.isEmpty()) {
+            writer.write("{" + labels + "}");
+        }
+        writer.write(" " + value + "\n");
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        return Double.toString(value);
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static final class Family {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final List<Series> series = new ArrayList<>();
+
+        private Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+
+        private Family copy() {
+            Family copy = new Family(name, help, type);
+            copy.series.addAll(series);
+            return copy;
+        }
+    }
+
+    private static final class Series {
+        private final String labels;
+        private final Object metric;
+
+        private Series(String labels, Object metric) {
+            this.labels = labels;
+            this.metric = metric;
+        }
+    }
+}
@@ -2,8 +2,13 @@ package rd.transactions.model;
 
 import java.util.Objects;
 
+/**
+ * The hash code is computed once, account ids are used as keys of hash maps on every lookup of an account.
+ * Ids are plain values, there is no process-wide registry of them, each store indexes its own accounts.
+ */
 public class AccountId {
     private final String id;
+    private final int hash;
 
     public static AccountId of(String id) {
         return new AccountId(id);
@@ -11,6 +16,7 @@ public class AccountId {
 
     private AccountId(String id) {
         this.id = id;
+        this.hash = Objects.hashCode(id);
     }
 
     public String getId() {
@@ -29,11 +35,11 @@ public class AccountId {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         AccountId accountId = (AccountId) o;
-        return id.equals(accountId.id);
+        return hash == accountId.hash && Objects.equals(id, accountId.id);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id);
+        return hash;
     }
 }
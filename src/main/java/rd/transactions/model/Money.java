@@ -8,30 +8,49 @@ import java.util.Objects;
 /**
  * This class represents amount of money to be used in operations.
  * It may represent negative amount.
+ *
+ * Amount is stored as a number of minor units of the currency (e.g. cents for EUR),
+ *  BigDecimal is used only when money enters or leaves the system.
+ * Arithmetic operations throw ArithmeticException instead of silently overflowing.
  */
 public class Money {
 
     private static final RoundingMode DEFAULT_ROUNDING = RoundingMode.HALF_EVEN;
     private static final Currency EURO = Currency.getInstance("EUR");
 
-    private final BigDecimal amount;
+    private final long minorUnits;
     private final Currency currency;
 
     public static Money euros(BigDecimal amount) {
-        return new Money(amount, EURO);
+        return of(amount, EURO);
     }
 
+    /**
+     * Amount is rounded to the precision supported by the currency.
+     * @throws ArithmeticException if amount does not fit into the supported range
+     */
     public static Money of(BigDecimal amount, Currency currency) {
-        return new Money(amount, currency);
+        long minorUnits = amount.setScale(currency.getDefaultFractionDigits(), DEFAULT_ROUNDING)
+                .unscaledValue()
+                .longValueExact();
+        return new Money(minorUnits, currency);
     }
 
-    private Money(BigDecimal amount, Currency currency) {
+    public static Money ofMinorUnits(long minorUnits, Currency currency) {
+        return new Money(minorUnits, currency);
+    }
+
+    private Money(long minorUnits, Currency currency) {
+        this.minorUnits = minorUnits;
         this.currency = currency;
-        this.amount = amount.setScale(currency.getDefaultFractionDigits(), DEFAULT_ROUNDING);
     }
 
     public BigDecimal getAmount() {
-        return amount;
+        return BigDecimal.valueOf(minorUnits, currency.getDefaultFractionDigits());
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
     }
 
     public Currency getCurrency() {
@@ -40,16 +59,16 @@ public class Money {
 
     public Money add(Money value) {
         return new Money(
-                amount.add(value.getAmount()),
+                Math.addExact(minorUnits, value.getMinorUnits()),
                 currency);
     }
 
     public boolean isNegative() {
-        return amount.compareTo(BigDecimal.ZERO) < 0;
+        return minorUnits < 0;
     }
 
     public Money negate() {
-        return new Money(amount.negate(), currency);
+        return new Money(Math.negateExact(minorUnits), currency);
     }
 
     @Override
@@ -57,19 +76,19 @@ public class Money {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Money money = (Money) o;
-        return amount.equals(money.amount) &&
-                currency.equals(money.currency);
+        return minorUnits == money.minorUnits &&
+                Objects.equals(currency, money.currency);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(amount, currency);
+        return 31 * Long.hashCode(minorUnits) + Objects.hashCode(currency);
     }
 
     @Override
     public String toString() {
         return "Money{" +
-                "amount=" + amount +
+                "amount=" + getAmount() +
                 ", currency=" + currency +
                 '}';
     }
@@ -10,6 +10,7 @@ public class Transfer {
     private final Money transferredAmount;
     private final UUID transferId;
     private AtomicReference<TransferStatus> transferStatus = new AtomicReference<>(TransferStatus.SUBMITTED);
+    private volatile TransferStatusListener statusListener = TransferStatusListener.NONE;
 
     public static Transfer of(
             AccountId sourceAccount, AccountId targetAccount, Money transferredAmount, UUID transferId) {
@@ -44,7 +45,15 @@ public class Transfer {
     }
 
     public void updateTransferStatus(TransferStatus transferStatus) {
-        this.transferStatus.set(transferStatus);
+        TransferStatus previousStatus = this.transferStatus.getAndSet(transferStatus);
+        statusListener.onStatusChange(this, previousStatus, transferStatus);
+    }
+
+    /**
+     * Listener is notified synchronously, on the thread which updates the status.
+     */
+    public void setStatusListener(TransferStatusListener statusListener) {
+        this.statusListener = statusListener;
     }
 
     @Override
@@ -8,5 +8,13 @@ public enum TransferStatus {
     REJECTED_NOT_ENOUGH_CREDIT_ON_SOURCE_ACCOUNT,
     REJECTED_DIFFERENT_CURRENCIES,
     REJECTED_UNSUPPORTED_TRANSFER_CURRENCY,
-    INTERNAL_ERROR
+    REJECTED_BATCH_ABORTED,
+    INTERNAL_ERROR;
+
+    /**
+     * Terminal status is never changed again.
+     */
+    public boolean isTerminal() {
+        return this != SUBMITTED && this != PROCESSING;
+    }
 }
@@ -0,0 +1,8 @@
+package rd.transactions.model;
+
+@FunctionalInterface
+public interface TransferStatusListener {
+    TransferStatusListener NONE = (transfer, previousStatus, newStatus) -> { };
+
+    void onStatusChange(Transfer transfer, TransferStatus previousStatus, TransferStatus newStatus);
+}
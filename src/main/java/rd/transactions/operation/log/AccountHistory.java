@@ -0,0 +1,69 @@
+package rd.transactions.operation.log;
+
+import java.util.Arrays;
+
+/**
+ * Amounts (in minor units) and timestamps of all operations of one account, in order.
+ * Entries are appended to the hot tail, a full tail is sealed into a segment by HistoryStorage,
+ *  so heap used by a long history is the compact segments (or only their positions when they are spilled)
+ *  plus at most one segment worth of tail.
+ * Timestamps never go backwards, so entries of a time range are adjacent.
+ * Not thread-safe, it is guarded by the lock of the account. Views taken under the lock can be read without it.
+ */
+final class AccountHistory {
+    private static final int INITIAL_TAIL_CAPACITY = 4;
+    private static final int INITIAL_SEALED_CAPACITY = 4;
+
+    private final HistoryStorage storage;
+    // slots below sealedCount are never changed, views share the array
+    private HistorySegment[] sealed = new HistorySegment[INITIAL_SEALED_CAPACITY];
+    private int sealedCount;
+    private long[] tailAmounts;
+    private long[] tailTimestamps;
+    private int tailSize;
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    AccountHistory(HistoryStorage storage) {
+        this.storage = storage;
+        resetTail();
+    }
+
+    void append(long amount, long timestamp) {
+        if (tailSize == tailAmounts.length) {
+            int capacity = Math.min(tailAmounts.length * 2, storage.getSegmentSize());
+            tailAmounts = Arrays.copyOf(tailAmounts, capacity);
+            tailTimestamps = Arrays.copyOf(tailTimestamps, capacity);
+        }
+        lastTimestamp = Math.max(lastTimestamp, timestamp);
+        tailAmounts[tailSize] = amount;
+        tailTimestamps[tailSize] = lastTimestamp;
+        tailSize++;
+        if (tailSize == storage.getSegmentSize()) {
+            if (sealedCount == sealed.length) {
+                // a new array, views keep reading the old one
+                sealed = Arrays.copyOf(sealed, sealed.length * 2);
+            }
+            sealed[sealedCount++] = storage.seal(tailAmounts, tailTimestamps, tailSize);
+            resetTail();
+        }
+    }
+
+    long size() {
+        return (long) sealedCount * storage.getSegmentSize() + tailSize;
+    }
+
+    /**
+     * Sealed segments are shared, only the tail (at most one segment) is copied.
+     */
+    HistoryView view() {
+        return new HistoryView(storage, sealed, sealedCount, new HistoryColumns(
+                Arrays.copyOf(tailAmounts, tailSize), Arrays.copyOf(tailTimestamps, tailSize), tailSize));
+    }
+
+    private void resetTail() {
+        int capacity = Math.min(INITIAL_TAIL_CAPACITY, storage.getSegmentSize());
+        tailAmounts = new long[capacity];
+        tailTimestamps = new long[capacity];
+        tailSize = 0;
+    }
+}
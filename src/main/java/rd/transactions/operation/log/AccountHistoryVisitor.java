@@ -0,0 +1,14 @@
+package rd.transactions.operation.log;
+
+/**
+ * Receives entries of account history.
+ */
+@FunctionalInterface
+public interface AccountHistoryVisitor {
+    /**
+     * @param index position of the entry in the history, 0 is the initial balance
+     * @param timestamp epoch millis when the entry was appended
+     * @param amount signed amount in minor units of the account currency
+     */
+    void visit(long index, long timestamp, long amount);
+}
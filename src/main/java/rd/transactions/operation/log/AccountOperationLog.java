@@ -1,71 +1,365 @@
 package rd.transactions.operation.log;
 
+import rd.transactions.journal.AccountSnapshot;
 import rd.transactions.model.Account;
 import rd.transactions.model.AccountId;
 import rd.transactions.model.Money;
 import rd.transactions.validators.BalanceValidator;
 
-import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Currency;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 
 /**
  * This class represents transaction log for particular account
  * Entry addition is checked against balance validator to guarantee that the account is always in valid state
+ *
+ * Current balance is kept as running total updated together with each appended entry,
+ *  so balance checks do not depend on length of the history.
+ * History is kept in compact segments (see HistoryStorage), entry objects are created only when it is read.
  */
 public class AccountOperationLog {
+    private static final AtomicLong lockOrderSequence = new AtomicLong();
+    private static final LongSupplier NOT_JOURNALED = () -> 0;
+
+    // logs are always locked in ascending lockOrder, this makes multi-log operations deadlock-free
+    private final long lockOrder = lockOrderSequence.incrementAndGet();
+    private final ReentrantLock lock = new ReentrantLock();
     private final AccountId accountId;
     private final Currency currency;
-    private final List<AccountOperationLogEntry> entries;
+    private final AccountHistory history;
+    // in minor units of the currency, written only under the log's lock,
+    // volatile so that readers do not have to take the lock
+    private volatile long balance;
+    // sequence number of the last journal record reflected in the balance, guarded by lock
+    private long journalSequence;
 
     public AccountOperationLog(Account account) {
+        this(account, 0);
+    }
+
+    /**
+     * @param journalSequence sequence number of the last journal record reflected in the account's balance
+     */
+    public AccountOperationLog(Account account, long journalSequence) {
+        this(account, journalSequence, HistoryStorage.defaults());
+    }
+
+    /**
+     * @param historyStorage keeps sealed segments of the history
+     */
+    public AccountOperationLog(Account account, long journalSequence, HistoryStorage historyStorage) {
+        AccountAdditionLogEntry initialEntry = new AccountAdditionLogEntry(account.getBalance());
         this.accountId = account.getId();
-        this.currency = account.getCurrency();
-        this.entries = new ArrayList<>(
-                Collections.singleton(
-                        new AccountAdditionLogEntry(account.getBalance())));
+        this.currency = account.getBalance().getCurrency();
+        this.history = new AccountHistory(historyStorage);
+        this.history.append(initialEntry.getOperationValue().getMinorUnits(), System.currentTimeMillis());
+        this.balance = initialEntry.getOperationValue().getMinorUnits();
+        this.journalSequence = journalSequence;
     }
 
     public Account materializeAsAccount() {
-        return Account.of(accountId, getBalance());
+        return Account.of(accountId, Money.ofMinorUnits(balance, currency));
     }
 
     /**
      * @return true if operation is successfully applied, false if amount of subtractive operation exceeds balance
      */
-    public synchronized boolean addEntry(
+    public boolean addEntry(
             AccountOperationLogEntry operation, BalanceValidator balanceValidator) {
-        if (!isBalanceAllowedAfterOperation(operation, balanceValidator)) {
-            return false;
+        lock.lock();
+        try {
+            long balanceAfterOperation = Math.addExact(balance, operation.getOperationValue().getMinorUnits());
+            if (!balanceValidator.isBalanceAllowed(balanceAfterOperation, currency)) {
+                return false;
+            }
+            append(operation, balanceAfterOperation);
+            return true;
+        } finally {
+            lock.unlock();
         }
-        entries.add(operation);
-        return true;
     }
 
     /**
      * Addition of money is always allowed, and guaranteed to be successful
      */
-    public synchronized void addEntry(
+    public void addEntry(
             AccountAdditionLogEntry operation) {
-        entries.add(operation);
+        lock.lock();
+        try {
+            append(operation, Math.addExact(balance, operation.getOperationValue().getMinorUnits()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves money from source log to target log as a single atomic operation,
+     *  nobody can observe the debit without the credit.
+     * Locks of both logs are taken in a deterministic order, so transfers in opposite directions cannot deadlock.
+     * @return true if transfer is applied, false if balance of source after debit is not allowed,
+     *  in such case none of the logs is modified
+     */
+    public static boolean transfer(
+            AccountOperationLog source, AccountOperationLog target,
+            Money amount, BalanceValidator balanceValidator) {
+        return transfer(source, target, amount, balanceValidator, NOT_JOURNALED);
+    }
+
+    /**
+     * Same as transfer above, journalAppender is called under the locks once the transfer is validated.
+     * It returns sequence number of the journal record, which is remembered by both logs,
+     *  so that a snapshot knows which records are already reflected in the balances.
+     */
+    public static boolean transfer(
+            AccountOperationLog source, AccountOperationLog target,
+            Money amount, BalanceValidator balanceValidator, LongSupplier journalAppender) {
+        AccountOperationLog first = source.lockOrder <= target.lockOrder ? source : target;
+        AccountOperationLog second = first == source ? target : source;
+        first.lock.lock();
+        second.lock.lock();
+        try {
+            return transferUnderLock(source, target, amount, balanceValidator, journalAppender);
+        } finally {
+            second.lock.unlock();
+            first.lock.unlock();
+        }
+    }
+
+    /**
+     * Applies a group of transfers all-or-nothing, i-th transfer moves amounts[i] from sources[i] to targets[i].
+     * Locks of all involved logs are taken in a deterministic order and the whole group is validated
+     *  (in the given order) before anything is appended.
+     * @return -1 if all transfers are applied, otherwise index of the first transfer
+     *  making balance of its source invalid, in such case none of the logs is modified
+     */
+    public static int transferAll(
+            List<AccountOperationLog> sources, List<AccountOperationLog> targets,
+            List<Money> amounts, BalanceValidator balanceValidator) {
+        return transferAll(sources, targets, amounts, balanceValidator, NOT_JOURNALED);
+    }
+
+    /**
+     * Same as transferAll above, journalAppender is called under the locks once the group is validated.
+     */
+    public static int transferAll(
+            List<AccountOperationLog> sources, List<AccountOperationLog> targets,
+            List<Money> amounts, BalanceValidator balanceValidator, LongSupplier journalAppender) {
+        Set<AccountOperationLog> involved = Collections.newSetFromMap(new IdentityHashMap<>());
+        involved.addAll(sources);
+        involved.addAll(targets);
+        List<AccountOperationLog> lockingOrder = new ArrayList<>(involved);
+        lockingOrder.sort(Comparator.comparingLong(log -> log.lockOrder));
+
+        lockingOrder.forEach(log -> log.lock.lock());
+        try {
+            return transferAllUnderLock(sources, targets, amounts, balanceValidator, journalAppender, involved);
+        } finally {
+            for (int i = lockingOrder.size() - 1; i >= 0; i--) {
+                lockingOrder.get(i).lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Passes accounts of all the logs as they were at one point in time, a transfer between them is seen
+     *  either on both accounts or on none of them.
+     * All logs are locked in ascending lockOrder, like by transfers, while their balances are copied,
+     *  transfers of the logs wait meanwhile. The consumer is called after the locks are released.
+     */
+    public static void forEachAtomically(Collection<AccountOperationLog> logs, Consumer<Account> consumer) {
+        List<AccountOperationLog> lockingOrder = new ArrayList<>(logs);
+        lockingOrder.sort(Comparator.comparingLong(log -> log.lockOrder));
+        long[] balances = new long[lockingOrder.size()];
+
+        int locked = 0;
+        try {
+            for (AccountOperationLog log : lockingOrder) {
+                log.lock.lock();
+                locked++;
+            }
+            for (int i = 0; i < balances.length; i++) {
+                balances[i] = lockingOrder.get(i).balance;
+            }
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                lockingOrder.get(i).lock.unlock();
+            }
+        }
+        for (int i = 0; i < balances.length; i++) {
+            AccountOperationLog log = lockingOrder.get(i);
+            consumer.accept(Account.of(log.accountId, Money.ofMinorUnits(balances[i], log.currency)));
+        }
+    }
+
+    private static int transferAllUnderLock(
+            List<AccountOperationLog> sources, List<AccountOperationLog> targets,
+            List<Money> amounts, BalanceValidator balanceValidator,
+            LongSupplier journalAppender, Set<AccountOperationLog> involved) {
+        Map<AccountOperationLog, Long> balancesAfter = new IdentityHashMap<>();
+        for (int i = 0; i < amounts.size(); i++) {
+            AccountOperationLog source = sources.get(i);
+            AccountOperationLog target = targets.get(i);
+            long amount = amounts.get(i).getMinorUnits();
+
+            long sourceAfterDebit = Math.subtractExact(balancesAfter.getOrDefault(source, source.balance), amount);
+            if (!balanceValidator.isBalanceAllowed(sourceAfterDebit, source.currency)) {
+                return i;
+            }
+            balancesAfter.put(source, sourceAfterDebit);
+            balancesAfter.put(target, Math.addExact(balancesAfter.getOrDefault(target, target.balance), amount));
+        }
+        // journaled before anything is appended, failure of the journal leaves the logs untouched
+        long sequence = journalAppender.getAsLong();
+        involved.forEach(log -> log.journalSequence = Math.max(log.journalSequence, sequence));
+        // every intermediate balance was checked above, so nothing below can fail half-way
+        for (int i = 0; i < amounts.size(); i++) {
+            AccountOperationLog source = sources.get(i);
+            AccountOperationLog target = targets.get(i);
+            AccountSubtractionLogEntry debit = new AccountSubtractionLogEntry(amounts.get(i));
+            AccountAdditionLogEntry credit = new AccountAdditionLogEntry(amounts.get(i));
+            source.append(debit, source.balance + debit.getOperationValue().getMinorUnits());
+            target.append(credit, target.balance + credit.getOperationValue().getMinorUnits());
+        }
+        return -1;
+    }
+
+    private static boolean transferUnderLock(
+            AccountOperationLog source, AccountOperationLog target,
+            Money amount, BalanceValidator balanceValidator, LongSupplier journalAppender) {
+        AccountSubtractionLogEntry debit = new AccountSubtractionLogEntry(amount);
+        AccountAdditionLogEntry credit = new AccountAdditionLogEntry(amount);
+
+        long sourceAfterDebit = Math.addExact(source.balance, debit.getOperationValue().getMinorUnits());
+        if (!balanceValidator.isBalanceAllowed(sourceAfterDebit, source.currency)) {
+            return false;
+        }
+        // computed before anything is appended, so an overflow leaves both logs untouched
+        long targetAfterCredit = source == target
+                ? Math.addExact(sourceAfterDebit, credit.getOperationValue().getMinorUnits())
+                : Math.addExact(target.balance, credit.getOperationValue().getMinorUnits());
+
+        // journaled before anything is appended, failure of the journal leaves the logs untouched
+        long sequence = journalAppender.getAsLong();
+        source.journalSequence = Math.max(source.journalSequence, sequence);
+        target.journalSequence = Math.max(target.journalSequence, sequence);
+        source.append(debit, sourceAfterDebit);
+        target.append(credit, targetAfterCredit);
+        return true;
+    }
+
+    /**
+     * Applies entries of one journal record unless the record is already reflected in the balance.
+     * Balance is not validated, it was validated before the record was journaled.
+     */
+    public void replayEntries(List<AccountOperationLogEntry> operations, long sequence) {
+        lock.lock();
+        try {
+            if (sequence > journalSequence) {
+                for (AccountOperationLogEntry operation : operations) {
+                    append(operation, Math.addExact(balance, operation.getOperationValue().getMinorUnits()));
+                }
+                journalSequence = sequence;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Balance and journal sequence read consistently, other accounts can be modified meanwhile.
+     */
+    public AccountSnapshot snapshot() {
+        lock.lock();
+        try {
+            return new AccountSnapshot(materializeAsAccount(), journalSequence);
+        } finally {
+            lock.unlock();
+        }
     }
 
     public Currency getCurrency() {
         return currency;
     }
 
-    private boolean isBalanceAllowedAfterOperation(AccountOperationLogEntry operation, BalanceValidator balanceValidator) {
-        Money balance = getBalance();
-        BigDecimal balanceAfterOperation = balance.add(operation.getOperationValue()).getAmount();
-        return balanceValidator.isBalanceAllowed(balanceAfterOperation);
+    /**
+     * @return copy of the whole history of the account, for audit purposes
+     */
+    public List<AccountOperationLogEntry> getEntries() {
+        return getEntries(0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Page of the history, segments spilled to the disk are read back.
+     * @param from index of the first entry, 0 is the initial balance
+     * @return at most limit entries, fewer at the end of the history
+     */
+    public List<AccountOperationLogEntry> getEntries(long from, int limit) {
+        List<AccountOperationLogEntry> page = new ArrayList<>();
+        readHistory(from, limit, Long.MIN_VALUE, Long.MAX_VALUE,
+                (index, timestamp, amount) -> page.add(toEntry(amount)));
+        return page;
+    }
+
+    /**
+     * Passes a page of the history to the visitor, entries are ordered by index and time.
+     * The lock is held only to take a view of the history (sealed segments are shared, at most one segment is copied),
+     *  so a long read does not stop transfers of the account. Entries appended meanwhile are not part of the page.
+     * @param from index of the first entry to read, 0 is the initial balance
+     * @param fromTimestamp entries older than this epoch millis are skipped
+     * @param toTimestamp reading stops at the first entry not older than this epoch millis
+     * @return index where the next page starts, -1 if there are no more entries in the time range
+     */
+    public long readHistory(long from, int limit, long fromTimestamp, long toTimestamp, AccountHistoryVisitor visitor) {
+        HistoryView view;
+        lock.lock();
+        try {
+            view = history.view();
+        } finally {
+            lock.unlock();
+        }
+        return view.read(from, limit, fromTimestamp, toTimestamp, visitor);
+    }
+
+    public long getEntryCount() {
+        lock.lock();
+        try {
+            return history.size();
+        } finally {
+            lock.unlock();
+        }
     }
 
-    private Money getBalance() {
-        return entries.stream()
-                .map(AccountOperationLogEntry::getOperationValue)
-                .reduce(Money::add)
-                .orElseThrow(() -> new RuntimeException("Account history should have at least one element."));
+    private AccountOperationLogEntry toEntry(long amount) {
+        return amount >= 0
+                ? new AccountAdditionLogEntry(Money.ofMinorUnits(amount, currency))
+                : new AccountSubtractionLogEntry(Money.ofMinorUnits(-amount, currency));
+    }
+
+    /**
+     * Re-derives balance from the whole history and compares it with the running balance.
+     * This is O(n) in history length, so it is meant for self-checks, not for the hot path.
+     */
+    public boolean isBalanceConsistent() {
+        lock.lock();
+        try {
+            return recalculateBalance() == balance;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void append(AccountOperationLogEntry operation, long balanceAfterOperation) {
+        history.append(operation.getOperationValue().getMinorUnits(), System.currentTimeMillis());
+        balance = balanceAfterOperation;
+    }
+
+    private long recalculateBalance() {
+        if (history.size() == 0) {
+            throw new RuntimeException("Account history should have at least one element.");
+        }
+        return history.view().sum();
     }
 }
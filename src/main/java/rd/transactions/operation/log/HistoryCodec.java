@@ -0,0 +1,66 @@
+package rd.transactions.operation.log;
+
+import java.util.Arrays;
+
+/**
+ * Compact encoding of a sealed history segment, columns follow each other:
+ *  amounts (in minor units) as zig-zag varints, typical amounts take 2-4 bytes instead of an entry object,
+ *  timestamps (epoch millis) as zig-zag varint of the difference to the previous one, usually 1-2 bytes.
+ */
+final class HistoryCodec {
+    private static final int MAX_VARINT_BYTES = 10;
+
+    private HistoryCodec() {
+    }
+
+    static byte[] encode(long[] amounts, long[] timestamps, int count) {
+        byte[] buffer = new byte[count * MAX_VARINT_BYTES * 2];
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            position = writeVarint(buffer, position, amounts[i]);
+        }
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            position = writeVarint(buffer, position, timestamps[i] - previous);
+            previous = timestamps[i];
+        }
+        return Arrays.copyOf(buffer, position);
+    }
+
+    static HistoryColumns decode(byte[] data, int count) {
+        long[] amounts = new long[count];
+        long[] timestamps = new long[count];
+        int[] position = {0};
+        for (int i = 0; i < count; i++) {
+            amounts[i] = readVarint(data, position);
+        }
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += readVarint(data, position);
+            timestamps[i] = previous;
+        }
+        return new HistoryColumns(amounts, timestamps, count);
+    }
+
+    private static int writeVarint(byte[] buffer, int position, long signedValue) {
+        long value = (signedValue << 1) ^ (signedValue >> 63);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    private static long readVarint(byte[] data, int[] position) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,16 @@
+package rd.transactions.operation.log;
+
+/**
+ * Decoded entries of a history segment, i-th entry is amounts[i] applied at timestamps[i].
+ */
+final class HistoryColumns {
+    final long[] amounts;
+    final long[] timestamps;
+    final int count;
+
+    HistoryColumns(long[] amounts, long[] timestamps, int count) {
+        this.amounts = amounts;
+        this.timestamps = timestamps;
+        this.count = count;
+    }
+}
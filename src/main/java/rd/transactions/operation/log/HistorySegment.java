@@ -0,0 +1,65 @@
+package rd.transactions.operation.log;
+
+/**
+ * Sealed segment of account history, either encoded data on the heap or its location in the spill file.
+ * Time span of the segment stays on the heap, so a time range can be found without reading the segment.
+ * Segment is sealed on the heap and may be spilled later, once, it is never changed otherwise.
+ */
+final class HistorySegment {
+    // dropped when the segment is spilled, position is written before, so whoever sees null sees the position
+    private volatile byte[] data;
+    private long position;
+    private final int length;
+    private final int count;
+    private final long firstTimestamp;
+    private final long lastTimestamp;
+
+    static HistorySegment resident(byte[] data, int count, long firstTimestamp, long lastTimestamp) {
+        return new HistorySegment(data, -1, data.length, count, firstTimestamp, lastTimestamp);
+    }
+
+    private HistorySegment(byte[] data, long position, int length, int count,
+                           long firstTimestamp, long lastTimestamp) {
+        this.data = data;
+        this.position = position;
+        this.length = length;
+        this.count = count;
+        this.firstTimestamp = firstTimestamp;
+        this.lastTimestamp = lastTimestamp;
+    }
+
+    /**
+     * Segment data was written to the spill file at the position, it is read from there from now on.
+     */
+    void spilled(long position) {
+        this.position = position;
+        this.data = null;
+    }
+
+    /**
+     * @return encoded data, null if the segment is spilled
+     */
+    byte[] getData() {
+        return data;
+    }
+
+    long getPosition() {
+        return position;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    long getFirstTimestamp() {
+        return firstTimestamp;
+    }
+
+    long getLastTimestamp() {
+        return lastTimestamp;
+    }
+}
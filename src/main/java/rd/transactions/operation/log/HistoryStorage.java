@@ -0,0 +1,187 @@
+package rd.transactions.operation.log;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardOpenOption.DELETE_ON_CLOSE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Keeps sealed segments of account histories, it is shared by all accounts and thread-safe.
+ * History is split into segments of fixed number of entries, full segments are sealed in compact encoding.
+ * Sealed segments stay on the heap, or with a spill file they are written to the disk
+ *  and only their position is kept, they are read back when the history is read.
+ *
+ * Segments are sealed under the lock of the account, so sealing never touches the disk.
+ *  A single spill thread writes sealed segments afterwards and drops their data from the heap,
+ *  until then they are read from the heap. Threads holding account locks never write the file,
+ *  so their interruption cannot close the shared channel.
+ *
+ * The spill file lives as long as the application, history is not restored after restart.
+ */
+public class HistoryStorage implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(HistoryStorage.class);
+
+    public static final int DEFAULT_SEGMENT_SIZE = 512;
+    private static final HistoryStorage DEFAULT = new HistoryStorage(DEFAULT_SEGMENT_SIZE, null, null);
+
+    private final int segmentSize;
+    private final Path spillFile;
+    private final FileChannel spillChannel;
+    private final ExecutorService spillExecutor;
+    private final AtomicLong spillPosition = new AtomicLong();
+    private final AtomicLong sealedSegments = new AtomicLong();
+
+    /**
+     * Sealed segments are kept on the heap, segments of DEFAULT_SEGMENT_SIZE entries.
+     */
+    public static HistoryStorage defaults() {
+        return DEFAULT;
+    }
+
+    public static HistoryStorage inMemory(int segmentSize) {
+        return new HistoryStorage(segmentSize, null, null);
+    }
+
+    /**
+     * Sealed segments are written to a new file in the directory, the file is deleted when the storage is closed.
+     */
+    public static HistoryStorage spilling(int segmentSize, Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Path file = Files.createTempFile(directory, "history-", ".spill");
+        return new HistoryStorage(segmentSize, file, FileChannel.open(file, READ, WRITE, DELETE_ON_CLOSE));
+    }
+
+    private HistoryStorage(int segmentSize, Path spillFile, FileChannel spillChannel) {
+        if (segmentSize < 1) {
+            throw new IllegalArgumentException("History segment size has to be positive.");
+        }
+        this.segmentSize = segmentSize;
+        this.spillFile = spillFile;
+        this.spillChannel = spillChannel;
+        this.spillExecutor = spillChannel == null ? null : Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "history-spill");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public boolean isSpilling() {
+        return spillChannel != null;
+    }
+
+    public long getSealedSegments() {
+        return sealedSegments.get();
+    }
+
+    public long getSpilledBytes() {
+        return spillPosition.get();
+    }
+
+    /**
+     * Called under the lock of the account, the segment is spilled later by the spill thread.
+     */
+    HistorySegment seal(long[] amounts, long[] timestamps, int count) {
+        HistorySegment segment = HistorySegment.resident(
+                HistoryCodec.encode(amounts, timestamps, count), count, timestamps[0], timestamps[count - 1]);
+        sealedSegments.incrementAndGet();
+        if (spillExecutor != null) {
+            try {
+                spillExecutor.execute(() -> spill(segment));
+            } catch (RejectedExecutionException ex) {
+                // storage is closed, the segment stays on the heap
+            }
+        }
+        return segment;
+    }
+
+    private void spill(HistorySegment segment) {
+        byte[] data = segment.getData();
+        long position = spillPosition.get();
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                spillChannel.write(buffer, position + buffer.position());
+            }
+            spillPosition.addAndGet(data.length);
+            segment.spilled(position);
+        } catch (IOException ex) {
+            // history must not be lost, the segment stays on the heap
+            logger.error("History segment cannot be written to {}", spillFile, ex);
+        }
+    }
+
+    /**
+     * Blocks until segments sealed so far are spilled (or failed to be), used by tests.
+     */
+    void awaitSpilled() throws InterruptedException {
+        if (spillExecutor == null) {
+            return;
+        }
+        try {
+            spillExecutor.submit(() -> { }).get();
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Thread-safe, a segment is read from the heap until it is spilled, from the spill file afterwards.
+     */
+    HistoryColumns read(HistorySegment segment) {
+        byte[] data = segment.getData();
+        if (data != null) {
+            return HistoryCodec.decode(data, segment.getCount());
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(segment.getLength());
+        try {
+            while (buffer.hasRemaining()) {
+                if (spillChannel.read(buffer, segment.getPosition() + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of " + spillFile);
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("History segment cannot be read from " + spillFile, ex);
+        }
+        return HistoryCodec.decode(buffer.array(), segment.getCount());
+    }
+
+    @Override
+    public void close() {
+        if (spillChannel == null) {
+            return;
+        }
+        // segments sealed before are still written, the channel is closed once the spill thread is idle
+        spillExecutor.shutdown();
+        try {
+            if (!spillExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("History segments are still being spilled to {}, it is closed anyway", spillFile);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            spillChannel.close();
+        } catch (IOException ex) {
+            logger.error("History spill file {} cannot be closed", spillFile, ex);
+        }
+    }
+}
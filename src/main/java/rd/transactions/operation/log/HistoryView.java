@@ -0,0 +1,89 @@
+package rd.transactions.operation.log;
+
+/**
+ * Immutable view of account history at the moment it was taken, it is read without the lock of the account.
+ * Spilled segments are read back from the disk when a page reaches them.
+ */
+final class HistoryView {
+    static final long END = -1;
+
+    private final HistoryStorage storage;
+    private final HistorySegment[] sealed;
+    private final int sealedCount;
+    private final HistoryColumns tail;
+
+    HistoryView(HistoryStorage storage, HistorySegment[] sealed, int sealedCount, HistoryColumns tail) {
+        this.storage = storage;
+        this.sealed = sealed;
+        this.sealedCount = sealedCount;
+        this.tail = tail;
+    }
+
+    long size() {
+        return (long) sealedCount * storage.getSegmentSize() + tail.count;
+    }
+
+    /**
+     * Passes at most limit entries to the visitor, starting at index from (or at the first entry not older than
+     *  fromTimestamp, whichever is later), stopping at the first entry not older than toTimestamp.
+     * @return index where the next page starts, END if there are no more entries in the range
+     */
+    long read(long from, int limit, long fromTimestamp, long toTimestamp, AccountHistoryVisitor visitor) {
+        long size = size();
+        long index = Math.max(Math.max(0, from), firstIndexAtOrAfter(fromTimestamp));
+        int visited = 0;
+        while (index < size) {
+            HistoryColumns columns = columns((int) (index / storage.getSegmentSize()));
+            for (int i = (int) (index % storage.getSegmentSize()); i < columns.count; i++) {
+                if (columns.timestamps[i] >= toTimestamp) {
+                    return END;
+                }
+                if (visited == limit) {
+                    return index;
+                }
+                visitor.visit(index, columns.timestamps[i], columns.amounts[i]);
+                index++;
+                visited++;
+            }
+        }
+        return END;
+    }
+
+    long sum() {
+        long sum = 0;
+        for (int segment = 0; segment <= sealedCount; segment++) {
+            HistoryColumns columns = columns(segment);
+            for (int i = 0; i < columns.count; i++) {
+                sum = Math.addExact(sum, columns.amounts[i]);
+            }
+        }
+        return sum;
+    }
+
+    private long firstIndexAtOrAfter(long timestamp) {
+        // segments are ordered by time, binary search for the first one ending at or after the timestamp
+        int low = 0;
+        int high = sealedCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sealed[middle].getLastTimestamp() < timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (low < sealedCount && sealed[low].getFirstTimestamp() >= timestamp) {
+            return (long) low * storage.getSegmentSize();
+        }
+        HistoryColumns columns = columns(low);
+        int i = 0;
+        while (i < columns.count && columns.timestamps[i] < timestamp) {
+            i++;
+        }
+        return (long) low * storage.getSegmentSize() + i;
+    }
+
+    private HistoryColumns columns(int segment) {
+        return segment < sealedCount ? storage.read(sealed[segment]) : tail;
+    }
+}
@@ -0,0 +1,94 @@
+package rd.transactions.store;
+
+import rd.transactions.exceptions.AccountDoesNotExistException;
+import rd.transactions.exceptions.AccountHistoryNotKeptException;
+import rd.transactions.exceptions.CurrenciesOfAccountsDifferException;
+import rd.transactions.exceptions.CurrencyOfSourceAccountDifferentThanTransferException;
+import rd.transactions.exceptions.TransferBatchRejectedException;
+import rd.transactions.journal.AccountSnapshot;
+import rd.transactions.model.Account;
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Transfer;
+import rd.transactions.operation.log.AccountHistoryVisitor;
+import rd.transactions.validators.BalanceValidator;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Storage of account balances used by AccountManager.
+ * Implementations are thread-safe, transfers are applied atomically.
+ *
+ * Every account remembers sequence number of the last journal record reflected in its balance,
+ *  journalAppender passed to transfers is called under the locks of the accounts once the transfer is validated.
+ */
+public interface AccountStore extends AutoCloseable {
+
+    /**
+     * @return false if account with the same id is already stored, the store is not changed then
+     */
+    boolean add(Account account);
+
+    /**
+     * Adds account read from the journal or a snapshot.
+     * Stored account is replaced only if the given one reflects a newer journal record.
+     * @return false if the store is not changed
+     */
+    boolean restore(AccountSnapshot account);
+
+    Optional<Account> get(AccountId accountId);
+
+    /**
+     * Passes a page of account history to the visitor, see AccountOperationLog.readHistory.
+     * @return index where the next page starts, -1 if there are no more entries in the time range
+     * @throws AccountHistoryNotKeptException if the store keeps only balances
+     */
+    long readHistory(AccountId accountId, long from, int limit, long fromTimestamp, long toTimestamp,
+                     AccountHistoryVisitor visitor);
+
+    /**
+     * Passes consistent snapshot of every account to the consumer.
+     * Accounts are locked one by one, accounts added meanwhile may be missed.
+     */
+    void forEach(Consumer<AccountSnapshot> consumer);
+
+    /**
+     * Passes every account as it was at one point in time, a transfer is seen on both of its accounts or on none.
+     * Transfers wait while balances of all accounts are copied, the consumer is called once they go on again.
+     * Accounts added meanwhile may be missed.
+     */
+    void forEachAtomically(Consumer<Account> consumer);
+
+    /**
+     * @return true if the transfer is applied, false if balance of the source after debit is not allowed
+     */
+    boolean transfer(Transfer transfer, BalanceValidator balanceValidator, LongSupplier journalAppender) throws
+            AccountDoesNotExistException,
+            CurrenciesOfAccountsDifferException,
+            CurrencyOfSourceAccountDifferentThanTransferException;
+
+    /**
+     * Applies all transfers or none of them, they are validated in the given order.
+     * @return -1 if all transfers are applied, otherwise index of the first transfer
+     *  making balance of its source invalid
+     * @throws TransferBatchRejectedException if an account does not exist or currencies do not match
+     */
+    int transferAll(List<Transfer> transfers, BalanceValidator balanceValidator, LongSupplier journalAppender)
+            throws TransferBatchRejectedException;
+
+    /**
+     * Applies transfers of one journal record without validation,
+     *  accounts which already reflect the record are not changed.
+     */
+    void replayAppliedTransfers(long sequence, List<Transfer> transfers);
+
+    /**
+     * Whether stored balances survive restart of the application without the journal.
+     */
+    boolean isPersistent();
+
+    @Override
+    void close();
+}
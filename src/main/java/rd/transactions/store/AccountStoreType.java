@@ -0,0 +1,15 @@
+package rd.transactions.store;
+
+/**
+ * Where account balances are kept.
+ */
+public enum AccountStoreType {
+    /**
+     * Accounts are kept on the heap together with their history, see OperationLogAccountStore.
+     */
+    HEAP,
+    /**
+     * Balances are kept off the heap in a memory-mapped file, history is not kept, see MappedAccountStore.
+     */
+    MAPPED
+}
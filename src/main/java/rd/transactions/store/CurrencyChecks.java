@@ -0,0 +1,24 @@
+package rd.transactions.store;
+
+import rd.transactions.exceptions.CurrenciesOfAccountsDifferException;
+import rd.transactions.exceptions.CurrencyOfSourceAccountDifferentThanTransferException;
+
+import java.util.Currency;
+
+final class CurrencyChecks {
+
+    private CurrencyChecks() {
+    }
+
+    static void check(Currency transferCurrency, Currency sourceCurrency, Currency targetCurrency) throws
+            CurrenciesOfAccountsDifferException,
+            CurrencyOfSourceAccountDifferentThanTransferException {
+        if (!sourceCurrency.equals(transferCurrency)) {
+            throw new CurrencyOfSourceAccountDifferentThanTransferException();
+        }
+
+        if (!sourceCurrency.equals(targetCurrency)) {
+            throw new CurrenciesOfAccountsDifferException();
+        }
+    }
+}
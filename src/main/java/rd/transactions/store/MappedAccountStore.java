@@ -0,0 +1,667 @@
+package rd.transactions.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rd.transactions.exceptions.*;
+import rd.transactions.journal.AccountSnapshot;
+import rd.transactions.model.Account;
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Money;
+import rd.transactions.model.Transfer;
+import rd.transactions.operation.log.AccountHistoryVisitor;
+import rd.transactions.validators.BalanceValidator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Keeps balances off the heap, in a memory-mapped file of fixed-size slots.
+ * The heap holds only the locks, so heap usage does not grow with number of accounts,
+ *  and the file is the state, so it survives restart without replaying anything.
+ * Account history is not kept.
+ *
+ * Slots form an open-addressing hash table (linear probing) keyed by hash of the UTF-8 bytes of the account id.
+ * Accounts are never removed, so a probe sequence ends at the first empty slot.
+ * Slot layout:
+ *  0 balance in minor units (long), 8 sequence of the last journal record reflected in the balance (long),
+ *  16 hash of the id (int), 20 state (byte), 21 currency code (3 ASCII bytes), 24 id length (byte), 25 id bytes.
+ * Slots are guarded by striped locks, transfers lock stripes in ascending order.
+ * Lookups read slots without locks, a slot being written at the same time is at worst not found,
+ *  its fields are read again under the lock.
+ * Lookups of ids of ASCII characters hash and compare the characters of the id as they are, without encoding it,
+ *  so a lookup allocates nothing and the heap holds nothing per account.
+ *
+ * Dirty pages are written back by the operating system, a crash of the process loses nothing,
+ *  durability against power loss is provided by the journal.
+ */
+public class MappedAccountStore implements AccountStore {
+    private static final Logger logger = LoggerFactory.getLogger(MappedAccountStore.class);
+
+    private static final int MAGIC = 0x52444153;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 64;
+    private static final int MAX_REGION_SLOTS = 1 << 20;
+    private static final int MAX_SLOTS = 1 << 30;
+    private static final int LOCK_STRIPES = 4096;
+    private static final int NOT_FOUND = -1;
+
+    private static final int BALANCE = 0;
+    private static final int JOURNAL_SEQUENCE = 8;
+    private static final int HASH = 16;
+    private static final int STATE = 20;
+    private static final int CURRENCY = 21;
+    private static final int CURRENCY_LENGTH = 3;
+    private static final int ID_LENGTH = 24;
+    private static final int ID = 25;
+    private static final byte EMPTY = 0;
+    private static final byte USED = 1;
+
+    public static final int MAX_ID_BYTES = SLOT_SIZE - ID;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer[] regions;
+    private final int regionShift;
+    private final int regionMask;
+    private final int slotMask;
+    private final int maxAccounts;
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    private final AtomicInteger size = new AtomicInteger();
+    // highest journal sequence found in the file when it was opened
+    private final long maxJournalSequence;
+
+    /**
+     * Opens the store, the file is created for at least maxAccounts accounts if it does not exist.
+     * Capacity of an existing file is kept.
+     */
+    public static MappedAccountStore open(Path file, int maxAccounts) throws IOException {
+        FileChannel channel = FileChannel.open(file, CREATE, READ, WRITE);
+        try {
+            int slots = channel.size() == 0 ? initialize(channel, maxAccounts) : readHeader(file, channel);
+            return new MappedAccountStore(file, channel, slots);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Opens the store used together with the journal.
+     * Balances are changed before the journal record is durable, if the store contains changes
+     *  missing in the journal (the application crashed before fsync), it is cleared and rebuilt by journal replay.
+     * @param lastJournalSequence sequence number of the last durable journal record
+     */
+    public static MappedAccountStore open(Path file, int maxAccounts, long lastJournalSequence) throws IOException {
+        MappedAccountStore store = open(file, maxAccounts);
+        if (store.maxJournalSequence <= lastJournalSequence) {
+            return store;
+        }
+        logger.warn("Account store {} reflects journal record {}, but the journal ends at {}, the store is rebuilt",
+                file, store.maxJournalSequence, lastJournalSequence);
+        store.close();
+        Files.delete(file);
+        return open(file, maxAccounts);
+    }
+
+    private static int initialize(FileChannel channel, int maxAccounts) throws IOException {
+        if (maxAccounts < 1 || maxAccounts > MAX_SLOTS / 4 * 3) {
+            throw new IllegalArgumentException("Account store capacity has to be between 1 and " + MAX_SLOTS / 4 * 3);
+        }
+        // load factor is kept below 0.75, long probe sequences make linear probing slow
+        int slots = Math.max(16, Integer.highestOneBit(maxAccounts + maxAccounts / 3) << 1);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(SLOT_SIZE).putInt(slots).rewind();
+        channel.write(header, 0);
+        channel.force(true);
+        return slots;
+    }
+
+    private static int readHeader(Path file, FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                break;
+            }
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+            throw new IOException(file + " is not an account store");
+        }
+        int version = header.getInt();
+        int slotSize = header.getInt();
+        int slots = header.getInt();
+        if (version != VERSION || slotSize != SLOT_SIZE || Integer.bitCount(slots) != 1 || slots > MAX_SLOTS) {
+            throw new IOException(file + " has unsupported format");
+        }
+        return slots;
+    }
+
+    private MappedAccountStore(Path file, FileChannel channel, int slots) throws IOException {
+        int regionSlots = Math.min(slots, MAX_REGION_SLOTS);
+        this.file = file;
+        this.channel = channel;
+        this.regions = new MappedByteBuffer[slots / regionSlots];
+        this.regionShift = Integer.numberOfTrailingZeros(regionSlots);
+        this.regionMask = regionSlots - 1;
+        this.slotMask = slots - 1;
+        this.maxAccounts = slots / 4 * 3;
+        for (int i = 0; i < regions.length; i++) {
+            regions[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                    HEADER_SIZE + (long) i * regionSlots * SLOT_SIZE, (long) regionSlots * SLOT_SIZE);
+        }
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+
+        long journalSequence = 0;
+        for (int slot = 0; slot <= slotMask; slot++) {
+            ByteBuffer region = region(slot);
+            int offset = offset(slot);
+            if (region.get(offset + STATE) == USED) {
+                size.incrementAndGet();
+                journalSequence = Math.max(journalSequence, region.getLong(offset + JOURNAL_SEQUENCE));
+            }
+        }
+        this.maxJournalSequence = journalSequence;
+        logger.info("Account store {} opened with {} accounts, capacity {}", file, size.get(), maxAccounts);
+    }
+
+    @Override
+    public boolean add(Account account) {
+        return put(new AccountSnapshot(account, 0), false);
+    }
+
+    @Override
+    public boolean restore(AccountSnapshot account) {
+        return put(account, true);
+    }
+
+    private boolean put(AccountSnapshot snapshot, boolean replaceOlder) {
+        Account account = snapshot.getAccount();
+        byte[] id = encode(account.getId());
+        if (id.length > MAX_ID_BYTES) {
+            throw new AccountIdTooLongException(MAX_ID_BYTES);
+        }
+        int hash = hash(id);
+        int slot = hash & slotMask;
+        for (int probe = 0; probe <= slotMask; probe++) {
+            ByteBuffer region = region(slot);
+            int offset = offset(slot);
+            ReentrantLock lock = lockOf(slot);
+            lock.lock();
+            try {
+                if (region.get(offset + STATE) == EMPTY) {
+                    if (size.incrementAndGet() > maxAccounts) {
+                        size.decrementAndGet();
+                        throw new AccountStoreFullException();
+                    }
+                    write(region, offset, snapshot, id, hash);
+                    return true;
+                }
+                if (region.getInt(offset + HASH) == hash && idEquals(region, offset, id)) {
+                    if (replaceOlder && region.getLong(offset + JOURNAL_SEQUENCE) < snapshot.getJournalSequence()) {
+                        region.putLong(offset + BALANCE, account.getBalance().getMinorUnits());
+                        region.putLong(offset + JOURNAL_SEQUENCE, snapshot.getJournalSequence());
+                        return true;
+                    }
+                    return false;
+                }
+            } finally {
+                lock.unlock();
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        throw new AccountStoreFullException();
+    }
+
+    private static void write(ByteBuffer region, int offset, AccountSnapshot snapshot, byte[] id, int hash) {
+        Account account = snapshot.getAccount();
+        String currencyCode = account.getCurrency().getCurrencyCode();
+        region.putLong(offset + BALANCE, account.getBalance().getMinorUnits());
+        region.putLong(offset + JOURNAL_SEQUENCE, snapshot.getJournalSequence());
+        region.putInt(offset + HASH, hash);
+        for (int i = 0; i < CURRENCY_LENGTH; i++) {
+            region.put(offset + CURRENCY + i, (byte) currencyCode.charAt(i));
+        }
+        region.put(offset + ID_LENGTH, (byte) id.length);
+        for (int i = 0; i < id.length; i++) {
+            region.put(offset + ID + i, id[i]);
+        }
+        // written last, so that a lock-free lookup does not match a half-written slot
+        region.put(offset + STATE, USED);
+    }
+
+    @Override
+    public Optional<Account> get(AccountId accountId) {
+        int slot = find(accountId);
+        if (slot == NOT_FOUND) {
+            return Optional.empty();
+        }
+        ByteBuffer region = region(slot);
+        int offset = offset(slot);
+        ReentrantLock lock = lockOf(slot);
+        lock.lock();
+        try {
+            return Optional.of(Account.of(accountId,
+                    Money.ofMinorUnits(region.getLong(offset + BALANCE), currency(region, offset))));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long readHistory(AccountId accountId, long from, int limit, long fromTimestamp, long toTimestamp,
+                            AccountHistoryVisitor visitor) {
+        throw new AccountHistoryNotKeptException();
+    }
+
+    @Override
+    public void forEach(Consumer<AccountSnapshot> consumer) {
+        for (int slot = 0; slot <= slotMask; slot++) {
+            ByteBuffer region = region(slot);
+            int offset = offset(slot);
+            if (region.get(offset + STATE) != USED) {
+                continue;
+            }
+            AccountSnapshot snapshot;
+            ReentrantLock lock = lockOf(slot);
+            lock.lock();
+            try {
+                snapshot = new AccountSnapshot(
+                        Account.of(AccountId.of(id(region, offset)),
+                                Money.ofMinorUnits(region.getLong(offset + BALANCE), currency(region, offset))),
+                        region.getLong(offset + JOURNAL_SEQUENCE));
+            } finally {
+                lock.unlock();
+            }
+            consumer.accept(snapshot);
+        }
+    }
+
+    /**
+     * All lock stripes are taken in ascending order, like by transfers, while used slots and their balances
+     *  are copied, then accounts are created from the copy. Ids and currencies of used slots never change.
+     */
+    @Override
+    public void forEachAtomically(Consumer<Account> consumer) {
+        int[] slots;
+        long[] balances;
+        int accounts = 0;
+
+        int locked = 0;
+        try {
+            for (ReentrantLock lock : locks) {
+                lock.lock();
+                locked++;
+            }
+            // accounts are added under the lock of their slot, so size does not change now
+            slots = new int[size.get()];
+            balances = new long[slots.length];
+            for (int slot = 0; slot <= slotMask; slot++) {
+                if (region(slot).get(offset(slot) + STATE) == USED) {
+                    slots[accounts] = slot;
+                    balances[accounts++] = balance(slot);
+                }
+            }
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                locks[i].unlock();
+            }
+        }
+        for (int i = 0; i < accounts; i++) {
+            ByteBuffer region = region(slots[i]);
+            int offset = offset(slots[i]);
+            consumer.accept(Account.of(AccountId.of(id(region, offset)),
+                    Money.ofMinorUnits(balances[i], currency(region, offset))));
+        }
+    }
+
+    @Override
+    public boolean transfer(Transfer transfer, BalanceValidator balanceValidator, LongSupplier journalAppender) throws
+            AccountDoesNotExistException,
+            CurrenciesOfAccountsDifferException,
+            CurrencyOfSourceAccountDifferentThanTransferException {
+        int source = findExisting(transfer.getSourceAccount());
+        int target = findExisting(transfer.getTargetAccount());
+        ReentrantLock first = locks[Math.min(stripe(source), stripe(target))];
+        ReentrantLock second = locks[Math.max(stripe(source), stripe(target))];
+        first.lock();
+        second.lock();
+        try {
+            checkCurrencies(transfer, source, target);
+            Money amount = transfer.getTransferredAmount();
+            long sourceAfterDebit = Math.subtractExact(balance(source), amount.getMinorUnits());
+            if (!balanceValidator.isBalanceAllowed(sourceAfterDebit, amount.getCurrency())) {
+                return false;
+            }
+            // computed before anything is written, so an overflow leaves both accounts untouched
+            long targetAfterCredit = Math.addExact(
+                    source == target ? sourceAfterDebit : balance(target), amount.getMinorUnits());
+
+            // journaled before anything is written, failure of the journal leaves the accounts untouched
+            long sequence = journalAppender.getAsLong();
+            update(source, sourceAfterDebit, sequence);
+            update(target, targetAfterCredit, sequence);
+            return true;
+        } finally {
+            second.unlock();
+            first.unlock();
+        }
+    }
+
+    @Override
+    public int transferAll(List<Transfer> transfers, BalanceValidator balanceValidator, LongSupplier journalAppender)
+            throws TransferBatchRejectedException {
+        int[] sources = new int[transfers.size()];
+        int[] targets = new int[transfers.size()];
+        int[] stripes = new int[transfers.size() * 2];
+        for (int i = 0; i < transfers.size(); i++) {
+            try {
+                sources[i] = findExisting(transfers.get(i).getSourceAccount());
+                targets[i] = findExisting(transfers.get(i).getTargetAccount());
+            } catch (AccountDoesNotExistException ex) {
+                throw new TransferBatchRejectedException(transfers.get(i), ex);
+            }
+            stripes[2 * i] = stripe(sources[i]);
+            stripes[2 * i + 1] = stripe(targets[i]);
+        }
+        int[] lockingOrder = Arrays.stream(stripes).sorted().distinct().toArray();
+
+        for (int stripe : lockingOrder) {
+            locks[stripe].lock();
+        }
+        try {
+            return transferAllUnderLock(transfers, sources, targets, balanceValidator, journalAppender);
+        } finally {
+            for (int i = lockingOrder.length - 1; i >= 0; i--) {
+                locks[lockingOrder[i]].unlock();
+            }
+        }
+    }
+
+    private int transferAllUnderLock(List<Transfer> transfers, int[] sources, int[] targets,
+                                     BalanceValidator balanceValidator, LongSupplier journalAppender)
+            throws TransferBatchRejectedException {
+        Map<Integer, Long> balancesAfter = new HashMap<>();
+        for (int i = 0; i < transfers.size(); i++) {
+            Transfer transfer = transfers.get(i);
+            try {
+                checkCurrencies(transfer, sources[i], targets[i]);
+            } catch (CurrenciesOfAccountsDifferException | CurrencyOfSourceAccountDifferentThanTransferException ex) {
+                throw new TransferBatchRejectedException(transfer, ex);
+            }
+            Money amount = transfer.getTransferredAmount();
+            long sourceAfterDebit = Math.subtractExact(
+                    balancesAfter.getOrDefault(sources[i], balance(sources[i])), amount.getMinorUnits());
+            if (!balanceValidator.isBalanceAllowed(sourceAfterDebit, amount.getCurrency())) {
+                return i;
+            }
+            balancesAfter.put(sources[i], sourceAfterDebit);
+            balancesAfter.put(targets[i], Math.addExact(
+                    balancesAfter.getOrDefault(targets[i], balance(targets[i])), amount.getMinorUnits()));
+        }
+        long sequence = journalAppender.getAsLong();
+        balancesAfter.forEach((slot, balance) -> update(slot, balance, sequence));
+        return -1;
+    }
+
+    @Override
+    public void replayAppliedTransfers(long sequence, List<Transfer> transfers) {
+        Map<Integer, Long> changes = new LinkedHashMap<>();
+        for (Transfer transfer : transfers) {
+            long amount = transfer.getTransferredAmount().getMinorUnits();
+            changes.merge(findExisting(transfer.getSourceAccount()), -amount, Math::addExact);
+            changes.merge(findExisting(transfer.getTargetAccount()), amount, Math::addExact);
+        }
+        changes.forEach((slot, change) -> {
+            ReentrantLock lock = lockOf(slot);
+            lock.lock();
+            try {
+                if (sequence > region(slot).getLong(offset(slot) + JOURNAL_SEQUENCE)) {
+                    update(slot, Math.addExact(balance(slot), change), sequence);
+                }
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return true;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public int getMaxAccounts() {
+        return maxAccounts;
+    }
+
+    /**
+     * Writes changed pages to the disk.
+     */
+    public void flush() {
+        for (MappedByteBuffer region : regions) {
+            region.force();
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            logger.error("Account store {} cannot be closed", file, ex);
+        }
+    }
+
+    private int findExisting(AccountId accountId) {
+        int slot = find(accountId);
+        if (slot == NOT_FOUND) {
+            throw new AccountDoesNotExistException();
+        }
+        return slot;
+    }
+
+    private int find(AccountId accountId) {
+        String id = accountId.getId();
+        if (!isAscii(id)) {
+            return probe(encode(accountId));
+        }
+        if (id.length() > MAX_ID_BYTES) {
+            return NOT_FOUND;
+        }
+        // UTF-8 bytes of ASCII characters are the characters
+        int hash = hash(id);
+        int slot = hash & slotMask;
+        for (int probe = 0; probe <= slotMask; probe++) {
+            ByteBuffer region = region(slot);
+            int offset = offset(slot);
+            if (region.get(offset + STATE) == EMPTY) {
+                return NOT_FOUND;
+            }
+            if (region.getInt(offset + HASH) == hash && idEquals(region, offset, id)) {
+                return slot;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        return NOT_FOUND;
+    }
+
+    private int probe(byte[] id) {
+        if (id.length > MAX_ID_BYTES) {
+            return NOT_FOUND;
+        }
+        int hash = hash(id);
+        int slot = hash & slotMask;
+        for (int probe = 0; probe <= slotMask; probe++) {
+            ByteBuffer region = region(slot);
+            int offset = offset(slot);
+            if (region.get(offset + STATE) == EMPTY) {
+                return NOT_FOUND;
+            }
+            if (region.getInt(offset + HASH) == hash && idEquals(region, offset, id)) {
+                return slot;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        return NOT_FOUND;
+    }
+
+    // called under the lock of the slots
+    private void checkCurrencies(Transfer transfer, int source, int target) throws
+            CurrenciesOfAccountsDifferException,
+            CurrencyOfSourceAccountDifferentThanTransferException {
+        ByteBuffer sourceRegion = region(source);
+        int sourceOffset = offset(source);
+        String transferCurrency = transfer.getTransferredAmount().getCurrency().getCurrencyCode();
+        for (int i = 0; i < CURRENCY_LENGTH; i++) {
+            if (sourceRegion.get(sourceOffset + CURRENCY + i) != transferCurrency.charAt(i)) {
+                throw new CurrencyOfSourceAccountDifferentThanTransferException();
+            }
+        }
+        ByteBuffer targetRegion = region(target);
+        int targetOffset = offset(target);
+        for (int i = 0; i < CURRENCY_LENGTH; i++) {
+            if (sourceRegion.get(sourceOffset + CURRENCY + i) != targetRegion.get(targetOffset + CURRENCY + i)) {
+                throw new CurrenciesOfAccountsDifferException();
+            }
+        }
+    }
+
+    private long balance(int slot) {
+        return region(slot).getLong(offset(slot) + BALANCE);
+    }
+
+    private void update(int slot, long balance, long journalSequence) {
+        ByteBuffer region = region(slot);
+        int offset = offset(slot);
+        region.putLong(offset + BALANCE, balance);
+        region.putLong(offset + JOURNAL_SEQUENCE,
+                Math.max(region.getLong(offset + JOURNAL_SEQUENCE), journalSequence));
+    }
+
+    private static String id(ByteBuffer region, int offset) {
+        byte[] id = new byte[region.get(offset + ID_LENGTH)];
+        for (int i = 0; i < id.length; i++) {
+            id[i] = region.get(offset + ID + i);
+        }
+        return new String(id, StandardCharsets.UTF_8);
+    }
+
+    private static Currency currency(ByteBuffer region, int offset) {
+        char[] code = new char[CURRENCY_LENGTH];
+        for (int i = 0; i < CURRENCY_LENGTH; i++) {
+            code[i] = (char) region.get(offset + CURRENCY + i);
+        }
+        return Currency.getInstance(new String(code));
+    }
+
+    private static boolean idEquals(ByteBuffer region, int offset, byte[] id) {
+        if (region.get(offset + ID_LENGTH) != id.length) {
+            return false;
+        }
+        for (int i = 0; i < id.length; i++) {
+            if (region.get(offset + ID + i) != id[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // compares 8 bytes at a time, a lookup reads the slot with a few reads instead of one read per byte
+    private static boolean idEquals(ByteBuffer region, int offset, String asciiId) {
+        int length = asciiId.length();
+        if (region.get(offset + ID_LENGTH) != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i += Long.BYTES) {
+            int bytes = Math.min(Long.BYTES, length - i);
+            // the last 8 bytes of the slot are read for the end of a long id, bytes before the id are shifted out
+            int position = Math.min(ID + i, SLOT_SIZE - Long.BYTES);
+            long stored = region.getLong(offset + position) << Byte.SIZE * (ID + i - position);
+            long expected = 0;
+            for (int j = 0; j < bytes; j++) {
+                expected = expected << Byte.SIZE | asciiId.charAt(i + j);
+            }
+            if (stored >>> Byte.SIZE * (Long.BYTES - bytes) != expected) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAscii(String id) {
+        for (int i = 0; i < id.length(); i++) {
+            if (id.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] encode(AccountId accountId) {
+        return accountId.getId().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // FNV-1a followed by murmur3 finalizer, linear probing needs well mixed low bits
+    private static int hash(byte[] id) {
+        int hash = 0x811c9dc5;
+        for (byte b : id) {
+            hash = (hash ^ b) * 0x01000193;
+        }
+        return mix(hash);
+    }
+
+    // the same hash as of the UTF-8 bytes of an id of ASCII characters
+    private static int hash(String asciiId) {
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < asciiId.length(); i++) {
+            hash = (hash ^ asciiId.charAt(i)) * 0x01000193;
+        }
+        return mix(hash);
+    }
+
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    private ByteBuffer region(int slot) {
+        return regions[slot >>> regionShift];
+    }
+
+    private int offset(int slot) {
+        return (slot & regionMask) * SLOT_SIZE;
+    }
+
+    private static int stripe(int slot) {
+        return slot & (LOCK_STRIPES - 1);
+    }
+
+    private ReentrantLock lockOf(int slot) {
+        return locks[stripe(slot)];
+    }
+}
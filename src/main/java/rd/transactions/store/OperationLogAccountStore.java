@@ -0,0 +1,150 @@
+package rd.transactions.store;
+
+import rd.transactions.exceptions.AccountDoesNotExistException;
+import rd.transactions.exceptions.CurrenciesOfAccountsDifferException;
+import rd.transactions.exceptions.CurrencyOfSourceAccountDifferentThanTransferException;
+import rd.transactions.exceptions.TransferBatchRejectedException;
+import rd.transactions.journal.AccountSnapshot;
+import rd.transactions.model.Account;
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Money;
+import rd.transactions.model.Transfer;
+import rd.transactions.operation.log.AccountAdditionLogEntry;
+import rd.transactions.operation.log.AccountHistoryVisitor;
+import rd.transactions.operation.log.AccountOperationLog;
+import rd.transactions.operation.log.AccountOperationLogEntry;
+import rd.transactions.operation.log.AccountSubtractionLogEntry;
+import rd.transactions.operation.log.HistoryStorage;
+import rd.transactions.validators.BalanceValidator;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps every account as AccountOperationLog on the heap, together with its whole history.
+ * Logs are indexed by account id in a map of the store, a lookup does not compute the hash code of the id again.
+ */
+public class OperationLogAccountStore implements AccountStore {
+    private final ConcurrentHashMap<AccountId, AccountOperationLog> accounts = new ConcurrentHashMap<>();
+    private final HistoryStorage historyStorage;
+
+    public OperationLogAccountStore() {
+        this(HistoryStorage.defaults());
+    }
+
+    /**
+     * @param historyStorage keeps sealed segments of account histories, it is closed together with the store
+     */
+    public OperationLogAccountStore(HistoryStorage historyStorage) {
+        this.historyStorage = historyStorage;
+    }
+
+    @Override
+    public boolean add(Account account) {
+        return accounts.putIfAbsent(account.getId(), new AccountOperationLog(account, 0, historyStorage)) == null;
+    }
+
+    @Override
+    public boolean restore(AccountSnapshot account) {
+        AccountOperationLog restored = new AccountOperationLog(
+                account.getAccount(), account.getJournalSequence(), historyStorage);
+        AccountOperationLog stored = accounts.putIfAbsent(account.getAccount().getId(), restored);
+        if (stored == null) {
+            return true;
+        }
+        return stored.snapshot().getJournalSequence() < account.getJournalSequence()
+                && accounts.replace(account.getAccount().getId(), stored, restored);
+    }
+
+    @Override
+    public Optional<Account> get(AccountId accountId) {
+        return Optional.ofNullable(accounts.get(accountId))
+                .map(AccountOperationLog::materializeAsAccount);
+    }
+
+    @Override
+    public long readHistory(AccountId accountId, long from, int limit, long fromTimestamp, long toTimestamp,
+                            AccountHistoryVisitor visitor) {
+        return getLog(accountId).readHistory(from, limit, fromTimestamp, toTimestamp, visitor);
+    }
+
+    @Override
+    public void forEach(Consumer<AccountSnapshot> consumer) {
+        for (AccountOperationLog log : accounts.values()) {
+            consumer.accept(log.snapshot());
+        }
+    }
+
+    @Override
+    public void forEachAtomically(Consumer<Account> consumer) {
+        AccountOperationLog.forEachAtomically(accounts.values(), consumer);
+    }
+
+    @Override
+    public boolean transfer(Transfer transfer, BalanceValidator balanceValidator, LongSupplier journalAppender) throws
+            AccountDoesNotExistException,
+            CurrenciesOfAccountsDifferException,
+            CurrencyOfSourceAccountDifferentThanTransferException {
+        AccountOperationLog source = getLog(transfer.getSourceAccount());
+        AccountOperationLog target = getLog(transfer.getTargetAccount());
+        CurrencyChecks.check(transfer.getTransferredAmount().getCurrency(), source.getCurrency(), target.getCurrency());
+        return AccountOperationLog.transfer(
+                source, target, transfer.getTransferredAmount(), balanceValidator, journalAppender);
+    }
+
+    @Override
+    public int transferAll(List<Transfer> transfers, BalanceValidator balanceValidator, LongSupplier journalAppender)
+            throws TransferBatchRejectedException {
+        List<AccountOperationLog> sources = new ArrayList<>(transfers.size());
+        List<AccountOperationLog> targets = new ArrayList<>(transfers.size());
+        List<Money> amounts = new ArrayList<>(transfers.size());
+        for (Transfer transfer : transfers) {
+            try {
+                AccountOperationLog source = getLog(transfer.getSourceAccount());
+                AccountOperationLog target = getLog(transfer.getTargetAccount());
+                CurrencyChecks.check(
+                        transfer.getTransferredAmount().getCurrency(), source.getCurrency(), target.getCurrency());
+                sources.add(source);
+                targets.add(target);
+                amounts.add(transfer.getTransferredAmount());
+            } catch (AccountDoesNotExistException
+                    | CurrenciesOfAccountsDifferException
+                    | CurrencyOfSourceAccountDifferentThanTransferException ex) {
+                throw new TransferBatchRejectedException(transfer, ex);
+            }
+        }
+        return AccountOperationLog.transferAll(sources, targets, amounts, balanceValidator, journalAppender);
+    }
+
+    @Override
+    public void replayAppliedTransfers(long sequence, List<Transfer> transfers) {
+        Map<AccountOperationLog, List<AccountOperationLogEntry>> entries = new IdentityHashMap<>();
+        for (Transfer transfer : transfers) {
+            entries.computeIfAbsent(getLog(transfer.getSourceAccount()), log -> new ArrayList<>())
+                    .add(new AccountSubtractionLogEntry(transfer.getTransferredAmount()));
+            entries.computeIfAbsent(getLog(transfer.getTargetAccount()), log -> new ArrayList<>())
+                    .add(new AccountAdditionLogEntry(transfer.getTransferredAmount()));
+        }
+        entries.forEach((log, logEntries) -> log.replayEntries(logEntries, sequence));
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+        historyStorage.close();
+    }
+
+    private AccountOperationLog getLog(AccountId accountId) {
+        AccountOperationLog log = accounts.get(accountId);
+        if (log == null) {
+            throw new AccountDoesNotExistException();
+        }
+        return log;
+    }
+}
@@ -1,7 +1,10 @@
 package rd.transactions.validators;
 
-import java.math.BigDecimal;
+import java.util.Currency;
 
 public interface BalanceValidator {
-    boolean isBalanceAllowed(BigDecimal balanceValue);
+    /**
+     * @param balanceInMinorUnits balance expressed in minor units of the currency, see Money::getMinorUnits
+     */
+    boolean isBalanceAllowed(long balanceInMinorUnits, Currency currency);
 }
@@ -1,13 +1,13 @@
 package rd.transactions.validators;
 
-import java.math.BigDecimal;
+import java.util.Currency;
 
 /**
  * This validator checks if amount is non-negative,
  *  though if requirements allowed for negative balance it could be implemented differently
  */
 public class NonNegativeBalanaceValidator implements BalanceValidator {
-    public boolean isBalanceAllowed(BigDecimal balanceValue) {
-        return balanceValue.compareTo(BigDecimal.ZERO) >= 0;
+    public boolean isBalanceAllowed(long balanceInMinorUnits, Currency currency) {
+        return balanceInMinorUnits >= 0;
     }
 }
@@ -6,6 +6,7 @@ import com.mashape.unirest.http.Unirest;
 import com.mashape.unirest.http.exceptions.UnirestException;
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -13,7 +14,11 @@ import org.junit.experimental.categories.Category;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
 import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URL;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -22,10 +27,12 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.stream.IntStream;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.awaitility.Awaitility.await;
+import static org.eclipse.jetty.http.HttpStatus.BAD_REQUEST_400;
 import static org.eclipse.jetty.http.HttpStatus.OK_200;
 import static rd.transactions.JsonUtils.buildAccountJson;
 import static rd.transactions.JsonUtils.buildTransferJson;
@@ -56,7 +63,9 @@ public class HttpAppIntegrationTest {
             }
         });
         logger.info("Waiting for the server to start.");
+        // connection is refused until the server listens
         await().atMost(10, SECONDS)
+                .ignoreExceptions()
                 .until(() ->
                         Unirest.get(ACCOUNTS)
                                 .asJson()
@@ -95,10 +104,19 @@ public class HttpAppIntegrationTest {
         assertThat(accountsResponse.getBody().getArray().length()).isEqualTo(3);
         logger.info(">>> 3 accounts added {}", bodyToString(accountsResponse));
 
+        logger.info(">>> GET /accounts as NDJSON, the list is streamed line by line");
+        HttpResponse<String> accountLines = Unirest.get(ACCOUNTS)
+                .header("Accept", "application/x-ndjson")
+                .asString();
+        assertThat(accountLines.getHeaders().getFirst("Content-Type")).startsWith("application/x-ndjson");
+        assertThat(accountLines.getHeaders().getFirst("Transfer-Encoding")).isEqualTo("chunked");
+        assertThat(accountLines.getBody().split("\n")).hasSize(3);
+
         logger.info(">>> Now let's transfer 50 EUR from account A to C");
         String transfer50EurFromAToC = buildTransferJson("A", "C", "EUR", "50.00");
         logger.info(">>> POST /transfers " + transfer50EurFromAToC);
         HttpResponse<JsonNode> transferResponse = Unirest.post(TRANSFERS)
+                .header("Idempotency-Key", "transfer-50-eur-from-a-to-c")
                 .body(transfer50EurFromAToC)
                 .asJson();
         assertThat(transferResponse.getStatus()).isEqualTo(OK_200);
@@ -115,6 +133,14 @@ public class HttpAppIntegrationTest {
             logger.info("Got response {}", bodyToString(transferDetails));
             return transferDetails.getBody().getObject().get("transferStatus").equals("COMPLETED");
         });
+        logger.info(">>> Retrying with the same Idempotency-Key returns the same transfer, nothing is transferred twice.");
+        HttpResponse<JsonNode> retriedTransferResponse = Unirest.post(TRANSFERS)
+                .header("Idempotency-Key", "transfer-50-eur-from-a-to-c")
+                .body(transfer50EurFromAToC)
+                .asJson();
+        assertThat(retriedTransferResponse.getStatus()).isEqualTo(OK_200);
+        assertThat(retriedTransferResponse.getBody().getObject().getString("transferId")).isEqualTo(transferUuid);
+        assertThat(retriedTransferResponse.getBody().getObject().getString("transferStatus")).isEqualTo("COMPLETED");
         logger.info(">>> Transfer is processed almost instantaneously, ");
         logger.info(">>> But we can imagine that when normal DB and other micro-services are involved it takes couple seconds.");
         logger.info(">>> This is why I decided for asynchronous api for transfers.");
@@ -136,6 +162,27 @@ public class HttpAppIntegrationTest {
                     bodyToString(accountCDetails));
         }
 
+        {
+            logger.info(">>> Every account keeps its history, it is read in pages.");
+            logger.info(">>> GET /accounts/C/operations?limit=1");
+            HttpResponse<JsonNode> firstPage = Unirest.get(ACCOUNTS + "/C/operations")
+                    .queryString("limit", 1)
+                    .asJson();
+            assertThat(firstPage.getStatus()).isEqualTo(OK_200);
+            assertThat(firstPage.getBody().getObject().getJSONArray("operations").getJSONObject(0)
+                    .getString("amount")).isEqualTo("0.20");
+            String nextCursor = firstPage.getBody().getObject().getString("nextCursor");
+            logger.info(">>> Got first page {}, the next page starts at the returned cursor", bodyToString(firstPage));
+            logger.info(">>> GET /accounts/C/operations?cursor={}", nextCursor);
+            HttpResponse<JsonNode> secondPage = Unirest.get(ACCOUNTS + "/C/operations")
+                    .queryString("cursor", nextCursor)
+                    .asJson();
+            assertThat(secondPage.getBody().getObject().getJSONArray("operations").getJSONObject(0)
+                    .getString("amount")).isEqualTo("50.00");
+            assertThat(secondPage.getBody().getObject().isNull("nextCursor")).isTrue();
+            logger.info(">>> Got last page {}", bodyToString(secondPage));
+        }
+
         logger.info(">>> This is it regarding normal operation.");
 
         logger.info(">>> There are couple of transfer rejection scenarios.");
@@ -191,9 +238,101 @@ public class HttpAppIntegrationTest {
         }
 
         logger.info(">>> When transfer is rejected it has no effect on neither source nor target accounts.");
+
+        {
+            logger.info(">>> Transfers can be queried, e.g. rejected transfers of C.");
+            logger.info(">>> GET /transfers?sourceAccountId=C&status=REJECTED_NOT_ENOUGH_CREDIT_ON_SOURCE_ACCOUNT");
+            HttpResponse<JsonNode> rejected = Unirest.get(TRANSFERS)
+                    .queryString("sourceAccountId", "C")
+                    .queryString("status", "REJECTED_NOT_ENOUGH_CREDIT_ON_SOURCE_ACCOUNT")
+                    .asJson();
+            assertThat(rejected.getStatus()).isEqualTo(OK_200);
+            assertThat(rejected.getBody().getObject().getJSONArray("transfers").length()).isEqualTo(1);
+            assertThat(rejected.getBody().getObject().getJSONArray("transfers").getJSONObject(0)
+                    .getString("amount")).isEqualTo("100.00");
+            logger.info(">>> Got {}", bodyToString(rejected));
+        }
+
+        {
+            logger.info(">>> The engine exposes its metrics in Prometheus text format.");
+            logger.info(">>> GET /metrics");
+            HttpResponse<String> metrics = Unirest.get("http://" + HOSTNAME + ":" + HTTP_PORT + "/metrics").asString();
+            assertThat(metrics.getStatus()).isEqualTo(OK_200);
+            assertThat(metrics.getHeaders().getFirst("Content-Type")).startsWith("text/plain; version=0.0.4");
+            assertThat(metrics.getBody())
+                    .contains("transfers_finished_total{status=\"REJECTED_NOT_ENOUGH_CREDIT_ON_SOURCE_ACCOUNT\"} 1\n")
+                    .contains("http_request_duration_seconds_count{route=\"POST /v1/transfers\"}");
+        }
         logger.info(">>> ===========================================================================================");
     }
 
+    @Test
+    public void transferCanBePerformedBeforeItIsAnswered() throws UnirestException, JSONException {
+        Unirest.post(ACCOUNTS).body(buildAccountJson("Y", "EUR", "5.00")).asJson();
+        Unirest.post(ACCOUNTS).body(buildAccountJson("Z", "EUR", "0.00")).asJson();
+
+        logger.info(">>> With mode=sync the transfer is performed on the request thread and answered in its final status.");
+        logger.info(">>> POST /transfers?mode=sync");
+        HttpResponse<JsonNode> completed = Unirest.post(TRANSFERS + "?mode=sync")
+                .body(buildTransferJson("Y", "Z", "EUR", "5.00"))
+                .asJson();
+        assertThat(completed.getStatus()).isEqualTo(OK_200);
+        assertThat(completed.getBody().getObject().getString("transferStatus")).isEqualTo("COMPLETED");
+        HttpResponse<JsonNode> rejected = Unirest.post(TRANSFERS + "?mode=sync")
+                .body(buildTransferJson("Y", "Z", "EUR", "5.00"))
+                .asJson();
+        assertThat(rejected.getBody().getObject().getString("transferStatus"))
+                .isEqualTo("REJECTED_NOT_ENOUGH_CREDIT_ON_SOURCE_ACCOUNT");
+        logger.info(">>> Got {}", bodyToString(rejected));
+
+        assertThat(Unirest.get(ACCOUNTS + "/Z").asJson().getBody().getObject().getString("amount")).isEqualTo("5.00");
+        assertThat(Unirest.post(TRANSFERS + "?mode=now").body(buildTransferJson("Y", "Z", "EUR", "1.00"))
+                .asJson().getStatus()).isEqualTo(BAD_REQUEST_400);
+    }
+
+    @Test
+    public void transferCompletionIsPushedInsteadOfPolled() throws Exception {
+        Unirest.post(ACCOUNTS).body(buildAccountJson("W", "EUR", "100.00")).asJson();
+        Unirest.post(ACCOUNTS).body(buildAccountJson("X", "EUR", "0.00")).asJson();
+
+        logger.info(">>> Status changes of transfers of an account are streamed as server-sent events.");
+        logger.info(">>> GET /transfers/events?accountId=W");
+        HttpURLConnection events = (HttpURLConnection) new URL(TRANSFERS + "/events?accountId=W").openConnection();
+        events.setReadTimeout(10_000);
+        assertThat(events.getResponseCode()).isEqualTo(OK_200);
+        assertThat(events.getContentType()).startsWith("text/event-stream");
+        BufferedReader eventLines = new BufferedReader(new InputStreamReader(events.getInputStream(), UTF_8));
+
+        String transferId = Unirest.post(TRANSFERS)
+                .body(buildTransferJson("W", "X", "EUR", "10.00"))
+                .asJson().getBody().getObject().getString("transferId");
+
+        logger.info(">>> A transfer can be waited for until it is finished, with a single request.");
+        logger.info(">>> GET /transfers/{}?waitFor=terminal&timeout=10", transferId);
+        HttpResponse<JsonNode> finished = Unirest.get(TRANSFERS + "/" + transferId)
+                .queryString("waitFor", "terminal")
+                .queryString("timeout", "10")
+                .asJson();
+        assertThat(finished.getStatus()).isEqualTo(OK_200);
+        assertThat(finished.getBody().getObject().getString("transferStatus")).isEqualTo("COMPLETED");
+        assertThat(Unirest.get(TRANSFERS + "/" + transferId).queryString("waitFor", "started").asJson().getStatus())
+                .isEqualTo(BAD_REQUEST_400);
+
+        List<String> statuses = new ArrayList<>();
+        while (!statuses.contains("COMPLETED")) {
+            String line = eventLines.readLine();
+            assertThat(line).isNotNull();
+            if (line.startsWith("data: ")) {
+                JSONObject transfer = new JSONObject(line.substring("data: ".length()));
+                assertThat(transfer.getString("transferId")).isEqualTo(transferId);
+                statuses.add(transfer.getString("transferStatus"));
+            }
+        }
+        logger.info(">>> Got events with statuses {}", statuses);
+        assertThat(statuses).containsExactly("PROCESSING", "COMPLETED");
+        events.disconnect();
+    }
+
     /**
      * This test checks if account balances calculated on server-side (multi-threaded)
      *  are the same with the ones calculated in test (single-thread)
@@ -238,7 +377,7 @@ public class HttpAppIntegrationTest {
         logger.info(">>> Expecting to get balances like these: {}", balances);
 
         logger.info(">>> Submitting {} transactions.", NUM_TRANSACTIONS);
-        logger.info(">>> This step tends to be slow, there is no batch api for transfer submission.");
+        logger.info(">>> This step tends to be slow, transfers are submitted one by one on purpose (see /transfers/batch).");
 
         List<String> transferUuids = new ArrayList<>(NUM_TRANSACTIONS);
         for (String transaction : transactions) {
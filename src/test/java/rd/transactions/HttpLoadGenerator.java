@@ -0,0 +1,305 @@
+package rd.transactions;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import rd.transactions.config.AppConfig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static rd.transactions.JsonUtils.buildAccountJson;
+import static rd.transactions.JsonUtils.buildTransferJson;
+
+/**
+ * Open-model load test of the http api: starts HttpApp, creates accounts and sends POST /v1/transfers
+ *  and GET /v1/transfers/:id at a constant rate, then prints latency percentiles.
+ *
+ * Request i is due at start + i / rate no matter how long earlier requests took, its latency is measured
+ *  from that time (not from when a client thread got to send it), so waiting for a busy server is counted
+ *  and coordinated omission does not hide stalls. If all client threads are busy, requests are sent late
+ *  and their latency includes the delay.
+ * Every SAMPLE_EVERY-th submitted transfer is polled until it is COMPLETED, the completion latency is measured
+ *  from the time its submission was due, with resolution of POLL_INTERVAL_MILLIS plus a GET.
+ * In sync mode transfers are submitted with ?mode=sync, they are finished once POST answers, nothing is polled.
+ *
+ * Run with: mvn verify -Pload-test, optionally with -Dload.rate=... -Dload.seconds=... -Dload.accounts=...
+ *  -Dload.reads=... (percent of GET requests) -Dload.connections=... -Dload.mode=async|sync
+ *  or run main with "rate seconds accounts readPercent connections mode".
+ */
+public class HttpLoadGenerator {
+    private static final int HTTP_PORT = 4579;
+    private static final int SAMPLE_EVERY = 10;
+    private static final int POLL_INTERVAL_MILLIS = 1;
+    private static final int RECENT_TRANSFERS = 4096;
+    private static final int WARMUP_SECONDS = 5;
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final int rate;
+    private final int accounts;
+    private final int readPercent;
+    private final int connections;
+    private final boolean sync;
+    private final Recorder submitLatency = new Recorder(MAX_LATENCY_NANOS, 3);
+    private final Recorder readLatency = new Recorder(MAX_LATENCY_NANOS, 3);
+    private final Recorder completionLatency = new Recorder(MAX_LATENCY_NANOS, 3);
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder failedTransfers = new LongAdder();
+    private final AtomicReferenceArray<String> recentTransfers = new AtomicReferenceArray<>(RECENT_TRANSFERS);
+    private final AtomicLong submitted = new AtomicLong();
+    private final ConcurrentLinkedQueue<PendingTransfer> pendingTransfers = new ConcurrentLinkedQueue<>();
+
+    private HttpLoadGenerator(int rate, int accounts, int readPercent, int connections, boolean sync) {
+        this.rate = rate;
+        this.accounts = accounts;
+        this.readPercent = readPercent;
+        this.connections = connections;
+        this.sync = sync;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rate = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int accounts = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int readPercent = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        int connections = args.length > 4 ? Integer.parseInt(args[4]) : 64;
+        boolean sync = args.length > 5 && "sync".equals(args[5]);
+
+        HttpApp app = new HttpApp(HTTP_PORT, AppConfig.builder()
+                .transferQueueCapacity(10_000_000)
+                .build());
+        app.run();
+        app.awaitInitialization();
+        try {
+            HttpLoadGenerator generator = new HttpLoadGenerator(rate, accounts, readPercent, connections, sync);
+            generator.createAccounts();
+            generator.run(WARMUP_SECONDS);
+            generator.reset();
+            long start = System.nanoTime();
+            long requests = generator.run(seconds);
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+            generator.report(seconds, requests, elapsedSeconds);
+        } finally {
+            app.stopServer();
+        }
+        // transfer processing threads are not daemons
+        System.exit(0);
+    }
+
+    private void createAccounts() throws IOException {
+        for (int i = 0; i < accounts; i++) {
+            Response response = send("POST", "/v1/accounts", buildAccountJson(accountId(i), "EUR", "1000000000.00"));
+            if (response.status != 200) {
+                throw new IllegalStateException("Account cannot be created, status " + response.status);
+            }
+        }
+    }
+
+    /**
+     * @return number of requests sent
+     */
+    private long run(int seconds) throws InterruptedException {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long requests = (long) seconds * rate;
+        long start = System.nanoTime();
+        AtomicLong next = new AtomicLong();
+        List<Thread> clients = new ArrayList<>();
+        for (int c = 0; c < connections; c++) {
+            Thread client = new Thread(() -> {
+                for (long request = next.getAndIncrement(); request < requests; request = next.getAndIncrement()) {
+                    long due = start + request * intervalNanos;
+                    long delay = due - System.nanoTime();
+                    if (delay > 0) {
+                        LockSupport.parkNanos(delay);
+                    }
+                    sendRequest(due);
+                }
+            }, "load-client-" + c);
+            client.start();
+            clients.add(client);
+        }
+        Thread poller = new Thread(this::pollPendingTransfers, "load-completion-poller");
+        poller.start();
+        for (Thread client : clients) {
+            client.join();
+        }
+        poller.interrupt();
+        poller.join();
+        return requests;
+    }
+
+    private void sendRequest(long due) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String recent = recentTransfers.get(random.nextInt(RECENT_TRANSFERS));
+        try {
+            if (recent != null && random.nextInt(100) < readPercent) {
+                Response response = send("GET", "/v1/transfers/" + recent, null);
+                readLatency.recordValue(Math.min(System.nanoTime() - due, MAX_LATENCY_NANOS));
+                if (response.status != 200) {
+                    errors.increment();
+                }
+                return;
+            }
+            int source = random.nextInt(accounts);
+            int target = (source + 1 + random.nextInt(accounts - 1)) % accounts;
+            Response response = send("POST", sync ? "/v1/transfers?mode=sync" : "/v1/transfers",
+                    buildTransferJson(accountId(source), accountId(target), "EUR", "1.00"));
+            long latency = Math.min(System.nanoTime() - due, MAX_LATENCY_NANOS);
+            submitLatency.recordValue(latency);
+            if (response.status != 200) {
+                errors.increment();
+                return;
+            }
+            String transferId = response.field("transferId");
+            long sequence = submitted.getAndIncrement();
+            recentTransfers.set((int) (sequence % RECENT_TRANSFERS), transferId);
+            if (sequence % SAMPLE_EVERY != 0) {
+                return;
+            }
+            if (!sync) {
+                pendingTransfers.add(new PendingTransfer(transferId, due));
+            } else if ("COMPLETED".equals(response.field("transferStatus"))) {
+                completionLatency.recordValue(latency);
+            } else {
+                failedTransfers.increment();
+            }
+        } catch (IOException ex) {
+            errors.increment();
+        }
+    }
+
+    /**
+     * Runs until interrupted and no transfer is pending any more.
+     */
+    private void pollPendingTransfers() {
+        boolean interrupted = false;
+        long giveUp = Long.MAX_VALUE;
+        while (!pendingTransfers.isEmpty() || !interrupted) {
+            for (Iterator<PendingTransfer> pending = pendingTransfers.iterator(); pending.hasNext(); ) {
+                PendingTransfer transfer = pending.next();
+                try {
+                    String status = send("GET", "/v1/transfers/" + transfer.transferId, null).field("transferStatus");
+                    if ("COMPLETED".equals(status)) {
+                        completionLatency.recordValue(Math.min(System.nanoTime() - transfer.due, MAX_LATENCY_NANOS));
+                        pending.remove();
+                    } else if (!"SUBMITTED".equals(status) && !"PROCESSING".equals(status)) {
+                        failedTransfers.increment();
+                        pending.remove();
+                    }
+                } catch (IOException ex) {
+                    errors.increment();
+                }
+            }
+            if (!interrupted && Thread.interrupted()) {
+                interrupted = true;
+                giveUp = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            }
+            if (System.nanoTime() > giveUp) {
+                System.out.printf("%d sampled transfers not completed%n", pendingTransfers.size());
+                return;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(POLL_INTERVAL_MILLIS));
+        }
+    }
+
+    private void reset() {
+        submitLatency.reset();
+        readLatency.reset();
+        completionLatency.reset();
+        errors.reset();
+        failedTransfers.reset();
+    }
+
+    private void report(int seconds, long requests, double elapsedSeconds) {
+        System.out.printf("%d requests in %.1f s (%d/s requested for %d s, %s), %d errors, %d sampled transfers failed%n",
+                requests, elapsedSeconds, rate, seconds, sync ? "sync" : "async", errors.sum(), failedTransfers.sum());
+        System.out.printf("%-28s %8s %10s %10s %10s %10s %10s%n", "latency [ms]", "count", "p50", "p90", "p99",
+                "p99.9", "max");
+        print("POST /v1/transfers", submitLatency.getIntervalHistogram());
+        print("GET /v1/transfers/:id", readLatency.getIntervalHistogram());
+        print("submitted to COMPLETED", completionLatency.getIntervalHistogram());
+    }
+
+    private static void print(String name, Histogram histogram) {
+        System.out.printf("%-28s %8d %10.3f %10.3f %10.3f %10.3f %10.3f%n", name, histogram.getTotalCount(),
+                millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+                millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getMaxValue()));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static String accountId(int account) {
+        return "account-" + account;
+    }
+
+    /**
+     * HttpURLConnection keeps the connection alive as long as the response is read fully.
+     */
+    private static Response send(String method, String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + HTTP_PORT + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write(body.getBytes(UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        ByteArrayOutputStream responseBody = new ByteArrayOutputStream();
+        try (InputStream input = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while (input != null && (read = input.read(buffer)) >= 0) {
+                responseBody.write(buffer, 0, read);
+            }
+        }
+        return new Response(status, responseBody.toByteArray());
+    }
+
+    private static final class Response {
+        private final int status;
+        private final byte[] body;
+
+        private Response(int status, byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        private String field(String name) throws IOException {
+            JsonNode field = mapper.readTree(body).get(name);
+            return field == null ? null : field.asText();
+        }
+    }
+
+    private static final class PendingTransfer {
+        private final String transferId;
+        private final long due;
+
+        private PendingTransfer(String transferId, long due) {
+            this.transferId = transferId;
+            this.due = due;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package rd.transactions;
+
+import rd.transactions.binary.BinaryTransferAck;
+import rd.transactions.binary.BinaryTransferClient;
+import rd.transactions.config.AppConfig;
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Money;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static rd.transactions.JsonUtils.buildAccountJson;
+import static rd.transactions.JsonUtils.buildTransferJson;
+
+/**
+ * Compares transfers submitted per second through POST /v1/transfers and through the binary ingress.
+ * Transfers move between accounts with large balances, so all of them complete.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=rd.transactions.IngressLoadGenerator
+ *  optionally followed by -Dexec.args="seconds httpThreads binaryConnections window"
+ */
+public class IngressLoadGenerator {
+    private static final int HTTP_PORT = 4577;
+    private static final int BINARY_PORT = 4578;
+    private static final int ACCOUNTS = 1000;
+    private static final int FLUSH_EVERY = 256;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int httpThreads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int binaryConnections = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        int window = args.length > 3 ? Integer.parseInt(args[3]) : 4096;
+
+        HttpApp app = new HttpApp(HTTP_PORT, AppConfig.builder()
+                .binaryPort(BINARY_PORT)
+                .transferQueueCapacity(10_000_000)
+                .build());
+        app.run();
+        app.awaitInitialization();
+        try {
+            for (int i = 0; i < ACCOUNTS; i++) {
+                post("/v1/accounts", buildAccountJson(accountId(i), "EUR", "1000000000.00"));
+            }
+            // first rounds warm up both paths
+            runHttp(1, httpThreads);
+            runBinary(1, binaryConnections, window);
+
+            Result http = runHttp(seconds, httpThreads);
+            Result binary = runBinary(seconds, binaryConnections, window);
+            System.out.printf("JSON over HTTP, %d threads:       %,10.0f transfers/s (%d rejected)%n",
+                    httpThreads, http.perSecond(seconds), http.rejected);
+            System.out.printf("binary, %d connections, window %d: %,10.0f transfers/s (%d rejected)%n",
+                    binaryConnections, window, binary.perSecond(seconds), binary.rejected);
+        } finally {
+            app.stopServer();
+        }
+    }
+
+    private static Result runHttp(int seconds, int threads) throws InterruptedException {
+        LongAdder submitted = new LongAdder();
+        LongAdder rejected = new LongAdder();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    while (System.nanoTime() < deadline) {
+                        if (post("/v1/transfers", randomTransferJson()) == 200) {
+                            submitted.increment();
+                        } else {
+                            rejected.increment();
+                        }
+                    }
+                } catch (IOException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return new Result(submitted.sum(), rejected.sum());
+    }
+
+    private static Result runBinary(int seconds, int connections, int window) throws Exception {
+        LongAdder submitted = new LongAdder();
+        LongAdder rejected = new LongAdder();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Thread> threads = new ArrayList<>();
+        List<BinaryTransferClient> clients = new ArrayList<>();
+        for (int c = 0; c < connections; c++) {
+            BinaryTransferClient client = BinaryTransferClient.connect("localhost", BINARY_PORT);
+            clients.add(client);
+            Semaphore inFlight = new Semaphore(window);
+            Thread sender = new Thread(() -> {
+                try {
+                    long correlationId = 0;
+                    while (System.nanoTime() < deadline) {
+                        if (!inFlight.tryAcquire()) {
+                            client.flush();
+                            inFlight.acquire();
+                        }
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        int source = random.nextInt(ACCOUNTS);
+                        client.send(correlationId++, AccountId.of(accountId(source)),
+                                AccountId.of(accountId((source + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS)),
+                                Money.euros(BigDecimal.ONE));
+                        if (correlationId % FLUSH_EVERY == 0) {
+                            client.flush();
+                        }
+                    }
+                    client.flush();
+                    // all acknowledgments are received once the whole window is free again
+                    inFlight.acquire(window);
+                    client.close();
+                } catch (IOException | InterruptedException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            });
+            Thread receiver = new Thread(() -> {
+                try {
+                    while (true) {
+                        BinaryTransferAck ack = client.receive();
+                        if (ack.getStatus() == 200) {
+                            submitted.increment();
+                        } else {
+                            rejected.increment();
+                        }
+                        inFlight.release();
+                    }
+                } catch (IOException ex) {
+                    // closed by the sender
+                }
+            });
+            sender.start();
+            receiver.start();
+            threads.add(sender);
+            threads.add(receiver);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return new Result(submitted.sum(), rejected.sum());
+    }
+
+    private static String randomTransferJson() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int source = random.nextInt(ACCOUNTS);
+        int target = (source + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+        return buildTransferJson(accountId(source), accountId(target), "EUR", "1.00");
+    }
+
+    private static String accountId(int account) {
+        return "account-" + account;
+    }
+
+    /**
+     * HttpURLConnection keeps the connection alive as long as the response is read fully.
+     */
+    private static int post(String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + HTTP_PORT + path).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write(body.getBytes(UTF_8));
+        }
+        int status = connection.getResponseCode();
+        try (InputStream input = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            byte[] buffer = new byte[1024];
+            while (input != null && input.read(buffer) >= 0) {
+                // drained, so that the connection can be reused
+            }
+        }
+        return status;
+    }
+
+    private static final class Result {
+        private final long submitted;
+        private final long rejected;
+
+        private Result(long submitted, long rejected) {
+            this.submitted = submitted;
+            this.rejected = rejected;
+        }
+
+        private double perSecond(int seconds) {
+            return (double) submitted / seconds;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package rd.transactions.archive;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Money;
+import rd.transactions.model.Transfer;
+import rd.transactions.model.TransferStatus;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TransferArchiveTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void archivedTransferIsFoundWithItsStatus() throws IOException {
+        Transfer completed = transfer("A", "B", "12.34", TransferStatus.COMPLETED);
+        Transfer rejected = transfer("B", "A", "0.01", TransferStatus.REJECTED_NOT_ENOUGH_CREDIT_ON_SOURCE_ACCOUNT);
+        try (TransferArchive archive = TransferArchive.open(file())) {
+            archive.append(Arrays.asList(completed, rejected));
+
+            Transfer found = archive.find(rejected.getTransferId()).get();
+            assertThat(found).isEqualTo(rejected);
+            assertThat(found.getTransferStatus()).isEqualTo(TransferStatus.REJECTED_NOT_ENOUGH_CREDIT_ON_SOURCE_ACCOUNT);
+            assertThat(archive.find(completed.getTransferId())).contains(completed);
+            assertThat(archive.find(UUID.randomUUID())).isEmpty();
+            assertThat(archive.getArchivedTransfers()).isEqualTo(2L);
+        }
+    }
+
+    @Test
+    public void archivedTransfersAreFoundAfterReopen() throws IOException {
+        List<Transfer> transfers = new ArrayList<>();
+        try (TransferArchive archive = TransferArchive.open(file())) {
+            for (int block = 0; block < 10; block++) {
+                List<Transfer> chunk = new ArrayList<>();
+                for (int i = 0; i < 500; i++) {
+                    chunk.add(transfer("A" + i, "B" + block, "1.00", TransferStatus.COMPLETED));
+                }
+                archive.append(chunk);
+                transfers.addAll(chunk);
+            }
+        }
+
+        try (TransferArchive archive = TransferArchive.open(file())) {
+            assertThat(archive.getArchivedTransfers()).isEqualTo(5000L);
+            for (Transfer transfer : transfers) {
+                assertThat(archive.find(transfer.getTransferId())).contains(transfer);
+            }
+            // compressed blocks are much smaller than the transfers on the heap
+            assertThat(archive.getSizeBytes()).isLessThan(5000L * 40);
+        }
+    }
+
+    @Test
+    public void tornBlockIsCutOff() throws IOException {
+        Transfer kept = transfer("A", "B", "1.00", TransferStatus.COMPLETED);
+        Transfer torn = transfer("A", "B", "2.00", TransferStatus.COMPLETED);
+        long validSize;
+        try (TransferArchive archive = TransferArchive.open(file())) {
+            archive.append(Arrays.asList(kept));
+            validSize = archive.getSizeBytes();
+            archive.append(Arrays.asList(torn));
+        }
+        try (FileChannel channel = FileChannel.open(file(), WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (TransferArchive archive = TransferArchive.open(file())) {
+            assertThat(archive.find(kept.getTransferId())).contains(kept);
+            assertThat(archive.find(torn.getTransferId())).isEmpty();
+            assertThat(archive.getSizeBytes()).isEqualTo(validSize);
+
+            archive.append(Arrays.asList(torn));
+            assertThat(archive.find(torn.getTransferId())).contains(torn);
+        }
+    }
+
+    private Path file() {
+        return folder.getRoot().toPath().resolve("transfers.archive");
+    }
+
+    private static Transfer transfer(String source, String target, String amount, TransferStatus status) {
+        Transfer transfer = Transfer.of(
+                AccountId.of(source), AccountId.of(target), Money.euros(new BigDecimal(amount)), UUID.randomUUID());
+        transfer.updateTransferStatus(status);
+        return transfer;
+    }
+}
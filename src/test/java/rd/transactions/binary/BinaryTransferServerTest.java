@@ -0,0 +1,120 @@
+package rd.transactions.binary;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import rd.transactions.config.UUIDGenerator;
+import rd.transactions.exceptions.TransferQueueFullException;
+import rd.transactions.managers.TransferManager;
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Money;
+import rd.transactions.model.Transfer;
+import rd.transactions.validators.TransferAmountValidator;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.eclipse.jetty.http.HttpStatus.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BinaryTransferServerTest {
+    private static final UUID TRANSFER_ID = UUID.fromString("3f8d3a94-6a3a-4f8c-9d1b-7f5a8c2e1b00");
+
+    @Mock
+    private TransferManager transferManager;
+
+    @Mock
+    private UUIDGenerator uuidGenerator;
+
+    private BinaryTransferServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        when(uuidGenerator.generateUUID()).thenReturn(TRANSFER_ID);
+        server = BinaryTransferServer.start(0, transferManager, new TransferAmountValidator(), uuidGenerator);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void pipelinedRequestsAreAcknowledgedInOrderOnceDurable() throws IOException {
+        when(transferManager.submitTransferWithoutRunning(any())).thenReturn(7L);
+        doThrow(new TransferQueueFullException()).when(transferManager)
+                .submitTransferWithoutRunning(argThat(transfer -> transfer.getSourceAccount().getId().equals("busy")));
+
+        List<BinaryTransferAck> acks = new ArrayList<>();
+        try (BinaryTransferClient client = BinaryTransferClient.connect("localhost", server.getPort())) {
+            client.send(1, AccountId.of("A"), AccountId.of("Bé"), Money.euros(new BigDecimal("12.34")));
+            client.send(2, AccountId.of("A"), AccountId.of("B"), Money.euros(BigDecimal.ZERO));
+            client.send(3, AccountId.of("busy"), AccountId.of("B"), Money.euros(BigDecimal.ONE));
+            client.send(4, AccountId.of("A"), AccountId.of("B"), Money.ofMinorUnits(5, Currency.getInstance("JPY")));
+            client.flush();
+            for (int i = 0; i < 4; i++) {
+                acks.add(client.receive());
+            }
+        }
+
+        assertThat(acks).extracting(BinaryTransferAck::getCorrelationId).containsExactly(1L, 2L, 3L, 4L);
+        assertThat(acks).extracting(BinaryTransferAck::getStatus)
+                .containsExactly(OK_200, UNPROCESSABLE_ENTITY_422, SERVICE_UNAVAILABLE_503, OK_200);
+        assertThat(acks).extracting(BinaryTransferAck::getTransferId)
+                .containsExactly(TRANSFER_ID, null, null, TRANSFER_ID);
+        verify(transferManager).submitTransferWithoutRunning(eq(Transfer.of(AccountId.of("A"), AccountId.of("Bé"),
+                Money.euros(new BigDecimal("12.34")), TRANSFER_ID)));
+        verify(transferManager, atLeastOnce()).awaitDurable(7L);
+    }
+
+    @Test
+    public void frameTooLongClosesOnlyItsConnection() throws IOException {
+        try (Socket socket = new Socket("localhost", server.getPort());
+             BinaryTransferClient client = BinaryTransferClient.connect("localhost", server.getPort())) {
+            DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+            output.writeInt(BinaryProtocol.MAX_REQUEST_LENGTH + 1);
+            output.flush();
+            assertThat(socket.getInputStream().read()).isEqualTo(-1);
+
+            client.send(1, AccountId.of("A"), AccountId.of("B"), Money.ofMinorUnits(1, Currency.getInstance("EUR")));
+            client.flush();
+            assertThat(client.receive().getStatus()).isEqualTo(OK_200);
+        }
+    }
+
+    @Test
+    public void unknownCurrencyIsBadRequest() throws IOException {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+            output.writeInt(BinaryProtocol.MIN_REQUEST_LENGTH + 2);
+            output.writeLong(9);
+            output.writeLong(100);
+            output.writeBytes("QQQ");
+            output.writeShort(1);
+            output.writeBytes("A");
+            output.writeShort(1);
+            output.writeBytes("B");
+            output.flush();
+
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+            assertThat(input.readInt()).isEqualTo(BinaryProtocol.ACK_LENGTH);
+            assertThat(input.readLong()).isEqualTo(9);
+            assertThat(input.readShort()).isEqualTo((short) BAD_REQUEST_400);
+        }
+        verify(transferManager, never()).submitTransferWithoutRunning(any());
+    }
+}
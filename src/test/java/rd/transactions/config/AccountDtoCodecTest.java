@@ -0,0 +1,61 @@
+package rd.transactions.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import rd.transactions.dto.AccountDto;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static rd.transactions.JsonUtils.buildAccountJson;
+
+public class AccountDtoCodecTest {
+    private final ObjectMapper databind = ObjectMapperFactory.getObjectMapper(JsonCodec.DATABIND);
+    private final ObjectMapper streaming = ObjectMapperFactory.getObjectMapper(JsonCodec.STREAMING);
+
+    @Test
+    public void writtenJsonIsTheSameAsWrittenByDataBinding() throws IOException {
+        List<AccountDto> accounts = Arrays.asList(
+                new AccountDto("A", Currency.getInstance("EUR"), new BigDecimal("100.00")),
+                new AccountDto("line\nbreak", Currency.getInstance("BHD"), new BigDecimal("-0.001")),
+                new AccountDto(null, null, null));
+
+        for (AccountDto account : accounts) {
+            assertThat(streaming.writeValueAsBytes(account)).isEqualTo(databind.writeValueAsBytes(account));
+        }
+        assertThat(streaming.writeValueAsString(accounts)).isEqualTo(databind.writeValueAsString(accounts));
+    }
+
+    @Test
+    public void readAccountIsTheSameAsReadByDataBinding() throws IOException {
+        List<String> requests = Arrays.asList(
+                buildAccountJson("A", "EUR", "100.00"),
+                "{\"amount\": 5, \"currency\": \"USD\", \"accountId\": \"B\"}");
+
+        for (String request : requests) {
+            AccountDto expected = databind.readValue(request, AccountDto.class);
+            AccountDto read = streaming.readValue(request, AccountDto.class);
+            assertThat(databind.writeValueAsString(read)).isEqualTo(databind.writeValueAsString(expected));
+        }
+    }
+
+    @Test
+    public void inputRejectedByDataBindingIsRejected() {
+        List<String> requests = Arrays.asList(
+                "{\"accountId\": \"A\", \"currency\": \"EUR\"}",
+                "{\"accountId\": \"A\", \"currency\": \"EUR\", \"amount\": \"1\", \"owner\": \"X\"}",
+                buildAccountJson("A", "EURO", "1.00"),
+                buildAccountJson("A", "EUR", "1.0.0"),
+                "{\"accountId\": [\"A\"], \"currency\": \"EUR\", \"amount\": \"1\"}");
+
+        for (String request : requests) {
+            assertThatThrownBy(() -> databind.readValue(request, AccountDto.class)).isInstanceOf(IOException.class);
+            assertThatThrownBy(() -> streaming.readValue(request, AccountDto.class)).isInstanceOf(IOException.class);
+        }
+    }
+}
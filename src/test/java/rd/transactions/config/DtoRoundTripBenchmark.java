@@ -0,0 +1,70 @@
+package rd.transactions.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import rd.transactions.dto.AccountDto;
+import rd.transactions.dto.TransferDto;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static rd.transactions.JsonUtils.buildAccountJson;
+import static rd.transactions.JsonUtils.buildTransferJsonWithReadOnlyData;
+
+/**
+ * Reading and writing back TransferDto and AccountDto by mappers of ObjectMapperFactory, for both JSON codecs.
+ *
+ * Run with: mvn verify -Pbenchmark -Djmh.include=DtoRoundTripBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DtoRoundTripBenchmark {
+    @Param({"DATABIND", "STREAMING"})
+    private JsonCodec codec;
+    private ObjectReader transferReader;
+    private ObjectReader accountReader;
+    private ObjectWriter writer;
+    private byte[] transfer;
+    private byte[] account;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper mapper = ObjectMapperFactory.getObjectMapper(codec);
+        transferReader = mapper.readerFor(TransferDto.class);
+        accountReader = mapper.readerFor(AccountDto.class);
+        writer = mapper.writer();
+        transfer = buildTransferJsonWithReadOnlyData(
+                "source-account", "target-account", "EUR", "123.45", UUID.randomUUID().toString(), "SUBMITTED")
+                .getBytes(UTF_8);
+        account = buildAccountJson("account", "EUR", "1234567.89").getBytes(UTF_8);
+    }
+
+    @Benchmark
+    public byte[] transferRoundTrip() throws IOException {
+        TransferDto dto = transferReader.readValue(transfer);
+        return writer.writeValueAsBytes(dto);
+    }
+
+    @Benchmark
+    public byte[] accountRoundTrip() throws IOException {
+        AccountDto dto = accountReader.readValue(account);
+        return writer.writeValueAsBytes(dto);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DtoRoundTripBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,93 @@
+package rd.transactions.config;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimeOrderedUUIDGeneratorTest {
+    private static final int THREADS = 16;
+    private static final int IDS_PER_THREAD = 100_000;
+
+    @Test
+    public void idIsVersion7UuidWithCreationTime() {
+        long now = System.currentTimeMillis();
+        UUID id = new TimeOrderedUUIDGenerator(() -> now).generateUUID();
+
+        assertThat(id.version()).isEqualTo(7);
+        assertThat(id.variant()).isEqualTo(2);
+        assertThat(TimeOrderedUUIDGenerator.timestampOf(id)).isEqualTo(now);
+        assertThat(UUID.fromString(id.toString())).isEqualTo(id);
+    }
+
+    @Test
+    public void idsIncreaseWhenCounterRunsOutOrClockGoesBack() {
+        AtomicLong clock = new AtomicLong(1_000);
+        TimeOrderedUUIDGenerator generator = new TimeOrderedUUIDGenerator(clock::get);
+
+        UUID previous = generator.generateUUID();
+        for (int i = 0; i < 10_000; i++) {
+            if (i == 5_000) {
+                clock.set(900);
+            }
+            UUID id = generator.generateUUID();
+            assertThat(id).isGreaterThan(previous);
+            assertThat(id.version()).isEqualTo(7);
+            previous = id;
+        }
+        assertThat(TimeOrderedUUIDGenerator.timestampOf(previous)).isGreaterThan(1_000);
+    }
+
+    @Test
+    public void idsOfLaterMillisecondAreGreater() {
+        AtomicLong clock = new AtomicLong(1_000);
+        TimeOrderedUUIDGenerator generator = new TimeOrderedUUIDGenerator(clock::get);
+        UUID first = generator.generateUUID();
+        clock.incrementAndGet();
+
+        UUID fromOtherThread = CompletableFuture.supplyAsync(generator::generateUUID).join();
+
+        assertThat(fromOtherThread).isGreaterThan(first);
+    }
+
+    @Test
+    public void idsGeneratedByManyThreadsAreUniqueAndIncreasePerThread() throws Exception {
+        TimeOrderedUUIDGenerator generator = new TimeOrderedUUIDGenerator();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<UUID[]>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    UUID[] ids = new UUID[IDS_PER_THREAD];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = generator.generateUUID();
+                    }
+                    return ids;
+                }));
+            }
+            start.countDown();
+
+            Set<UUID> all = ConcurrentHashMap.newKeySet();
+            for (Future<UUID[]> future : futures) {
+                UUID[] ids = future.get();
+                for (int i = 0; i < ids.length; i++) {
+                    assertThat(all.add(ids[i])).isTrue();
+                    if (i > 0) {
+                        assertThat(ids[i]).isGreaterThan(ids[i - 1]);
+                    }
+                }
+            }
+            assertThat(all).hasSize(THREADS * IDS_PER_THREAD);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package rd.transactions.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import rd.transactions.dto.TransferDto;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static rd.transactions.JsonUtils.buildTransferJson;
+import static rd.transactions.JsonUtils.buildTransferJsonWithReadOnlyData;
+
+public class TransferDtoCodecTest {
+    private final ObjectMapper databind = ObjectMapperFactory.getObjectMapper(JsonCodec.DATABIND);
+    private final ObjectMapper streaming = ObjectMapperFactory.getObjectMapper(JsonCodec.STREAMING);
+
+    @Test
+    public void writtenJsonIsTheSameAsWrittenByDataBinding() throws IOException {
+        List<TransferDto> transfers = Arrays.asList(
+                new TransferDto("A", "B", Currency.getInstance("EUR"), new BigDecimal("123.40"),
+                        UUID.randomUUID(), "COMPLETED"),
+                new TransferDto("\"quoted\" é", "B", Currency.getInstance("JPY"), new BigDecimal("1E+3"),
+                        null, null),
+                new TransferDto(null, null, null, null, null, null));
+
+        for (TransferDto transfer : transfers) {
+            assertThat(streaming.writeValueAsBytes(transfer)).isEqualTo(databind.writeValueAsBytes(transfer));
+        }
+        assertThat(streaming.writeValueAsString(transfers)).isEqualTo(databind.writeValueAsString(transfers));
+    }
+
+    @Test
+    public void readTransferIsTheSameAsReadByDataBinding() throws IOException {
+        List<String> requests = Arrays.asList(
+                buildTransferJson("A", "B", "EUR", "10.00"),
+                buildTransferJsonWithReadOnlyData("A", "B", "USD", "0.5", UUID.randomUUID().toString(), "SUBMITTED"),
+                "{\"amount\": 12.345, \"currency\": \"GBP\", \"targetAccountId\": 7, \"sourceAccountId\": \"S\"}",
+                "{\"sourceAccountId\": null, \"targetAccountId\": \"T\", \"currency\": \"EUR\", \"amount\": \" 1 \","
+                        + " \"transferId\": \"\"}");
+
+        for (String request : requests) {
+            TransferDto expected = databind.readValue(request, TransferDto.class);
+            TransferDto read = streaming.readValue(request, TransferDto.class);
+            assertThat(databind.writeValueAsString(read)).isEqualTo(databind.writeValueAsString(expected));
+        }
+        String batch = "[" + String.join(",", requests) + "]";
+        assertThat(databind.writeValueAsString(streaming.readValue(batch, TransferDto[].class)))
+                .isEqualTo(databind.writeValueAsString(databind.readValue(batch, TransferDto[].class)));
+    }
+
+    @Test
+    public void inputRejectedByDataBindingIsRejected() {
+        List<String> requests = Arrays.asList(
+                "{\"sourceAccountId\": \"A\", \"targetAccountId\": \"B\", \"currency\": \"EUR\"}",
+                "{\"sourceAccountId\": \"A\", \"targetAccountId\": \"B\", \"currency\": \"EUR\", \"amount\": \"1\","
+                        + " \"fee\": 1}",
+                buildTransferJson("A", "B", "XYZ", "1.00"),
+                buildTransferJson("A", "B", "eur", "1.00"),
+                buildTransferJson("A", "B", "EUR", "one"),
+                buildTransferJsonWithReadOnlyData("A", "B", "EUR", "1", "not-a-uuid", "SUBMITTED"),
+                "{\"sourceAccountId\": {\"id\": \"A\"}, \"targetAccountId\": \"B\", \"currency\": \"EUR\","
+                        + " \"amount\": \"1\"}",
+                "[]",
+                "\"transfer\"");
+
+        for (String request : requests) {
+            assertThatThrownBy(() -> databind.readValue(request, TransferDto.class)).isInstanceOf(IOException.class);
+            assertThatThrownBy(() -> streaming.readValue(request, TransferDto.class)).isInstanceOf(IOException.class);
+        }
+    }
+
+    @Test
+    public void currencyIsReadFromCacheOnceSeen() throws IOException {
+        String request = buildTransferJson("A", "B", "CHF", "1.00");
+
+        Currency first = streaming.readValue(request, TransferDto.class).getCurrency();
+        Currency second = streaming.readValue(request.getBytes("UTF-8"), TransferDto.class).getCurrency();
+
+        assertThat(first).isSameAs(Currency.getInstance("CHF")).isSameAs(second);
+    }
+}
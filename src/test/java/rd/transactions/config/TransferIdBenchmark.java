@@ -0,0 +1,43 @@
+package rd.transactions.config;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of transfer id generation by many threads at once, for both strategies.
+ *
+ * Run with: mvn verify -Pbenchmark -Djmh.include=TransferIdBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class TransferIdBenchmark {
+    @Param({"RANDOM", "TIME_ORDERED"})
+    private TransferIdStrategy strategy;
+    private UUIDGenerator generator;
+
+    @Setup
+    public void setUp() {
+        generator = strategy.createGenerator();
+    }
+
+    @Benchmark
+    public UUID generate() {
+        return generator.generateUUID();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TransferIdBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,80 @@
+package rd.transactions.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import rd.transactions.config.JsonCodec;
+import rd.transactions.config.ObjectMapperFactory;
+import rd.transactions.dto.TransferDto;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static rd.transactions.JsonUtils.buildTransferJsonWithReadOnlyData;
+
+/**
+ * Compares handling of request and response bodies through Strings (request.body(), readValue(String),
+ *  writeValueAsString encoded by Spark) with parsing and writing bytes by cached ObjectReader and ObjectWriter,
+ *  for both JSON codecs.
+ *
+ * Run with: mvn verify -Pbenchmark -Djmh.include=JsonBodyBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonBodyBenchmark {
+    @Param({"DATABIND", "STREAMING"})
+    private JsonCodec codec;
+    private ObjectMapper mapper;
+    private ObjectReader transferReader;
+    private ObjectWriter writer;
+    private byte[] body;
+    private TransferDto transfer;
+
+    @Setup
+    public void setUp() throws IOException {
+        mapper = ObjectMapperFactory.getObjectMapper(codec);
+        transferReader = mapper.readerFor(TransferDto.class);
+        writer = mapper.writer();
+        body = buildTransferJsonWithReadOnlyData(
+                "source-account", "target-account", "EUR", "123.45", UUID.randomUUID().toString(), "SUBMITTED")
+                .getBytes(UTF_8);
+        transfer = transferReader.readValue(body);
+    }
+
+    @Benchmark
+    public TransferDto parseThroughString() throws IOException {
+        return mapper.readValue(new String(body, UTF_8), TransferDto.class);
+    }
+
+    @Benchmark
+    public TransferDto parseBytes() throws IOException {
+        return transferReader.readValue(body);
+    }
+
+    @Benchmark
+    public byte[] writeThroughString() throws IOException {
+        return mapper.writeValueAsString(transfer).getBytes(UTF_8);
+    }
+
+    @Benchmark
+    public byte[] writeBytes() throws IOException {
+        return writer.writeValueAsBytes(transfer);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JsonBodyBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
@@ -10,19 +10,30 @@ import org.skyscreamer.jsonassert.JSONAssert;
 import org.skyscreamer.jsonassert.JSONCompareMode;
 import rd.transactions.exceptions.AccountBadRequestException;
 import rd.transactions.exceptions.AccountDoesNotExistException;
+import rd.transactions.exceptions.AccountOperationsBadRequestException;
 import rd.transactions.exceptions.BalanceInvalidException;
 import rd.transactions.model.Account;
 import rd.transactions.model.AccountId;
 import rd.transactions.model.Money;
 import rd.transactions.managers.AccountManager;
+import rd.transactions.operation.log.AccountHistoryVisitor;
 import rd.transactions.validators.BalanceValidator;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.Currency;
 import java.util.Optional;
+import java.util.function.Consumer;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static rd.transactions.JsonUtils.buildAccountJson;
@@ -38,11 +49,11 @@ public class AccountControllerTest {
 
     @Test
     public void whenRequestIsValidAccountIsCreated() throws JsonProcessingException, JSONException {
-        when(balanceValidator.isBalanceAllowed(any())).thenReturn(true);
+        when(balanceValidator.isBalanceAllowed(anyLong(), any())).thenReturn(true);
         AccountController service = new AccountController(repository, balanceValidator, new AccountConverter());
         String requestBody = buildAccountJson("123A", "USD", "100.00");
 
-        String addedAccount = service.addAccount(requestBody);
+        String addedAccount = new String(service.addAccount(requestBody.getBytes(UTF_8)), UTF_8);
 
         Account expectedAccount = Account.of(
                 AccountId.of("123A"),
@@ -54,11 +65,11 @@ public class AccountControllerTest {
 
     @Test
     public void whenRequestedBalanceHasHigherPrecisionThanCurrencyAllowsItWillBeRounded() throws JsonProcessingException, JSONException {
-        when(balanceValidator.isBalanceAllowed(any())).thenReturn(true);
+        when(balanceValidator.isBalanceAllowed(anyLong(), any())).thenReturn(true);
         AccountController service = new AccountController(repository, balanceValidator, new AccountConverter());
         String requestBody = buildAccountJson("123A", "USD", "12.12345");
 
-        String addedAccount = service.addAccount(requestBody);
+        String addedAccount = new String(service.addAccount(requestBody.getBytes(UTF_8)), UTF_8);
 
         String expectedBodyWithRoundedBalance = buildAccountJson("123A", "USD", "12.12");
         JSONAssert.assertEquals(expectedBodyWithRoundedBalance, addedAccount, JSONCompareMode.LENIENT);
@@ -66,11 +77,19 @@ public class AccountControllerTest {
 
     @Test(expected = BalanceInvalidException.class)
     public void addAccountWithInvalidBalanceResultsInException() throws JsonProcessingException {
-        when(balanceValidator.isBalanceAllowed(any())).thenReturn(false);
+        when(balanceValidator.isBalanceAllowed(anyLong(), any())).thenReturn(false);
         AccountController service = new AccountController(repository, balanceValidator, new AccountConverter());
         String requestBody = buildAccountJson("123A", "USD", "100.0");
 
-        service.addAccount(requestBody);
+        service.addAccount(requestBody.getBytes(UTF_8));
+    }
+
+    @Test(expected = BalanceInvalidException.class)
+    public void balanceOutOfSupportedRangeResultsInException() throws JsonProcessingException {
+        AccountController service = new AccountController(repository, balanceValidator, new AccountConverter());
+        String requestBody = buildAccountJson("123A", "USD", "100000000000000000000");
+
+        service.addAccount(requestBody.getBytes(UTF_8));
     }
 
     @Test(expected = AccountBadRequestException.class)
@@ -80,7 +99,7 @@ public class AccountControllerTest {
                 "\"amount\": \"100.00\"}";
 
         // no currency
-        service.addAccount(requestBody);
+        service.addAccount(requestBody.getBytes(UTF_8));
     }
 
     @Test(expected = AccountBadRequestException.class)
@@ -88,7 +107,7 @@ public class AccountControllerTest {
         AccountController service = new AccountController(repository, balanceValidator, new AccountConverter());
         String requestBody = buildAccountJson("123A", "USDki", "100.0");
 
-        service.addAccount(requestBody);
+        service.addAccount(requestBody.getBytes(UTF_8));
     }
 
     @Test(expected = AccountBadRequestException.class)
@@ -96,7 +115,7 @@ public class AccountControllerTest {
         AccountController service = new AccountController(repository, balanceValidator, new AccountConverter());
         String requestBody = buildAccountJson("123A", "USD", "100.x0");
 
-        service.addAccount(requestBody);
+        service.addAccount(requestBody.getBytes(UTF_8));
     }
 
     @Test(expected = AccountDoesNotExistException.class)
@@ -108,6 +127,31 @@ public class AccountControllerTest {
         service.getAccount("unknownId");
     }
 
+    @Test
+    public void allAccountsAreStreamedAsArrayOrLines() throws IOException, JSONException {
+        AccountController service = new AccountController(repository, balanceValidator, new AccountConverter());
+        doAnswer(invocation -> {
+            Consumer<Account> consumer = invocation.getArgument(0);
+            consumer.accept(Account.of(AccountId.of("124"), Money.euros(BigDecimal.ONE)));
+            consumer.accept(Account.of(AccountId.of("125"), Money.euros(BigDecimal.TEN)));
+            return null;
+        }).when(repository).forEachAccount(any());
+
+        ByteArrayOutputStream array = new ByteArrayOutputStream();
+        service.writeAccounts(array, false);
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        service.writeAccounts(lines, true);
+
+        JSONAssert.assertEquals("[" + buildAccountJson("124", "EUR", "1.00") + ","
+                        + buildAccountJson("125", "EUR", "10.00") + "]",
+                array.toString("UTF-8"), JSONCompareMode.STRICT);
+        String[] accountLines = lines.toString("UTF-8").split("\n");
+        assertThat(lines.toString("UTF-8")).endsWith("\n");
+        assertThat(accountLines).hasSize(2);
+        JSONAssert.assertEquals(buildAccountJson("124", "EUR", "1.00"), accountLines[0], JSONCompareMode.STRICT);
+        JSONAssert.assertEquals(buildAccountJson("125", "EUR", "10.00"), accountLines[1], JSONCompareMode.STRICT);
+    }
+
     @Test
     public void whenQueriedForExistingAccountTheDataIsReturned() throws JsonProcessingException, JSONException {
         AccountController service = new AccountController(repository, balanceValidator, new AccountConverter());
@@ -117,9 +161,69 @@ public class AccountControllerTest {
                         Account.of(AccountId.of("124"),
                                 Money.euros(BigDecimal.ONE))));
 
-        String accountJson = service.getAccount("124");
+        String accountJson = new String(service.getAccount("124"), UTF_8);
         String expectedJson= buildAccountJson("124", "EUR", "1.00");
         JSONAssert.assertEquals(expectedJson, accountJson, JSONCompareMode.LENIENT);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void operationsAreWrittenWithCursorOfTheNextPage() throws IOException, JSONException {
+        AccountController service = new AccountController(repository, balanceValidator, new AccountConverter());
+        when(repository.getAccountById(eq(AccountId.of("124")))).thenReturn(
+                Optional.of(Account.of(AccountId.of("124"), Money.euros(BigDecimal.ONE))));
+        when(repository.readHistory(eq(AccountId.of("124")), eq(5L), eq(2), eq(0L), eq(Long.MAX_VALUE), any()))
+                .thenAnswer(invocation -> {
+                    AccountHistoryVisitor visitor = invocation.getArgument(5);
+                    visitor.visit(5, 1000, 250);
+                    visitor.visit(6, 2000, -1999);
+                    return 7L;
+                });
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        service.writeOperations("124", "5", "2", "1970-01-01T00:00:00Z", null, output);
+
+        JSONAssert.assertEquals("{\"accountId\":\"124\",\"currency\":\"EUR\",\"operations\":["
+                        + "{\"index\":5,\"timestamp\":\"1970-01-01T00:00:01Z\",\"amount\":\"2.50\"},"
+                        + "{\"index\":6,\"timestamp\":\"1970-01-01T00:00:02Z\",\"amount\":\"-19.99\"}],"
+                        + "\"nextCursor\":\"7\"}",
+                output.toString("UTF-8"), JSONCompareMode.STRICT);
+    }
+
+    @Test
+    public void lastPageHasNoCursor() throws IOException, JSONException {
+        AccountController service = new AccountController(repository, balanceValidator, new AccountConverter());
+        when(repository.getAccountById(eq(AccountId.of("124")))).thenReturn(
+                Optional.of(Account.of(AccountId.of("124"), Money.euros(BigDecimal.ONE))));
+        when(repository.readHistory(any(), anyLong(), anyInt(), anyLong(), anyLong(), any())).thenReturn(-1L);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        service.writeOperations("124", null, null, null, null, output);
+
+        JSONAssert.assertEquals("{\"accountId\":\"124\",\"currency\":\"EUR\",\"operations\":[],"
+                        + "\"nextCursor\":null}",
+                output.toString("UTF-8"), JSONCompareMode.STRICT);
+    }
+
+    @Test
+    public void invalidOperationsQueryResultsInExceptionBeforeAnythingIsWritten() throws IOException {
+        AccountController service = new AccountController(repository, balanceValidator, new AccountConverter());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        for (String[] query : new String[][]{
+                {"-1", null, null, null}, {"x", null, null, null}, {null, "0", null, null},
+                {null, "1001", null, null}, {null, null, "yesterday", null},
+                {null, null, "2019-02-02T00:00:00Z", "2019-02-01T00:00:00Z"}}) {
+            assertThatThrownBy(() -> service.writeOperations("124", query[0], query[1], query[2], query[3], output))
+                    .isInstanceOf(AccountOperationsBadRequestException.class);
+        }
+        assertThat(output.size()).isZero();
+    }
+
+    @Test(expected = AccountDoesNotExistException.class)
+    public void operationsOfAccountWhichDoesNotExistResultInException() throws IOException {
+        AccountController service = new AccountController(repository, balanceValidator, new AccountConverter());
+        when(repository.getAccountById(any())).thenReturn(Optional.empty());
+
+        service.writeOperations("unknownId", null, null, null, null, new ByteArrayOutputStream());
+    }
+}
@@ -9,27 +9,44 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.skyscreamer.jsonassert.JSONAssert;
 import org.skyscreamer.jsonassert.JSONCompareMode;
+import rd.transactions.config.JsonCodec;
 import rd.transactions.config.UUIDGenerator;
+import rd.transactions.exceptions.IdempotencyKeyReusedException;
 import rd.transactions.exceptions.TransferAmountInvalidException;
 import rd.transactions.exceptions.TransferBadRequestException;
+import rd.transactions.exceptions.TransferBatchInvalidException;
+import rd.transactions.exceptions.TransferBatchTooLargeException;
 import rd.transactions.exceptions.TransferNotFoundException;
+import rd.transactions.exceptions.TransferQueueFullException;
+import rd.transactions.exceptions.TransferQueryBadRequestException;
 import rd.transactions.model.AccountId;
 import rd.transactions.model.Money;
 import rd.transactions.model.Transfer;
+import rd.transactions.managers.IdempotencyCache;
 import rd.transactions.managers.TransferManager;
+import rd.transactions.managers.TransferPage;
+import rd.transactions.managers.TransferSubmissionMode;
+import rd.transactions.model.TransferStatus;
 import rd.transactions.validators.TransferAmountValidator;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Currency;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 import static rd.transactions.JsonUtils.buildTransferJson;
 import static rd.transactions.JsonUtils.buildTransferJsonWithReadOnlyData;
 
@@ -61,31 +78,31 @@ public class TransferControllerTest {
         TransferController service = new TransferController(
                 transferManager, transferAmountValidator, transferConverter, uuidGenerator);
 
-        service.submitTransfer(transferJson);
+        service.submitTransfer(transferJson.getBytes(UTF_8));
     }
 
     @Test(expected = TransferAmountInvalidException.class)
     public void whenTransferredAmountIsInvalidExceptionIsThrown() throws JsonProcessingException {
-        when(transferAmountValidator.isTransferAmountValid(any(), any())).thenReturn(false);
+        when(transferAmountValidator.isTransferAmountValid(any())).thenReturn(false);
         String transferJson = buildTransferJson(
                 "123", "222", "USD", "-123");
 
         TransferController service = new TransferController(
                 transferManager, transferAmountValidator, transferConverter, uuidGenerator);
 
-        service.submitTransfer(transferJson);
+        service.submitTransfer(transferJson.getBytes(UTF_8));
     }
 
     @Test
     public void properRequestGetsPassedToTransferService() throws JsonProcessingException, JSONException {
-        when(transferAmountValidator.isTransferAmountValid(any(), any())).thenReturn(true);
+        when(transferAmountValidator.isTransferAmountValid(any())).thenReturn(true);
         String transferJson = buildTransferJson(
                 "123", "222", "PLN", "23.22");
 
         TransferController controller = new TransferController(
                 transferManager, transferAmountValidator, transferConverter, uuidGenerator);
 
-        String dtoWithTransferId = controller.submitTransfer(transferJson);
+        String dtoWithTransferId = new String(controller.submitTransfer(transferJson.getBytes(UTF_8)), UTF_8);
 
         verify(transferManager).submitTransfer(eq(
                 Transfer.of(
@@ -133,7 +150,7 @@ public class TransferControllerTest {
         TransferController controller = new TransferController(
                 transferManager, transferAmountValidator, transferConverter, uuidGenerator);
 
-        String transferData = controller.getTransfer(CONSTANT_UUID.toString());
+        String transferData = new String(controller.getTransfer(CONSTANT_UUID.toString()), UTF_8);
         String expectedJson = buildTransferJsonWithReadOnlyData(
                 "333", "1111", "EUR",
                 "123.00", CONSTANT_UUID.toString(), "SUBMITTED");
@@ -143,7 +160,7 @@ public class TransferControllerTest {
 
 
     @Test
-    public void allTransfersAreReturned() throws JsonProcessingException, JSONException {
+    public void allTransfersAreReturned() throws IOException, JSONException {
 
         when(transferManager.getTransfers()).thenReturn(Collections.singleton(
                 Transfer.of(
@@ -157,13 +174,263 @@ public class TransferControllerTest {
         TransferController controller = new TransferController(
                 transferManager, transferAmountValidator, transferConverter, uuidGenerator);
 
-        String transferData = controller.getTransfers();
-        String expectedJson = "[" + buildTransferJsonWithReadOnlyData(
+        ByteArrayOutputStream array = new ByteArrayOutputStream();
+        controller.writeTransfers(array, false);
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        controller.writeTransfers(lines, true);
+        String expectedJson = buildTransferJsonWithReadOnlyData(
                 "333", "1111", "EUR", "123.00",
-                CONSTANT_UUID.toString(), "SUBMITTED") + "]";
+                CONSTANT_UUID.toString(), "SUBMITTED");
 
-        JSONAssert.assertEquals(expectedJson, transferData, JSONCompareMode.LENIENT);
+        JSONAssert.assertEquals("[" + expectedJson + "]", array.toString("UTF-8"), JSONCompareMode.LENIENT);
+        assertThat(lines.toString("UTF-8")).endsWith("\n").doesNotContain("[");
+        JSONAssert.assertEquals(expectedJson, lines.toString("UTF-8").trim(), JSONCompareMode.LENIENT);
+    }
+
+    @Test
+    public void transfersAreFoundByQueryAndPaged() throws JsonProcessingException, JSONException {
+        when(transferManager.findTransfers(argThat(query ->
+                query.getSourceAccount().equals(Optional.of(AccountId.of("333")))
+                        && query.getTransferStatus().equals(Optional.of(TransferStatus.SUBMITTED))
+                        && query.getSubmittedFrom() == 1_000
+                        && query.getCursor() == 12
+                        && query.getLimit() == 1)))
+                .thenReturn(new TransferPage(Collections.singletonList(Transfer.of(
+                        AccountId.of("333"),
+                        AccountId.of("1111"),
+                        Money.euros(new BigDecimal("123")),
+                        CONSTANT_UUID
+                )), 15));
+
+        TransferController controller = new TransferController(
+                transferManager, transferAmountValidator, transferConverter, uuidGenerator);
+
+        String page = new String(controller.findTransfers(
+                "333", null, "SUBMITTED", "1970-01-01T00:00:01Z", null, "12", "1"), UTF_8);
+        String expectedJson = "{\"transfers\": [" + buildTransferJsonWithReadOnlyData(
+                "333", "1111", "EUR", "123.00",
+                CONSTANT_UUID.toString(), "SUBMITTED") + "], \"nextCursor\": \"15\"}";
+
+        JSONAssert.assertEquals(expectedJson, page, JSONCompareMode.LENIENT);
     }
 
+    @Test
+    public void invalidTransfersQueryResultsInException() {
+        TransferController controller = new TransferController(
+                transferManager, transferAmountValidator, transferConverter, uuidGenerator);
+
+        for (String[] query : new String[][]{
+                {"UNKNOWN", null, null, null}, {null, "yesterday", null, null},
+                {null, null, "-1", null}, {null, null, null, "0"}, {null, null, null, "1001"}}) {
+            assertThatThrownBy(() -> controller.findTransfers(null, null, query[0], query[1], null, query[2], query[3]))
+                    .isInstanceOf(TransferQueryBadRequestException.class);
+        }
+        verifyZeroInteractions(transferManager);
+    }
+
+    @Test
+    public void batchTransfersAreSubmittedSeparatelyAndInvalidOnesAreReported() throws JsonProcessingException, JSONException {
+        String batch = "[" +
+                buildTransferJson("1", "2", "EUR", "10.00") + "," +
+                buildTransferJson("1", "2", "EUR", "-10.00") + "," +
+                buildTransferJson("2", "1", "EUR", "0.01") + "]";
+
+        TransferController controller = new TransferController(
+                transferManager, new TransferAmountValidator(), transferConverter, uuidGenerator);
+
+        String result = new String(controller.submitTransfers(batch.getBytes(UTF_8), false, false), UTF_8);
+
+        verify(transferManager, times(2)).submitTransfer(any());
+        JSONAssert.assertEquals("[" +
+                "{\"index\": 0, \"transferId\": \"" + CONSTANT_UUID + "\", \"transferStatus\": \"SUBMITTED\"}," +
+                "{\"index\": 1, \"errorCode\": 422}," +
+                "{\"index\": 2, \"transferId\": \"" + CONSTANT_UUID + "\", \"transferStatus\": \"SUBMITTED\"}" +
+                "]", result, JSONCompareMode.LENIENT);
+    }
+
+    @Test
+    public void ndjsonBatchLinesAreParsedSeparately() throws JsonProcessingException, JSONException {
+        String batch = buildTransferJson("1", "2", "EUR", "10.00") + "\r\n" +
+                "{ not a transfer }\n" +
+                " \r\n" +
+                buildTransferJson("2", "1", "EUR", "0.01") + "\n";
+
+        TransferController controller = new TransferController(
+                transferManager, new TransferAmountValidator(), transferConverter, uuidGenerator);
+
+        String result = new String(controller.submitTransfers(batch.getBytes(UTF_8), true, false), UTF_8);
+
+        verify(transferManager, times(2)).submitTransfer(any());
+        JSONAssert.assertEquals("[" +
+                "{\"index\": 0, \"transferStatus\": \"SUBMITTED\"}," +
+                "{\"index\": 1, \"errorCode\": 400}," +
+                "{\"index\": 2, \"transferStatus\": \"SUBMITTED\"}" +
+                "]", result, JSONCompareMode.LENIENT);
+    }
+
+    @Test
+    public void atomicBatchIsSubmittedAsWhole() throws JsonProcessingException {
+        String batch = "[" +
+                buildTransferJson("1", "2", "EUR", "10.00") + "," +
+                buildTransferJson("2", "1", "EUR", "0.01") + "]";
+
+        TransferController controller = new TransferController(
+                transferManager, new TransferAmountValidator(), transferConverter, uuidGenerator);
+
+        controller.submitTransfers(batch.getBytes(UTF_8), false, true);
+
+        verify(transferManager).submitTransfers(argThat(transfers -> transfers.size() == 2));
+        verify(transferManager, never()).submitTransfer(any());
+    }
+
+    @Test
+    public void atomicBatchWithInvalidTransferIsRejectedAsWhole() throws JsonProcessingException {
+        String batch = "[" +
+                buildTransferJson("1", "2", "EUR", "10.00") + "," +
+                buildTransferJson("2", "1", "EUR", "0.00") + "]";
+
+        TransferController controller = new TransferController(
+                transferManager, new TransferAmountValidator(), transferConverter, uuidGenerator);
+
+        try {
+            controller.submitTransfers(batch.getBytes(UTF_8), false, true);
+            fail("batch should be rejected");
+        } catch (TransferBatchInvalidException expected) {
+            verifyZeroInteractions(transferManager);
+        }
+    }
+
+    @Test(expected = TransferBatchTooLargeException.class)
+    public void batchLargerThanAllowedIsRejected() throws JsonProcessingException {
+        String batch = "[" +
+                buildTransferJson("1", "2", "EUR", "10.00") + "," +
+                buildTransferJson("2", "1", "EUR", "0.01") + "]";
+
+        TransferController controller = new TransferController(
+                transferManager, new TransferAmountValidator(), transferConverter, uuidGenerator, 1);
+
+        controller.submitTransfers(batch.getBytes(UTF_8), false, false);
+    }
 
-}
\ No newline at end of file
+    @Test
+    public void transferRepeatedWithSameIdempotencyKeyIsSubmittedOnce() throws JsonProcessingException {
+        when(transferAmountValidator.isTransferAmountValid(any())).thenReturn(true);
+        when(uuidGenerator.generateUUID()).thenReturn(UUID.randomUUID(), UUID.randomUUID());
+        byte[] transferJson = buildTransferJson("123", "222", "PLN", "23.22").getBytes(UTF_8);
+
+        TransferController controller = controllerWithIdempotencyCache();
+        String first = new String(controller.submitTransfer(transferJson, "key"), UTF_8);
+        String repeated = new String(controller.submitTransfer(transferJson, "key"), UTF_8);
+
+        assertThat(repeated).isEqualTo(first);
+        verify(transferManager, times(1)).submitTransfer(any());
+    }
+
+    @Test(expected = IdempotencyKeyReusedException.class)
+    public void idempotencyKeyCannotBeReusedForDifferentTransfer() throws JsonProcessingException {
+        when(transferAmountValidator.isTransferAmountValid(any())).thenReturn(true);
+
+        TransferController controller = controllerWithIdempotencyCache();
+        controller.submitTransfer(buildTransferJson("123", "222", "PLN", "23.22").getBytes(UTF_8), "key");
+        controller.submitTransfer(buildTransferJson("123", "222", "PLN", "23.23").getBytes(UTF_8), "key");
+    }
+
+    @Test
+    public void idempotencyKeyOfRejectedTransferCanBeUsedAgain() throws JsonProcessingException {
+        when(transferAmountValidator.isTransferAmountValid(any())).thenReturn(true);
+        doThrow(new TransferQueueFullException()).doNothing().when(transferManager).submitTransfer(any());
+        byte[] transferJson = buildTransferJson("123", "222", "PLN", "23.22").getBytes(UTF_8);
+
+        TransferController controller = controllerWithIdempotencyCache();
+        assertThatThrownBy(() -> controller.submitTransfer(transferJson, "key"))
+                .isInstanceOf(TransferQueueFullException.class);
+        controller.submitTransfer(transferJson, "key");
+
+        verify(transferManager, times(2)).submitTransfer(any());
+    }
+
+    @Test(expected = TransferBadRequestException.class)
+    public void tooLongIdempotencyKeyIsRejected() throws JsonProcessingException {
+        char[] key = new char[IdempotencyCache.MAX_KEY_LENGTH + 1];
+        Arrays.fill(key, 'k');
+
+        controllerWithIdempotencyCache().submitTransfer(
+                buildTransferJson("123", "222", "PLN", "23.22").getBytes(UTF_8), new String(key));
+    }
+
+    private TransferController controllerWithIdempotencyCache() {
+        return new TransferController(transferManager, transferAmountValidator, transferConverter, uuidGenerator,
+                100, JsonCodec.DATABIND, new IdempotencyCache(60_000, 100));
+    }
+
+    @Test
+    public void waitingForTransferEndsWhenItsStatusIsTerminal() {
+        CompletableFuture<Transfer> terminal = new CompletableFuture<>();
+        when(transferManager.whenTerminal(CONSTANT_UUID)).thenReturn(Optional.of(terminal));
+        TransferController service = new TransferController(
+                transferManager, transferAmountValidator, transferConverter, uuidGenerator);
+
+        CompletableFuture<Void> waiting = service.whenTransferTerminal(CONSTANT_UUID.toString(), "terminal");
+        assertThat(waiting).isNotDone();
+        terminal.complete(Transfer.of(AccountId.of("A"), AccountId.of("B"), Money.euros(BigDecimal.ONE),
+                CONSTANT_UUID));
+
+        assertThat(waiting).isDone();
+    }
+
+    @Test(expected = TransferNotFoundException.class)
+    public void waitingForUnknownTransferIsRejected() {
+        when(transferManager.whenTerminal(CONSTANT_UUID)).thenReturn(Optional.empty());
+        TransferController service = new TransferController(
+                transferManager, transferAmountValidator, transferConverter, uuidGenerator);
+
+        service.whenTransferTerminal(CONSTANT_UUID.toString(), "terminal");
+    }
+
+    @Test
+    public void onlyTerminalStatusCanBeWaitedForAndOnlyForAMinute() {
+        TransferController service = new TransferController(
+                transferManager, transferAmountValidator, transferConverter, uuidGenerator);
+
+        assertThatThrownBy(() -> service.whenTransferTerminal(CONSTANT_UUID.toString(), "PROCESSING"))
+                .isInstanceOf(TransferQueryBadRequestException.class);
+        assertThat(service.parseWaitTimeout(null)).isEqualTo(30_000L);
+        assertThat(service.parseWaitTimeout("60")).isEqualTo(60_000L);
+        assertThatThrownBy(() -> service.parseWaitTimeout("61")).isInstanceOf(TransferQueryBadRequestException.class);
+        assertThatThrownBy(() -> service.parseWaitTimeout("-1")).isInstanceOf(TransferQueryBadRequestException.class);
+    }
+
+    @Test
+    public void synchronousSubmissionPerformsTheTransferAndReturnsItsTerminalStatus() throws JsonProcessingException {
+        when(transferAmountValidator.isTransferAmountValid(any())).thenReturn(true);
+        doAnswer(invocation -> {
+            invocation.<Transfer>getArgument(0).updateTransferStatus(TransferStatus.COMPLETED);
+            return null;
+        }).when(transferManager).performTransfer(any());
+        TransferController controller = new TransferController(
+                transferManager, transferAmountValidator, transferConverter, uuidGenerator);
+
+        String submitted = new String(controller.submitTransfer(
+                buildTransferJson("123", "222", "EUR", "1.00").getBytes(UTF_8), null, "sync"), UTF_8);
+
+        assertThat(submitted).contains("\"transferStatus\":\"COMPLETED\"");
+        verify(transferManager, never()).submitTransfer(any());
+    }
+
+    @Test
+    public void submissionModeOfTheControllerIsUsedUnlessTheRequestGivesOne() throws JsonProcessingException {
+        when(transferAmountValidator.isTransferAmountValid(any())).thenReturn(true);
+        TransferController controller = new TransferController(
+                transferManager, transferAmountValidator, transferConverter, uuidGenerator, 10, JsonCodec.DATABIND,
+                new IdempotencyCache(1000, 10), TransferSubmissionMode.SYNC);
+        byte[] transferJson = buildTransferJson("123", "222", "EUR", "1.00").getBytes(UTF_8);
+
+        controller.submitTransfer(transferJson);
+        controller.submitTransfer(transferJson, null, "ASYNC");
+
+        verify(transferManager).performTransfer(any());
+        verify(transferManager).submitTransfer(any());
+        assertThatThrownBy(() -> controller.submitTransfer(transferJson, null, "later"))
+                .isInstanceOf(TransferBadRequestException.class);
+    }
+}
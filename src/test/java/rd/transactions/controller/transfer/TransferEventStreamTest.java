@@ -0,0 +1,244 @@
+package rd.transactions.controller.transfer;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import rd.transactions.config.ObjectMapperFactory;
+import rd.transactions.managers.TransferManager;
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Money;
+import rd.transactions.model.Transfer;
+import rd.transactions.model.TransferStatus;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.channels.WritePendingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TransferEventStreamTest {
+
+    @Mock
+    private TransferManager transferManager;
+
+    private final AsyncOutput output = new AsyncOutput();
+    private final AtomicInteger ends = new AtomicInteger();
+    private final List<Runnable> drains = new ArrayList<>();
+
+    private final Transfer transferFromA = Transfer.of(
+            AccountId.of("A"), AccountId.of("B"), Money.euros(BigDecimal.TEN), UUID.randomUUID());
+    private final Transfer transferFromC = Transfer.of(
+            AccountId.of("C"), AccountId.of("D"), Money.euros(BigDecimal.TEN), UUID.randomUUID());
+
+    @Test
+    public void statusChangesOfTransfersOfTheAccountAreWrittenAsEvents() {
+        TransferEventStream stream = stream("B", 16);
+
+        stream.onStatusChange(transferFromA, TransferStatus.SUBMITTED, TransferStatus.PROCESSING);
+        stream.onStatusChange(transferFromC, TransferStatus.SUBMITTED, TransferStatus.PROCESSING);
+        stream.onStatusChange(transferFromA, TransferStatus.PROCESSING, TransferStatus.COMPLETED);
+        assertThat(drains).hasSize(1);
+        drains.remove(0).run();
+
+        String transfer = "{\"sourceAccountId\":\"A\",\"targetAccountId\":\"B\",\"currency\":\"EUR\"," +
+                "\"amount\":\"10.00\",\"transferId\":\"" + transferFromA.getTransferId() + "\",\"transferStatus\":";
+        assertThat(output.written()).isEqualTo(
+                "event: status\ndata: " + transfer + "\"PROCESSING\"}\n\n" +
+                "event: status\ndata: " + transfer + "\"COMPLETED\"}\n\n");
+        assertThat(ends.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void streamEndsWhenTheClientDoesNotKeepUp() {
+        TransferEventStream stream = stream(null, 2);
+
+        stream.onStatusChange(transferFromA, TransferStatus.SUBMITTED, TransferStatus.PROCESSING);
+        stream.onStatusChange(transferFromC, TransferStatus.SUBMITTED, TransferStatus.PROCESSING);
+        stream.onStatusChange(transferFromA, TransferStatus.PROCESSING, TransferStatus.COMPLETED);
+        stream.close();
+        drains.forEach(Runnable::run);
+
+        assertThat(ends.get()).isEqualTo(1);
+        verify(transferManager).unsubscribe(stream);
+        assertThat(output.written()).isEmpty();
+    }
+
+    @Test
+    public void changesQueuedBeforeStartAreWrittenOnceTheOutputIsNonBlocking() {
+        TransferEventStream stream = unstartedStream();
+
+        stream.onStatusChange(transferFromA, TransferStatus.SUBMITTED, TransferStatus.PROCESSING);
+        assertThat(drains).isEmpty();
+
+        stream.start();
+        assertThat(drains).hasSize(1);
+        drains.remove(0).run();
+
+        assertThat(output.written()).startsWith("event: status\ndata: {\"sourceAccountId\":\"A\"");
+        assertThat(output.state).isEqualTo(AsyncOutput.State.READY);
+    }
+
+    @Test
+    public void drainStopsWhileAFlushIsPendingAndResumesOnWritePossible() throws IOException {
+        TransferEventStream stream = stream(null, 16);
+        output.completeLater = true;
+
+        stream.onStatusChange(transferFromA, TransferStatus.SUBMITTED, TransferStatus.PROCESSING);
+        drains.remove(0).run();
+        assertThat(output.state).isEqualTo(AsyncOutput.State.UNREADY);
+        stream.onStatusChange(transferFromA, TransferStatus.PROCESSING, TransferStatus.COMPLETED);
+        drains.remove(0).run();
+        assertThat(output.written()).isEmpty();
+
+        output.complete();
+        assertThat(drains).hasSize(1);
+        drains.remove(0).run();
+        output.complete();
+        drains.remove(0).run();
+
+        assertThat(output.written()).contains("\"PROCESSING\"}\n\nevent: status\n").endsWith("\"COMPLETED\"}\n\n");
+        assertThat(output.state).isEqualTo(AsyncOutput.State.READY);
+        assertThat(drains).isEmpty();
+    }
+
+    @Test
+    public void flushCompletedBeforeIsReadyIsNotWaitedFor() {
+        TransferEventStream stream = stream(null, 16);
+        output.completeLater = true;
+
+        stream.onStatusChange(transferFromA, TransferStatus.SUBMITTED, TransferStatus.PROCESSING);
+        // the flush completes on another thread while the drain is between flush and isReady
+        output.completeBeforeIsReady = true;
+        drains.remove(0).run();
+        stream.onStatusChange(transferFromA, TransferStatus.PROCESSING, TransferStatus.COMPLETED);
+        drains.remove(0).run();
+
+        assertThat(output.written()).endsWith("\"PROCESSING\"}\n\n");
+        assertThat(output.state).isEqualTo(AsyncOutput.State.UNREADY);
+        output.complete();
+        drains.remove(0).run();
+        assertThat(output.written()).endsWith("\"COMPLETED\"}\n\n");
+    }
+
+    private TransferEventStream stream(String accountId, int maxPendingEvents) {
+        TransferEventStream stream = new TransferEventStream(transferManager,
+                accountId == null ? null : AccountId.of(accountId), ObjectMapperFactory.getObjectMapper().writer(),
+                new TransferConverter(), output, drains::add, ends::incrementAndGet, maxPendingEvents);
+        stream.start();
+        return stream;
+    }
+
+    private TransferEventStream unstartedStream() {
+        return new TransferEventStream(transferManager, null, ObjectMapperFactory.getObjectMapper().writer(),
+                new TransferConverter(), output, drains::add, ends::incrementAndGet, 16);
+    }
+
+    /**
+     * Output with the states of Jetty's HttpOutput in the non-blocking mode. Write or flush takes READY to PENDING.
+     * A write is aggregated, so it completes at once (PENDING to ASYNC), a flush completes at once as well
+     *  unless completeLater is set, then it completes on complete. Completion takes PENDING to ASYNC,
+     *  where isReady has to be called again, or UNREADY to READY and the container calls onWritePossible.
+     * Writing in any other state fails, as it does in Jetty, a write before setWriteListener would block.
+     */
+    private static final class AsyncOutput extends ServletOutputStream {
+        enum State { OPEN, ASYNC, READY, PENDING, UNREADY }
+
+        private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream aggregated = new ByteArrayOutputStream();
+        private State state = State.OPEN;
+        private WriteListener listener;
+        private boolean completeLater;
+        private boolean completeBeforeIsReady;
+
+        @Override
+        public boolean isReady() {
+            if (completeBeforeIsReady && state == State.PENDING) {
+                completeBeforeIsReady = false;
+                complete();
+            }
+            switch (state) {
+                case ASYNC:
+                    state = State.READY;
+                    return true;
+                case PENDING:
+                    state = State.UNREADY;
+                    return false;
+                case UNREADY:
+                    return false;
+                default:
+                    return true;
+            }
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            assertThat(state).isEqualTo(State.OPEN);
+            this.listener = listener;
+            state = State.READY;
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            startWriting();
+            aggregated.write(b, off, len);
+            state = State.ASYNC;
+        }
+
+        @Override
+        public void flush() {
+            startWriting();
+            if (!completeLater) {
+                complete();
+            }
+        }
+
+        private void startWriting() {
+            switch (state) {
+                case READY:
+                    state = State.PENDING;
+                    return;
+                case PENDING:
+                case UNREADY:
+                    throw new WritePendingException();
+                default:
+                    throw new IllegalStateException("isReady() not called, output is " + state);
+            }
+        }
+
+        void complete() {
+            written.write(aggregated.toByteArray(), 0, aggregated.size());
+            aggregated.reset();
+            if (state == State.PENDING) {
+                state = State.ASYNC;
+            } else if (state == State.UNREADY) {
+                state = State.READY;
+                try {
+                    listener.onWritePossible();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        }
+
+        String written() {
+            return new String(written.toByteArray(), UTF_8);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package rd.transactions.journal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import rd.transactions.exceptions.JournalException;
+import rd.transactions.model.Account;
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Money;
+import rd.transactions.model.Transfer;
+import rd.transactions.model.TransferStatus;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Account account = Account.of(AccountId.of("A"), Money.euros(new BigDecimal("10.05")));
+    private final Transfer transfer = Transfer.of(
+            AccountId.of("A"), AccountId.of("B"), Money.euros(new BigDecimal("1.99")), UUID.randomUUID());
+
+    @Test
+    public void recordsAreReplayedInOrderAfterReopening() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (FileJournal journal = FileJournal.open(directory)) {
+            journal.appendAndAwait(new AccountCreatedRecord(account));
+            journal.appendAndAwait(new TransfersSubmittedRecord(Collections.singletonList(transfer), true));
+            journal.appendAndAwait(new TransfersAppliedRecord(Collections.singletonList(transfer)));
+            journal.appendAndAwait(new TransferStatusChangedRecord(transfer.getTransferId(), TransferStatus.COMPLETED));
+            Transfer rejected = Transfer.of(transfer.getSourceAccount(), transfer.getTargetAccount(),
+                    transfer.getTransferredAmount(), transfer.getTransferId());
+            rejected.updateTransferStatus(TransferStatus.REJECTED_BATCH_ABORTED);
+            journal.appendAndAwait(new TransfersFinishedRecord(Collections.singletonList(rejected)));
+        }
+
+        List<Long> sequences = new ArrayList<>();
+        List<JournalRecord> records = new ArrayList<>();
+        replay(directory, (sequence, record) -> {
+            sequences.add(sequence);
+            records.add(record);
+        });
+
+        assertThat(sequences).containsExactly(1L, 2L, 3L, 4L, 5L);
+        assertThat(((AccountCreatedRecord) records.get(0)).getAccount()).isEqualTo(account);
+        TransfersSubmittedRecord submitted = (TransfersSubmittedRecord) records.get(1);
+        assertThat(submitted.getTransfers()).containsExactly(transfer);
+        assertThat(submitted.isAtomicBatch()).isTrue();
+        assertThat(((TransfersAppliedRecord) records.get(2)).getTransfers()).containsExactly(transfer);
+        TransferStatusChangedRecord statusChanged = (TransferStatusChangedRecord) records.get(3);
+        assertThat(statusChanged.getTransferId()).isEqualTo(transfer.getTransferId());
+        assertThat(statusChanged.getTransferStatus()).isEqualTo(TransferStatus.COMPLETED);
+        Transfer finished = ((TransfersFinishedRecord) records.get(4)).getTransfers().get(0);
+        assertThat(finished).isEqualTo(transfer);
+        assertThat(finished.getTransferStatus()).isEqualTo(TransferStatus.REJECTED_BATCH_ABORTED);
+    }
+
+    @Test
+    public void tornWriteAtTheEndIsDiscardedAndSequenceContinues() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (FileJournal journal = FileJournal.open(directory)) {
+            journal.appendAndAwait(new AccountCreatedRecord(account));
+            journal.appendAndAwait(new AccountCreatedRecord(account));
+        }
+        Path segment = onlyFile(directory, ".wal");
+        long validLength = Files.size(segment);
+        try (RandomAccessFile raw = new RandomAccessFile(segment.toFile(), "rw")) {
+            // half of the next frame
+            raw.seek(validLength);
+            raw.write(JournalCodec.encode(3, new AccountCreatedRecord(account)).array(), 0, 10);
+        }
+
+        List<Long> sequences = new ArrayList<>();
+        try (FileJournal journal = FileJournal.open(directory)) {
+            journal.replay((sequence, record) -> sequences.add(sequence));
+            assertThat(Files.size(segment)).isEqualTo(validLength);
+            assertThat(journal.append(new AccountCreatedRecord(account))).isEqualTo(3L);
+        }
+        assertThat(sequences).containsExactly(1L, 2L);
+    }
+
+    @Test
+    public void replayStopsAtRecordWithInvalidChecksum() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (FileJournal journal = FileJournal.open(directory)) {
+            journal.appendAndAwait(new AccountCreatedRecord(account));
+            journal.appendAndAwait(new AccountCreatedRecord(account));
+        }
+        try (RandomAccessFile raw = new RandomAccessFile(onlyFile(directory, ".wal").toFile(), "rw")) {
+            raw.seek(raw.length() - 1);
+            int lastByte = raw.read();
+            raw.seek(raw.length() - 1);
+            raw.write(lastByte ^ 0xFF);
+        }
+
+        List<Long> sequences = new ArrayList<>();
+        replay(directory, (sequence, record) -> sequences.add(sequence));
+
+        assertThat(sequences).containsExactly(1L);
+    }
+
+    @Test
+    public void concurrentAppendsAreAllDurable() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (FileJournal journal = FileJournal.open(directory)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 100; j++) {
+                        journal.appendAndAwait(new AccountCreatedRecord(account));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        List<Long> sequences = new ArrayList<>();
+        replay(directory, (sequence, record) -> sequences.add(sequence));
+        assertThat(sequences).hasSize(800);
+        assertThat(sequences).isSorted();
+    }
+
+    @Test(expected = JournalException.class)
+    public void appendToClosedJournalFails() throws IOException {
+        FileJournal journal = FileJournal.open(folder.getRoot().toPath());
+        journal.close();
+
+        journal.append(new TransfersAppliedRecord(Arrays.asList(transfer, transfer)));
+    }
+
+    @Test
+    public void snapshotReplacesCoveredSegmentsAndOnlyLaterRecordsAreReplayed() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (FileJournal journal = FileJournal.open(directory)) {
+            journal.appendAndAwait(new AccountCreatedRecord(account));
+            journal.appendAndAwait(new AccountCreatedRecord(account));
+            long snapshotSequence = journal.rotate();
+            journal.appendAndAwait(new TransfersAppliedRecord(Collections.singletonList(transfer)));
+            try (SnapshotWriter snapshot = journal.startSnapshot(snapshotSequence)) {
+                snapshot.write(new AccountsSnapshotRecord(
+                        Collections.singletonList(new AccountSnapshot(account, snapshotSequence))));
+                snapshot.commit();
+            }
+            assertThat(snapshotSequence).isEqualTo(2L);
+        }
+
+        assertThat(filesEndingWith(directory, ".wal")).hasSize(1);
+        assertThat(filesEndingWith(directory, ".snap")).hasSize(1);
+        List<Long> sequences = new ArrayList<>();
+        List<JournalRecord> records = new ArrayList<>();
+        try (FileJournal journal = FileJournal.open(directory)) {
+            journal.replay((sequence, record) -> {
+                sequences.add(sequence);
+                records.add(record);
+            });
+            assertThat(journal.append(new AccountCreatedRecord(account))).isEqualTo(4L);
+        }
+        assertThat(sequences).containsExactly(2L, 3L);
+        assertThat(((AccountsSnapshotRecord) records.get(0)).getAccounts())
+                .containsExactly(new AccountSnapshot(account, 2L));
+        assertThat(records.get(1)).isInstanceOf(TransfersAppliedRecord.class);
+    }
+
+    @Test
+    public void coveredSegmentsAreArchivedWhenRequested() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (FileJournal journal = FileJournal.open(directory, true)) {
+            journal.appendAndAwait(new AccountCreatedRecord(account));
+            long snapshotSequence = journal.rotate();
+            try (SnapshotWriter snapshot = journal.startSnapshot(snapshotSequence)) {
+                snapshot.commit();
+            }
+        }
+
+        assertThat(filesEndingWith(directory.resolve("archive"), ".wal")).hasSize(1);
+        assertThat(filesEndingWith(directory, ".wal")).hasSize(1);
+    }
+
+    @Test
+    public void abandonedSnapshotLeavesJournalIntact() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (FileJournal journal = FileJournal.open(directory)) {
+            journal.appendAndAwait(new AccountCreatedRecord(account));
+            try (SnapshotWriter snapshot = journal.startSnapshot(journal.rotate())) {
+                snapshot.write(new AccountsSnapshotRecord(Collections.emptyList()));
+            }
+        }
+
+        List<Long> sequences = new ArrayList<>();
+        replay(directory, (sequence, record) -> sequences.add(sequence));
+        assertThat(sequences).containsExactly(1L);
+        assertThat(filesEndingWith(directory, ".snap")).isEmpty();
+    }
+
+    private static void replay(Path directory, JournalReplayHandler handler) throws IOException {
+        try (FileJournal journal = FileJournal.open(directory)) {
+            journal.replay(handler);
+        }
+    }
+
+    private static Path onlyFile(Path directory, String suffix) throws IOException {
+        List<Path> files = filesEndingWith(directory, suffix);
+        assertThat(files).hasSize(1);
+        return files.get(0);
+    }
+
+    private static List<Path> filesEndingWith(Path directory, String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(suffix)).collect(Collectors.toList());
+        }
+    }
+}
@@ -5,17 +5,32 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import rd.transactions.exceptions.*;
+import rd.transactions.journal.Journal;
 import rd.transactions.model.Account;
 import rd.transactions.model.AccountId;
 import rd.transactions.model.Money;
 import rd.transactions.model.Transfer;
 import rd.transactions.validators.BalanceValidator;
+import rd.transactions.validators.NonNegativeBalanaceValidator;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Currency;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.when;
 
 
@@ -31,6 +46,9 @@ public class AccountManagerTest {
     @Mock
     private Transfer transfer;
 
+    @Mock
+    private Journal journal;
+
     @Test
     public void initiallyAccountServiceHasNoAccounts() {
         AccountManager accountManager = new AccountManager(balanceValidator);
@@ -125,7 +143,7 @@ public class AccountManagerTest {
 
     @Test
     public void whenThereIsNotEnoughMoneyOnSourceAccountExceptionIsThrownAndNoChangeToBalances() throws CurrenciesOfAccountsDifferException, CurrencyOfSourceAccountDifferentThanTransferException {
-        when(balanceValidator.isBalanceAllowed(any())).thenReturn(false);
+        when(balanceValidator.isBalanceAllowed(anyLong(), any())).thenReturn(false);
         AccountManager repository = new AccountManager(balanceValidator);
 
         Money transferMoney = Money.euros(new BigDecimal("322.22"));
@@ -160,7 +178,7 @@ public class AccountManagerTest {
 
     @Test
     public void verifyMoneyCanBeTransferredSucessfully() throws NotEnoughCreditException, CurrenciesOfAccountsDifferException, CurrencyOfSourceAccountDifferentThanTransferException {
-        when(balanceValidator.isBalanceAllowed(any())).thenReturn(true);
+        when(balanceValidator.isBalanceAllowed(anyLong(), any())).thenReturn(true);
         AccountManager repository = new AccountManager(balanceValidator);
 
         Money sourceMoney = Money.euros(new BigDecimal("321.22"));
@@ -188,6 +206,193 @@ public class AccountManagerTest {
                 .isEqualTo(new BigDecimal("221.22"));
     }
 
+    @Test
+    public void concurrentTransfersInOppositeDirectionsDoNotDeadlockAndPreserveTotal() throws Exception {
+        AccountManager repository = new AccountManager(new NonNegativeBalanaceValidator());
+        AccountId a = AccountId.of("A");
+        AccountId b = AccountId.of("B");
+        repository.createAccount(Account.of(a, Money.euros(new BigDecimal("1000.00"))));
+        repository.createAccount(Account.of(b, Money.euros(new BigDecimal("1000.00"))));
+
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            boolean fromA = i % 2 == 0;
+            futures.add(executor.submit(() -> {
+                for (int j = 0; j < 10000; j++) {
+                    Transfer transfer = Transfer.of(
+                            fromA ? a : b, fromA ? b : a, Money.euros(new BigDecimal("0.01")), UUID.randomUUID());
+                    try {
+                        repository.performTransfer(transfer);
+                    } catch (NotEnoughCreditException ignored) {
+                        // not expected with these balances, but it would not break the invariant either
+                    } catch (Exception ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        BigDecimal total = repository.getAccountById(a).get().getBalance().getAmount()
+                .add(repository.getAccountById(b).get().getBalance().getAmount());
+        assertThat(total).isEqualByComparingTo("2000.00");
+    }
+
+    @Test
+    public void listedAccountsShowNoMoneyInFlight() throws Exception {
+        AccountManager repository = new AccountManager(new NonNegativeBalanaceValidator());
+        int accounts = 20;
+        for (int i = 0; i < accounts; i++) {
+            repository.createAccount(Account.of(AccountId.of(String.valueOf(i)), Money.euros(new BigDecimal("100.00"))));
+        }
+
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        AtomicBoolean stop = new AtomicBoolean();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Random random = new Random(i);
+            futures.add(executor.submit(() -> {
+                while (!stop.get()) {
+                    Transfer transfer = Transfer.of(AccountId.of(String.valueOf(random.nextInt(accounts))),
+                            AccountId.of(String.valueOf(random.nextInt(accounts))),
+                            Money.euros(new BigDecimal("7.00")), UUID.randomUUID());
+                    try {
+                        repository.performTransfer(transfer);
+                    } catch (NotEnoughCreditException ignored) {
+                        // balances of the listing are checked, not of the transfers
+                    } catch (Exception ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                }
+            }));
+        }
+        List<BigDecimal> totals = new ArrayList<>();
+        try {
+            for (int i = 0; i < 500; i++) {
+                BigDecimal[] total = {BigDecimal.ZERO};
+                repository.forEachAccount(account -> total[0] = total[0].add(account.getBalance().getAmount()));
+                totals.add(total[0]);
+                totals.add(repository.getAccounts().stream()
+                        .map(account -> account.getBalance().getAmount())
+                        .reduce(BigDecimal.ZERO, BigDecimal::add));
+            }
+        } finally {
+            stop.set(true);
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertThat(totals).allSatisfy(total -> assertThat(total).isEqualByComparingTo("2000.00"));
+    }
+
+    @Test
+    public void batchOfTransfersIsPerformedInOrder() throws TransferBatchRejectedException {
+        AccountManager repository = new AccountManager(new NonNegativeBalanaceValidator());
+        AccountId a = AccountId.of("A");
+        AccountId b = AccountId.of("B");
+        AccountId c = AccountId.of("C");
+        repository.createAccount(Account.of(a, Money.euros(new BigDecimal("10.00"))));
+        repository.createAccount(Account.of(b, Money.euros(new BigDecimal("0.00"))));
+        repository.createAccount(Account.of(c, Money.euros(new BigDecimal("0.00"))));
+
+        // B can pass money to C only because it receives it first from A
+        repository.performTransfers(Arrays.asList(
+                Transfer.of(a, b, Money.euros(new BigDecimal("10.00")), UUID.randomUUID()),
+                Transfer.of(b, c, Money.euros(new BigDecimal("7.00")), UUID.randomUUID())));
+
+        assertThat(repository.getAccountById(a).get().getBalance().getAmount()).isEqualByComparingTo("0.00");
+        assertThat(repository.getAccountById(b).get().getBalance().getAmount()).isEqualByComparingTo("3.00");
+        assertThat(repository.getAccountById(c).get().getBalance().getAmount()).isEqualByComparingTo("7.00");
+    }
+
+    @Test
+    public void whenOneTransferOfBatchIsNotPossibleNoneIsPerformed() {
+        AccountManager repository = new AccountManager(new NonNegativeBalanaceValidator());
+        AccountId a = AccountId.of("A");
+        AccountId b = AccountId.of("B");
+        repository.createAccount(Account.of(a, Money.euros(new BigDecimal("10.00"))));
+        repository.createAccount(Account.of(b, Money.euros(new BigDecimal("0.00"))));
+        Transfer tooMuch = Transfer.of(a, b, Money.euros(new BigDecimal("5.01")), UUID.randomUUID());
+
+        TransferBatchRejectedException rejection = null;
+        try {
+            repository.performTransfers(Arrays.asList(
+                    Transfer.of(a, b, Money.euros(new BigDecimal("5.00")), UUID.randomUUID()),
+                    tooMuch));
+        } catch (TransferBatchRejectedException ex) {
+            rejection = ex;
+        }
+
+        assertThat(rejection).isNotNull();
+        assertThat(rejection.getRejectedTransfer()).isSameAs(tooMuch);
+        assertThat(rejection.getCause()).isInstanceOf(NotEnoughCreditException.class);
+        assertThat(repository.getAccountById(a).get().getBalance().getAmount()).isEqualByComparingTo("10.00");
+        assertThat(repository.getAccountById(b).get().getBalance().getAmount()).isEqualByComparingTo("0.00");
+    }
+
+    @Test
+    public void batchWithNotExistingAccountIsRejected() {
+        AccountManager repository = new AccountManager(new NonNegativeBalanaceValidator());
+        AccountId a = AccountId.of("A");
+        repository.createAccount(Account.of(a, Money.euros(new BigDecimal("10.00"))));
+
+        TransferBatchRejectedException rejection = null;
+        try {
+            repository.performTransfers(Collections.singletonList(
+                    Transfer.of(a, AccountId.of("X"), Money.euros(new BigDecimal("5.00")), UUID.randomUUID())));
+        } catch (TransferBatchRejectedException ex) {
+            rejection = ex;
+        }
+
+        assertThat(rejection).isNotNull();
+        assertThat(rejection.getCause()).isInstanceOf(AccountDoesNotExistException.class);
+    }
+
+    @Test
+    public void whenJournalRejectsRecordTransferIsNotApplied() throws NotEnoughCreditException, CurrenciesOfAccountsDifferException, CurrencyOfSourceAccountDifferentThanTransferException {
+        AccountManager repository = new AccountManager(new NonNegativeBalanaceValidator(), journal);
+        AccountId a = AccountId.of("A");
+        AccountId b = AccountId.of("B");
+        repository.createAccount(Account.of(a, Money.euros(new BigDecimal("10.00"))));
+        repository.createAccount(Account.of(b, Money.euros(new BigDecimal("0.00"))));
+        when(journal.append(any())).thenThrow(new JournalException("Journal is closed"));
+
+        JournalException failure = null;
+        try {
+            repository.performTransfer(Transfer.of(a, b, Money.euros(new BigDecimal("4.00")), UUID.randomUUID()));
+        } catch (JournalException ex) {
+            failure = ex;
+        }
+
+        assertThat(failure).isNotNull().isNotInstanceOf(TransferNotDurableException.class);
+        assertThat(repository.getAccountById(a).get().getBalance().getAmount()).isEqualByComparingTo("10.00");
+    }
+
+    @Test(expected = TransferNotDurableException.class)
+    public void whenJournalFailsAfterTransferIsAppliedItIsReportedAsNotDurable() throws NotEnoughCreditException, CurrenciesOfAccountsDifferException, CurrencyOfSourceAccountDifferentThanTransferException {
+        AccountManager repository = new AccountManager(new NonNegativeBalanaceValidator(), journal);
+        AccountId a = AccountId.of("A");
+        AccountId b = AccountId.of("B");
+        repository.createAccount(Account.of(a, Money.euros(new BigDecimal("10.00"))));
+        repository.createAccount(Account.of(b, Money.euros(new BigDecimal("0.00"))));
+        when(journal.append(any())).thenReturn(3L);
+        doThrow(new JournalException("Journal is not writable")).when(journal).awaitDurable(3L);
+
+        try {
+            repository.performTransfer(Transfer.of(a, b, Money.euros(new BigDecimal("4.00")), UUID.randomUUID()));
+        } finally {
+            assertThat(repository.getAccountById(a).get().getBalance().getAmount()).isEqualByComparingTo("6.00");
+        }
+    }
+
     @Test(expected = AccountIdConflictException.class)
     public void addingAnotherAccountWithSameIdCausesConflictAndException() {
         AccountManager repository = new AccountManager(balanceValidator);
@@ -0,0 +1,118 @@
+package rd.transactions.managers;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import rd.transactions.exceptions.NotEnoughCreditException;
+import rd.transactions.exceptions.TransferBatchRejectedException;
+import rd.transactions.journal.Journal;
+import rd.transactions.journal.TransferStatusChangedRecord;
+import rd.transactions.metrics.MetricsRegistry;
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Money;
+import rd.transactions.model.Transfer;
+import rd.transactions.model.TransferStatus;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BatchTransferPerformerTest {
+
+    @Mock
+    AccountManager accountManager;
+
+    @Mock
+    Journal journal;
+
+    private Transfer getNewTransfer() {
+        return Transfer.of(
+                AccountId.of("A"),
+                AccountId.of("B"),
+                Money.euros(new BigDecimal("123.22")),
+                UUID.randomUUID()
+        );
+    }
+
+    @Test
+    public void performBatchSunnyDay() throws TransferBatchRejectedException {
+        List<Transfer> transfers = Arrays.asList(getNewTransfer(), getNewTransfer());
+        BatchTransferPerformer performer = new BatchTransferPerformer(transfers, accountManager);
+
+        performer.run();
+
+        verify(accountManager, times(1)).performTransfers(transfers);
+        assertThat(transfers).allMatch(transfer -> transfer.getTransferStatus() == TransferStatus.COMPLETED);
+    }
+
+    @Test
+    public void rejectedTransferGetsItsStatusAndOthersAreAborted() throws TransferBatchRejectedException {
+        Transfer first = getNewTransfer();
+        Transfer rejected = getNewTransfer();
+        BatchTransferPerformer performer = new BatchTransferPerformer(Arrays.asList(first, rejected), accountManager);
+        doThrow(new TransferBatchRejectedException(rejected, new NotEnoughCreditException()))
+                .when(accountManager).performTransfers(any());
+
+        performer.run();
+
+        assertThat(first.getTransferStatus()).isEqualTo(TransferStatus.REJECTED_BATCH_ABORTED);
+        assertThat(rejected.getTransferStatus()).isEqualTo(TransferStatus.REJECTED_NOT_ENOUGH_CREDIT_ON_SOURCE_ACCOUNT);
+    }
+
+    @Test
+    public void rejectedTransferChangesToTerminalStatusOnlyOnce() throws TransferBatchRejectedException {
+        Transfer rejected = getNewTransfer();
+        List<TransferStatus> changes = new ArrayList<>();
+        rejected.setStatusListener((transfer, previousStatus, newStatus) -> changes.add(newStatus));
+        BatchTransferPerformer performer = new BatchTransferPerformer(
+                Arrays.asList(getNewTransfer(), rejected), accountManager);
+        doThrow(new TransferBatchRejectedException(rejected, new NotEnoughCreditException()))
+                .when(accountManager).performTransfers(any());
+
+        performer.run();
+
+        assertThat(changes).containsExactly(
+                TransferStatus.PROCESSING, TransferStatus.REJECTED_NOT_ENOUGH_CREDIT_ON_SOURCE_ACCOUNT);
+    }
+
+    @Test
+    public void performBatchInternalError() throws TransferBatchRejectedException {
+        List<Transfer> transfers = Arrays.asList(getNewTransfer(), getNewTransfer());
+        BatchTransferPerformer performer = new BatchTransferPerformer(transfers, accountManager);
+        doThrow(new NullPointerException()).when(accountManager).performTransfers(any());
+
+        performer.run();
+
+        assertThat(transfers).allMatch(transfer -> transfer.getTransferStatus() == TransferStatus.INTERNAL_ERROR);
+    }
+
+    @Test
+    public void rejectionsAreVisibleOnlyAfterAllOfThemAreDurable() throws TransferBatchRejectedException {
+        Transfer first = getNewTransfer();
+        Transfer rejected = getNewTransfer();
+        BatchTransferPerformer performer = new BatchTransferPerformer(Arrays.asList(first, rejected), accountManager,
+                new TransferMetrics(new MetricsRegistry()), journal);
+        doThrow(new TransferBatchRejectedException(rejected, new NotEnoughCreditException()))
+                .when(accountManager).performTransfers(any());
+        when(journal.append(any(TransferStatusChangedRecord.class))).thenReturn(1L, 2L);
+        List<TransferStatus> statusesWhileAwaited = new ArrayList<>();
+        doAnswer(invocation -> {
+            statusesWhileAwaited.add(first.getTransferStatus());
+            return statusesWhileAwaited.add(rejected.getTransferStatus());
+        }).when(journal).awaitDurable(2L);
+
+        performer.run();
+
+        assertThat(statusesWhileAwaited).containsExactly(TransferStatus.PROCESSING, TransferStatus.PROCESSING);
+        assertThat(first.getTransferStatus()).isEqualTo(TransferStatus.REJECTED_BATCH_ABORTED);
+        assertThat(rejected.getTransferStatus()).isEqualTo(TransferStatus.REJECTED_NOT_ENOUGH_CREDIT_ON_SOURCE_ACCOUNT);
+    }
+}
@@ -0,0 +1,167 @@
+package rd.transactions.managers;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import rd.transactions.journal.FileJournal;
+import rd.transactions.model.Account;
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Money;
+import rd.transactions.model.Transfer;
+import rd.transactions.model.TransferStatus;
+import rd.transactions.validators.NonNegativeBalanaceValidator;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class CheckpointerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AccountId accountA = AccountId.of("A");
+    private final AccountId accountB = AccountId.of("B");
+
+    @Test
+    public void stateIsRestoredFromSnapshotAndJournalTail() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        Transfer beforeSnapshot = transfer(accountA, accountB, "10.00");
+        Transfer appliedAfterSnapshot = transfer(accountA, accountB, "20.00");
+        Transfer submittedAfterSnapshot = transfer(accountB, accountA, "5.00");
+        Transfer batchedFirst = transfer(accountA, accountB, "1.00");
+        Transfer batchedSecond = transfer(accountB, accountA, "2.00");
+
+        try (FileJournal journal = FileJournal.open(directory)) {
+            ManualExecutorService executor = new ManualExecutorService();
+            AccountManager accountManager = new AccountManager(new NonNegativeBalanaceValidator(), journal);
+            TransferManager transferManager = new TransferManager(accountManager, executor, journal);
+            accountManager.createAccount(Account.of(accountA, euros("100.00")));
+            accountManager.createAccount(Account.of(accountB, euros("0.00")));
+            transferManager.submitTransfer(beforeSnapshot);
+            executor.runQueued();
+            transferManager.submitTransfer(appliedAfterSnapshot);
+            transferManager.submitTransfers(Arrays.asList(batchedFirst, batchedSecond));
+
+            new Checkpointer(journal, accountManager, transferManager, 1000).takeSnapshot();
+
+            executor.queued.remove(0).run();
+            transferManager.submitTransfer(submittedAfterSnapshot);
+        }
+
+        ManualExecutorService executor = new ManualExecutorService();
+        AccountManager accountManager = new AccountManager(new NonNegativeBalanaceValidator());
+        TransferManager transferManager = new TransferManager(accountManager, executor);
+        JournalRecovery recovery = new JournalRecovery(accountManager, transferManager);
+        List<Long> replayed = new ArrayList<>();
+        try (FileJournal journal = FileJournal.open(directory)) {
+            journal.replay((sequence, record) -> {
+                replayed.add(sequence);
+                recovery.onRecord(sequence, record);
+            });
+        }
+        recovery.restore();
+
+        assertThat(replayed).doesNotContain(1L, 2L);
+        assertThat(balanceOf(accountManager, accountA)).isEqualTo(euros("70.00"));
+        assertThat(balanceOf(accountManager, accountB)).isEqualTo(euros("30.00"));
+        assertThat(statusOf(transferManager, beforeSnapshot)).isEqualTo(TransferStatus.COMPLETED);
+        assertThat(statusOf(transferManager, appliedAfterSnapshot)).isEqualTo(TransferStatus.COMPLETED);
+        assertThat(statusOf(transferManager, submittedAfterSnapshot)).isEqualTo(TransferStatus.SUBMITTED);
+        assertThat(transferManager.getPendingAtomicBatches()).hasSize(1);
+
+        executor.runQueued();
+
+        assertThat(balanceOf(accountManager, accountA)).isEqualTo(euros("76.00"));
+        assertThat(balanceOf(accountManager, accountB)).isEqualTo(euros("24.00"));
+        assertThat(statusOf(transferManager, batchedSecond)).isEqualTo(TransferStatus.COMPLETED);
+    }
+
+    @Test
+    public void transferProcessedDuringSnapshotIsAwaitedAndKeptAsFinished() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        Transfer processed = transfer(accountA, accountB, "1.00");
+        try (FileJournal journal = FileJournal.open(directory)) {
+            AccountManager accountManager = new AccountManager(new NonNegativeBalanaceValidator(), journal);
+            TransferManager transferManager = new TransferManager(
+                    accountManager, new ManualExecutorService(), journal);
+            transferManager.submitTransfer(processed);
+            processed.updateTransferStatus(TransferStatus.PROCESSING);
+            ScheduledExecutorService performer = Executors.newSingleThreadScheduledExecutor();
+            performer.schedule(() -> processed.updateTransferStatus(
+                    TransferStatus.REJECTED_ONE_OF_ACCOUNTS_DOES_NOT_EXIST), 100, TimeUnit.MILLISECONDS);
+
+            new Checkpointer(journal, accountManager, transferManager, 10000).takeSnapshot();
+            performer.shutdown();
+        }
+
+        TransferManager transferManager = restore(directory);
+
+        assertThat(statusOf(transferManager, processed))
+                .isEqualTo(TransferStatus.REJECTED_ONE_OF_ACCOUNTS_DOES_NOT_EXIST);
+    }
+
+    @Test
+    public void snapshotIsAbandonedWhenTransferIsProcessedTooLong() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (FileJournal journal = FileJournal.open(directory)) {
+            AccountManager accountManager = new AccountManager(new NonNegativeBalanaceValidator(), journal);
+            TransferManager transferManager = new TransferManager(
+                    accountManager, new ManualExecutorService(), journal);
+            Transfer stuck = transfer(accountA, accountB, "1.00");
+            transferManager.submitTransfer(stuck);
+            stuck.updateTransferStatus(TransferStatus.PROCESSING);
+
+            try {
+                new Checkpointer(journal, accountManager, transferManager, 10).takeSnapshot();
+                fail("snapshot should time out");
+            } catch (TimeoutException ex) {
+                // expected
+            }
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.filter(file -> file.toString().contains(".snap"))).isEmpty();
+        }
+    }
+
+    private static TransferManager restore(Path directory) throws IOException {
+        AccountManager accountManager = new AccountManager(new NonNegativeBalanaceValidator());
+        TransferManager transferManager = new TransferManager(accountManager, new ManualExecutorService());
+        JournalRecovery recovery = new JournalRecovery(accountManager, transferManager);
+        try (FileJournal journal = FileJournal.open(directory)) {
+            journal.replay(recovery);
+        }
+        recovery.restore();
+        return transferManager;
+    }
+
+    private static Transfer transfer(AccountId source, AccountId target, String amount) {
+        return Transfer.of(source, target, euros(amount), UUID.randomUUID());
+    }
+
+    private static Money euros(String amount) {
+        return Money.euros(new BigDecimal(amount));
+    }
+
+    private static Money balanceOf(AccountManager accountManager, AccountId accountId) {
+        return accountManager.getAccountById(accountId).get().getBalance();
+    }
+
+    private static TransferStatus statusOf(TransferManager transferManager, Transfer transfer) {
+        return transferManager.getTransfer(transfer.getTransferId()).get().getTransferStatus();
+    }
+}
@@ -0,0 +1,143 @@
+package rd.transactions.managers;
+
+import org.junit.Test;
+import rd.transactions.exceptions.TransferQueueFullException;
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Money;
+import rd.transactions.model.Transfer;
+
+import java.math.BigDecimal;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IdempotencyCacheTest {
+    private final AtomicLong now = new AtomicLong(1_000);
+
+    @Test
+    public void transferIsReturnedForRepeatedKeyUntilItExpires() {
+        IdempotencyCache cache = new IdempotencyCache(100, 10, now::get);
+        Transfer original = transfer();
+
+        assertThat(cache.putIfAbsent("key", original)).isNull();
+        now.addAndGet(99);
+        assertThat(cache.putIfAbsent("key", transfer())).isSameAs(original);
+        now.addAndGet(1);
+        Transfer afterExpiry = transfer();
+        assertThat(cache.putIfAbsent("key", afterExpiry)).isNull();
+        assertThat(cache.putIfAbsent("key", transfer())).isSameAs(afterExpiry);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void oldestKeysAreDroppedOverCapacity() {
+        IdempotencyCache cache = new IdempotencyCache(100, 2, now::get);
+        Transfer first = transfer();
+        cache.putIfAbsent("first", first);
+        cache.putIfAbsent("second", transfer());
+        cache.putIfAbsent("third", transfer());
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.putIfAbsent("first", transfer())).isNull();
+        assertThat(cache.putIfAbsent("third", transfer())).isNotNull();
+    }
+
+    @Test
+    public void keyOfFailedSubmissionCanBeUsedAgain() {
+        IdempotencyCache cache = new IdempotencyCache(100, 10, now::get);
+
+        boolean exceptionWasThrown = false;
+        try {
+            cache.putIfAbsent("key", transfer(), () -> {
+                throw new TransferQueueFullException();
+            });
+        } catch (TransferQueueFullException ex) {
+            exceptionWasThrown = true;
+        }
+
+        assertThat(exceptionWasThrown).isTrue();
+        assertThat(cache.size()).isZero();
+        Transfer resubmitted = transfer();
+        assertThat(cache.putIfAbsent("key", resubmitted)).isNull();
+        assertThat(cache.putIfAbsent("key", transfer())).isSameAs(resubmitted);
+    }
+
+    @Test
+    public void repeatWaitsForSubmissionInProgressAndStoresItsOwnTransferIfItFails() throws Exception {
+        IdempotencyCache cache = new IdempotencyCache(60_000, 10);
+        CountDownLatch submitting = new CountDownLatch(1);
+        CountDownLatch failSubmission = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Transfer> first = executor.submit(() -> cache.putIfAbsent("key", transfer(), () -> {
+                submitting.countDown();
+                awaitUninterruptibly(failSubmission);
+                throw new TransferQueueFullException();
+            }));
+            submitting.await();
+            Transfer repeated = transfer();
+            Future<Transfer> repeat = executor.submit(() -> cache.putIfAbsent("key", repeated));
+
+            Thread.sleep(50);
+            assertThat(repeat.isDone()).isFalse();
+            failSubmission.countDown();
+
+            assertThat(repeat.get(10, TimeUnit.SECONDS)).isNull();
+            assertThat(cache.putIfAbsent("key", transfer())).isSameAs(repeated);
+            boolean firstFailed = false;
+            try {
+                first.get(10, TimeUnit.SECONDS);
+            } catch (ExecutionException ex) {
+                firstFailed = ex.getCause() instanceof TransferQueueFullException;
+            }
+            assertThat(firstFailed).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void onlyOneOfConcurrentSubmissionsWithTheSameKeyIsStored() throws Exception {
+        IdempotencyCache cache = new IdempotencyCache(60_000, 1000);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (int round = 0; round < 100; round++) {
+                String key = "key-" + round;
+                CountDownLatch start = new CountDownLatch(1);
+                Set<Transfer> stored = ConcurrentHashMap.newKeySet();
+                Future<?>[] futures = new Future<?>[8];
+                for (int i = 0; i < futures.length; i++) {
+                    futures[i] = executor.submit(() -> {
+                        Transfer transfer = transfer();
+                        start.await();
+                        Transfer previous = cache.putIfAbsent(key, transfer);
+                        stored.add(previous == null ? transfer : previous);
+                        return null;
+                    });
+                }
+                start.countDown();
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+                assertThat(stored).hasSize(1);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Transfer transfer() {
+        return Transfer.of(AccountId.of("A"), AccountId.of("B"), Money.euros(BigDecimal.ONE), UUID.randomUUID());
+    }
+}
@@ -0,0 +1,193 @@
+package rd.transactions.managers;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import rd.transactions.journal.FileJournal;
+import rd.transactions.journal.NoOpJournal;
+import rd.transactions.model.Account;
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Money;
+import rd.transactions.model.Transfer;
+import rd.transactions.model.TransferStatus;
+import rd.transactions.store.MappedAccountStore;
+import rd.transactions.validators.NonNegativeBalanaceValidator;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JournalRecoveryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AccountId accountA = AccountId.of("A");
+    private final AccountId accountB = AccountId.of("B");
+
+    @Test
+    public void stateIsRebuiltAndUnfinishedTransfersArePerformedAgain() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        Transfer completed = transfer(accountA, accountB, "30.00");
+        Transfer rejected = transfer(accountB, accountA, "500.00");
+        Transfer unfinished = transfer(accountA, accountB, "20.00");
+        Transfer batchedFirst = transfer(accountA, accountB, "1.00");
+        Transfer batchedSecond = transfer(accountB, accountA, "2.00");
+
+        try (FileJournal journal = FileJournal.open(directory)) {
+            ManualExecutorService executor = new ManualExecutorService();
+            AccountManager accountManager = new AccountManager(new NonNegativeBalanaceValidator(), journal);
+            TransferManager transferManager = new TransferManager(accountManager, executor, journal);
+            accountManager.createAccount(Account.of(accountA, euros("100.00")));
+            accountManager.createAccount(Account.of(accountB, euros("0.00")));
+            transferManager.submitTransfer(completed);
+            transferManager.submitTransfer(rejected);
+            executor.runQueued();
+            // submitted, but the process stops before they are performed
+            transferManager.submitTransfer(unfinished);
+            transferManager.submitTransfers(Arrays.asList(batchedFirst, batchedSecond));
+        }
+
+        ManualExecutorService executor = new ManualExecutorService();
+        AccountManager accountManager = new AccountManager(new NonNegativeBalanaceValidator());
+        TransferManager transferManager = new TransferManager(accountManager, executor);
+        try (FileJournal journal = FileJournal.open(directory)) {
+            JournalRecovery recovery = new JournalRecovery(accountManager, transferManager);
+            journal.replay(recovery);
+            recovery.restore();
+        }
+
+        assertThat(balanceOf(accountManager, accountA)).isEqualTo(euros("70.00"));
+        assertThat(balanceOf(accountManager, accountB)).isEqualTo(euros("30.00"));
+        assertThat(statusOf(transferManager, completed)).isEqualTo(TransferStatus.COMPLETED);
+        assertThat(statusOf(transferManager, rejected))
+                .isEqualTo(TransferStatus.REJECTED_NOT_ENOUGH_CREDIT_ON_SOURCE_ACCOUNT);
+        assertThat(statusOf(transferManager, unfinished)).isEqualTo(TransferStatus.SUBMITTED);
+        assertThat(executor.queued).hasSize(2);
+
+        executor.runQueued();
+
+        assertThat(balanceOf(accountManager, accountA)).isEqualTo(euros("51.00"));
+        assertThat(balanceOf(accountManager, accountB)).isEqualTo(euros("49.00"));
+        assertThat(statusOf(transferManager, unfinished)).isEqualTo(TransferStatus.COMPLETED);
+        assertThat(statusOf(transferManager, batchedFirst)).isEqualTo(TransferStatus.COMPLETED);
+        assertThat(statusOf(transferManager, batchedSecond)).isEqualTo(TransferStatus.COMPLETED);
+    }
+
+    @Test
+    public void transferAppliedBeforeItsSubmissionWasJournaledIsCompleted() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        Transfer transfer = transfer(accountA, accountB, "10.00");
+        try (FileJournal journal = FileJournal.open(directory)) {
+            AccountManager accountManager = new AccountManager(new NonNegativeBalanaceValidator(), journal);
+            accountManager.createAccount(Account.of(accountA, euros("10.00")));
+            accountManager.createAccount(Account.of(accountB, euros("0.00")));
+            accountManager.performTransfer(transfer);
+        }
+
+        ManualExecutorService executor = new ManualExecutorService();
+        AccountManager accountManager = new AccountManager(new NonNegativeBalanaceValidator());
+        TransferManager transferManager = new TransferManager(accountManager, executor);
+        try (FileJournal journal = FileJournal.open(directory)) {
+            JournalRecovery recovery = new JournalRecovery(accountManager, transferManager);
+            journal.replay(recovery);
+            recovery.restore();
+        }
+
+        assertThat(balanceOf(accountManager, accountA)).isEqualTo(euros("0.00"));
+        assertThat(statusOf(transferManager, transfer)).isEqualTo(TransferStatus.COMPLETED);
+        assertThat(executor.queued).isEmpty();
+    }
+
+    @Test
+    public void transferRejectedSynchronouslyIsStillRejectedAfterCrash() throws IOException {
+        Path directory = folder.newFolder("journal").toPath();
+        Path afterCrash = folder.newFolder("after-crash").toPath();
+        Transfer rejected = transfer(accountA, accountB, "500.00");
+        try (FileJournal journal = FileJournal.open(directory)) {
+            AccountManager accountManager = new AccountManager(new NonNegativeBalanaceValidator(), journal);
+            TransferManager transferManager = new TransferManager(accountManager, new ManualExecutorService(), journal);
+            accountManager.createAccount(Account.of(accountA, euros("100.00")));
+            accountManager.createAccount(Account.of(accountB, euros("0.00")));
+            transferManager.performTransfer(rejected);
+            assertThat(rejected.getTransferStatus())
+                    .isEqualTo(TransferStatus.REJECTED_NOT_ENOUGH_CREDIT_ON_SOURCE_ACCOUNT);
+            // the process dies right after the response, only what is on disk by now survives
+            copyFiles(directory, afterCrash);
+        }
+
+        ManualExecutorService executor = new ManualExecutorService();
+        AccountManager accountManager = new AccountManager(new NonNegativeBalanaceValidator());
+        TransferManager transferManager = new TransferManager(accountManager, executor);
+        try (FileJournal journal = FileJournal.open(afterCrash)) {
+            JournalRecovery recovery = new JournalRecovery(accountManager, transferManager);
+            journal.replay(recovery);
+            recovery.restore();
+        }
+
+        assertThat(statusOf(transferManager, rejected))
+                .isEqualTo(TransferStatus.REJECTED_NOT_ENOUGH_CREDIT_ON_SOURCE_ACCOUNT);
+        assertThat(executor.queued).isEmpty();
+        assertThat(balanceOf(accountManager, accountA)).isEqualTo(euros("100.00"));
+    }
+
+    @Test
+    public void mappedStoreKeptAcrossRestartIsNotChangedByReplay() throws Exception {
+        Path directory = folder.newFolder("journal").toPath();
+        Path storeFile = folder.getRoot().toPath().resolve("accounts.store");
+        Transfer transfer = transfer(accountA, accountB, "10.00");
+        try (FileJournal journal = FileJournal.open(directory);
+             MappedAccountStore store = MappedAccountStore.open(storeFile, 100)) {
+            AccountManager accountManager = new AccountManager(new NonNegativeBalanaceValidator(), journal, store);
+            accountManager.createAccount(Account.of(accountA, euros("15.00")));
+            accountManager.createAccount(Account.of(accountB, euros("0.00")));
+            accountManager.performTransfer(transfer);
+        }
+
+        ManualExecutorService executor = new ManualExecutorService();
+        try (FileJournal journal = FileJournal.open(directory);
+             MappedAccountStore store = MappedAccountStore.open(
+                     storeFile, 100, journal.getLastDurableSequence())) {
+            AccountManager accountManager = new AccountManager(
+                    new NonNegativeBalanaceValidator(), NoOpJournal.INSTANCE, store);
+            TransferManager transferManager = new TransferManager(accountManager, executor);
+            JournalRecovery recovery = new JournalRecovery(accountManager, transferManager);
+            journal.replay(recovery);
+            recovery.restore();
+
+            assertThat(balanceOf(accountManager, accountA)).isEqualTo(euros("5.00"));
+            assertThat(balanceOf(accountManager, accountB)).isEqualTo(euros("10.00"));
+            assertThat(statusOf(transferManager, transfer)).isEqualTo(TransferStatus.COMPLETED);
+        }
+    }
+
+    private static void copyFiles(Path from, Path to) throws IOException {
+        try (Stream<Path> files = Files.list(from)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, to.resolve(file.getFileName()));
+            }
+        }
+    }
+
+    private static Transfer transfer(AccountId source, AccountId target, String amount) {
+        return Transfer.of(source, target, euros(amount), UUID.randomUUID());
+    }
+
+    private static Money euros(String amount) {
+        return Money.euros(new BigDecimal(amount));
+    }
+
+    private static Money balanceOf(AccountManager accountManager, AccountId accountId) {
+        return accountManager.getAccountById(accountId).get().getBalance();
+    }
+
+    private static TransferStatus statusOf(TransferManager transferManager, Transfer transfer) {
+        return transferManager.getTransfer(transfer.getTransferId()).get().getTransferStatus();
+    }
+}
@@ -0,0 +1,132 @@
+package rd.transactions.managers;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rd.transactions.IntegrationTest;
+import rd.transactions.journal.FileJournal;
+import rd.transactions.journal.Journal;
+import rd.transactions.journal.NoOpJournal;
+import rd.transactions.model.Account;
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Money;
+import rd.transactions.model.Transfer;
+import rd.transactions.model.TransferStatus;
+import rd.transactions.validators.NonNegativeBalanaceValidator;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Throughput of transfer processing with the write-ahead journal compared to in-memory mode.
+ *
+ * Clients submit transfers concurrently, like HTTP request threads do, each submission waits until
+ *  it is durable. Processing threads wait for durability of applied transfers.
+ * Waits are served by group commit, so the throughput depends on how many waits share one fsync.
+ *
+ * Results are only logged, the test asserts that the journal rebuilds the same balances.
+ */
+@Category(IntegrationTest.class)
+public class JournalThroughputIntegrationTest {
+    private final static Logger logger = LoggerFactory.getLogger(JournalThroughputIntegrationTest.class);
+
+    private final static int NUM_ACCOUNTS = 1000;
+    private final static int TRANSFERS_PER_CLIENT = 5000;
+    private final static int[] CLIENT_COUNTS = {1, 16, 64};
+    private final static int PROCESSING_THREADS = 8;
+    private final static BigDecimal INITIAL_BALANCE = new BigDecimal("10000000.00");
+    private final static Money TRANSFER_AMOUNT = Money.euros(new BigDecimal("1.00"));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void compareJournaledWithInMemoryProcessing() throws Exception {
+        // warm-up, results are discarded
+        measure(NoOpJournal.INSTANCE, 16);
+
+        for (int clients : CLIENT_COUNTS) {
+            double inMemory = measure(NoOpJournal.INSTANCE, clients);
+            double journaled;
+            List<Account> balancesBefore;
+            Path file = folder.newFolder().toPath().resolve("journal");
+            AccountManager accountManager;
+            try (FileJournal journal = FileJournal.open(file)) {
+                accountManager = new AccountManager(new NonNegativeBalanaceValidator(), journal);
+                journaled = measure(journal, accountManager, clients);
+                balancesBefore = new ArrayList<>(accountManager.getAccounts());
+            }
+            logger.info(">>> clients={} in-memory={} ops/s journaled={} ops/s ratio={}",
+                    clients,
+                    String.format("%.0f", inMemory), String.format("%.0f", journaled),
+                    String.format("%.2f", journaled / inMemory));
+
+            long start = System.nanoTime();
+            AccountManager restored = new AccountManager(new NonNegativeBalanaceValidator());
+            try (FileJournal journal = FileJournal.open(file)) {
+                JournalRecovery recovery = new JournalRecovery(
+                        restored, new TransferManager(restored, Executors.newSingleThreadExecutor()));
+                journal.replay(recovery);
+                recovery.restore();
+            }
+            logger.info(">>> replay of {} transfers took {} ms",
+                    clients * TRANSFERS_PER_CLIENT, (System.nanoTime() - start) / 1000000);
+            assertThat(restored.getAccounts()).containsExactlyInAnyOrderElementsOf(balancesBefore);
+        }
+    }
+
+    private double measure(Journal journal, int clients) throws Exception {
+        return measure(journal, new AccountManager(new NonNegativeBalanaceValidator(), journal), clients);
+    }
+
+    private double measure(Journal journal, AccountManager accountManager, int clients) throws Exception {
+        for (int i = 0; i < NUM_ACCOUNTS; i++) {
+            accountManager.createAccount(Account.of(AccountId.of(String.valueOf(i)), Money.euros(INITIAL_BALANCE)));
+        }
+        ExecutorService processing = Executors.newFixedThreadPool(PROCESSING_THREADS);
+        TransferManager transferManager = new TransferManager(accountManager, processing, journal);
+
+        ExecutorService clientThreads = Executors.newFixedThreadPool(clients);
+        List<Future<List<Transfer>>> futures = new ArrayList<>(clients);
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            futures.add(clientThreads.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                List<Transfer> submitted = new ArrayList<>(TRANSFERS_PER_CLIENT);
+                for (int i = 0; i < TRANSFERS_PER_CLIENT; i++) {
+                    int a = random.nextInt(NUM_ACCOUNTS);
+                    int b = (a + 1 + random.nextInt(NUM_ACCOUNTS - 1)) % NUM_ACCOUNTS;
+                    Transfer transfer = Transfer.of(AccountId.of(String.valueOf(a)), AccountId.of(String.valueOf(b)),
+                            TRANSFER_AMOUNT, UUID.randomUUID());
+                    transferManager.submitTransfer(transfer);
+                    submitted.add(transfer);
+                }
+                return submitted;
+            }));
+        }
+        List<Transfer> transfers = new ArrayList<>();
+        for (Future<List<Transfer>> future : futures) {
+            transfers.addAll(future.get(300, SECONDS));
+        }
+        clientThreads.shutdown();
+        processing.shutdown();
+        assertThat(processing.awaitTermination(300, SECONDS)).isTrue();
+        long elapsed = System.nanoTime() - start;
+
+        assertThat(transfers).allMatch(transfer -> transfer.getTransferStatus() == TransferStatus.COMPLETED);
+        return (double) transfers.size() * SECONDS.toNanos(1) / elapsed;
+    }
+}
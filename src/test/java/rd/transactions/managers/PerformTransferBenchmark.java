@@ -0,0 +1,194 @@
+package rd.transactions.managers;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import rd.transactions.exceptions.CurrenciesOfAccountsDifferException;
+import rd.transactions.exceptions.CurrencyOfSourceAccountDifferentThanTransferException;
+import rd.transactions.exceptions.NotEnoughCreditException;
+import rd.transactions.journal.NoOpJournal;
+import rd.transactions.model.Account;
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Money;
+import rd.transactions.model.Transfer;
+import rd.transactions.store.AccountStore;
+import rd.transactions.store.MappedAccountStore;
+import rd.transactions.store.OperationLogAccountStore;
+import rd.transactions.validators.NonNegativeBalanaceValidator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of AccountManager.performTransfer on the heap and the memory-mapped account store, without journal,
+ *  for transfers between uniformly chosen accounts, between accounts chosen with Zipfian distribution
+ *  (a few hot accounts take most of the transfers) and back and forth between a single pair of accounts.
+ * The manager is created again for every iteration, so account history does not grow across iterations.
+ * performTransferOfParsedIds creates the account ids of every transfer from strings, as the request converters do.
+ *
+ * Run with: mvn verify -Pbenchmark -Djmh.include=PerformTransferBenchmark
+ *  optionally with -Djmh.args="-t 4" to run the single-threaded benchmark by more threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PerformTransferBenchmark {
+    private static final Currency EUR = Currency.getInstance("EUR");
+    private static final int TRANSFERS_PER_THREAD = 1 << 16;
+
+    public enum Workload {
+        UNIFORM, ZIPFIAN, SINGLE_PAIR
+    }
+
+    public enum Store {
+        HEAP, MAPPED
+    }
+
+    @Param({"UNIFORM", "ZIPFIAN", "SINGLE_PAIR"})
+    private Workload workload;
+    @Param({"HEAP", "MAPPED"})
+    private Store store;
+    @Param({"10000"})
+    private int accounts;
+    private AccountManager accountManager;
+    private AccountStore accountStore;
+    private Path storeFile;
+    private double[] zipfianDistribution;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        if (store == Store.MAPPED) {
+            storeFile = Files.createTempFile("accounts", ".store");
+            Files.delete(storeFile);
+            accountStore = MappedAccountStore.open(storeFile, accounts);
+        } else {
+            accountStore = new OperationLogAccountStore();
+        }
+        accountManager = new AccountManager(new NonNegativeBalanaceValidator(), NoOpJournal.INSTANCE, accountStore);
+        for (int i = 0; i < accounts; i++) {
+            accountManager.createAccount(Account.of(accountId(i), Money.ofMinorUnits(Long.MAX_VALUE / 4, EUR)));
+        }
+        zipfianDistribution = zipfianDistribution(accounts);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        accountStore.close();
+        if (storeFile != null) {
+            Files.delete(storeFile);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Transfers {
+        private Transfer[] transfers;
+        private String[] sources;
+        private String[] targets;
+        private int next;
+
+        @Setup(Level.Iteration)
+        public void setUp(PerformTransferBenchmark benchmark) {
+            Random random = new Random();
+            transfers = new Transfer[TRANSFERS_PER_THREAD];
+            sources = new String[TRANSFERS_PER_THREAD];
+            targets = new String[TRANSFERS_PER_THREAD];
+            for (int i = 0; i < transfers.length; i++) {
+                int source;
+                int target;
+                switch (benchmark.workload) {
+                    case UNIFORM:
+                        source = random.nextInt(benchmark.accounts);
+                        target = otherThan(source, random.nextInt(benchmark.accounts), benchmark.accounts);
+                        break;
+                    case ZIPFIAN:
+                        source = zipfian(benchmark.zipfianDistribution, random);
+                        target = otherThan(source, zipfian(benchmark.zipfianDistribution, random), benchmark.accounts);
+                        break;
+                    default:
+                        source = i % 2;
+                        target = 1 - source;
+                }
+                transfers[i] = Transfer.of(accountId(source), accountId(target),
+                        Money.ofMinorUnits(1, EUR), UUID.randomUUID());
+                sources[i] = accountId(source).getId();
+                targets[i] = accountId(target).getId();
+            }
+        }
+
+        private Transfer next() {
+            return transfers[next++ & (TRANSFERS_PER_THREAD - 1)];
+        }
+
+        private Transfer nextOfParsedIds() {
+            int i = next++ & (TRANSFERS_PER_THREAD - 1);
+            return Transfer.of(AccountId.of(sources[i]), AccountId.of(targets[i]),
+                    transfers[i].getTransferredAmount(), transfers[i].getTransferId());
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void performTransfer(Transfers transfers) throws NotEnoughCreditException,
+            CurrenciesOfAccountsDifferException, CurrencyOfSourceAccountDifferentThanTransferException {
+        accountManager.performTransfer(transfers.next());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void performTransferOnAllCores(Transfers transfers) throws NotEnoughCreditException,
+            CurrenciesOfAccountsDifferException, CurrencyOfSourceAccountDifferentThanTransferException {
+        accountManager.performTransfer(transfers.next());
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void performTransferOfParsedIds(Transfers transfers) throws NotEnoughCreditException,
+            CurrenciesOfAccountsDifferException, CurrencyOfSourceAccountDifferentThanTransferException {
+        accountManager.performTransfer(transfers.nextOfParsedIds());
+    }
+
+    private static AccountId accountId(int account) {
+        return AccountId.of("account-" + account);
+    }
+
+    private static int otherThan(int source, int target, int accounts) {
+        return target != source ? target : (target + 1) % accounts;
+    }
+
+    /**
+     * @return cumulative probabilities of accounts, probability of the k-th account is proportional to 1 / k
+     */
+    private static double[] zipfianDistribution(int accounts) {
+        double[] cumulative = new double[accounts];
+        double sum = 0;
+        for (int k = 0; k < accounts; k++) {
+            sum += 1.0 / (k + 1);
+            cumulative[k] = sum;
+        }
+        for (int k = 0; k < accounts; k++) {
+            cumulative[k] /= sum;
+        }
+        return cumulative;
+    }
+
+    private static int zipfian(double[] cumulative, Random random) {
+        int account = Arrays.binarySearch(cumulative, random.nextDouble());
+        return Math.min(account >= 0 ? account : -account - 1, cumulative.length - 1);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PerformTransferBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
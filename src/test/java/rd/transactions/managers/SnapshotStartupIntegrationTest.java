@@ -0,0 +1,138 @@
+package rd.transactions.managers;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rd.transactions.IntegrationTest;
+import rd.transactions.journal.AccountSnapshot;
+import rd.transactions.journal.FileJournal;
+import rd.transactions.model.Account;
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Money;
+import rd.transactions.model.Transfer;
+import rd.transactions.validators.NonNegativeBalanaceValidator;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Startup time with a snapshot of many accounts followed by a journal tail.
+ *
+ * Number of accounts is set with -Dsnapshot.benchmark.accounts (1M by default),
+ *  10M accounts need about 4GB of heap, e.g.
+ *  mvn verify -Dit.test=SnapshotStartupIntegrationTest -Dsnapshot.benchmark.accounts=10000000 -DargLine=-Xmx4500m
+ *
+ * Results are only logged, the test asserts that the restored balances are the same.
+ */
+@Category(IntegrationTest.class)
+public class SnapshotStartupIntegrationTest {
+    private final static Logger logger = LoggerFactory.getLogger(SnapshotStartupIntegrationTest.class);
+
+    private final static int NUM_ACCOUNTS = Integer.getInteger("snapshot.benchmark.accounts", 1000000);
+    private final static int TAIL_TRANSFERS_PER_THREAD = 2000;
+    private final static int THREADS = 16;
+    private final static Money INITIAL_BALANCE = Money.euros(new BigDecimal("1000.00"));
+    private final static Money TRANSFER_AMOUNT = Money.euros(new BigDecimal("1.00"));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void measureStartupFromSnapshotAndJournalTail() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        long fingerprintBefore;
+        try (FileJournal journal = FileJournal.open(directory)) {
+            AccountManager accountManager = new AccountManager(new NonNegativeBalanaceValidator(), journal);
+            TransferManager transferManager = new TransferManager(
+                    accountManager, Executors.newSingleThreadExecutor(), journal);
+            // accounts are not journaled one by one, the snapshot is the only place they are stored
+            for (int i = 0; i < NUM_ACCOUNTS; i++) {
+                accountManager.restoreAccount(new AccountSnapshot(Account.of(accountId(i), INITIAL_BALANCE), 0));
+            }
+
+            Checkpointer checkpointer = new Checkpointer(journal, accountManager, transferManager, 30000);
+            long start = System.nanoTime();
+            ExecutorService clients = Executors.newFixedThreadPool(THREADS);
+            List<Future<?>> traffic = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                traffic.add(clients.submit(() -> performRandomTransfers(accountManager)));
+            }
+            checkpointer.takeSnapshot();
+            logger.info(">>> snapshot of {} accounts under load took {} ms, snapshot size {} MB",
+                    NUM_ACCOUNTS, NANOSECONDS.toMillis(System.nanoTime() - start), sizeInMegabytes(directory));
+            for (Future<?> future : traffic) {
+                future.get(600, SECONDS);
+            }
+            clients.shutdown();
+            fingerprintBefore = fingerprint(accountManager);
+        }
+
+        long start = System.nanoTime();
+        AccountManager accountManager = new AccountManager(new NonNegativeBalanaceValidator());
+        TransferManager transferManager = new TransferManager(accountManager, Executors.newSingleThreadExecutor());
+        JournalRecovery recovery = new JournalRecovery(accountManager, transferManager);
+        try (FileJournal journal = FileJournal.open(directory)) {
+            journal.replay(recovery);
+        }
+        long replayed = System.nanoTime();
+        recovery.restore();
+        long restored = System.nanoTime();
+        logger.info(">>> startup with {} accounts and tail of up to {} transfers took {} ms (read {} ms, restore {} ms)",
+                NUM_ACCOUNTS, THREADS * TAIL_TRANSFERS_PER_THREAD, NANOSECONDS.toMillis(restored - start),
+                NANOSECONDS.toMillis(replayed - start), NANOSECONDS.toMillis(restored - replayed));
+
+        assertThat(fingerprint(accountManager)).isEqualTo(fingerprintBefore);
+    }
+
+    private static void performRandomTransfers(AccountManager accountManager) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < TAIL_TRANSFERS_PER_THREAD; i++) {
+            int a = random.nextInt(NUM_ACCOUNTS);
+            int b = (a + 1 + random.nextInt(NUM_ACCOUNTS - 1)) % NUM_ACCOUNTS;
+            try {
+                accountManager.performTransfer(
+                        Transfer.of(accountId(a), accountId(b), TRANSFER_AMOUNT, UUID.randomUUID()));
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+
+    /**
+     * Order independent digest of all balances, a copy of 10M accounts would not fit into the heap.
+     */
+    private static long fingerprint(AccountManager accountManager) {
+        long[] fingerprint = {0};
+        accountManager.snapshotAccounts(1024, chunk -> chunk.forEach(account -> fingerprint[0] +=
+                (account.getAccount().getId().hashCode() * 31L + 7) * account.getAccount().getBalance().getMinorUnits()));
+        return fingerprint[0];
+    }
+
+    private static AccountId accountId(int i) {
+        return AccountId.of(String.valueOf(i));
+    }
+
+    private static long sizeInMegabytes(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".snap"))
+                    .mapToLong(file -> file.toFile().length())
+                    .sum() / (1024 * 1024);
+        }
+    }
+}
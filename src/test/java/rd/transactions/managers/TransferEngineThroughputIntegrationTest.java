@@ -0,0 +1,159 @@
+package rd.transactions.managers;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rd.transactions.IntegrationTest;
+import rd.transactions.model.Account;
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Money;
+import rd.transactions.operation.log.AccountAdditionLogEntry;
+import rd.transactions.operation.log.AccountOperationLog;
+import rd.transactions.operation.log.AccountSubtractionLogEntry;
+import rd.transactions.validators.BalanceValidator;
+import rd.transactions.validators.NonNegativeBalanaceValidator;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Contention benchmark for the transfer engine.
+ *
+ * It compares atomic two-account transfer (AccountOperationLog::transfer)
+ *  with the previous debit-then-credit approach on the two workloads which are exercised by
+ *  HttpAppIntegrationTest.checkThatThereAreNoAnomaliesRelatedToMutiThreading:
+ *  a single hot pair of accounts and random pairs out of 50 accounts.
+ *
+ * Atomic transfer has to keep at least MIN_RATIO of debit-then-credit throughput (best of RUNS runs each,
+ *  so a single slow run on a busy machine does not fail the test), also while all accounts are listed
+ *  at one point in time over and over (AccountOperationLog.forEachAtomically stops transfers meanwhile).
+ * Other results are only logged, the test asserts that no money is created or lost.
+ */
+@Category(IntegrationTest.class)
+public class TransferEngineThroughputIntegrationTest {
+    private final static Logger logger = LoggerFactory.getLogger(TransferEngineThroughputIntegrationTest.class);
+
+    private final static int TRANSFERS_PER_THREAD = 200000;
+    private final static int[] THREAD_COUNTS = {1, 4, 8};
+    private final static BigDecimal INITIAL_BALANCE = new BigDecimal("10000000.00");
+    private final static Money TRANSFER_AMOUNT = Money.euros(new BigDecimal("1.00"));
+    private final static int RUNS = 3;
+    private final static double MIN_RATIO = 0.8;
+
+    private final BalanceValidator balanceValidator = new NonNegativeBalanaceValidator();
+
+    private interface Engine {
+        void transfer(AccountOperationLog source, AccountOperationLog target);
+    }
+
+    @Test
+    public void compareAtomicTransferWithDebitThenCredit() throws Exception {
+        Engine debitThenCredit = (source, target) -> {
+            if (source.addEntry(new AccountSubtractionLogEntry(TRANSFER_AMOUNT), balanceValidator)) {
+                target.addEntry(new AccountAdditionLogEntry(TRANSFER_AMOUNT));
+            }
+        };
+        Engine atomic = (source, target) ->
+                AccountOperationLog.transfer(source, target, TRANSFER_AMOUNT, balanceValidator);
+
+        // warm-up, results are discarded
+        measure("debit-then-credit", debitThenCredit, 50, 4, false);
+        measure("atomic", atomic, 50, 4, false);
+        measure("atomic", atomic, 50, 4, true);
+
+        for (int numAccounts : new int[]{2, 50}) {
+            for (int threads : THREAD_COUNTS) {
+                double baseline = 0;
+                double current = 0;
+                double listed = 0;
+                for (int run = 0; run < RUNS; run++) {
+                    baseline = Math.max(baseline,
+                            measure("debit-then-credit", debitThenCredit, numAccounts, threads, false));
+                    current = Math.max(current, measure("atomic", atomic, numAccounts, threads, false));
+                    listed = Math.max(listed, measure("atomic", atomic, numAccounts, threads, true));
+                }
+                logger.info(">>> accounts={} threads={} debit-then-credit={} ops/s atomic={} ops/s ratio={}"
+                                + " atomic-while-listing={} ops/s ratio={}",
+                        numAccounts, threads,
+                        String.format("%.0f", baseline), String.format("%.0f", current),
+                        String.format("%.2f", current / baseline),
+                        String.format("%.0f", listed), String.format("%.2f", listed / baseline));
+                assertThat(current / baseline)
+                        .as("atomic transfer throughput relative to debit-then-credit, %d accounts, %d threads",
+                                numAccounts, threads)
+                        .isGreaterThanOrEqualTo(MIN_RATIO);
+                assertThat(listed / baseline)
+                        .as("atomic transfer throughput while listing relative to debit-then-credit,"
+                                + " %d accounts, %d threads", numAccounts, threads)
+                        .isGreaterThanOrEqualTo(MIN_RATIO);
+            }
+        }
+    }
+
+    /**
+     * @param listing whether all accounts are listed at one point in time over and over while the transfers run,
+     *  every listing has to show the initial total
+     */
+    private double measure(String name, Engine engine, int numAccounts, int threads, boolean listing)
+            throws Exception {
+        List<AccountOperationLog> logs = new ArrayList<>(numAccounts);
+        for (int i = 0; i < numAccounts; i++) {
+            logs.add(new AccountOperationLog(Account.of(AccountId.of(name + i), Money.euros(INITIAL_BALANCE))));
+        }
+        BigDecimal expectedTotal = INITIAL_BALANCE.multiply(BigDecimal.valueOf(numAccounts));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads + (listing ? 1 : 0));
+        AtomicBoolean finished = new AtomicBoolean();
+        Future<Integer> listings = listing ? executor.submit(() -> {
+            int listed = 0;
+            while (!finished.get()) {
+                BigDecimal[] total = {BigDecimal.ZERO};
+                AccountOperationLog.forEachAtomically(logs,
+                        account -> total[0] = total[0].add(account.getBalance().getAmount()));
+                assertThat(total[0]).isEqualByComparingTo(expectedTotal);
+                listed++;
+                // a listing every millisecond, like a client polling GET /v1/accounts as fast as it can
+                Thread.sleep(1);
+            }
+            return listed;
+        }) : null;
+        List<Future<?>> futures = new ArrayList<>(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                    int a = random.nextInt(numAccounts);
+                    int b = (a + 1 + random.nextInt(numAccounts - 1)) % numAccounts;
+                    engine.transfer(logs.get(a), logs.get(b));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(120, SECONDS);
+        }
+        long elapsed = System.nanoTime() - start;
+        finished.set(true);
+        if (listings != null) {
+            assertThat(listings.get(120, SECONDS)).isPositive();
+        }
+        executor.shutdown();
+
+        BigDecimal total = logs.stream()
+                .map(log -> log.materializeAsAccount().getBalance().getAmount())
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertThat(total).isEqualByComparingTo(expectedTotal);
+
+        return (double) threads * TRANSFERS_PER_THREAD * SECONDS.toNanos(1) / elapsed;
+    }
+}
@@ -0,0 +1,97 @@
+package rd.transactions.managers;
+
+import org.junit.Test;
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Money;
+import rd.transactions.model.Transfer;
+import rd.transactions.model.TransferStatus;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TransferIndexTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000);
+    private final TransferIndex index = new TransferIndex(clock::get);
+
+    @Test
+    public void transfersAreFoundByAccountsAndStatus() {
+        Transfer aToB = add("A", "B");
+        Transfer bToA = add("B", "A");
+        Transfer aToC = add("A", "C");
+        update(aToC, TransferStatus.REJECTED_NOT_ENOUGH_CREDIT_ON_SOURCE_ACCOUNT);
+
+        assertThat(find(TransferQuery.builder().sourceAccount(AccountId.of("A")))).containsExactly(aToB, aToC);
+        assertThat(find(TransferQuery.builder().targetAccount(AccountId.of("A")))).containsExactly(bToA);
+        assertThat(find(TransferQuery.builder().sourceAccount(AccountId.of("A"))
+                .transferStatus(TransferStatus.REJECTED_NOT_ENOUGH_CREDIT_ON_SOURCE_ACCOUNT)))
+                .containsExactly(aToC);
+        assertThat(find(TransferQuery.builder().transferStatus(TransferStatus.SUBMITTED)))
+                .containsExactly(aToB, bToA);
+        assertThat(find(TransferQuery.builder().sourceAccount(AccountId.of("X")))).isEmpty();
+    }
+
+    @Test
+    public void transfersAreFoundBySubmissionTime() {
+        Transfer first = add("A", "B");
+        clock.set(2_000);
+        Transfer second = add("A", "B");
+        Transfer third = add("A", "B");
+        clock.set(3_000);
+        add("A", "B");
+
+        assertThat(find(TransferQuery.builder().submittedFrom(1_500).submittedTo(3_000)))
+                .containsExactly(second, third);
+        assertThat(find(TransferQuery.builder().sourceAccount(AccountId.of("A")).submittedTo(2_000)))
+                .containsExactly(first);
+    }
+
+    @Test
+    public void pagesFollowCursor() {
+        Transfer first = add("A", "B");
+        Transfer second = add("A", "B");
+        Transfer third = add("A", "B");
+
+        TransferPage firstPage = index.find(TransferQuery.builder().sourceAccount(AccountId.of("A")).limit(2).build());
+        TransferPage lastPage = index.find(TransferQuery.builder().sourceAccount(AccountId.of("A"))
+                .cursor(firstPage.getNextCursor()).limit(2).build());
+
+        assertThat(firstPage.getTransfers()).containsExactly(first, second);
+        assertThat(lastPage.getTransfers()).containsExactly(third);
+        assertThat(lastPage.getNextCursor()).isEqualTo(TransferPage.END);
+    }
+
+    @Test
+    public void removedTransferIsNotFound() {
+        Transfer removed = add("A", "B");
+        Transfer kept = add("A", "C");
+
+        index.remove(removed);
+
+        assertThat(index.size()).isEqualTo(1);
+        assertThat(find(TransferQuery.builder())).containsExactly(kept);
+        assertThat(find(TransferQuery.builder().targetAccount(AccountId.of("B")))).isEmpty();
+        assertThat(find(TransferQuery.builder().transferStatus(TransferStatus.SUBMITTED))).containsExactly(kept);
+    }
+
+    private Transfer add(String source, String target) {
+        Transfer transfer = Transfer.of(
+                AccountId.of(source), AccountId.of(target), Money.euros(BigDecimal.ONE), UUID.randomUUID());
+        transfer.setStatusListener(index::onStatusChange);
+        index.add(transfer);
+        return transfer;
+    }
+
+    private static void update(Transfer transfer, TransferStatus status) {
+        transfer.updateTransferStatus(TransferStatus.PROCESSING);
+        transfer.updateTransferStatus(status);
+    }
+
+    private List<Transfer> find(TransferQuery.Builder query) {
+        return index.find(query.build()).getTransfers();
+    }
+}
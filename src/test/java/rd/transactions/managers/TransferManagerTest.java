@@ -4,11 +4,28 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import rd.transactions.exceptions.TransferQueueFullException;
+import rd.transactions.journal.NoOpJournal;
+import rd.transactions.metrics.MetricsRegistry;
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Money;
 import rd.transactions.model.Transfer;
+import rd.transactions.model.TransferStatus;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -22,16 +39,14 @@ public class TransferManagerTest {
     @Mock
     private AccountManager accountManager;
 
-    @Mock
-    private Transfer transfer;
+    private final Transfer transfer = Transfer.of(
+            AccountId.of("A"), AccountId.of("B"), Money.euros(BigDecimal.TEN), UUID.randomUUID());
 
     @Test
     public void whenTransferIsSubmittedItIsAddedToExecutorAndToTransferDb() {
         TransferManager manager = new TransferManager(accountManager, executorService);
 
-        UUID transferUuid = UUID.randomUUID();
-
-        when(transfer.getTransferId()).thenReturn(transferUuid);
+        UUID transferUuid = transfer.getTransferId();
 
         manager.submitTransfer(transfer);
 
@@ -40,4 +55,135 @@ public class TransferManagerTest {
         assertThat(transferFromRepo.get()).isEqualTo(transfer);
         verify(executorService, times(1)).submit((TransferPerformer)any());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void whenExecutorRejectsTransferItIsNotRegisteredAndRejectionIsCounted() {
+        TransferManager manager = new TransferManager(accountManager, executorService);
+        UUID transferUuid = transfer.getTransferId();
+        when(executorService.submit(any(Runnable.class))).thenThrow(new RejectedExecutionException());
+
+        boolean exceptionWasThrown = false;
+        try {
+            manager.submitTransfer(transfer);
+        } catch (TransferQueueFullException ex) {
+            exceptionWasThrown = true;
+        }
+
+        assertThat(exceptionWasThrown).isTrue();
+        assertThat(manager.getTransfer(transferUuid)).isEmpty();
+        assertThat(manager.findTransfers(TransferQuery.builder().build()).getTransfers()).isEmpty();
+        assertThat(manager.getIntakeStatistics().getRejectedTransfers()).isEqualTo(1L);
+    }
+
+    @Test
+    public void transferSubmittedWithoutRunningIsRejectedInsteadOfRunByCaller() throws Exception {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        CountDownLatch blockWorker = new CountDownLatch(1);
+        pool.submit(() -> {
+            blockWorker.await();
+            return null;
+        });
+        pool.submit(() -> { });
+        TransferManager manager = new TransferManager(accountManager, pool);
+
+        boolean exceptionWasThrown = false;
+        try {
+            manager.submitTransferWithoutRunning(transfer);
+        } catch (TransferQueueFullException ex) {
+            exceptionWasThrown = true;
+        }
+
+        blockWorker.countDown();
+        pool.shutdown();
+        assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(exceptionWasThrown).isTrue();
+        assertThat(transfer.getTransferStatus()).isEqualTo(TransferStatus.SUBMITTED);
+        assertThat(manager.getTransfer(transfer.getTransferId())).isEmpty();
+        verifyZeroInteractions(accountManager);
+    }
+
+    @Test
+    public void submittedTransfersAreFoundByStatusAsItChanges() {
+        TransferManager manager = new TransferManager(accountManager, executorService);
+        manager.submitTransfer(transfer);
+        TransferQuery completed = TransferQuery.builder().transferStatus(TransferStatus.COMPLETED).build();
+
+        assertThat(manager.findTransfers(completed).getTransfers()).isEmpty();
+        transfer.updateTransferStatus(TransferStatus.PROCESSING);
+        transfer.updateTransferStatus(TransferStatus.COMPLETED);
+
+        assertThat(manager.findTransfers(completed).getTransfers()).containsExactly(transfer);
+        assertThat(manager.findTransfers(TransferQuery.builder().transferStatus(TransferStatus.SUBMITTED).build())
+                .getTransfers()).isEmpty();
+    }
+
+    @Test
+    public void intakeStatisticsReflectQueueOfThreadPool() {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(10));
+        CountDownLatch blockWorker = new CountDownLatch(1);
+        pool.submit(() -> {
+            blockWorker.await();
+            return null;
+        });
+        pool.submit(() -> { });
+        pool.submit(() -> { });
+
+        TransferManager manager = new TransferManager(accountManager, pool);
+        IntakeStatistics statistics = manager.getIntakeStatistics();
+
+        blockWorker.countDown();
+        pool.shutdown();
+        assertThat(statistics.getQueueDepth()).isEqualTo(2L);
+        assertThat(statistics.getQueueCapacity()).isEqualTo(10L);
+        assertThat(statistics.getRejectedTransfers()).isEqualTo(0L);
+    }
+
+    @Test
+    public void transferReachingTerminalStatusIsCountedOnce() throws IOException {
+        MetricsRegistry registry = new MetricsRegistry();
+        TransferManager manager = new TransferManager(accountManager, executorService, NoOpJournal.INSTANCE,
+                Optional.empty(), new TransferMetrics(registry));
+        manager.submitTransfer(transfer);
+
+        transfer.updateTransferStatus(TransferStatus.PROCESSING);
+        transfer.updateTransferStatus(TransferStatus.COMPLETED);
+        transfer.updateTransferStatus(TransferStatus.COMPLETED);
+
+        StringWriter metrics = new StringWriter();
+        registry.write(metrics);
+        assertThat(metrics.toString())
+                .contains("transfers_finished_total{status=\"COMPLETED\"} 1\n")
+                .contains("transfers_finished_total{status=\"INTERNAL_ERROR\"} 0\n");
+    }
+
+    @Test
+    public void waitersAndSubscribersArePushedStatusChanges() {
+        TransferManager manager = new TransferManager(accountManager, executorService);
+        List<TransferStatus> pushedStatuses = new ArrayList<>();
+        manager.subscribe((changed, previousStatus, newStatus) -> pushedStatuses.add(newStatus));
+        manager.submitTransfer(transfer);
+
+        CompletableFuture<Transfer> terminal = manager.whenTerminal(transfer.getTransferId()).get();
+        transfer.updateTransferStatus(TransferStatus.PROCESSING);
+        assertThat(terminal).isNotDone();
+        transfer.updateTransferStatus(TransferStatus.COMPLETED);
+
+        assertThat(terminal).isCompletedWithValue(transfer);
+        assertThat(manager.whenTerminal(transfer.getTransferId()).get()).isCompletedWithValue(transfer);
+        assertThat(manager.whenTerminal(UUID.randomUUID())).isEmpty();
+        assertThat(pushedStatuses).containsExactly(TransferStatus.PROCESSING, TransferStatus.COMPLETED);
+    }
+
+    @Test
+    public void transferIsPerformedOnTheCallingThreadWithoutTheExecutor() throws Exception {
+        TransferManager manager = new TransferManager(accountManager, executorService);
+
+        manager.performTransfer(transfer);
+
+        verify(accountManager).performTransfer(transfer);
+        verifyZeroInteractions(executorService);
+        assertThat(transfer.getTransferStatus()).isEqualTo(TransferStatus.COMPLETED);
+        assertThat(manager.getTransfer(transfer.getTransferId())).contains(transfer);
+    }
+}
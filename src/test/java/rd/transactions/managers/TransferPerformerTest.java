@@ -7,13 +7,20 @@ import org.mockito.junit.MockitoJUnitRunner;
 import rd.transactions.exceptions.AccountDoesNotExistException;
 import rd.transactions.exceptions.CurrenciesOfAccountsDifferException;
 import rd.transactions.exceptions.CurrencyOfSourceAccountDifferentThanTransferException;
+import rd.transactions.exceptions.JournalException;
 import rd.transactions.exceptions.NotEnoughCreditException;
+import rd.transactions.exceptions.TransferNotDurableException;
+import rd.transactions.journal.Journal;
+import rd.transactions.journal.TransferStatusChangedRecord;
+import rd.transactions.metrics.MetricsRegistry;
 import rd.transactions.model.AccountId;
 import rd.transactions.model.Money;
 import rd.transactions.model.Transfer;
 import rd.transactions.model.TransferStatus;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -27,6 +34,9 @@ public class TransferPerformerTest {
     @Mock
     AccountManager accountManager;
 
+    @Mock
+    Journal journal;
+
     private Transfer getNewTransfer() {
         return Transfer.of(
                 AccountId.of("A"),
@@ -101,4 +111,46 @@ public class TransferPerformerTest {
 
         assertThat(transfer.getTransferStatus()).isEqualTo(TransferStatus.INTERNAL_ERROR);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void appliedTransferWhichIsNotJournaledIsNotReportedAsFailed() throws NotEnoughCreditException, CurrencyOfSourceAccountDifferentThanTransferException, CurrenciesOfAccountsDifferException {
+        Transfer transfer = getNewTransfer();
+        TransferPerformer performer = new TransferPerformer(transfer, accountManager);
+        doThrow(new TransferNotDurableException(new JournalException("disk full")))
+                .when(accountManager).performTransfer(any());
+
+        performer.run();
+
+        assertThat(transfer.getTransferStatus()).isEqualTo(TransferStatus.PROCESSING);
+    }
+
+    @Test
+    public void rejectionIsVisibleOnlyAfterItIsDurable() throws NotEnoughCreditException, CurrencyOfSourceAccountDifferentThanTransferException, CurrenciesOfAccountsDifferException {
+        Transfer transfer = getNewTransfer();
+        TransferPerformer performer = new TransferPerformer(
+                transfer, accountManager, new TransferMetrics(new MetricsRegistry()), journal);
+        doThrow(new NotEnoughCreditException()).when(accountManager).performTransfer(any());
+        when(journal.append(any(TransferStatusChangedRecord.class))).thenReturn(7L);
+        List<TransferStatus> statusesWhileAwaited = new ArrayList<>();
+        doAnswer(invocation -> statusesWhileAwaited.add(transfer.getTransferStatus()))
+                .when(journal).awaitDurable(7L);
+
+        performer.run();
+
+        assertThat(statusesWhileAwaited).containsExactly(TransferStatus.PROCESSING);
+        assertThat(transfer.getTransferStatus()).isEqualTo(TransferStatus.REJECTED_NOT_ENOUGH_CREDIT_ON_SOURCE_ACCOUNT);
+    }
+
+    @Test
+    public void rejectionWhichIsNotJournaledIsNotVisible() throws NotEnoughCreditException, CurrencyOfSourceAccountDifferentThanTransferException, CurrenciesOfAccountsDifferException {
+        Transfer transfer = getNewTransfer();
+        TransferPerformer performer = new TransferPerformer(
+                transfer, accountManager, new TransferMetrics(new MetricsRegistry()), journal);
+        doThrow(new NotEnoughCreditException()).when(accountManager).performTransfer(any());
+        when(journal.append(any(TransferStatusChangedRecord.class))).thenThrow(new JournalException("disk full"));
+
+        performer.run();
+
+        assertThat(transfer.getTransferStatus()).isEqualTo(TransferStatus.PROCESSING);
+    }
+}
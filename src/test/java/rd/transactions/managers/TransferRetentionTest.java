@@ -0,0 +1,107 @@
+package rd.transactions.managers;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import rd.transactions.archive.TransferArchive;
+import rd.transactions.journal.NoOpJournal;
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Money;
+import rd.transactions.model.Transfer;
+import rd.transactions.model.TransferStatus;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TransferRetentionTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    private AccountManager accountManager;
+
+    @Mock
+    private ExecutorService executorService;
+
+    @Test
+    public void oldestFinishedTransfersAreEvictedAboveMaxCount() throws IOException {
+        TransferManager manager = new TransferManager(accountManager, executorService);
+        List<Transfer> finished = submit(manager, 5);
+        finished.forEach(transfer -> finish(transfer, TransferStatus.COMPLETED));
+        Transfer unfinished = submit(manager, 1).get(0);
+
+        int evicted = new TransferRetention(manager, 0, 2).evict(System.currentTimeMillis());
+
+        assertThat(evicted).isEqualTo(3);
+        for (int i = 0; i < 3; i++) {
+            assertThat(manager.getTransfer(finished.get(i).getTransferId())).isEmpty();
+        }
+        assertThat(manager.getTransfers()).containsOnly(finished.get(3), finished.get(4), unfinished);
+        assertThat(manager.findTransfers(TransferQuery.builder().build()).getTransfers())
+                .containsExactly(finished.get(3), finished.get(4), unfinished);
+        RetentionStatistics statistics = manager.getRetentionStatistics();
+        assertThat(statistics.getResidentTransfers()).isEqualTo(3L);
+        assertThat(statistics.getResidentFinishedTransfers()).isEqualTo(2L);
+        assertThat(statistics.getEvictedTransfers()).isEqualTo(3L);
+    }
+
+    @Test
+    public void finishedTransfersAreEvictedByAgeOnly() throws IOException {
+        TransferManager manager = new TransferManager(accountManager, executorService);
+        List<Transfer> transfers = submit(manager, 3);
+        transfers.forEach(transfer -> finish(transfer, TransferStatus.REJECTED_DIFFERENT_CURRENCIES));
+        TransferRetention retention = new TransferRetention(manager, 60_000, 0);
+
+        assertThat(retention.evict(System.currentTimeMillis())).isZero();
+        assertThat(retention.evict(System.currentTimeMillis() + 60_000)).isEqualTo(3);
+        assertThat(manager.getTransfers()).isEmpty();
+    }
+
+    @Test
+    public void evictedTransfersAreFoundInArchive() throws IOException {
+        try (TransferArchive archive = TransferArchive.open(folder.getRoot().toPath().resolve("archive"))) {
+            TransferManager manager = new TransferManager(
+                    accountManager, executorService, NoOpJournal.INSTANCE, Optional.of(archive));
+            List<Transfer> transfers = submit(manager, TransferRetention.TRANSFERS_PER_CHUNK + 10);
+            transfers.forEach(transfer -> finish(transfer, TransferStatus.COMPLETED));
+
+            new TransferRetention(manager, 0, 1).evict(System.currentTimeMillis());
+
+            assertThat(manager.getTransfers()).hasSize(1);
+            Transfer evicted = manager.getTransfer(transfers.get(0).getTransferId()).get();
+            assertThat(evicted).isEqualTo(transfers.get(0));
+            assertThat(evicted.getTransferStatus()).isEqualTo(TransferStatus.COMPLETED);
+            RetentionStatistics statistics = manager.getRetentionStatistics();
+            assertThat(statistics.getArchivedTransfers()).isEqualTo(TransferRetention.TRANSFERS_PER_CHUNK + 9L);
+            assertThat(statistics.getArchiveSizeBytes()).isPositive();
+        }
+    }
+
+    private static List<Transfer> submit(TransferManager manager, int count) {
+        List<Transfer> transfers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Transfer transfer = Transfer.of(
+                    AccountId.of("A"), AccountId.of("B"), Money.euros(BigDecimal.ONE), UUID.randomUUID());
+            manager.submitTransfer(transfer);
+            transfers.add(transfer);
+        }
+        return transfers;
+    }
+
+    private static void finish(Transfer transfer, TransferStatus status) {
+        transfer.updateTransferStatus(TransferStatus.PROCESSING);
+        transfer.updateTransferStatus(status);
+    }
+}
@@ -0,0 +1,82 @@
+package rd.transactions.metrics;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MetricsRegistryTest {
+
+    private final MetricsRegistry registry = new MetricsRegistry();
+
+    @Test
+    public void countersAndGaugesAreWrittenWithHelpAndType() throws IOException {
+        Counter counter = registry.counter("requests_total", "Requests.", "route", "GET /a");
+        registry.counter("rejected_total", "Rejected.", () -> 7L);
+        registry.gauge("queue_depth", "Queue depth.", () -> 3);
+        counter.add(2);
+        counter.increment();
+
+        assertThat(write()).isEqualTo(
+                "# HELP requests_total Requests.\n" +
+                "# TYPE requests_total counter\n" +
+                "requests_total{route=\"GET /a\"} 3\n" +
+                "# HELP rejected_total Rejected.\n" +
+                "# TYPE rejected_total counter\n" +
+                "rejected_total 7\n" +
+                "# HELP queue_depth Queue depth.\n" +
+                "# TYPE queue_depth gauge\n" +
+                "queue_depth 3.0\n");
+    }
+
+    @Test
+    public void histogramBucketsAreCumulative() throws IOException {
+        LatencyHistogram histogram = registry.histogram("latency_seconds", "Latency.");
+        histogram.recordNanos(TimeUnit.MICROSECONDS.toNanos(5));
+        histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        histogram.recordNanos(TimeUnit.MINUTES.toNanos(1));
+
+        String metrics = write();
+
+        assertThat(metrics).contains("# TYPE latency_seconds histogram\n");
+        assertThat(metrics).contains("latency_seconds_bucket{le=\"1.0E-5\"} 1\n");
+        assertThat(metrics).contains("latency_seconds_bucket{le=\"0.001\"} 2\n");
+        assertThat(metrics).contains("latency_seconds_bucket{le=\"10.0\"} 2\n");
+        assertThat(metrics).contains("latency_seconds_bucket{le=\"+Inf\"} 3\n");
+        assertThat(metrics).contains("latency_seconds_sum 60.001005\n");
+        assertThat(metrics).contains("latency_seconds_count 3\n");
+    }
+
+    @Test
+    public void seriesOfOneFamilyAreWrittenUnderOneHeader() throws IOException {
+        registry.counter("finished_total", "Finished.", "status", "COMPLETED").increment();
+        registry.counter("finished_total", "Finished.", "status", "FAILED");
+
+        assertThat(write()).isEqualTo(
+                "# HELP finished_total Finished.\n" +
+                "# TYPE finished_total counter\n" +
+                "finished_total{status=\"COMPLETED\"} 1\n" +
+                "finished_total{status=\"FAILED\"} 0\n");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sameSeriesCannotBeRegisteredTwice() {
+        registry.counter("finished_total", "Finished.", "status", "COMPLETED");
+        registry.counter("finished_total", "Finished.", "status", "COMPLETED");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nameCannotBeRegisteredWithAnotherType() {
+        registry.counter("queue_depth", "Queue depth.");
+        registry.gauge("queue_depth", "Queue depth.", () -> 0);
+    }
+
+    private String write() throws IOException {
+        StringWriter writer = new StringWriter();
+        registry.write(writer);
+        return writer.toString();
+    }
+}
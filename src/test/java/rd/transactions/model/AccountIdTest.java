@@ -0,0 +1,29 @@
+package rd.transactions.model;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AccountIdTest {
+
+    @Test
+    public void idsOfTheSameAccountAreEqual() {
+        String id = UUID.randomUUID().toString();
+
+        AccountId first = AccountId.of(id);
+        AccountId second = AccountId.of(new String(id));
+
+        assertThat(first).isNotSameAs(second).isEqualTo(second).hasSameHashCodeAs(second);
+    }
+
+    @Test
+    public void idsOfDifferentAccountsAreNotEqual() {
+        AccountId first = AccountId.of(UUID.randomUUID().toString());
+        AccountId second = AccountId.of(UUID.randomUUID().toString());
+
+        assertThat(first).isNotEqualTo(second);
+        assertThat(AccountId.of(null)).isEqualTo(AccountId.of(null)).isNotEqualTo(first);
+    }
+}
@@ -0,0 +1,42 @@
+package rd.transactions.model;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Money.add and conversion of request amounts to Money.
+ *
+ * Run with: mvn verify -Pbenchmark -Djmh.include=MoneyBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MoneyBenchmark {
+    private final Money balance = Money.euros(new BigDecimal("1234567.89"));
+    private final Money amount = Money.euros(new BigDecimal("12.34"));
+    private final BigDecimal requestedAmount = new BigDecimal("12.345");
+
+    @Benchmark
+    public Money add() {
+        return balance.add(amount);
+    }
+
+    @Benchmark
+    public Money fromBigDecimal() {
+        return Money.euros(requestedAmount);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MoneyBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
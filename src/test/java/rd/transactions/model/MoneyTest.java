@@ -3,6 +3,7 @@ package rd.transactions.model;
 import org.junit.Test;
 
 import java.math.BigDecimal;
+import java.util.Currency;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -57,4 +58,26 @@ public class MoneyTest {
 
         assertThat(a.negate().negate()).isEqualTo(a);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void amountIsStoredInMinorUnitsOfCurrency() {
+        Money a = Money.euros(new BigDecimal("100.11"));
+        Money yen = Money.of(new BigDecimal("100.6"), Currency.getInstance("JPY"));
+
+        assertThat(a.getMinorUnits()).isEqualTo(10011L);
+        assertThat(yen.getMinorUnits()).isEqualTo(101L);
+        assertThat(Money.ofMinorUnits(10011L, Currency.getInstance("EUR"))).isEqualTo(a);
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void amountOutOfSupportedRangeIsRejected() {
+        Money.euros(new BigDecimal("100000000000000000000"));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void additionOverflowIsDetected() {
+        Money max = Money.ofMinorUnits(Long.MAX_VALUE, Currency.getInstance("EUR"));
+
+        max.add(Money.euros(new BigDecimal("0.01")));
+    }
+}
@@ -1,6 +1,8 @@
 package rd.transactions.operation.log;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
@@ -12,15 +14,24 @@ import rd.transactions.operation.log.AccountOperationLog;
 import rd.transactions.operation.log.AccountSubtractionLogEntry;
 import rd.transactions.validators.BalanceValidator;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
+import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Java6Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
 public class AccountOperationLogTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Mock
     private Account initialAccount;
 
@@ -30,7 +41,7 @@ public class AccountOperationLogTest {
     @Test
     public void canAddAndSubtractFromAccount() {
         // super-permissive validator
-        when(balanceValidator.isBalanceAllowed(any())).thenReturn(true);
+        when(balanceValidator.isBalanceAllowed(anyLong(), any())).thenReturn(true);
 
         AccountOperationLog accountOperationLog = createInitialLog("120.33");
 
@@ -53,7 +64,7 @@ public class AccountOperationLogTest {
     @Test
     public void doNotAllowOperationsMakingBalanceInvalid() {
         // disallow all operations
-        when(balanceValidator.isBalanceAllowed(any())).thenReturn(false);
+        when(balanceValidator.isBalanceAllowed(anyLong(), any())).thenReturn(false);
 
         String initialAccountBalance = "100.00";
 
@@ -71,7 +82,7 @@ public class AccountOperationLogTest {
     @Test
     public void allowedOperationsReturnTrueUponAdditionToLog() {
         // allow all operations
-        when(balanceValidator.isBalanceAllowed(any())).thenReturn(true);
+        when(balanceValidator.isBalanceAllowed(anyLong(), any())).thenReturn(true);
 
         AccountOperationLog accountOperationLog = createInitialLog("100.00");
         boolean operationResult = accountOperationLog.addEntry(
@@ -81,12 +92,189 @@ public class AccountOperationLogTest {
         assertThat(operationResult).isTrue();
     }
 
+    @Test
+    public void rejectedOperationIsNotRecordedInHistory() {
+        when(balanceValidator.isBalanceAllowed(anyLong(), any())).thenReturn(false);
+
+        AccountOperationLog accountOperationLog = createInitialLog("100.00");
+        accountOperationLog.addEntry(
+                new AccountSubtractionLogEntry(euros("17.23")),
+                balanceValidator);
+
+        assertThat(accountOperationLog.getEntries()).hasSize(1);
+        assertThat(accountOperationLog.isBalanceConsistent()).isTrue();
+    }
+
+    @Test
+    public void runningBalanceIsConsistentWithHistory() {
+        when(balanceValidator.isBalanceAllowed(anyLong(), any())).thenReturn(true);
+
+        AccountOperationLog accountOperationLog = createInitialLog("100.00");
+        for (int i = 0; i < 1000; i++) {
+            accountOperationLog.addEntry(new AccountAdditionLogEntry(euros("0.02")));
+            accountOperationLog.addEntry(new AccountSubtractionLogEntry(euros("0.01")), balanceValidator);
+        }
+
+        assertThat(accountOperationLog.getEntries()).hasSize(2001);
+        assertThat(accountOperationLog.isBalanceConsistent()).isTrue();
+        assertThat(accountOperationLog.materializeAsAccount().getBalance().getAmount())
+                .isEqualByComparingTo("110.00");
+    }
+
+    @Test
+    public void transferDebitsSourceAndCreditsTarget() {
+        when(balanceValidator.isBalanceAllowed(anyLong(), any())).thenReturn(true);
+
+        AccountOperationLog source = new AccountOperationLog(Account.of(AccountId.of("A"), euros("100.00")));
+        AccountOperationLog target = new AccountOperationLog(Account.of(AccountId.of("B"), euros("1.00")));
+
+        boolean operationResult = AccountOperationLog.transfer(source, target, euros("40.50"), balanceValidator);
+
+        assertThat(operationResult).isTrue();
+        assertThat(source.materializeAsAccount().getBalance().getAmount()).isEqualByComparingTo("59.50");
+        assertThat(target.materializeAsAccount().getBalance().getAmount()).isEqualByComparingTo("41.50");
+        assertThat(source.isBalanceConsistent()).isTrue();
+        assertThat(target.isBalanceConsistent()).isTrue();
+    }
+
+    @Test
+    public void rejectedTransferModifiesNeitherLog() {
+        when(balanceValidator.isBalanceAllowed(anyLong(), any())).thenReturn(false);
+
+        AccountOperationLog source = new AccountOperationLog(Account.of(AccountId.of("A"), euros("100.00")));
+        AccountOperationLog target = new AccountOperationLog(Account.of(AccountId.of("B"), euros("1.00")));
+
+        boolean operationResult = AccountOperationLog.transfer(source, target, euros("140.50"), balanceValidator);
+
+        assertThat(operationResult).isFalse();
+        assertThat(source.getEntries()).hasSize(1);
+        assertThat(target.getEntries()).hasSize(1);
+    }
+
+    @Test
+    public void transferToSameAccountKeepsBalance() {
+        when(balanceValidator.isBalanceAllowed(anyLong(), any())).thenReturn(true);
+
+        AccountOperationLog account = new AccountOperationLog(Account.of(AccountId.of("A"), euros("100.00")));
+
+        boolean operationResult = AccountOperationLog.transfer(account, account, euros("40.50"), balanceValidator);
+
+        assertThat(operationResult).isTrue();
+        assertThat(account.getEntries()).hasSize(3);
+        assertThat(account.materializeAsAccount().getBalance().getAmount()).isEqualByComparingTo("100.00");
+    }
+
+    @Test
+    public void transferRemembersJournalSequenceAndReplayOfReflectedRecordsIsSkipped() {
+        when(balanceValidator.isBalanceAllowed(anyLong(), any())).thenReturn(true);
+        AccountOperationLog source = createInitialLog("100.00");
+        AccountOperationLog target = new AccountOperationLog(Account.of(AccountId.of("5678"), euros("0.00")));
+
+        AccountOperationLog.transfer(source, target, euros("10.00"), balanceValidator, () -> 7L);
+        assertThat(source.snapshot().getJournalSequence()).isEqualTo(7L);
+        assertThat(target.snapshot().getJournalSequence()).isEqualTo(7L);
+
+        // record 7 is already reflected, record 8 is not
+        source.replayEntries(Collections.singletonList(new AccountSubtractionLogEntry(euros("10.00"))), 7L);
+        source.replayEntries(Collections.singletonList(new AccountSubtractionLogEntry(euros("5.00"))), 8L);
+
+        assertThat(source.snapshot().getAccount().getBalance()).isEqualTo(euros("85.00"));
+        assertThat(source.snapshot().getJournalSequence()).isEqualTo(8L);
+    }
+
+    @Test
+    public void historyIsReadInPagesAcrossSealedSegments() {
+        AccountOperationLog log = new AccountOperationLog(
+                Account.of(AccountId.of("A"), euros("0.00")), 0, HistoryStorage.inMemory(4));
+        for (int i = 1; i <= 10; i++) {
+            log.addEntry(new AccountAdditionLogEntry(euros(i + ".00")));
+        }
+
+        assertThat(log.getEntryCount()).isEqualTo(11);
+        assertThat(amounts(log.getEntries(3, 4))).containsExactly("3.00", "4.00", "5.00", "6.00");
+        assertThat(amounts(log.getEntries(9, 10))).containsExactly("9.00", "10.00");
+        assertThat(log.getEntries(11, 10)).isEmpty();
+        assertThat(log.isBalanceConsistent()).isTrue();
+    }
+
+    @Test
+    public void spilledSegmentsAreReadBackFromDisk() throws IOException, InterruptedException {
+        when(balanceValidator.isBalanceAllowed(anyLong(), any())).thenReturn(true);
+        try (HistoryStorage storage = HistoryStorage.spilling(3, folder.getRoot().toPath())) {
+            AccountOperationLog log = new AccountOperationLog(
+                    Account.of(AccountId.of("A"), euros("100.00")), 0, storage);
+            for (int i = 0; i < 5; i++) {
+                log.addEntry(new AccountSubtractionLogEntry(euros("1.50")), balanceValidator);
+            }
+
+            // sealing does not wait for the disk, segments are read from the heap until they are spilled
+            assertThat(amounts(log.getEntries())).hasSize(6);
+            storage.awaitSpilled();
+
+            assertThat(storage.getSealedSegments()).isEqualTo(2);
+            assertThat(storage.getSpilledBytes()).isPositive();
+            assertThat(amounts(log.getEntries()))
+                    .containsExactly("100.00", "-1.50", "-1.50", "-1.50", "-1.50", "-1.50");
+            assertThat(log.isBalanceConsistent()).isTrue();
+        }
+    }
+
+    @Test
+    public void historyIsFilteredByTimeAndPagedWithCursor() throws InterruptedException {
+        AccountOperationLog log = new AccountOperationLog(
+                Account.of(AccountId.of("A"), euros("0.00")), 0, HistoryStorage.inMemory(2));
+        for (int i = 1; i <= 3; i++) {
+            log.addEntry(new AccountAdditionLogEntry(euros(i + ".00")));
+        }
+        Thread.sleep(5);
+        long rangeStart = System.currentTimeMillis();
+        for (int i = 4; i <= 8; i++) {
+            log.addEntry(new AccountAdditionLogEntry(euros(i + ".00")));
+        }
+        Thread.sleep(5);
+        long rangeEnd = System.currentTimeMillis();
+        log.addEntry(new AccountAdditionLogEntry(euros("9.00")));
+
+        List<Long> indexes = new ArrayList<>();
+        long next = log.readHistory(0, 3, rangeStart, rangeEnd, (index, timestamp, amount) -> indexes.add(index));
+        assertThat(indexes).containsExactly(4L, 5L, 6L);
+        assertThat(next).isEqualTo(7L);
+
+        indexes.clear();
+        next = log.readHistory(next, 3, rangeStart, rangeEnd, (index, timestamp, amount) -> indexes.add(index));
+        assertThat(indexes).containsExactly(7L, 8L);
+        assertThat(next).isEqualTo(-1L);
+    }
+
+    @Test
+    public void pageReadIsNotAffectedByLaterEntries() {
+        AccountOperationLog log = new AccountOperationLog(
+                Account.of(AccountId.of("A"), euros("0.00")), 0, HistoryStorage.inMemory(2));
+        log.addEntry(new AccountAdditionLogEntry(euros("1.00")));
+        List<Long> amounts = new ArrayList<>();
+
+        long next = log.readHistory(0, 10, Long.MIN_VALUE, Long.MAX_VALUE, (index, timestamp, amount) -> {
+            amounts.add(amount);
+            log.addEntry(new AccountAdditionLogEntry(euros("2.00")));
+        });
+
+        assertThat(amounts).containsExactly(0L, 100L);
+        assertThat(next).isEqualTo(-1L);
+        assertThat(log.getEntryCount()).isEqualTo(4);
+    }
+
     private AccountOperationLog createInitialLog(String initialValue) {
         when(initialAccount.getId()).thenReturn(AccountId.of("1234"));
         when(initialAccount.getBalance()).thenReturn(euros(initialValue));
         return new AccountOperationLog(initialAccount);
     }
 
+    private static List<String> amounts(List<AccountOperationLogEntry> entries) {
+        return entries.stream()
+                .map(entry -> entry.getOperationValue().getAmount().toPlainString())
+                .collect(toList());
+    }
+
     private Money euros(String value) {
         return Money.euros(new BigDecimal(value));
     }
@@ -0,0 +1,57 @@
+package rd.transactions.operation.log;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import rd.transactions.model.Account;
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Money;
+import rd.transactions.validators.NonNegativeBalanaceValidator;
+
+import java.util.Currency;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of AccountOperationLog.addEntry for an account with an already long history, the history keeps growing
+ *  during the benchmark. Credits and debits alternate, debits are validated.
+ *
+ * Run with: mvn verify -Pbenchmark -Djmh.include=AddEntryBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AddEntryBenchmark {
+    private static final Currency EUR = Currency.getInstance("EUR");
+
+    @Param({"0", "1000000"})
+    private int history;
+    private AccountOperationLog log;
+    private final NonNegativeBalanaceValidator balanceValidator = new NonNegativeBalanaceValidator();
+    private final AccountAdditionLogEntry credit = new AccountAdditionLogEntry(Money.ofMinorUnits(1, EUR));
+    private final AccountSubtractionLogEntry debit = new AccountSubtractionLogEntry(Money.ofMinorUnits(1, EUR));
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        log = new AccountOperationLog(
+                Account.of(AccountId.of("account"), Money.ofMinorUnits(1, EUR)), 0, HistoryStorage.defaults());
+        for (int i = 0; i < history; i++) {
+            log.addEntry(credit);
+        }
+    }
+
+    @Benchmark
+    public boolean addEntries() {
+        log.addEntry(credit);
+        return log.addEntry(debit, balanceValidator);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(AddEntryBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
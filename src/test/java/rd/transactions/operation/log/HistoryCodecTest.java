@@ -0,0 +1,32 @@
+package rd.transactions.operation.log;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HistoryCodecTest {
+
+    @Test
+    public void amountsAndTimestampsSurviveEncoding() {
+        long[] amounts = {0, 1, -1, 63, -64, 64, 12345, -987654321, Long.MAX_VALUE, Long.MIN_VALUE};
+        long[] timestamps = {0, 1_550_000_000_000L, 1_550_000_000_000L, 1_550_000_000_001L,
+                1_550_000_000_150L, 1_550_000_060_000L, 1_560_000_000_000L, 1_560_000_000_000L,
+                1_560_000_000_003L, 1_570_000_000_000L};
+
+        HistoryColumns decoded = HistoryCodec.decode(
+                HistoryCodec.encode(amounts, timestamps, amounts.length), amounts.length);
+
+        assertThat(decoded.count).isEqualTo(amounts.length);
+        assertThat(decoded.amounts).containsExactly(amounts);
+        assertThat(decoded.timestamps).containsExactly(timestamps);
+    }
+
+    @Test
+    public void smallAmountsAndCloseTimestampsTakeFewBytes() {
+        long[] amounts = {1000, -2550, 9999, -100};
+        long[] timestamps = {1_550_000_000_000L, 1_550_000_000_000L, 1_550_000_000_010L, 1_550_000_000_200L};
+
+        // 9 bytes of amounts, 6 bytes of the first timestamp, 1 + 1 + 2 bytes of differences
+        assertThat(HistoryCodec.encode(amounts, timestamps, amounts.length)).hasSize(19);
+    }
+}
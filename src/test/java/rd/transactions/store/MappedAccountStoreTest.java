@@ -0,0 +1,255 @@
+package rd.transactions.store;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import rd.transactions.exceptions.*;
+import rd.transactions.journal.AccountSnapshot;
+import rd.transactions.model.Account;
+import rd.transactions.model.AccountId;
+import rd.transactions.model.Money;
+import rd.transactions.model.Transfer;
+import rd.transactions.validators.BalanceValidator;
+import rd.transactions.validators.NonNegativeBalanaceValidator;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MappedAccountStoreTest {
+    private static final LongSupplier NOT_JOURNALED = () -> 0;
+    private static final Currency USD = Currency.getInstance("USD");
+
+    private final BalanceValidator balanceValidator = new NonNegativeBalanaceValidator();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void accountsSurviveReopening() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("accounts.store");
+        try (MappedAccountStore store = MappedAccountStore.open(file, 100)) {
+            assertThat(store.add(account("A", "100.00"))).isTrue();
+            assertThat(store.add(account("B", "0.00"))).isTrue();
+            assertThat(store.transfer(transfer("A", "B", "30.50"), balanceValidator, NOT_JOURNALED)).isTrue();
+        }
+
+        try (MappedAccountStore store = MappedAccountStore.open(file, 100)) {
+            assertThat(store.size()).isEqualTo(2);
+            assertThat(store.get(AccountId.of("A"))).contains(account("A", "69.50"));
+            assertThat(store.get(AccountId.of("B"))).contains(account("B", "30.50"));
+            assertThat(store.get(AccountId.of("C"))).isEmpty();
+        }
+    }
+
+    @Test
+    public void accountWithSameIdIsNotAdded() throws Exception {
+        try (MappedAccountStore store = open(100)) {
+            assertThat(store.add(account("A", "100.00"))).isTrue();
+            assertThat(store.add(account("A", "5.00"))).isFalse();
+
+            assertThat(store.get(AccountId.of("A"))).contains(account("A", "100.00"));
+        }
+    }
+
+    @Test
+    public void accountsWithAsciiAndOtherIdsAreFound() throws Exception {
+        try (MappedAccountStore store = open(100)) {
+            store.add(account("account-1", "10.00"));
+            store.add(account("konto-\u017C\u00F3\u0142w", "20.00"));
+
+            assertThat(store.get(AccountId.of("account-1"))).contains(account("account-1", "10.00"));
+            assertThat(store.get(AccountId.of("konto-\u017C\u00F3\u0142w")))
+                    .contains(account("konto-\u017C\u00F3\u0142w", "20.00"));
+            assertThat(store.get(AccountId.of("account-2"))).isEmpty();
+            assertThat(store.get(AccountId.of("konto-\u017C\u00F3\u0142"))).isEmpty();
+            for (int length = 1; length <= MappedAccountStore.MAX_ID_BYTES; length++) {
+                String id = String.join("", Collections.nCopies(length, "x"));
+                store.add(account(id, "1.00"));
+                assertThat(store.get(AccountId.of(id))).as("id of %s bytes", length).contains(account(id, "1.00"));
+                assertThat(store.get(AccountId.of(id.substring(1) + "y"))).isEmpty();
+            }
+        }
+    }
+
+    @Test
+    public void accountsAreListedWithJournalSequence() throws Exception {
+        try (MappedAccountStore store = open(100)) {
+            store.add(account("A", "100.00"));
+            store.add(account("B", "0.00"));
+            store.transfer(transfer("A", "B", "1.00"), balanceValidator, () -> 7);
+
+            List<AccountSnapshot> snapshots = new ArrayList<>();
+            store.forEach(snapshots::add);
+
+            assertThat(snapshots).containsExactlyInAnyOrder(
+                    new AccountSnapshot(account("A", "99.00"), 7),
+                    new AccountSnapshot(account("B", "1.00"), 7));
+        }
+    }
+
+    @Test
+    public void transferIsValidated() throws Exception {
+        try (MappedAccountStore store = open(100)) {
+            store.add(account("A", "10.00"));
+            store.add(account("B", "0.00"));
+            store.add(Account.of(AccountId.of("D"), Money.of(new BigDecimal("10.00"), USD)));
+
+            assertThat(store.transfer(transfer("A", "B", "10.01"), balanceValidator, NOT_JOURNALED)).isFalse();
+            assertThatThrownBy(() -> store.transfer(transfer("A", "C", "1.00"), balanceValidator, NOT_JOURNALED))
+                    .isInstanceOf(AccountDoesNotExistException.class);
+            assertThatThrownBy(() -> store.transfer(transfer("A", "D", "1.00"), balanceValidator, NOT_JOURNALED))
+                    .isInstanceOf(CurrenciesOfAccountsDifferException.class);
+            assertThatThrownBy(() -> store.transfer(transfer("D", "A", "1.00"), balanceValidator, NOT_JOURNALED))
+                    .isInstanceOf(CurrencyOfSourceAccountDifferentThanTransferException.class);
+
+            assertThat(store.get(AccountId.of("A"))).contains(account("A", "10.00"));
+            assertThat(store.get(AccountId.of("B"))).contains(account("B", "0.00"));
+        }
+    }
+
+    @Test
+    public void batchIsAppliedAllOrNothing() throws Exception {
+        try (MappedAccountStore store = open(100)) {
+            store.add(account("A", "10.00"));
+            store.add(account("B", "0.00"));
+
+            assertThat(store.transferAll(Arrays.asList(
+                    transfer("A", "B", "10.00"),
+                    transfer("B", "A", "4.00"),
+                    transfer("B", "A", "7.00")), balanceValidator, NOT_JOURNALED)).isEqualTo(2);
+            assertThat(store.get(AccountId.of("A"))).contains(account("A", "10.00"));
+
+            assertThat(store.transferAll(Arrays.asList(
+                    transfer("A", "B", "10.00"),
+                    transfer("B", "A", "4.00")), balanceValidator, NOT_JOURNALED)).isEqualTo(-1);
+            assertThat(store.get(AccountId.of("A"))).contains(account("A", "4.00"));
+            assertThat(store.get(AccountId.of("B"))).contains(account("B", "6.00"));
+        }
+    }
+
+    @Test
+    public void replayedTransfersAreAppliedOnce() throws Exception {
+        try (MappedAccountStore store = open(100)) {
+            store.restore(new AccountSnapshot(account("A", "10.00"), 5));
+            store.restore(new AccountSnapshot(account("B", "0.00"), 0));
+
+            List<Transfer> transfers = Arrays.asList(transfer("A", "B", "1.00"), transfer("A", "B", "2.00"));
+            store.replayAppliedTransfers(5, transfers);
+            store.replayAppliedTransfers(6, transfers);
+            store.replayAppliedTransfers(6, transfers);
+
+            assertThat(store.get(AccountId.of("A"))).contains(account("A", "7.00"));
+            assertThat(store.get(AccountId.of("B"))).contains(account("B", "6.00"));
+        }
+    }
+
+    @Test
+    public void restoredAccountReplacesOlderOne() throws Exception {
+        try (MappedAccountStore store = open(100)) {
+            store.restore(new AccountSnapshot(account("A", "10.00"), 5));
+
+            assertThat(store.restore(new AccountSnapshot(account("A", "1.00"), 4))).isFalse();
+            assertThat(store.restore(new AccountSnapshot(account("A", "2.00"), 6))).isTrue();
+
+            assertThat(store.get(AccountId.of("A"))).contains(account("A", "2.00"));
+        }
+    }
+
+    @Test
+    public void storeAheadOfJournalIsRebuilt() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("accounts.store");
+        try (MappedAccountStore store = MappedAccountStore.open(file, 100)) {
+            store.add(account("A", "10.00"));
+            store.add(account("B", "0.00"));
+            store.transfer(transfer("A", "B", "1.00"), balanceValidator, () -> 3);
+        }
+
+        try (MappedAccountStore store = MappedAccountStore.open(file, 100, 3)) {
+            assertThat(store.size()).isEqualTo(2);
+        }
+        try (MappedAccountStore store = MappedAccountStore.open(file, 100, 2)) {
+            assertThat(store.size()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void capacityAndIdLengthAreLimited() throws Exception {
+        try (MappedAccountStore store = open(10)) {
+            for (int i = 0; i < store.getMaxAccounts(); i++) {
+                store.add(account("account-" + i, "1.00"));
+            }
+
+            assertThatThrownBy(() -> store.add(account("one too many", "1.00")))
+                    .isInstanceOf(AccountStoreFullException.class);
+            assertThatThrownBy(() -> store.add(account(String.join("", Collections.nCopies(40, "x")), "1.00")))
+                    .isInstanceOf(AccountIdTooLongException.class);
+            assertThat(store.get(AccountId.of("account-0"))).isNotEmpty();
+        }
+    }
+
+    @Test
+    public void concurrentTransfersKeepTotalBalanceAndAreNotListedHalfApplied() throws Exception {
+        int accounts = 50;
+        try (MappedAccountStore store = open(accounts)) {
+            for (int i = 0; i < accounts; i++) {
+                store.add(account(String.valueOf(i), "100.00"));
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                Random random = new Random(thread);
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 20000; i++) {
+                        Transfer transfer = transfer(String.valueOf(random.nextInt(accounts)),
+                                String.valueOf(random.nextInt(accounts)), "7.00");
+                        try {
+                            store.transfer(transfer, balanceValidator, NOT_JOURNALED);
+                        } catch (Exception ex) {
+                            throw new IllegalStateException(ex);
+                        }
+                    }
+                }));
+            }
+            List<Long> totals = new ArrayList<>();
+            do {
+                long[] listed = {0};
+                store.forEachAtomically(account -> listed[0] += account.getBalance().getMinorUnits());
+                totals.add(listed[0]);
+            } while (!futures.stream().allMatch(Future::isDone));
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+            assertThat(totals).containsOnly(accounts * 10000L);
+
+            long[] total = {0};
+            store.forEach(snapshot -> {
+                assertThat(snapshot.getAccount().getBalance().isNegative()).isFalse();
+                total[0] += snapshot.getAccount().getBalance().getMinorUnits();
+            });
+            assertThat(total[0]).isEqualTo(accounts * 10000L);
+        }
+    }
+
+    private MappedAccountStore open(int maxAccounts) throws IOException {
+        return MappedAccountStore.open(folder.getRoot().toPath().resolve("accounts.store"), maxAccounts);
+    }
+
+    private static Account account(String id, String balance) {
+        return Account.of(AccountId.of(id), Money.euros(new BigDecimal(balance)));
+    }
+
+    private static Transfer transfer(String source, String target, String amount) {
+        return Transfer.of(AccountId.of(source), AccountId.of(target), Money.euros(new BigDecimal(amount)), UUID.randomUUID());
+    }
+}
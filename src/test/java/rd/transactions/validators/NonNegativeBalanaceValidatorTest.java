@@ -2,24 +2,26 @@ package rd.transactions.validators;
 
 import org.junit.Test;
 
-import java.math.BigDecimal;
+import java.util.Currency;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class NonNegativeBalanaceValidatorTest {
 
+    private static final Currency EUR = Currency.getInstance("EUR");
+
     @Test
     public void negativeBalanceIsNotAllowed() {
         BalanceValidator balanceValidator = new NonNegativeBalanaceValidator();
 
-        assertThat(balanceValidator.isBalanceAllowed(BigDecimal.ONE.negate())).isFalse();
+        assertThat(balanceValidator.isBalanceAllowed(-1L, EUR)).isFalse();
     }
 
     @Test
     public void nonNegativeBalanceIsAllowed() {
         BalanceValidator balanceValidator = new NonNegativeBalanaceValidator();
 
-        assertThat(balanceValidator.isBalanceAllowed(BigDecimal.ONE)).isTrue();
-        assertThat(balanceValidator.isBalanceAllowed(BigDecimal.ZERO)).isTrue();
+        assertThat(balanceValidator.isBalanceAllowed(1L, EUR)).isTrue();
+        assertThat(balanceValidator.isBalanceAllowed(0L, EUR)).isTrue();
     }
-}
\ No newline at end of file
+}
@@ -1,9 +1,9 @@
 package rd.transactions.validators;
 
 import org.junit.Test;
+import rd.transactions.model.Money;
 
 import java.math.BigDecimal;
-import java.util.Currency;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -13,14 +13,14 @@ public class TransferAmountValidatorTest {
     public void nonPositiveTransferAmountIsNotAllowed() {
         TransferAmountValidator validator = new TransferAmountValidator();
 
-        assertThat(validator.isTransferAmountValid(new BigDecimal("0.003"), Currency.getInstance("EUR"))).isFalse();
-        assertThat(validator.isTransferAmountValid(BigDecimal.ONE.negate(), Currency.getInstance("EUR"))).isFalse();
+        assertThat(validator.isTransferAmountValid(Money.euros(new BigDecimal("0.003")))).isFalse();
+        assertThat(validator.isTransferAmountValid(Money.euros(BigDecimal.ONE.negate()))).isFalse();
     }
 
     @Test
     public void positiveAmountIsAllowed() {
         TransferAmountValidator validator = new TransferAmountValidator();
 
-        assertThat(validator.isTransferAmountValid(new BigDecimal("0.01"), Currency.getInstance("EUR"))).isTrue();
+        assertThat(validator.isTransferAmountValid(Money.euros(new BigDecimal("0.01")))).isTrue();
     }
-}
\ No newline at end of file
+}